@@ -14,6 +14,7 @@ import java.lang.management.ManagementFactory;
 
 import javax.management.MBeanServer;
 import javax.management.MBeanServerConnection;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
@@ -34,6 +35,8 @@ public abstract class AbstractOSGiMBeanTest {
 	
 	protected boolean addFrameworkAndUUID = false;
 	
+	private JMXConnector notificationConnector;
+	
 	@BeforeClass
 	public static void setup(){
 		BundleContext bc = FrameworkUtil.getBundle(Activator.class).getBundleContext();
@@ -66,6 +69,21 @@ public abstract class AbstractOSGiMBeanTest {
 		return returnType.cast(result);
 	}
 	
+	protected void jmxAddNotificationListener(NotificationListener listener) throws Exception {
+		String url = "service:jmx:rmi:///jndi/rmi://localhost:21045/jmxrmi";
+		notificationConnector = JMXConnectorFactory.connect(new JMXServiceURL(url));
+		notificationConnector.getMBeanServerConnection().addNotificationListener(new ObjectName(getMBeanObjectName()), listener, null, null);
+	}
+
+	protected void jmxRemoveNotificationListener(NotificationListener listener) throws Exception {
+		try {
+			notificationConnector.getMBeanServerConnection().removeNotificationListener(new ObjectName(getMBeanObjectName()), listener);
+		} finally {
+			notificationConnector.close();
+			notificationConnector = null;
+		}
+	}
+	
 	private String getMBeanObjectName(){
 		String newObjectName = this.mBeanObjectName;
 		if(this.addFrameworkAndUUID){
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.integration.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.management.MBeanException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.eclipse.gemini.management.framework.BundleJobState;
+import org.eclipse.gemini.management.framework.BundleJobStateMBean;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.jmx.framework.FrameworkMBean;
+
+/**
+ * Integration tests for the {@link BundleJobState} implementation of {@link BundleJobStateMBean}
+ *
+ */
+public final class BundleJobStateTest extends AbstractOSGiMBeanTest {
+
+	public BundleJobStateTest() {
+		super.mBeanObjectName = BundleJobStateMBean.OBJECTNAME;
+		super.addFrameworkAndUUID = true;
+	}
+
+	@Test
+	public void resolveJobTest() throws Exception {
+		Bundle bundle = FrameworkUtil.getBundle(BundleJobState.class);
+		long[] bundleIds = new long[]{0, bundle.getBundleId()};
+		long jobId = submit("submitResolveBundles", new Object[]{bundleIds}, new String[]{"[J"});
+		CompositeData job = awaitJob(jobId);
+		assertEquals(BundleJobStateMBean.FINISHED, job.get(BundleJobStateMBean.JOB_STATE));
+		assertEquals("resolve", job.get(BundleJobStateMBean.OPERATION));
+		assertEquals(2, job.get(BundleJobStateMBean.FINISHED_ITEMS));
+		assertArrayEquals(new String[]{BundleJobStateMBean.COMPLETED, BundleJobStateMBean.COMPLETED}, (String[]) job.get(BundleJobStateMBean.ITEM_STATES));
+		CompositeData result = jmxFetchData("getJobResult", new Object[]{jobId}, new String[]{"long"}, CompositeData.class);
+		assertTrue((Boolean) result.get(FrameworkMBean.SUCCESS));
+		assertEquals(2, ((Long[]) result.get(FrameworkMBean.COMPLETED)).length);
+		TabularData jobs = jmxFetchData("listJobs", new Object[]{}, new String[]{}, TabularData.class);
+		assertNotNull(jobs.get(new Object[]{jobId}));
+		boolean cancelled = jmxFetchData("cancelJob", new Object[]{jobId}, new String[]{"long"}, Boolean.class);
+		assertFalse(cancelled);
+	}
+
+	@Test
+	public void cancelJobTest() throws Exception {
+		File[] jars = new File[3];
+		String[] locations = new String[jars.length];
+		String[] urls = new String[jars.length];
+		for (int i = 0; i < jars.length; i++) {
+			jars[i] = File.createTempFile("cancel", ".jar");
+			jars[i].deleteOnExit();
+			writeBundle(jars[i], "cancel.test" + i);
+			locations[i] = "cancel.test" + i;
+			urls[i] = jars[i].toURI().toURL().toString();
+		}
+		// the first bundle is served once the job has been cancelled
+		final byte[] content = new byte[(int) jars[0].length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(jars[0]));
+		try {
+			in.readFully(content);
+		} finally {
+			in.close();
+		}
+		final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		Thread serve = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Socket socket = server.accept();
+					try {
+						cancelled.await();
+						BufferedReader request = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+						String line;
+						while ((line = request.readLine()) != null && line.length() > 0) {
+							// skip the request headers
+						}
+						OutputStream out = socket.getOutputStream();
+						out.write(("HTTP/1.0 200 OK\r\nContent-Length: " + content.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+						out.write(content);
+						out.flush();
+					} finally {
+						socket.close();
+					}
+				} catch (Exception e) {
+					// the download fails and the test with it
+				}
+			}
+		});
+		serve.start();
+		urls[0] = "http://127.0.0.1:" + server.getLocalPort() + "/cancel.jar";
+		try {
+			long jobId = submit("submitInstallBundlesFromURL", new Object[]{locations, urls}, new String[]{"[Ljava.lang.String;", "[Ljava.lang.String;"});
+			awaitItem(jobId, 0, BundleJobStateMBean.RUNNING);
+			assertTrue(jmxFetchData("cancelJob", new Object[]{jobId}, new String[]{"long"}, Boolean.class));
+			cancelled.countDown();
+			CompositeData job = awaitJob(jobId);
+			assertEquals(BundleJobStateMBean.CANCELLED, job.get(BundleJobStateMBean.JOB_STATE));
+			assertArrayEquals(new String[]{BundleJobStateMBean.COMPLETED, BundleJobStateMBean.CANCELLED, BundleJobStateMBean.CANCELLED},
+					(String[]) job.get(BundleJobStateMBean.ITEM_STATES));
+			CompositeData result = jmxFetchData("getJobResult", new Object[]{jobId}, new String[]{"long"}, CompositeData.class);
+			Long[] completed = (Long[]) result.get(FrameworkMBean.COMPLETED);
+			try {
+				assertFalse((Boolean) result.get(FrameworkMBean.SUCCESS));
+				assertEquals(BundleJobStateMBean.CANCELLED, result.get(FrameworkMBean.ERROR));
+				assertNull(result.get(FrameworkMBean.BUNDLE_IN_ERROR));
+				assertEquals(1, completed.length);
+				assertArrayEquals(new String[]{locations[1], locations[2]}, (String[]) result.get(FrameworkMBean.REMAINING));
+			} finally {
+				for (Long id : completed) {
+					FrameworkUtil.getBundle(BundleJobState.class).getBundleContext().getBundle(id).uninstall();
+				}
+			}
+		} finally {
+			cancelled.countDown();
+			server.close();
+			serve.join(30000);
+		}
+	}
+
+	@Test
+	public void unknownJobTest() throws Exception {
+		try {
+			jmxFetchData("getJob", new Object[]{Long.MAX_VALUE}, new String[]{"long"}, CompositeData.class);
+			fail("A job that does not exist must be reported");
+		} catch (MBeanException e) {
+			// expected
+		}
+	}
+
+	private long submit(String operation, Object[] arguments, String[] types) throws Exception {
+		super.mBeanObjectName = FrameworkMBean.OBJECTNAME;
+		try {
+			return jmxFetchData(operation, arguments, types, Long.class);
+		} finally {
+			super.mBeanObjectName = BundleJobStateMBean.OBJECTNAME;
+		}
+	}
+
+	private void awaitItem(long jobId, int item, String state) throws Exception {
+		long deadline = System.currentTimeMillis() + 30000;
+		while (true) {
+			CompositeData job = jmxFetchData("getJob", new Object[]{jobId}, new String[]{"long"}, CompositeData.class);
+			if (state.equals(((String[]) job.get(BundleJobStateMBean.ITEM_STATES))[item])) {
+				return;
+			}
+			assertTrue("Item " + item + " of job " + jobId + " did not become " + state, System.currentTimeMillis() < deadline);
+			Thread.sleep(50);
+		}
+	}
+
+	private CompositeData awaitJob(long jobId) throws Exception {
+		long deadline = System.currentTimeMillis() + 30000;
+		while (true) {
+			CompositeData job = jmxFetchData("getJob", new Object[]{jobId}, new String[]{"long"}, CompositeData.class);
+			String state = (String) job.get(BundleJobStateMBean.JOB_STATE);
+			if (BundleJobStateMBean.FINISHED.equals(state) || BundleJobStateMBean.CANCELLED.equals(state)) {
+				return job;
+			}
+			assertTrue("Job " + jobId + " did not end", System.currentTimeMillis() < deadline);
+			Thread.sleep(50);
+		}
+	}
+
+	private static void writeBundle(File jar, String symbolicName) throws Exception {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-ManifestVersion", "2");
+		manifest.getMainAttributes().putValue("Bundle-SymbolicName", symbolicName);
+		new JarOutputStream(new FileOutputStream(jar), manifest).close();
+	}
+
+}
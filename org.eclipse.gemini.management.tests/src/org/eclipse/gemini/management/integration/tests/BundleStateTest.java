@@ -15,18 +15,36 @@
 package org.eclipse.gemini.management.integration.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 
+import javax.management.MBeanException;
 import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
 
+import org.eclipse.gemini.management.CustomJmxConstants;
 import org.eclipse.gemini.management.framework.BundleState;
 import org.eclipse.gemini.management.framework.internal.OSGiBundle;
 import org.eclipse.gemini.management.internal.BundleUtil;
@@ -37,6 +55,7 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.BundleWire;
@@ -224,6 +243,205 @@ public final class BundleStateTest extends AbstractOSGiMBeanTest{
 		}
 	}
 
+	@Test
+	public void listAfterStartLevelChangeTest() throws Exception {
+		Bundle testBundle = FrameworkUtil.getBundle(BundleStateTest.class);
+		BundleStartLevel bundleStartLevel = testBundle.adapt(BundleStartLevel.class);
+		int originalStartLevel = bundleStartLevel.getStartLevel();
+		int newStartLevel = originalStartLevel > 1 ? originalStartLevel - 1 : originalStartLevel + 1;
+		jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+		try {
+			bundleStartLevel.setStartLevel(newStartLevel);
+			TabularData table = jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+			bundleInfo = table.get(new Object[]{testBundle.getBundleId()});
+			assertEquals(newStartLevel, ((Integer) bundleInfo.get(BundleStateMBean.START_LEVEL)).intValue());
+		} finally {
+			bundleStartLevel.setStartLevel(originalStartLevel);
+		}
+	}
+
+	@Test
+	public void listAfterServiceRegistrationTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(BundleStateTest.class).getBundleContext();
+		jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+		ServiceRegistration<Runnable> registration = bc.registerService(Runnable.class, new Runnable() {
+			public void run() {
+			}
+		}, null);
+		Long serviceId = (Long) registration.getReference().getProperty(Constants.SERVICE_ID);
+		try {
+			TabularData table = jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+			bundleInfo = table.get(new Object[]{bc.getBundle().getBundleId()});
+			assertTrue(Arrays.asList((Long[]) bundleInfo.get(BundleStateMBean.REGISTERED_SERVICES)).contains(serviceId));
+			assertFalse(Arrays.asList((Long[]) bundleInfo.get(BundleStateMBean.SERVICES_IN_USE)).contains(serviceId));
+			bc.getService(registration.getReference());
+			try {
+				table = jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+				bundleInfo = table.get(new Object[]{bc.getBundle().getBundleId()});
+				assertTrue(Arrays.asList((Long[]) bundleInfo.get(BundleStateMBean.SERVICES_IN_USE)).contains(serviceId));
+			} finally {
+				bc.ungetService(registration.getReference());
+			}
+		} finally {
+			registration.unregister();
+		}
+		TabularData table = jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+		bundleInfo = table.get(new Object[]{bc.getBundle().getBundleId()});
+		assertFalse(Arrays.asList((Long[]) bundleInfo.get(BundleStateMBean.REGISTERED_SERVICES)).contains(serviceId));
+	}
+
+	@Test
+	public void listAfterInstallTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(BundleStateTest.class).getBundleContext();
+		jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, "list.install.test");
+		ByteArrayOutputStream jar = new ByteArrayOutputStream();
+		new JarOutputStream(jar, manifest).close();
+		Bundle bundle = bc.installBundle("list.install.test", new ByteArrayInputStream(jar.toByteArray()));
+		try {
+			TabularData table = jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+			assertEquals(bc.getBundle(0).getLastModified(), table.get(new Object[]{0L}).get(BundleStateMBean.LAST_MODIFIED));
+			assertEquals("list.install.test", table.get(new Object[]{bundle.getBundleId()}).get(BundleStateMBean.SYMBOLIC_NAME));
+		} finally {
+			bundle.uninstall();
+		}
+	}
+
+	@Test
+	public void listPageTest() throws Exception {
+		TabularData table = jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+		Set<Long> expected = new HashSet<Long>();
+		for (Object row : table.values()) {
+			expected.add((Long) ((CompositeData) row).get(BundleStateMBean.IDENTIFIER));
+		}
+		Set<Long> listed = new HashSet<Long>();
+		String[] types = new String[]{String.class.getName(), int.class.getName()};
+		String cursor = null;
+		do {
+			CompositeData page = jmxFetchData("listBundlesPage", new Object[]{cursor, 3}, types, CompositeData.class);
+			TabularData bundles = (TabularData) page.get(CustomJmxConstants.PAGE);
+			assertTrue(bundles.size() <= 3);
+			for (Object row : bundles.values()) {
+				assertTrue(listed.add((Long) ((CompositeData) row).get(BundleStateMBean.IDENTIFIER)));
+			}
+			cursor = (String) page.get(CustomJmxConstants.CURSOR);
+		} while (cursor != null);
+		assertEquals(expected, listed);
+	}
+
+	@Test
+	public void listLastPageDropsSnapshotTest() throws Exception {
+		String[] types = new String[]{String.class.getName(), int.class.getName()};
+		CompositeData page = jmxFetchData("listBundlesPage", new Object[]{null, 1}, types, CompositeData.class);
+		String cursor = (String) page.get(CustomJmxConstants.CURSOR);
+		page = jmxFetchData("listBundlesPage", new Object[]{cursor, 1}, types, CompositeData.class);
+		CompositeData again = jmxFetchData("listBundlesPage", new Object[]{cursor, 1}, types, CompositeData.class);
+		assertEquals(page.get(CustomJmxConstants.CURSOR), again.get(CustomJmxConstants.CURSOR));
+		assertEquals(((TabularData) page.get(CustomJmxConstants.PAGE)).keySet(), ((TabularData) again.get(CustomJmxConstants.PAGE)).keySet());
+		String lastCursor;
+		do {
+			lastCursor = cursor;
+			page = jmxFetchData("listBundlesPage", new Object[]{lastCursor, 1}, types, CompositeData.class);
+			cursor = (String) page.get(CustomJmxConstants.CURSOR);
+		} while (cursor != null);
+		try {
+			jmxFetchData("listBundlesPage", new Object[]{lastCursor, 1}, types, CompositeData.class);
+			fail("The last page drops its snapshot");
+		} catch (MBeanException e) {
+			assertTrue(e.getCause().getMessage().startsWith("Cursor has expired"));
+		}
+		try {
+			jmxFetchData("listBundlesPage", new Object[]{"no-such-listing:1", 1}, types, CompositeData.class);
+			fail("The cursor names no listing");
+		} catch (MBeanException e) {
+			assertTrue(e.getCause().getMessage().startsWith("Cursor has expired"));
+		}
+	}
+
+	/**
+	 * Encodes every installed bundle through a proxy that counts the calls made on the bundle and its wiring. Each
+	 * encoding must adapt the wiring and the start level once and fetch each wire list at most once.
+	 */
+	@Test
+	public void encodeAdaptsOnceTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(BundleState.class).getBundleContext();
+		for (Bundle installed : bc.getBundles()) {
+			Map<String, Integer> counts = new HashMap<String, Integer>();
+			new OSGiBundle(countingProxy(Bundle.class, installed, counts)).asCompositeData();
+			assertEquals(1, count(counts, "adapt " + BundleWiring.class.getName()));
+			assertEquals(1, count(counts, "adapt " + BundleStartLevel.class.getName()));
+			assertTrue(count(counts, "getRequiredWires") <= 1);
+			assertTrue(count(counts, "getProvidedWires") <= 1);
+		}
+	}
+
+	@Test
+	public void encodedBundleTest() throws Exception {
+		Bundle bundle = FrameworkUtil.getBundle(BundleState.class);
+		CompositeData local = new OSGiBundle(bundle).asCompositeData();
+		assertFalse(local instanceof CompositeDataSupport);
+		TabularData table = jmxFetchData("listBundles", new Object[]{}, new String[]{}, TabularData.class);
+		CompositeData remote = table.get(new Object[]{bundle.getBundleId()});
+		assertTrue(remote instanceof CompositeDataSupport);
+		assertEquals(remote, local);
+		assertEquals(local, remote);
+		assertEquals(remote.hashCode(), local.hashCode());
+		assertEquals(bundle.getSymbolicName(), local.get(BundleStateMBean.SYMBOLIC_NAME));
+	}
+
+	@Test
+	public void encodedTableTest() throws Exception {
+		Bundle bundle = FrameworkUtil.getBundle(BundleState.class);
+		TabularData local = OSGiBundle.headerTable(bundle.getHeaders());
+		assertFalse(local instanceof TabularDataSupport);
+		TabularData remote = jmxFetchData("getHeaders", new Object[]{bundle.getBundleId()}, new String[]{long.class.getName()}, TabularData.class);
+		assertTrue(remote instanceof TabularDataSupport);
+		assertEquals(remote, local);
+		assertEquals(local, remote);
+		assertEquals(remote.hashCode(), local.hashCode());
+		assertEquals(remote.keySet(), local.keySet());
+		Object[] key = new Object[]{Constants.BUNDLE_SYMBOLICNAME};
+		assertTrue(local.containsKey(key));
+		assertEquals(remote.get(key), local.get(key));
+		assertNull(local.get(new Object[]{"No-Such-Header"}));
+		try {
+			local.put(remote.get(key));
+			fail("The table is immutable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	private static int count(Map<String, Integer> counts, String method) {
+		Integer count = counts.get(method);
+		return count == null ? 0 : count;
+	}
+
+	private static <T> T countingProxy(Class<T> type, final Object target, final Map<String, Integer> counts) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String call = method.getName();
+				if ("adapt".equals(call)) {
+					call += " " + ((Class<?>) args[0]).getName();
+				}
+				counts.put(call, count(counts, call) + 1);
+				Object result;
+				try {
+					result = method.invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+				if (result instanceof BundleWiring) {
+					return countingProxy(BundleWiring.class, result, counts);
+				}
+				return result;
+			}
+		}));
+	}
+
 	private String stateToString(int state) {
 		switch (state) {
 			case Bundle.ACTIVE:
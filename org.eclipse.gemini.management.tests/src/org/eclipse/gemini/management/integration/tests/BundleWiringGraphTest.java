@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.integration.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.eclipse.gemini.management.framework.BundleWiringGraph;
+import org.eclipse.gemini.management.framework.BundleWiringGraphMBean;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+/**
+ * Integration tests for the {@link BundleWiringGraph} implementation of {@link BundleWiringGraphMBean}
+ *
+ */
+public final class BundleWiringGraphTest extends AbstractOSGiMBeanTest {
+
+	public BundleWiringGraphTest() {
+		super.mBeanObjectName = BundleWiringGraphMBean.OBJECTNAME;
+		super.addFrameworkAndUUID = true;
+	}
+
+	@Test
+	public void degreesTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(BundleWiringGraph.class).getBundleContext();
+		TabularData degrees = jmxFetchData("getDegrees", new Object[]{BundleRevision.PACKAGE_NAMESPACE}, new String[]{"java.lang.String"}, TabularData.class);
+		for (Bundle bundle : bc.getBundles()) {
+			BundleWiring wiring = bundle.adapt(BundleWiring.class);
+			if (wiring == null) {
+				continue;
+			}
+			Set<Long> requirers = new TreeSet<Long>();
+			for (BundleWire wire : wiring.getProvidedWires(BundleRevision.PACKAGE_NAMESPACE)) {
+				requirers.add(wire.getRequirerWiring().getBundle().getBundleId());
+			}
+			Set<Long> providers = new TreeSet<Long>();
+			for (BundleWire wire : wiring.getRequiredWires(BundleRevision.PACKAGE_NAMESPACE)) {
+				providers.add(wire.getProviderWiring().getBundle().getBundleId());
+			}
+			requirers.remove(bundle.getBundleId());
+			providers.remove(bundle.getBundleId());
+			CompositeData degree = degrees.get(new Object[]{bundle.getBundleId()});
+			assertEquals(requirers.size(), degree.get(BundleWiringGraphMBean.IN_DEGREE));
+			assertEquals(providers.size(), degree.get(BundleWiringGraphMBean.OUT_DEGREE));
+			int inDegree = jmxFetchData("getInDegree", new Object[]{bundle.getBundleId(), BundleRevision.PACKAGE_NAMESPACE}, new String[]{"long", "java.lang.String"}, Integer.class);
+			assertEquals(requirers.size(), inDegree);
+		}
+	}
+
+	@Test
+	public void reachabilityTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(BundleWiringGraph.class).getBundleContext();
+		long self = bc.getBundle().getBundleId();
+		String[] types = new String[]{"long", "java.lang.String"};
+		long[] dependencies = jmxFetchData("getDependencies", new Object[]{self, BundleWiringGraphMBean.ALL_NAMESPACE}, types, long[].class);
+		assertTrue(Arrays.binarySearch(dependencies, 0L) >= 0);
+		long[] dependents = jmxFetchData("getDependents", new Object[]{0L, BundleWiringGraphMBean.ALL_NAMESPACE}, types, long[].class);
+		assertTrue(Arrays.binarySearch(dependents, self) >= 0);
+		boolean reachable = jmxFetchData("isReachable", new Object[]{self, 0L, BundleWiringGraphMBean.ALL_NAMESPACE}, new String[]{"long", "long", "java.lang.String"}, Boolean.class);
+		assertTrue(reachable);
+		long[][] cycles = jmxFetchData("getCycles", new Object[]{BundleWiringGraphMBean.ALL_NAMESPACE}, new String[]{"java.lang.String"}, long[][].class);
+		for (long[] cycle : cycles) {
+			assertTrue(cycle.length > 1);
+			for (long bundleId : cycle) {
+				long[] cycleDependencies = jmxFetchData("getDependencies", new Object[]{bundleId, BundleWiringGraphMBean.ALL_NAMESPACE}, types, long[].class);
+				for (long other : cycle) {
+					assertTrue(other == bundleId || Arrays.binarySearch(cycleDependencies, other) >= 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void resolvedAndUnresolvedTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(BundleWiringGraph.class).getBundleContext();
+		Bundle bundle = bc.installBundle(createBundle("graph.test", "org.osgi.framework").toURI().toString());
+		String[] types = new String[]{"long", "java.lang.String"};
+		Object[] arguments = new Object[]{bundle.getBundleId(), BundleRevision.PACKAGE_NAMESPACE};
+		Object[] systemArguments = new Object[]{0L, BundleRevision.PACKAGE_NAMESPACE};
+		try {
+			assertEquals(0, jmxFetchData("getOutDegree", arguments, types, Integer.class).intValue());
+			int inDegree = jmxFetchData("getInDegree", systemArguments, types, Integer.class);
+			FrameworkWiring frameworkWiring = bc.getBundle(0).adapt(FrameworkWiring.class);
+			assertTrue(frameworkWiring.resolveBundles(Collections.singleton(bundle)));
+			assertEquals(1, jmxFetchData("getOutDegree", arguments, types, Integer.class).intValue());
+			assertEquals(inDegree + 1, jmxFetchData("getInDegree", systemArguments, types, Integer.class).intValue());
+			long[] dependents = jmxFetchData("getDependents", systemArguments, types, long[].class);
+			assertTrue(Arrays.binarySearch(dependents, bundle.getBundleId()) >= 0);
+
+			final CountDownLatch refreshed = new CountDownLatch(1);
+			frameworkWiring.refreshBundles(Collections.singleton(bundle), new FrameworkListener() {
+				public void frameworkEvent(FrameworkEvent event) {
+					refreshed.countDown();
+				}
+			});
+			assertTrue(refreshed.await(30, TimeUnit.SECONDS));
+			int wired = bundle.getState() == Bundle.INSTALLED ? 0 : 1;
+			assertEquals(wired, jmxFetchData("getOutDegree", arguments, types, Integer.class).intValue());
+			assertEquals(inDegree + wired, jmxFetchData("getInDegree", systemArguments, types, Integer.class).intValue());
+			bundle.uninstall();
+			assertEquals(inDegree, jmxFetchData("getInDegree", systemArguments, types, Integer.class).intValue());
+		} finally {
+			if (bundle.getState() != Bundle.UNINSTALLED) {
+				bundle.uninstall();
+			}
+		}
+	}
+
+	private static File createBundle(String symbolicName, String importPackage) throws Exception {
+		File jar = File.createTempFile(symbolicName, ".jar");
+		jar.deleteOnExit();
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+		manifest.getMainAttributes().putValue(Constants.IMPORT_PACKAGE, importPackage);
+		new JarOutputStream(new FileOutputStream(jar), manifest).close();
+		return jar;
+	}
+
+}
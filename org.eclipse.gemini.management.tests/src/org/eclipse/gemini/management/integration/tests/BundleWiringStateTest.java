@@ -11,14 +11,18 @@
 package org.eclipse.gemini.management.integration.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
 
+import org.eclipse.gemini.management.CustomJmxConstants;
 import org.eclipse.gemini.management.framework.BundleWiringState;
 import org.eclipse.gemini.management.framework.ServiceState;
 import org.junit.Before;
@@ -92,4 +96,47 @@ public final class BundleWiringStateTest extends AbstractOSGiMBeanTest {
 		}
 	}
 	
+	@Test
+	public void currentWiringClosureRepeatTest() throws Exception {
+		String[] types = new String[]{"long", "java.lang.String"};
+		TabularData first = jmxFetchData("getCurrentWiringClosure", new Object[]{new Long(0), BundleRevision.PACKAGE_NAMESPACE}, types, TabularData.class);
+		TabularData second = jmxFetchData("getCurrentWiringClosure", new Object[]{new Long(0), BundleRevision.PACKAGE_NAMESPACE}, types, TabularData.class);
+		assertEquals(first.keySet(), second.keySet());
+		for (Object row : first.values()) {
+			CompositeData wiring = (CompositeData) row;
+			assertEquals(wiring, second.get(first.calculateIndex(wiring)));
+		}
+	}
+
+	@Test
+	public void revisionIdTest() throws Exception {
+		String[] types = new String[]{"long", "java.lang.String"};
+		CompositeData wiring = jmxFetchData("getCurrentWiring", new Object[]{new Long(0), BundleRevision.PACKAGE_NAMESPACE}, types, CompositeData.class);
+		TabularData capabilities = jmxFetchData("getRevisionsDeclaredCapabilities", new Object[]{new Long(0), BundleRevision.PACKAGE_NAMESPACE}, types, TabularData.class);
+		assertEquals(1, capabilities.size());
+		CompositeData revision = (CompositeData) capabilities.values().iterator().next();
+		assertEquals(wiring.get(BundleWiringStateMBean.BUNDLE_REVISION_ID), revision.get(BundleWiringStateMBean.BUNDLE_REVISION_ID));
+		CompositeData again = jmxFetchData("getCurrentWiring", new Object[]{new Long(0), BundleRevision.PACKAGE_NAMESPACE}, types, CompositeData.class);
+		assertEquals(wiring.get(BundleWiringStateMBean.BUNDLE_REVISION_ID), again.get(BundleWiringStateMBean.BUNDLE_REVISION_ID));
+	}
+
+	@Test
+	public void currentWiringClosurePageTest() throws Exception {
+		String[] types = new String[]{"long", "java.lang.String"};
+		TabularData table = jmxFetchData("getCurrentWiringClosure", new Object[]{new Long(0), BundleRevision.PACKAGE_NAMESPACE}, types, TabularData.class);
+		String[] pageTypes = new String[]{"long", "java.lang.String", "java.lang.String", "int"};
+		Set<List<?>> listed = new HashSet<List<?>>();
+		String cursor = null;
+		do {
+			CompositeData page = jmxFetchData("getCurrentWiringClosurePage", new Object[]{new Long(0), BundleRevision.PACKAGE_NAMESPACE, cursor, 2}, pageTypes, CompositeData.class);
+			TabularData wirings = (TabularData) page.get(CustomJmxConstants.PAGE);
+			assertTrue(wirings.size() <= 2);
+			for (Object pageKey : wirings.keySet()) {
+				assertTrue(listed.add((List<?>) pageKey));
+			}
+			cursor = (String) page.get(CustomJmxConstants.CURSOR);
+		} while (cursor != null);
+		assertEquals(table.size(), listed.size());
+	}
+	
 }
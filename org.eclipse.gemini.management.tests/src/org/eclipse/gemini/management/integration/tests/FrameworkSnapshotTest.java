@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.integration.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Set;
+
+import org.eclipse.gemini.management.framework.FrameworkSnapshot;
+import org.eclipse.gemini.management.framework.FrameworkSnapshotMBean;
+import org.eclipse.gemini.management.snapshot.Snapshot;
+import org.eclipse.gemini.management.snapshot.SnapshotDecoder;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.wiring.BundleRevision;
+
+/**
+ * Integration tests for the {@link FrameworkSnapshot} implementation of {@link FrameworkSnapshotMBean}
+ *
+ */
+public final class FrameworkSnapshotTest extends AbstractOSGiMBeanTest {
+
+	public FrameworkSnapshotTest() {
+		super.mBeanObjectName = FrameworkSnapshotMBean.OBJECTNAME;
+		super.addFrameworkAndUUID = true;
+	}
+
+	@Test
+	public void snapshotTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(FrameworkSnapshot.class).getBundleContext();
+		byte[] encoded = jmxFetchData("takeSnapshot", new Object[]{}, new String[]{}, byte[].class);
+		Snapshot snapshot = SnapshotDecoder.decode(encoded);
+		assertEquals(Snapshot.FORMAT_VERSION, snapshot.getFormatVersion());
+
+		Bundle[] bundles = bc.getBundles();
+		assertEquals(bundles.length, snapshot.getBundles().size());
+		for (Snapshot.Bundle bundle : snapshot.getBundles()) {
+			Bundle expected = bc.getBundle(bundle.getIdentifier());
+			assertEquals(expected.getSymbolicName(), bundle.getSymbolicName());
+			assertEquals(expected.getVersion().toString(), bundle.getVersion());
+			assertEquals(expected.getLocation(), bundle.getLocation());
+			assertEquals(expected.getHeaders().get(Constants.BUNDLE_SYMBOLICNAME), bundle.getHeaders().get(Constants.BUNDLE_SYMBOLICNAME));
+		}
+
+		Set<Long> serviceIds = new HashSet<Long>();
+		for (ServiceReference<?> reference : bc.getAllServiceReferences(null, null)) {
+			serviceIds.add((Long) reference.getProperty(Constants.SERVICE_ID));
+		}
+		Set<Long> snapshotServiceIds = new HashSet<Long>();
+		for (Snapshot.Service service : snapshot.getServices()) {
+			snapshotServiceIds.add(service.getIdentifier());
+			ServiceReference<?> reference = bc.getServiceReferences((String) null, "(" + Constants.SERVICE_ID + "=" + service.getIdentifier() + ")")[0];
+			assertEquals(Arrays.asList((String[]) reference.getProperty(Constants.OBJECTCLASS)), service.getObjectClass());
+			assertEquals(reference.getBundle().getBundleId(), service.getBundleIdentifier());
+			assertEquals(reference.getPropertyKeys().length, service.getProperties().size());
+		}
+		assertEquals(serviceIds, snapshotServiceIds);
+
+		long self = bc.getBundle().getBundleId();
+		boolean exported = false;
+		for (Snapshot.Package pkg : snapshot.getPackages()) {
+			exported |= pkg.getExportingBundle() == self && "org.osgi.jmx".equals(pkg.getName());
+		}
+		assertTrue(exported);
+		boolean wired = false;
+		for (Snapshot.Wire wire : snapshot.getWires()) {
+			wired |= wire.getRequirer() == self && wire.getProvider() == 0 && BundleRevision.PACKAGE_NAMESPACE.equals(wire.getNamespace())
+					&& "org.osgi.framework".equals(wire.getName());
+		}
+		assertTrue(wired);
+	}
+
+	@Test
+	public void unsupportedPropertyTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(FrameworkSnapshot.class).getBundleContext();
+		Hashtable<String, Object> properties = new Hashtable<String, Object>();
+		properties.put("snapshot.test", new StringBuilder("unsupported"));
+		ServiceRegistration<?> registration = bc.registerService(Object.class.getName(), new Object(), properties);
+		try {
+			long serviceId = (Long) registration.getReference().getProperty(Constants.SERVICE_ID);
+			byte[] encoded = jmxFetchData("takeSnapshot", new Object[]{}, new String[]{}, byte[].class);
+			Snapshot.Property property = null;
+			for (Snapshot.Service service : SnapshotDecoder.decode(encoded).getServices()) {
+				if (service.getIdentifier() == serviceId) {
+					for (Snapshot.Property candidate : service.getProperties()) {
+						if ("snapshot.test".equals(candidate.getKey())) {
+							property = candidate;
+						}
+					}
+				}
+			}
+			assertNotNull(property);
+			assertEquals("String", property.getType());
+			assertEquals("unsupported", property.getValue());
+		} finally {
+			registration.unregister();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void unsupportedVersionTest() throws Exception {
+		byte[] encoded = jmxFetchData("takeSnapshot", new Object[]{}, new String[]{}, byte[].class);
+		encoded[4] = (byte) (Snapshot.FORMAT_VERSION + 1);
+		SnapshotDecoder.decode(encoded);
+	}
+
+}
@@ -10,10 +10,47 @@
  *******************************************************************************/
 package org.eclipse.gemini.management.integration.tests;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.management.MBeanException;
+import javax.management.openmbean.CompositeData;
+
+import org.eclipse.gemini.management.framework.CustomFrameworkMBean;
 import org.eclipse.gemini.management.framework.Framework;
 import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.FrameworkWiring;
+import org.osgi.jmx.framework.BundleStateMBean;
 import org.osgi.jmx.framework.FrameworkMBean;
 
 /**
@@ -32,5 +69,248 @@ public final class FrameworkTest extends AbstractOSGiMBeanTest {
 		Integer result = jmxFetchAttribute("FrameworkStartLevel", Integer.class);
 		assertEquals(6, result.intValue());
 	}
+
+	@Test
+	public void startBundlesInParallelTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(Framework.class).getBundleContext();
+		// a is on a lower start level than b and c, which share one, and c imports from b which imports from a
+		Bundle a = installBundle(bc, "parallel.a", 3, Constants.EXPORT_PACKAGE, "parallel.a");
+		Bundle b = installBundle(bc, "parallel.b", 4, Constants.IMPORT_PACKAGE, "parallel.a", Constants.EXPORT_PACKAGE, "parallel.b");
+		Bundle c = installBundle(bc, "parallel.c", 4, Constants.IMPORT_PACKAGE, "parallel.b");
+		try {
+			assertTrue(bc.getBundle(0).adapt(FrameworkWiring.class).resolveBundles(Arrays.asList(a, b, c)));
+			long[] ids = new long[]{c.getBundleId(), b.getBundleId(), a.getBundleId()};
+			CompositeData result = jmxFetchData("startBundlesInParallel", new Object[]{ids}, new String[]{"[J"}, CompositeData.class);
+			assertEquals(Boolean.TRUE, result.get(FrameworkMBean.SUCCESS));
+			assertEquals(0, ((Long[]) result.get(FrameworkMBean.REMAINING)).length);
+			assertEquals(Arrays.asList(a.getBundleId(), b.getBundleId(), c.getBundleId()), outcomeOrder(result));
+			assertEquals(Bundle.ACTIVE, c.getState());
+
+			result = jmxFetchData("stopBundlesInParallel", new Object[]{ids}, new String[]{"[J"}, CompositeData.class);
+			assertEquals(Boolean.TRUE, result.get(FrameworkMBean.SUCCESS));
+			assertEquals(Arrays.asList(c.getBundleId(), b.getBundleId(), a.getBundleId()), outcomeOrder(result));
+			assertEquals(Bundle.RESOLVED, a.getState());
+		} finally {
+			c.uninstall();
+			b.uninstall();
+			a.uninstall();
+		}
+	}
+
+	@Test
+	public void startBundlesInParallelFailureTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(Framework.class).getBundleContext();
+		Bundle failing = installBundle(bc, "parallel.failing", 4, Constants.EXPORT_PACKAGE, "parallel.failing", Constants.BUNDLE_ACTIVATOR,
+				"parallel.failing.Missing");
+		Bundle dependent = installBundle(bc, "parallel.dependent", 4, Constants.IMPORT_PACKAGE, "parallel.failing");
+		try {
+			assertTrue(bc.getBundle(0).adapt(FrameworkWiring.class).resolveBundles(Arrays.asList(failing, dependent)));
+			long[] ids = new long[]{dependent.getBundleId(), failing.getBundleId()};
+			CompositeData result = jmxFetchData("startBundlesInParallel", new Object[]{ids}, new String[]{"[J"}, CompositeData.class);
+			assertEquals(Boolean.FALSE, result.get(FrameworkMBean.SUCCESS));
+			assertEquals(failing.getBundleId(), result.get(FrameworkMBean.BUNDLE_IN_ERROR));
+			assertArrayEquals(new Long[]{dependent.getBundleId()}, (Long[]) result.get(FrameworkMBean.REMAINING));
+			assertEquals(Arrays.asList(failing.getBundleId()), outcomeOrder(result));
+			assertEquals(Bundle.RESOLVED, dependent.getState());
+		} finally {
+			dependent.uninstall();
+			failing.uninstall();
+		}
+
+		long fragment = -1;
+		for (Bundle candidate : bc.getBundles()) {
+			if ((candidate.adapt(BundleRevision.class).getTypes() & BundleRevision.TYPE_FRAGMENT) != 0) {
+				fragment = candidate.getBundleId();
+			}
+		}
+		assertTrue(fragment != -1);
+		CompositeData result = jmxFetchData("startBundlesInParallel", new Object[]{new long[]{fragment}}, new String[]{"[J"}, CompositeData.class);
+		assertEquals(Boolean.FALSE, result.get(FrameworkMBean.SUCCESS));
+		assertEquals(fragment, result.get(FrameworkMBean.BUNDLE_IN_ERROR));
+		CompositeData[] outcomes = (CompositeData[]) result.get(CustomFrameworkMBean.OUTCOMES);
+		assertEquals(1, outcomes.length);
+		assertEquals(Boolean.FALSE, outcomes[0].get(FrameworkMBean.SUCCESS));
+	}
+
+	/**
+	 * @return the identifiers of the bundles of a parallel batch in the order their actions completed
+	 */
+	private static List<Long> outcomeOrder(CompositeData result) {
+		List<Long> order = new ArrayList<Long>();
+		for (CompositeData outcome : (CompositeData[]) result.get(CustomFrameworkMBean.OUTCOMES)) {
+			order.add((Long) outcome.get(BundleStateMBean.IDENTIFIER));
+		}
+		return order;
+	}
+
+	@Test
+	public void concurrentRefreshTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(Framework.class).getBundleContext();
+		final Bundle bundle = bc.installBundle(createBundle("refresh.test").toURI().toString());
+		assertTrue(bc.getBundle(0).adapt(FrameworkWiring.class).resolveBundles(Collections.singleton(bundle)));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<CompositeData>> results = new ArrayList<Future<CompositeData>>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(new Callable<CompositeData>() {
+					public CompositeData call() throws Exception {
+						return jmxFetchData("refreshBundlesAndWait", new Object[]{new long[]{bundle.getBundleId()}}, new String[]{"[J"}, CompositeData.class);
+					}
+				}));
+			}
+			for (Future<CompositeData> result : results) {
+				assertEquals(Boolean.TRUE, result.get().get(FrameworkMBean.SUCCESS));
+				assertTrue(Arrays.asList((Long[]) result.get().get(FrameworkMBean.COMPLETED)).contains(bundle.getBundleId()));
+			}
+		} finally {
+			executor.shutdown();
+			bundle.uninstall();
+		}
+	}
+
+	@Test
+	public void installBundlesFromURLTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(Framework.class).getBundleContext();
+		String[] locations = new String[]{"install.test.1", "install.test.2", "install.test.3", "install.test.4"};
+		String[] urls = new String[]{createBundle("install.test.1").toURI().toString(), createBundle("install.test.2").toURI().toString(),
+				new File("does-not-exist.jar").toURI().toString(), createBundle("install.test.4").toURI().toString()};
+		CompositeData result = jmxFetchData("installBundlesFromURL", new Object[]{locations, urls}, new String[]{"[Ljava.lang.String;", "[Ljava.lang.String;"},
+				CompositeData.class);
+		try {
+			assertEquals(Boolean.FALSE, result.get(FrameworkMBean.SUCCESS));
+			Long[] completed = (Long[]) result.get(FrameworkMBean.COMPLETED);
+			assertEquals(2, completed.length);
+			assertEquals(locations[0], bc.getBundle(completed[0]).getLocation());
+			assertEquals(locations[1], bc.getBundle(completed[1]).getLocation());
+			assertEquals(locations[2], result.get(FrameworkMBean.BUNDLE_IN_ERROR));
+			assertArrayEquals(new String[]{locations[3]}, (String[]) result.get(FrameworkMBean.REMAINING));
+			assertEquals(null, bc.getBundle(locations[3]));
+		} finally {
+			for (Long bundleId : (Long[]) result.get(FrameworkMBean.COMPLETED)) {
+				bc.getBundle(bundleId).uninstall();
+			}
+		}
+	}
+
+	@Test
+	public void installVerifiedBundleFromURLTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(Framework.class).getBundleContext();
+		File jar = createBundle("verified.test");
+		String url = jar.toURI().toString();
+		byte[] content = new byte[(int) jar.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(jar));
+		try {
+			in.readFully(content);
+		} finally {
+			in.close();
+		}
+		String digest = String.format("%064x", new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(content)));
+		String[] types = new String[]{"java.lang.String", "java.lang.String", "java.lang.String"};
+		try {
+			jmxFetchData("installVerifiedBundleFromURL", new Object[]{"verified.test", url, new StringBuilder(digest).reverse().toString()}, types, Long.class);
+			fail("A content with another digest must not be installed");
+		} catch (MBeanException e) {
+			// expected
+		}
+		long bundleId = jmxFetchData("installVerifiedBundleFromURL", new Object[]{"verified.test", url, digest}, types, Long.class);
+		bc.getBundle(bundleId).uninstall();
+		assertTrue(jar.delete());
+		bundleId = jmxFetchData("installVerifiedBundleFromURL", new Object[]{"verified.test", url, digest.toUpperCase()}, types, Long.class);
+		assertEquals("verified.test", bc.getBundle(bundleId).getSymbolicName());
+		bc.getBundle(bundleId).uninstall();
+	}
+
+	@Test
+	public void updateChangedBundlesFromURLTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(Framework.class).getBundleContext();
+		File jar = createBundle("changed.test", "1.0.0");
+		String url = jar.toURI().toString();
+		long bundleId = jmxFetchData("installBundleFromURL", new Object[]{"changed.test", url}, new String[]{"java.lang.String", "java.lang.String"}, Long.class);
+		Bundle bundle = bc.getBundle(bundleId);
+		try {
+			long lastModified = bundle.getLastModified();
+			String[] types = new String[]{"[J", "[Ljava.lang.String;"};
+			CompositeData result = jmxFetchData("updateChangedBundlesFromURL", new Object[]{new long[]{bundleId}, new String[]{url}}, types, CompositeData.class);
+			assertEquals(Boolean.TRUE, result.get(FrameworkMBean.SUCCESS));
+			assertArrayEquals(new Long[]{bundleId}, (Long[]) result.get(CustomFrameworkMBean.SKIPPED));
+			assertEquals(0, ((Long[]) result.get(CustomFrameworkMBean.UPDATED)).length);
+			assertEquals(lastModified, bundle.getLastModified());
+
+			String changed = createBundle("changed.test", "2.0.0").toURI().toString();
+			result = jmxFetchData("updateChangedBundlesFromURL", new Object[]{new long[]{bundleId}, new String[]{changed}}, types, CompositeData.class);
+			assertArrayEquals(new Long[]{bundleId}, (Long[]) result.get(CustomFrameworkMBean.UPDATED));
+			assertEquals(0, ((Long[]) result.get(CustomFrameworkMBean.SKIPPED)).length);
+			assertEquals("2.0.0", bundle.getVersion().toString());
+			boolean updated = jmxFetchData("updateChangedBundleFromURL", new Object[]{bundleId, changed}, new String[]{"long", "java.lang.String"}, Boolean.class);
+			assertFalse(updated);
+
+			writeBundle(jar, "changed.test", "3.0.0");
+			updated = jmxFetchData("updateChangedBundleFromURL", new Object[]{bundleId, url}, new String[]{"long", "java.lang.String"}, Boolean.class);
+			assertTrue(updated);
+			assertEquals("3.0.0", bundle.getVersion().toString());
+		} finally {
+			bundle.uninstall();
+		}
+	}
+
+	@Test
+	public void refreshImpactTest() throws Exception {
+		Bundle bundle = FrameworkUtil.getBundle(Framework.class);
+		CompositeData[] impacts = jmxFetchData("getRefreshImpact", new Object[]{new long[]{bundle.getBundleId()}}, new String[]{"[J"}, CompositeData[].class);
+		Collection<Bundle> closure = bundle.getBundleContext().getBundle(0).adapt(FrameworkWiring.class).getDependencyClosure(Collections.singleton(bundle));
+		assertEquals(closure.size(), impacts.length);
+		Set<Long> ids = new HashSet<Long>();
+		int startLevel = Integer.MIN_VALUE;
+		for (CompositeData impact : impacts) {
+			ids.add((Long) impact.get(BundleStateMBean.IDENTIFIER));
+			int impactStartLevel = (Integer) impact.get(BundleStateMBean.START_LEVEL);
+			assertTrue(startLevel <= impactStartLevel);
+			startLevel = impactStartLevel;
+			if (bundle.getBundleId() == (Long) impact.get(BundleStateMBean.IDENTIFIER)) {
+				assertEquals(bundle.getRegisteredServices() == null ? 0 : bundle.getRegisteredServices().length, impact.get(CustomFrameworkMBean.REGISTERED_SERVICE_COUNT));
+			}
+		}
+		for (Bundle affected : closure) {
+			assertTrue(ids.contains(affected.getBundleId()));
+		}
+	}
+
+	private static File createBundle(String symbolicName) throws Exception {
+		return createBundle(symbolicName, "0.0.0");
+	}
+
+	private static File createBundle(String symbolicName, String version) throws Exception {
+		File jar = File.createTempFile(symbolicName, ".jar");
+		jar.deleteOnExit();
+		writeBundle(jar, symbolicName, version);
+		return jar;
+	}
+
+	/**
+	 * @param headers - the names and values of further headers
+	 */
+	private static void writeBundle(File jar, String symbolicName, String version, String... headers) throws Exception {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-ManifestVersion", "2");
+		manifest.getMainAttributes().putValue("Bundle-SymbolicName", symbolicName);
+		manifest.getMainAttributes().putValue("Bundle-Version", version);
+		for (int i = 0; i < headers.length; i += 2) {
+			manifest.getMainAttributes().putValue(headers[i], headers[i + 1]);
+		}
+		new JarOutputStream(new FileOutputStream(jar), manifest).close();
+	}
+
+	/**
+	 * @param headers - the names and values of further headers
+	 */
+	private static Bundle installBundle(BundleContext bc, String symbolicName, int startLevel, String... headers) throws Exception {
+		File jar = File.createTempFile(symbolicName, ".jar");
+		jar.deleteOnExit();
+		writeBundle(jar, symbolicName, "0.0.0", headers);
+		Bundle bundle = bc.installBundle(jar.toURI().toString());
+		bundle.adapt(BundleStartLevel.class).setStartLevel(startLevel);
+		return bundle;
+	}
 	
 }
@@ -10,15 +10,25 @@
  *******************************************************************************/
 package org.eclipse.gemini.management.integration.tests;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
@@ -29,7 +39,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
 import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.wiring.FrameworkWiring;
 import org.osgi.jmx.framework.PackageStateMBean;
 import org.osgi.service.packageadmin.ExportedPackage;
 import org.osgi.service.packageadmin.PackageAdmin;
@@ -116,6 +130,81 @@ public final class PackageStateTest extends AbstractOSGiMBeanTest {
 		}
 	}
 	
+	@Test
+	public void packageIndexTest() throws Exception {
+		BundleContext bundleContext = FrameworkUtil.getBundle(ServiceState.class).getBundleContext();
+		PackageAdmin admin = (PackageAdmin) bundleContext.getService(bundleContext.getServiceReference(PackageAdmin.class));
+		for (ExportedPackage exportedPackage : admin.getExportedPackages((Bundle) null)) {
+			String name = exportedPackage.getName();
+			String version = exportedPackage.getVersion().toString();
+			long exporter = exportedPackage.getExportingBundle().getBundleId();
+			Object[] params = new Object[]{name, version, exporter};
+			String[] signature = new String[]{"java.lang.String", "java.lang.String", "long"};
+			
+			long[] exporters = jmxFetchData("getExportingBundles", new Object[]{name, version}, new String[]{"java.lang.String", "java.lang.String"}, long[].class);
+			Arrays.sort(exporters);
+			assertTrue(Arrays.binarySearch(exporters, exporter) >= 0);
+			
+			Bundle[] bundles = exportedPackage.getImportingBundles();
+			long[] expected = new long[bundles.length];
+			for (int i = 0; i < bundles.length; i++) {
+				expected[i] = bundles[i].getBundleId();
+			}
+			long[] importers = jmxFetchData("getImportingBundles", params, signature, long[].class);
+			Arrays.sort(expected);
+			Arrays.sort(importers);
+			assertArrayEquals(name, expected, importers);
+			
+			Boolean removalPending = jmxFetchData("isRemovalPending", params, signature, Boolean.class);
+			assertEquals(exportedPackage.isRemovalPending(), removalPending.booleanValue());
+		}
+	}
+	
+	@Test
+	public void packageIndexUpdateTest() throws Exception {
+		BundleContext bundleContext = FrameworkUtil.getBundle(ServiceState.class).getBundleContext();
+		Bundle exporter = bundleContext.installBundle(createBundle("index.exporter", Constants.EXPORT_PACKAGE, "index.test;version=1.0.0").toURI().toString());
+		Bundle importer = bundleContext.installBundle(createBundle("index.importer", Constants.IMPORT_PACKAGE, "index.test").toURI().toString());
+		String[] signature = new String[]{"java.lang.String", "java.lang.String", "long"};
+		Object[] params = new Object[]{"index.test", "1.0.0", exporter.getBundleId()};
+		try {
+			FrameworkWiring frameworkWiring = bundleContext.getBundle(0).adapt(FrameworkWiring.class);
+			assertTrue(frameworkWiring.resolveBundles(Arrays.asList(exporter, importer)));
+			assertArrayEquals(new long[]{importer.getBundleId()}, jmxFetchData("getImportingBundles", params, signature, long[].class));
+
+			importer.uninstall();
+			refresh(frameworkWiring, importer);
+			assertArrayEquals(new long[0], jmxFetchData("getImportingBundles", params, signature, long[].class));
+		} finally {
+			if (importer.getState() != Bundle.UNINSTALLED) {
+				importer.uninstall();
+			}
+			exporter.uninstall();
+		}
+	}
+
+	private static void refresh(FrameworkWiring frameworkWiring, Bundle bundle) throws InterruptedException {
+		final CountDownLatch refreshed = new CountDownLatch(1);
+		frameworkWiring.refreshBundles(Collections.singleton(bundle), new FrameworkListener() {
+			public void frameworkEvent(FrameworkEvent event) {
+				refreshed.countDown();
+			}
+		});
+		assertTrue(refreshed.await(30, TimeUnit.SECONDS));
+	}
+
+	private static File createBundle(String symbolicName, String header, String value) throws Exception {
+		File jar = File.createTempFile(symbolicName, ".jar");
+		jar.deleteOnExit();
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+		manifest.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, symbolicName);
+		manifest.getMainAttributes().putValue(header, value);
+		new JarOutputStream(new FileOutputStream(jar), manifest).close();
+		return jar;
+	}
+	
 	private String getPackageIdentifier(Long bundleId, String name, String version){
 		return bundleId + ";" + name + ";" + version;
 	}
@@ -12,22 +12,54 @@ package org.eclipse.gemini.management.integration.tests;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
 
+import org.eclipse.gemini.management.CustomJmxConstants;
+import org.eclipse.gemini.management.Monitor;
 import org.eclipse.gemini.management.framework.CustomServiceStateMBean;
 import org.eclipse.gemini.management.framework.ServiceState;
+import org.eclipse.gemini.management.internal.MonitoredStandardMBean;
 import org.junit.Before;
 import org.junit.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.Version;
+import org.osgi.jmx.JmxConstants;
 import org.osgi.jmx.framework.ServiceStateMBean;
 
 /**
@@ -90,4 +122,307 @@ public final class ServiceStateTest extends AbstractOSGiMBeanTest {
 		}
 	}
 	
+	@Test
+	public void listProjectedTest() throws Exception {
+		Object[] arguments = new Object[]{null, null, new String[]{ServiceStateMBean.OBJECT_CLASS}};
+		String[] types = new String[]{String.class.getName(), String.class.getName(), String[].class.getName()};
+		TabularData table = jmxFetchData("listServices", arguments, types, TabularData.class);
+		BundleContext bc = FrameworkUtil.getBundle(ServiceState.class).getBundleContext();
+		for (Object row : table.values()) {
+			serviceInfo = (CompositeData) row;
+			this.serviceId = (Long) serviceInfo.get(ServiceStateMBean.IDENTIFIER);
+			ServiceReference<?> serviceReference = bc.getAllServiceReferences(null, "(" + Constants.SERVICE_ID + "=" + this.serviceId + ")")[0];
+			assertArrayEquals((String[]) serviceReference.getProperty(Constants.OBJECTCLASS), (String[]) serviceInfo.get(ServiceStateMBean.OBJECT_CLASS));
+			assertNull(serviceInfo.get(ServiceStateMBean.BUNDLE_IDENTIFIER));
+			assertNull(serviceInfo.get(ServiceStateMBean.PROPERTIES));
+			assertNull(serviceInfo.get(ServiceStateMBean.USING_BUNDLES));
+		}
+	}
+	
+	@Test
+	public void notificationTest() throws Exception {
+		final BlockingQueue<Notification> notifications = new LinkedBlockingQueue<Notification>();
+		NotificationListener listener = new NotificationListener() {
+			public void handleNotification(Notification notification, Object handback) {
+				notifications.add(notification);
+			}
+		};
+		jmxAddNotificationListener(listener);
+		try {
+			BundleContext bc = FrameworkUtil.getBundle(ServiceState.class).getBundleContext();
+			ServiceRegistration<?> registration = bc.registerService(Object.class.getName(), new Object(), null);
+			Long id = (Long) registration.getReference().getProperty(Constants.SERVICE_ID);
+			registration.unregister();
+			Notification registered = awaitServiceEvent(notifications, id, ServiceEvent.REGISTERED);
+			Notification unregistering = awaitServiceEvent(notifications, id, ServiceEvent.UNREGISTERING);
+			assertEquals(ServiceStateMBean.EVENT, registered.getType());
+			assertTrue(registered.getSequenceNumber() < unregistering.getSequenceNumber());
+		} finally {
+			jmxRemoveNotificationListener(listener);
+		}
+	}
+	
+	@Test
+	public void resubscribeTest() throws Exception {
+		final BlockingQueue<Notification> notifications = new LinkedBlockingQueue<Notification>();
+		NotificationListener listener = new NotificationListener() {
+			public void handleNotification(Notification notification, Object handback) {
+				notifications.add(notification);
+			}
+		};
+		jmxAddNotificationListener(listener);
+		jmxRemoveNotificationListener(listener);
+		BundleContext bc = FrameworkUtil.getBundle(ServiceState.class).getBundleContext();
+		ServiceRegistration<?> unobserved = bc.registerService(Object.class.getName(), new Object(), null);
+		Long unobservedId = (Long) unobserved.getReference().getProperty(Constants.SERVICE_ID);
+		unobserved.unregister();
+		jmxAddNotificationListener(listener);
+		try {
+			ServiceRegistration<?> registration = bc.registerService(Object.class.getName(), new Object(), null);
+			Long id = (Long) registration.getReference().getProperty(Constants.SERVICE_ID);
+			registration.unregister();
+			awaitServiceEvent(notifications, id, ServiceEvent.UNREGISTERING);
+			for (Notification notification : notifications) {
+				assertFalse(unobservedId.equals(((CompositeData) notification.getUserData()).get(ServiceStateMBean.IDENTIFIER)));
+			}
+		} finally {
+			jmxRemoveNotificationListener(listener);
+		}
+	}
+	
+	@Test
+	public void eventsSinceTest() throws Exception {
+		CompositeData events = (CompositeData) jmxFetchData("getEventsSince", new Object[]{-1L}, new String[]{"long"}, CompositeData.class);
+		assertEquals(CustomServiceStateMBean.SERVICE_EVENTS_TYPE, events.getCompositeType());
+		CompositeData[] journalled = (CompositeData[]) events.get(CustomJmxConstants.EVENTS);
+		if (!(Boolean) events.get(CustomJmxConstants.COMPLETE)) {
+			assertEquals(0, journalled.length);
+		}
+		Long last = (Long) events.get(CustomJmxConstants.LAST_SEQUENCE_NUMBER);
+		CompositeData none = (CompositeData) jmxFetchData("getEventsSince", new Object[]{last}, new String[]{"long"}, CompositeData.class);
+		assertEquals(0, ((CompositeData[]) none.get(CustomJmxConstants.EVENTS)).length);
+	}
+	
+	private Notification awaitServiceEvent(BlockingQueue<Notification> notifications, Long serviceId, int eventType) throws InterruptedException {
+		while (true) {
+			Notification notification = notifications.poll(10, TimeUnit.SECONDS);
+			if (notification == null) {
+				throw new AssertionError("No event " + eventType + " for service " + serviceId);
+			}
+			CompositeData event = (CompositeData) notification.getUserData();
+			if (serviceId.equals(event.get(ServiceStateMBean.IDENTIFIER)) && eventType == (Integer) event.get(ServiceStateMBean.EVENT)) {
+				return notification;
+			}
+		}
+	}
+	
+	@Test
+	public void serviceIdLookupTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(ServiceState.class).getBundleContext();
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put("test.key", "test.value");
+		ServiceRegistration<?> registration = bc.registerService(Object.class.getName(), new Object(), properties);
+		Long id = (Long) registration.getReference().getProperty(Constants.SERVICE_ID);
+		String[] types = new String[]{"long"};
+		try {
+			assertEquals(bc.getBundle().getBundleId(), jmxFetchData("getBundleIdentifier", new Object[]{id}, types, Long.class).longValue());
+			serviceInfo = jmxFetchData("getService", new Object[]{id}, types, CompositeData.class);
+			assertEquals(id, serviceInfo.get(ServiceStateMBean.IDENTIFIER));
+			CompositeData property = jmxFetchData("getProperty", new Object[]{id, "test.key"}, new String[]{"long", String.class.getName()}, CompositeData.class);
+			assertEquals("test.value", property.get(JmxConstants.VALUE));
+		} finally {
+			registration.unregister();
+		}
+		assertNull(jmxFetchData("getService", new Object[]{id}, types, CompositeData.class));
+	}
+	
+	@Test
+	public void typedPropertiesTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(ServiceState.class).getBundleContext();
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put("test.longs", new long[]{1L, 2L, 3L});
+		properties.put("test.strings", new Vector<String>(Arrays.asList("a", "b")));
+		properties.put("test.version", new Version(1, 2, 3));
+		ServiceRegistration<?> registration = bc.registerService(Object.class.getName(), new Object(), properties);
+		Long id = (Long) registration.getReference().getProperty(Constants.SERVICE_ID);
+		try {
+			CompositeData typed = jmxFetchData("getTypedProperties", new Object[]{id}, new String[]{"long"}, CompositeData.class);
+			assertEquals(CustomJmxConstants.TYPED_PROPERTIES, typed.getCompositeType().getTypeName());
+			assertArrayEquals(new long[]{1L, 2L, 3L}, (long[]) typed.get("test.longs"));
+			assertEquals("Array of long", typed.getCompositeType().getDescription("test.longs"));
+			assertArrayEquals(new String[]{"a", "b"}, (String[]) typed.get("test.strings"));
+			assertEquals("Vector of String", typed.getCompositeType().getDescription("test.strings"));
+			assertEquals("1.2.3", typed.get("test.version"));
+			assertEquals("Version", typed.getCompositeType().getDescription("test.version"));
+			assertEquals(id, typed.get(Constants.SERVICE_ID));
+		} finally {
+			registration.unregister();
+		}
+	}
+	
+	@Test
+	public void listPageTest() throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(ServiceState.class).getBundleContext();
+		Set<Long> expected = new HashSet<Long>();
+		for (ServiceReference<?> serviceReference : bc.getAllServiceReferences(null, null)) {
+			expected.add((Long) serviceReference.getProperty(Constants.SERVICE_ID));
+		}
+		Object[] arguments = new Object[]{null, 2};
+		String[] types = new String[]{String.class.getName(), int.class.getName()};
+		CompositeData page = jmxFetchData("listServicesPage", arguments, types, CompositeData.class);
+		ServiceRegistration<?> registration = bc.registerService(Object.class.getName(), new Object(), null);
+		try {
+			Set<Long> listed = new HashSet<Long>();
+			while (true) {
+				TabularData table = (TabularData) page.get(CustomJmxConstants.PAGE);
+				assertTrue(table.size() <= 2);
+				for (Object row : table.values()) {
+					assertTrue(listed.add((Long) ((CompositeData) row).get(ServiceStateMBean.IDENTIFIER)));
+				}
+				String cursor = (String) page.get(CustomJmxConstants.CURSOR);
+				if (cursor == null) {
+					break;
+				}
+				page = jmxFetchData("listServicesPage", new Object[]{cursor, 2}, types, CompositeData.class);
+			}
+			assertEquals(expected, listed);
+		} finally {
+			registration.unregister();
+		}
+	}
+	
+	@Test
+	public void stormBatchedTest() throws Exception {
+		List<CompositeData[]> batches = new ArrayList<CompositeData[]>();
+		long[] ids = fireBatchedStorm(20, batches, new ArrayList<Long>());
+		int fired = 24;
+		int delivered = 0;
+		boolean batched = false;
+		for (CompositeData[] batch : batches) {
+			int events = count(batch, ids, null);
+			delivered += events > 0 ? 1 : 0;
+			batched |= events > 1;
+		}
+		assertTrue(batched);
+		assertTrue(delivered < fired);
+	}
+
+	@Test
+	public void modifiedCoalescedTest() throws Exception {
+		List<CompositeData[]> batches = new ArrayList<CompositeData[]>();
+		long[] ids = fireBatchedStorm(20, batches, new ArrayList<Long>());
+		int modified = 0;
+		for (CompositeData[] batch : batches) {
+			int inBatch = count(batch, new long[]{ids[0]}, ServiceEvent.MODIFIED);
+			assertTrue(inBatch <= 1);
+			modified += inBatch;
+		}
+		assertTrue(modified >= 1);
+		assertTrue(modified < 20);
+		assertEquals(1, count(flatten(batches), new long[]{ids[0]}, ServiceEvent.REGISTERED));
+		assertEquals(1, count(flatten(batches), new long[]{ids[0]}, ServiceEvent.UNREGISTERING));
+	}
+
+	@Test
+	public void batchSequenceNumbersTest() throws Exception {
+		List<Long> sequenceNumbers = new ArrayList<Long>();
+		fireBatchedStorm(20, new ArrayList<CompositeData[]>(), sequenceNumbers);
+		assertFalse(sequenceNumbers.isEmpty());
+		for (int i = 1; i < sequenceNumbers.size(); i++) {
+			assertTrue(sequenceNumbers.get(i - 1) < sequenceNumbers.get(i));
+		}
+	}
+
+	/**
+	 * Register a service state MBean dispatching asynchronously in batches, fire a storm of events of two services
+	 * and collect the notifications until the first service is unregistered.
+	 * 
+	 * @return the ids of the two services
+	 */
+	private long[] fireBatchedStorm(int modifications, List<CompositeData[]> batches, List<Long> sequenceNumbers) throws Exception {
+		BundleContext bc = FrameworkUtil.getBundle(ServiceState.class).getBundleContext();
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(Monitor.NOTIFICATION_DISPATCH, "asynchronous");
+		properties.put(Monitor.NOTIFICATION_BATCH_WINDOW, "500");
+		properties.put(Monitor.NOTIFICATION_BATCH_SIZE, "256");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(ServiceStateMBean.OBJECTNAME + ",test=batch");
+		server.registerMBean(new MonitoredStandardMBean(new ServiceState(configuredContext(bc, properties)), CustomServiceStateMBean.class), name);
+		final BlockingQueue<Notification> notifications = new LinkedBlockingQueue<Notification>();
+		NotificationListener listener = new NotificationListener() {
+			public void handleNotification(Notification notification, Object handback) {
+				notifications.add(notification);
+			}
+		};
+		try {
+			server.addNotificationListener(name, listener, null, null);
+			ServiceRegistration<?> first = bc.registerService(Object.class.getName(), new Object(), null);
+			Long firstId = (Long) first.getReference().getProperty(Constants.SERVICE_ID);
+			Dictionary<String, Object> modified = new Hashtable<String, Object>();
+			for (int i = 0; i < modifications; i++) {
+				modified.put("test.modification", i);
+				first.setProperties(modified);
+			}
+			ServiceRegistration<?> second = bc.registerService(Object.class.getName(), new Object(), null);
+			Long secondId = (Long) second.getReference().getProperty(Constants.SERVICE_ID);
+			second.unregister();
+			first.unregister();
+			long[] ids = new long[]{firstId, secondId};
+			while (true) {
+				Notification notification = notifications.poll(10, TimeUnit.SECONDS);
+				if (notification == null) {
+					throw new AssertionError("No event " + ServiceEvent.UNREGISTERING + " for service " + firstId);
+				}
+				assertEquals(CustomServiceStateMBean.EVENT_BATCH, notification.getType());
+				CompositeData[] batch = (CompositeData[]) notification.getUserData();
+				batches.add(batch);
+				sequenceNumbers.add(notification.getSequenceNumber());
+				if (count(batch, new long[]{firstId}, ServiceEvent.UNREGISTERING) > 0) {
+					return ids;
+				}
+			}
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	private static int count(CompositeData[] events, long[] serviceIds, Integer eventType) {
+		int count = 0;
+		for (CompositeData event : events) {
+			for (long serviceId : serviceIds) {
+				if (serviceId == (Long) event.get(ServiceStateMBean.IDENTIFIER)
+						&& (eventType == null || eventType.equals(event.get(ServiceStateMBean.EVENT)))) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static CompositeData[] flatten(List<CompositeData[]> batches) {
+		List<CompositeData> events = new ArrayList<CompositeData>();
+		for (CompositeData[] batch : batches) {
+			events.addAll(Arrays.asList(batch));
+		}
+		return events.toArray(new CompositeData[events.size()]);
+	}
+
+	/**
+	 * @return a context answering the given framework properties and delegating everything else to the bundle context
+	 */
+	private static BundleContext configuredContext(final BundleContext bc, final Map<String, String> properties) {
+		return (BundleContext) Proxy.newProxyInstance(BundleContext.class.getClassLoader(), new Class<?>[]{BundleContext.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if ("getProperty".equals(method.getName()) && properties.containsKey(args[0])) {
+					return properties.get(args[0]);
+				}
+				try {
+					return method.invoke(bc, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		});
+	}
+	
 }
@@ -30,12 +30,29 @@ import javax.management.ObjectName;
 import javax.management.StandardMBean;
 
 import org.eclipse.gemini.management.configurationadmin.ConfigAdminManager;
+import org.eclipse.gemini.management.configurationadmin.CustomConfigurationAdminMBean;
 import org.eclipse.gemini.management.framework.BundleState;
+import org.eclipse.gemini.management.framework.BundleJobState;
+import org.eclipse.gemini.management.framework.BundleJobStateMBean;
+import org.eclipse.gemini.management.framework.BundleWiringGraph;
+import org.eclipse.gemini.management.framework.BundleWiringGraphMBean;
+import org.eclipse.gemini.management.framework.FrameworkSnapshot;
+import org.eclipse.gemini.management.framework.FrameworkSnapshotMBean;
 import org.eclipse.gemini.management.framework.BundleWiringState;
+import org.eclipse.gemini.management.framework.CustomBundleStateMBean;
+import org.eclipse.gemini.management.framework.CustomBundleWiringStateMBean;
+import org.eclipse.gemini.management.framework.CustomFrameworkMBean;
+import org.eclipse.gemini.management.framework.CustomPackageStateMBean;
 import org.eclipse.gemini.management.framework.CustomServiceStateMBean;
 import org.eclipse.gemini.management.framework.Framework;
+import org.eclipse.gemini.management.framework.internal.BundleActivationHistory;
+import org.eclipse.gemini.management.framework.internal.BundleDigests;
+import org.eclipse.gemini.management.framework.internal.BundleJobs;
+import org.eclipse.gemini.management.framework.internal.OSGiBundleModel;
+import org.eclipse.gemini.management.framework.internal.OSGiPackageIndex;
 import org.eclipse.gemini.management.framework.PackageState;
 import org.eclipse.gemini.management.framework.ServiceState;
+import org.eclipse.gemini.management.internal.MonitoredStandardMBean;
 import org.eclipse.gemini.management.permissionadmin.PermissionManager;
 import org.eclipse.gemini.management.provisioning.Provisioning;
 import org.eclipse.gemini.management.useradmin.UserManager;
@@ -89,6 +106,12 @@ public class Activator implements BundleActivator {
 	private ObjectName bundleStateName;
 	
 	private ObjectName bundleWiringStateName;
+
+	private ObjectName bundleWiringGraphName;
+
+	private ObjectName bundleJobStateName;
+
+	private ObjectName frameworkSnapshotName;
 	
 	private ObjectName packageStateName;
 	
@@ -111,8 +134,24 @@ public class Activator implements BundleActivator {
 	private StandardMBean bundleState;
 	
 	private StandardMBean bundleWiringState;
+
+	private StandardMBean bundleWiringGraph;
+
+	private StandardMBean bundleJobState;
+
+	private StandardMBean frameworkSnapshot;
+
+	private BundleJobs bundleJobs;
+
+	private BundleActivationHistory activationHistory;
+
+	private BundleDigests bundleDigests;
+
+	private OSGiBundleModel bundleModel;
 	
 	private StandardMBean packageState;
+
+	private OSGiPackageIndex packageIndex;
 	
 	private StandardMBean serviceState;
 	
@@ -172,6 +211,9 @@ public class Activator implements BundleActivator {
 			frameworkName = translateObjectName(FrameworkMBean.OBJECTNAME, true);
 			bundleStateName = translateObjectName(BundleStateMBean.OBJECTNAME, true);
 			bundleWiringStateName = translateObjectName(BundleWiringStateMBean.OBJECTNAME, true);
+			bundleWiringGraphName = translateObjectName(BundleWiringGraphMBean.OBJECTNAME, true);
+			bundleJobStateName = translateObjectName(BundleJobStateMBean.OBJECTNAME, true);
+			frameworkSnapshotName = translateObjectName(FrameworkSnapshotMBean.OBJECTNAME, true);
 			serviceStateName = translateObjectName(CustomServiceStateMBean.OBJECTNAME, true);
 			packageStateName = translateObjectName(PackageStateMBean.OBJECTNAME, false);
 			configAdminName = translateObjectName(ConfigurationAdminMBean.OBJECTNAME, false);
@@ -220,6 +262,15 @@ public class Activator implements BundleActivator {
 			for (MBeanServer mbeanServer : mbeanServers) {
 				deregisterServices(mbeanServer);
 			}
+			if (bundleJobs != null) {
+				bundleJobs.close();
+			}
+			if (activationHistory != null) {
+				activationHistory.close();
+			}
+			if (bundleDigests != null) {
+				bundleDigests.close();
+			}
 			framework = null;
 			bundleState = null;
 			bundleWiringState = null;
@@ -244,8 +295,14 @@ public class Activator implements BundleActivator {
 			this.deregisterService(mbeanServer, frameworkName);
 			this.deregisterService(mbeanServer, bundleStateName);
 			this.deregisterService(mbeanServer, bundleWiringStateName);
+			this.deregisterService(mbeanServer, bundleWiringGraphName);
+			this.deregisterService(mbeanServer, bundleJobStateName);
+			this.deregisterService(mbeanServer, frameworkSnapshotName);
 			this.deregisterService(mbeanServer, serviceStateName);
 			this.deregisterService(mbeanServer, packageStateName);
+			if (packageIndex != null) {
+				packageIndex.close();
+			}
 			this.deregisterService(mbeanServer, configAdminName);
 			this.deregisterService(mbeanServer, permissionAdminName);
 			this.deregisterService(mbeanServer, provisioningServiceName);
@@ -279,6 +336,9 @@ public class Activator implements BundleActivator {
 			this.registerMBean(mbeanServer, frameworkName, framework);
 			this.registerMBean(mbeanServer, bundleStateName, bundleState);
 			this.registerMBean(mbeanServer, bundleWiringStateName, bundleWiringState);
+			this.registerMBean(mbeanServer, bundleWiringGraphName, bundleWiringGraph);
+			this.registerMBean(mbeanServer, bundleJobStateName, bundleJobState);
+			this.registerMBean(mbeanServer, frameworkSnapshotName, frameworkSnapshot);
 			this.registerMBean(mbeanServer, serviceStateName, serviceState);
 			this.registerMBean(mbeanServer, packageStateName, packageState);
 		}
@@ -302,31 +362,55 @@ public class Activator implements BundleActivator {
 
 	private void createMBeansAndTrackers(){
 		try {
-			framework = new StandardMBean(new Framework(bundleContext), FrameworkMBean.class);
+			bundleJobs = new BundleJobs(bundleContext);
+			bundleModel = new OSGiBundleModel(bundleContext);
+			packageIndex = new OSGiPackageIndex(bundleContext);
+			activationHistory = new BundleActivationHistory(bundleContext);
+			activationHistory.open();
+			bundleDigests = new BundleDigests(bundleContext);
+			framework = new StandardMBean(new Framework(bundleContext, bundleJobs, activationHistory, bundleDigests), CustomFrameworkMBean.class);
 		} catch (NotCompliantMBeanException e) {
 			log(LogService.LOG_ERROR, "Unable to create StandardMBean for Framework", e);
 			return;
 		}
 		try {
-			bundleState = new StandardMBean(new BundleState(bundleContext), BundleStateMBean.class);
-		} catch (NotCompliantMBeanException e) {
+			bundleState = new MonitoredStandardMBean(new BundleState(bundleContext, bundleModel), CustomBundleStateMBean.class);
+		} catch (IllegalArgumentException e) {
 			log(LogService.LOG_ERROR, "Unable to create StandardMBean for BundleState", e);
 			return;
 		}
 		try {
-			bundleWiringState = new StandardMBean(new BundleWiringState(bundleContext), BundleWiringStateMBean.class);
+			bundleWiringState = new StandardMBean(new BundleWiringState(bundleContext), CustomBundleWiringStateMBean.class);
 		} catch (NotCompliantMBeanException e) {
 			log(LogService.LOG_ERROR, "Unable to create StandardMBean for BundleWiringState", e);
 			return;
 		}
 		try {
-			serviceState = new StandardMBean(new ServiceState(bundleContext), CustomServiceStateMBean.class);
+			bundleWiringGraph = new StandardMBean(new BundleWiringGraph(bundleContext), BundleWiringGraphMBean.class);
 		} catch (NotCompliantMBeanException e) {
+			log(LogService.LOG_ERROR, "Unable to create StandardMBean for BundleWiringGraph", e);
+			return;
+		}
+		try {
+			bundleJobState = new StandardMBean(new BundleJobState(bundleJobs), BundleJobStateMBean.class);
+		} catch (NotCompliantMBeanException e) {
+			log(LogService.LOG_ERROR, "Unable to create StandardMBean for BundleJobState", e);
+			return;
+		}
+		try {
+			frameworkSnapshot = new StandardMBean(new FrameworkSnapshot(bundleContext, packageIndex), FrameworkSnapshotMBean.class);
+		} catch (NotCompliantMBeanException e) {
+			log(LogService.LOG_ERROR, "Unable to create StandardMBean for FrameworkSnapshot", e);
+			return;
+		}
+		try {
+			serviceState = new MonitoredStandardMBean(new ServiceState(bundleContext), CustomServiceStateMBean.class);
+		} catch (IllegalArgumentException e) {
 			log(LogService.LOG_ERROR, "Unable to create StandardMBean for ServiceState", e);
 			return;
 		}
 		try {
-			packageState = new StandardMBean(new PackageState(bundleContext), PackageStateMBean.class);
+			packageState = new StandardMBean(new PackageState(packageIndex), CustomPackageStateMBean.class);
 		} catch (NotCompliantMBeanException e) {
 			log(LogService.LOG_ERROR, "Unable to create StandardMBean for PackageState", e);
 			return;
@@ -420,7 +504,7 @@ public class Activator implements BundleActivator {
 			}
 
 			try {
-				manager = new StandardMBean(new ConfigAdminManager(admin, logger), ConfigurationAdminMBean.class);
+				manager = new StandardMBean(new ConfigAdminManager(admin, logger), CustomConfigurationAdminMBean.class);
 			} catch (NotCompliantMBeanException e) {
 				log(LogService.LOG_ERROR, "Unable to create Configuration Admin Manager", e);
 				return admin;
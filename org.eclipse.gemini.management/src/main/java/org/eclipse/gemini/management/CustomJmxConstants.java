@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management;
+
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularType;
+
+import org.osgi.jmx.Item;
+
+/**
+ * Constants for the local extensions to the OSGi JMX Specification.
+ */
+public final class CustomJmxConstants {
+
+	/*
+	 * Empty constructor to make sure this is not used as an object.
+	 */
+	private CustomJmxConstants() {
+		// empty
+	}
+
+	/**
+	 * The key of {@link #CURSOR_ITEM}.
+	 */
+	public static final String CURSOR = "Cursor";
+
+	/**
+	 * The item containing the opaque cursor to pass back to fetch the next page of a paged operation, or null if the
+	 * page is the last one. The key is {@link #CURSOR} and the type is a String.
+	 */
+	public static final Item CURSOR_ITEM = new Item(CURSOR, "The cursor of the next page, null on the last page", SimpleType.STRING);
+
+	/**
+	 * The key of the item holding the rows of a page.
+	 */
+	public static final String PAGE = "Page";
+
+	/**
+	 * Create the Composite Type of a page of the given Tabular Type. The composite consists of:
+	 * <ul>
+	 * <li>{@link #CURSOR}</li>
+	 * <li>{@link #PAGE}</li>
+	 * </ul>
+	 * 
+	 * @param name - the name of the page type
+	 * @param description - the description of the page type
+	 * @param rowsType - the type of the rows of a page
+	 * @return the page type
+	 */
+	public static CompositeType pageType(String name, String description, TabularType rowsType) {
+		return Item.compositeType(name, description, CURSOR_ITEM, new Item(PAGE, "The rows of this page", rowsType));
+	}
+
+	/**
+	 * The key of the item holding the journalled events.
+	 */
+	public static final String EVENTS = "Events";
+
+	/**
+	 * The key of the item holding the sequence number of the last journalled notification, a long. The events are
+	 * complete up to this sequence number.
+	 */
+	public static final String LAST_SEQUENCE_NUMBER = "LastSequenceNumber";
+
+	/**
+	 * The item containing the last sequence number. The key is {@link #LAST_SEQUENCE_NUMBER} and the type is a long.
+	 */
+	public static final Item LAST_SEQUENCE_NUMBER_ITEM = new Item(LAST_SEQUENCE_NUMBER, "The sequence number of the last journalled notification", SimpleType.LONG);
+
+	/**
+	 * The key of the item telling whether the journal still holds every event after the requested sequence number, a
+	 * boolean. When it does not the events are empty and the client has to read the current state again.
+	 */
+	public static final String COMPLETE = "Complete";
+
+	/**
+	 * The item containing the completeness of the events. The key is {@link #COMPLETE} and the type is a boolean.
+	 */
+	public static final Item COMPLETE_ITEM = new Item(COMPLETE, "Whether the journal holds every event after the sequence number", SimpleType.BOOLEAN);
+
+	/**
+	 * Create the Composite Type of the journalled events of the given event type. The composite consists of:
+	 * <ul>
+	 * <li>{@link #EVENTS}</li>
+	 * <li>{@link #LAST_SEQUENCE_NUMBER}</li>
+	 * <li>{@link #COMPLETE}</li>
+	 * </ul>
+	 * 
+	 * @param name - the name of the journal type
+	 * @param description - the description of the journal type
+	 * @param eventType - the type of the events
+	 * @return the journal type
+	 */
+	public static CompositeType journalType(String name, String description, CompositeType eventType) {
+		ArrayType<CompositeData> eventsType = Item.arrayType(1, eventType);
+		return Item.compositeType(name, description, new Item(EVENTS, "The events in the order they were reported", eventsType), LAST_SEQUENCE_NUMBER_ITEM,
+				COMPLETE_ITEM);
+	}
+
+	/**
+	 * The name of the Composite Type of typed properties. Unlike {@link org.osgi.jmx.JmxConstants#PROPERTIES_TYPE},
+	 * whose values are strings to be parsed, the typed properties carry their values as open types. The composite type
+	 * is built for each set of properties and has one item per property:
+	 * <ul>
+	 * <li>the key of the item is the key of the property</li>
+	 * <li>the description of the item is the type of the property, in the syntax of
+	 * {@link org.osgi.jmx.JmxConstants#TYPE}, for instance "Long", "Array of long" or "Vector of String"</li>
+	 * <li>the type of the item is the SimpleType of a scalar, the primitive ArrayType of an array of primitives or the
+	 * ArrayType of the scalar of an array, vector or collection of scalars. A Version is carried as a String.</li>
+	 * </ul>
+	 * When typed properties are passed in, an item whose description is not a type that matches its open type is
+	 * decoded by its open type alone.
+	 */
+	public static final String TYPED_PROPERTIES = "TYPED_PROPERTIES";
+
+}
@@ -15,21 +15,180 @@
 
 package org.eclipse.gemini.management;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
 import javax.management.MBeanRegistration;
 import javax.management.MBeanServer;
+import javax.management.Notification;
 import javax.management.NotificationBroadcasterSupport;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+
+import org.osgi.framework.BundleContext;
 
 /** 
+ * An MBean that reports the events of a monitored object as notifications.
+ * <p>
+ * The events are only reported while the MBean is registered and has at least one notification listener, see
+ * {@link #addEventListener()}, and the user data of a notification is only built when the filter of a listener
+ * accepts its type.
+ * <p>
+ * Subclasses pass a small record of each event to {@link #dispatch(Object)}. By default the notification is built and
+ * sent on the thread reporting the event. With {@link #NOTIFICATION_DISPATCH} set to <code>asynchronous</code> the
+ * records are queued instead and the notifications are built and sent on a dedicated thread, so the thread reporting
+ * the event is not held up by the JMX listeners. The queue is configured with the framework properties
+ * {@link #NOTIFICATION_QUEUE_CAPACITY} and {@link #NOTIFICATION_QUEUE_OVERFLOW}.
+ * <p>
+ * Asynchronous dispatching can also batch the events, see {@link #NOTIFICATION_BATCH_WINDOW} and
+ * {@link #NOTIFICATION_BATCH_SIZE}. Each batch is sent as a single notification.
+ * <p>
+ * With a {@link #NOTIFICATION_JOURNAL_CAPACITY} the events of every notification are also kept in a bounded journal,
+ * so a client that missed notifications can fetch the events after the last sequence number it has seen. The events
+ * are then reported for the whole registration of the MBean, whether there are listeners or not.
  * 
+ * @param <E> the type of the event records
  */
-abstract public class Monitor extends NotificationBroadcasterSupport implements	MBeanRegistration {
+abstract public class Monitor<E> extends NotificationBroadcasterSupport implements	MBeanRegistration {
+
+	/**
+	 * The framework property selecting how notifications are sent, either <code>synchronous</code> (the default), on the
+	 * thread reporting the event, or <code>asynchronous</code>, on a dedicated thread
+	 */
+	public static final String NOTIFICATION_DISPATCH = "org.eclipse.gemini.management.notification.dispatch";
+
+	/**
+	 * The framework property holding the maximum number of events queued for asynchronous dispatch, 1024 by default
+	 */
+	public static final String NOTIFICATION_QUEUE_CAPACITY = "org.eclipse.gemini.management.notification.queue.capacity";
+
+	/**
+	 * The framework property holding the {@link OverflowPolicy} of the queue, <code>block</code> by default
+	 */
+	public static final String NOTIFICATION_QUEUE_OVERFLOW = "org.eclipse.gemini.management.notification.queue.overflow";
+
+	/**
+	 * The framework property holding the milliseconds during which the events following a first event are collected
+	 * into a batch, 0 (the default) sends a notification for each event. Batching only applies to asynchronous
+	 * dispatching.
+	 */
+	public static final String NOTIFICATION_BATCH_WINDOW = "org.eclipse.gemini.management.notification.batch.window";
+
+	/**
+	 * The framework property holding the maximum number of events in a batch, 256 by default
+	 */
+	public static final String NOTIFICATION_BATCH_SIZE = "org.eclipse.gemini.management.notification.batch.size";
+
+	/**
+	 * The framework property holding the number of bytes of the journal of the events of the sent notifications, 0 (the
+	 * default) keeps no journal
+	 */
+	public static final String NOTIFICATION_JOURNAL_CAPACITY = "org.eclipse.gemini.management.notification.journal.capacity";
+
+	private static final String ASYNCHRONOUS_DISPATCH = "asynchronous";
+
+	private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	private static final int DEFAULT_BATCH_SIZE = 256;
+
+	/**
+	 * What to do with a new event when the dispatch queue is full
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * Wait until the queue has room
+		 */
+		BLOCK,
+
+		/**
+		 * Drop the oldest queued event
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Drop the newest queued event with the same coalescing key as the new event, or the oldest queued event if
+		 * there is none
+		 */
+		COALESCE
+	}
 
 	protected ObjectName objectName;
 
-	protected volatile long sequenceNumber = 0;
+	private final AtomicLong sequenceNumber = new AtomicLong();
 
 	protected MBeanServer server;
+
+	private final NotificationDispatcher<E> dispatcher;
+
+	private final NotificationJournal journal;
+
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	private boolean registered = false;
+
+	private boolean reporting = false;
+
+	/**
+	 * 
+	 * @param bundleContext - the context to read the dispatch configuration from
+	 */
+	protected Monitor(BundleContext bundleContext) {
+		if (ASYNCHRONOUS_DISPATCH.equals(bundleContext.getProperty(NOTIFICATION_DISPATCH))) {
+			this.dispatcher = new NotificationDispatcher<E>(this, getPositiveInt(bundleContext, NOTIFICATION_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY),
+					getOverflowPolicy(bundleContext), getPositiveInt(bundleContext, NOTIFICATION_BATCH_WINDOW, 0),
+					getPositiveInt(bundleContext, NOTIFICATION_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+		} else {
+			this.dispatcher = null;
+		}
+		int journalCapacity = getPositiveInt(bundleContext, NOTIFICATION_JOURNAL_CAPACITY, 0);
+		this.journal = journalCapacity > 0 ? new NotificationJournal(journalCapacity) : null;
+	}
+
+	private static int getPositiveInt(BundleContext bundleContext, String property, int defaultValue) {
+		String text = bundleContext.getProperty(property);
+		if (text != null) {
+			try {
+				int value = Integer.parseInt(text.trim());
+				if (value > 0) {
+					return value;
+				}
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return defaultValue;
+	}
+
+	private static OverflowPolicy getOverflowPolicy(BundleContext bundleContext) {
+		String policy = bundleContext.getProperty(NOTIFICATION_QUEUE_OVERFLOW);
+		if (policy != null) {
+			try {
+				return OverflowPolicy.valueOf(policy.trim().toUpperCase().replace('-', '_'));
+			} catch (IllegalArgumentException e) {
+				// use the default
+			}
+		}
+		return OverflowPolicy.BLOCK;
+	}
 	
 	/**
 	 * {@inheritDoc}
@@ -42,15 +201,88 @@ abstract public class Monitor extends NotificationBroadcasterSupport implements
 	 */
 	public void postRegister(Boolean registrationDone) {
 		addListener();
+		synchronized (subscriptions) {
+			registered = true;
+			updateReporting();
+		}
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public void preDeregister() throws Exception {
+		synchronized (subscriptions) {
+			registered = false;
+			updateReporting();
+		}
 		removeListener();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+		super.addNotificationListener(listener, filter, handback);
+		synchronized (subscriptions) {
+			subscriptions.add(new Subscription(listener, filter, handback));
+			updateReporting();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+		super.removeNotificationListener(listener);
+		synchronized (subscriptions) {
+			for (Subscription subscription : subscriptions) {
+				if (subscription.listener == listener) {
+					subscriptions.remove(subscription);
+				}
+			}
+			updateReporting();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+		super.removeNotificationListener(listener, filter, handback);
+		synchronized (subscriptions) {
+			for (Subscription subscription : subscriptions) {
+				if (subscription.listener == listener && subscription.filter == filter && subscription.handback == handback) {
+					subscriptions.remove(subscription);
+					break;
+				}
+			}
+			updateReporting();
+		}
+	}
+
+	/**
+	 * Start reporting events when the MBean is registered and has a listener, and stop when either is no longer true.
+	 * Must be called holding the subscriptions lock.
+	 */
+	private void updateReporting() {
+		boolean report = registered && (journal != null || !subscriptions.isEmpty());
+		if (report == reporting) {
+			return;
+		}
+		reporting = report;
+		if (report) {
+			if (dispatcher != null) {
+				dispatcher.start("Gemini Management Notifications " + objectName);
+			}
+			addEventListener();
+		} else {
+			removeEventListener();
+			if (dispatcher != null) {
+				dispatcher.stop();
+			}
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -61,13 +293,229 @@ abstract public class Monitor extends NotificationBroadcasterSupport implements
 	}
 
 	/**
-	 * Add a listener for the monitored object 
+	 * Report an event of the monitored object. The record should be small and must not depend on framework state
+	 * that may have changed by the time the notification is built.
+	 * 
+	 * @param event - the record of the event
+	 */
+	protected final void dispatch(E event) {
+		if (dispatcher == null) {
+			send(event);
+		} else {
+			dispatcher.enqueue(event);
+		}
+	}
+
+	/**
+	 * Build and send the notification of an event
+	 */
+	final void send(E event) {
+		Notification notification = new Notification(getNotificationType(), objectName, 0);
+		boolean enabled = isEnabled(notification);
+		if (enabled || journal != null) {
+			notification.setSequenceNumber(nextSequenceNumber(Collections.singletonList(event)));
+			if (enabled) {
+				notification.setUserData(getUserData(event));
+				sendNotification(notification);
+			}
+		}
+	}
+
+	/**
+	 * Build and send the notification of a batch of events
+	 */
+	final void sendBatch(List<E> events) {
+		Notification notification = new Notification(getBatchNotificationType(), objectName, 0);
+		boolean enabled = isEnabled(notification);
+		if (enabled || journal != null) {
+			notification.setSequenceNumber(nextSequenceNumber(events));
+			if (enabled) {
+				notification.setUserData(getUserData(events));
+				sendNotification(notification);
+			}
+		}
+	}
+
+	/**
+	 * Take the sequence number of the notification of the events and journal them under it
+	 */
+	private long nextSequenceNumber(List<E> events) {
+		if (journal == null) {
+			return sequenceNumber.getAndIncrement();
+		}
+		byte[] entry = encode(events);
+		synchronized (journal) {
+			long next = sequenceNumber.getAndIncrement();
+			journal.append(next, entry);
+			return next;
+		}
+	}
+
+	private byte[] encode(List<E> events) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(events.size());
+			for (E event : events) {
+				writeEvent(event, out);
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot journal events", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private CompositeData[] getUserData(List<E> events) {
+		CompositeData[] userData = new CompositeData[events.size()];
+		for (int i = 0; i < userData.length; i++) {
+			userData[i] = getUserData(events.get(i));
+		}
+		return userData;
+	}
+
+	/**
+	 * Answer the journalled events of the notifications sent after the given sequence number.
+	 * 
+	 * @see CustomJmxConstants#journalType(String, String, CompositeType) for the details of the CompositeData
+	 * 
+	 * @param sequenceNumber - the sequence number of the last notification seen
+	 * @param type - the journal type of the event type of the monitor
+	 * @return the events in the order they were reported
+	 * @throws IOException if the journal cannot be read
+	 */
+	protected final CompositeData getJournalledEvents(long sequenceNumber, CompositeType type) throws IOException {
+		List<byte[]> entries = null;
+		long lastSequenceNumber;
+		if (journal == null) {
+			lastSequenceNumber = this.sequenceNumber.get() - 1;
+		} else {
+			synchronized (journal) {
+				entries = journal.since(sequenceNumber);
+				lastSequenceNumber = journal.getLastSequenceNumber();
+			}
+		}
+		List<CompositeData> events = new ArrayList<CompositeData>();
+		if (entries != null) {
+			for (byte[] entry : entries) {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+				for (int i = in.readInt(); i > 0; i--) {
+					events.add(getUserData(readEvent(in)));
+				}
+			}
+		}
+		Map<String, Object> items = new HashMap<String, Object>();
+		items.put(CustomJmxConstants.EVENTS, events.toArray(new CompositeData[events.size()]));
+		items.put(CustomJmxConstants.LAST_SEQUENCE_NUMBER, lastSequenceNumber);
+		items.put(CustomJmxConstants.COMPLETE, entries != null);
+		try {
+			return new CompositeDataSupport(type, items);
+		} catch (OpenDataException e) {
+			throw new IllegalStateException("Cannot form journalled events open data", e);
+		}
+	}
+
+	/**
+	 * @return true if the filter of any listener accepts the notification, which does not have its user data yet
+	 */
+	private boolean isEnabled(Notification notification) {
+		for (Subscription subscription : subscriptions) {
+			try {
+				if (subscription.filter == null || subscription.filter.isNotificationEnabled(notification)) {
+					return true;
+				}
+			} catch (RuntimeException e) {
+				// let the broadcaster decide when it sends the notification
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the type of the notification of an event
+	 */
+	abstract protected String getNotificationType();
+
+	/**
+	 * Build the user data of the notification of an event, the user data of the notification of a batch is an array of
+	 * the user data of its events
+	 * 
+	 * @param event - the record of the event
+	 * @return the user data
+	 */
+	abstract protected CompositeData getUserData(E event);
+
+	/**
+	 * @return the type of the notification of a batch of events
+	 */
+	abstract protected String getBatchNotificationType();
+
+	/**
+	 * Write the record of an event to the journal
+	 * 
+	 * @param event - the record of the event
+	 * @param out - the output to write to
+	 * @throws IOException
+	 */
+	abstract protected void writeEvent(E event, DataOutput out) throws IOException;
+
+	/**
+	 * Read the record of an event written by {@link #writeEvent(Object, DataOutput)}
+	 * 
+	 * @param in - the input to read from
+	 * @return the record of the event
+	 * @throws IOException
+	 */
+	abstract protected E readEvent(DataInput in) throws IOException;
+
+	/**
+	 * Answer the key under which queued events replace each other when the queue overflows with the
+	 * {@link OverflowPolicy#COALESCE} policy, and under which only the last event of a batch is kept.
+	 * 
+	 * @param event - the record of the event
+	 * @return the key, or null if the event is never coalesced
+	 */
+	protected Object getCoalescingKey(E event) {
+		return null;
+	}
+
+	/**
+	 * Add a listener for the monitored object, called when the MBean is registered
 	 */
 	abstract protected void addListener();
 
 	/**
-	 * Remove the listener for the monitored object
+	 * Remove the listener for the monitored object, called when the MBean is deregistered
 	 */
 	abstract protected void removeListener();
 
+	/**
+	 * Start reporting the events of the monitored object, called when the registered MBean gets its first notification
+	 * listener
+	 */
+	abstract protected void addEventListener();
+
+	/**
+	 * Stop reporting the events of the monitored object, called when the last notification listener is removed or the
+	 * MBean is deregistered
+	 */
+	abstract protected void removeEventListener();
+
+	private static final class Subscription {
+
+		private final NotificationListener listener;
+
+		private final NotificationFilter filter;
+
+		private final Object handback;
+
+		private Subscription(NotificationListener listener, NotificationFilter filter, Object handback) {
+			this.listener = listener;
+			this.filter = filter;
+			this.handback = handback;
+		}
+
+	}
+
 }
\ No newline at end of file
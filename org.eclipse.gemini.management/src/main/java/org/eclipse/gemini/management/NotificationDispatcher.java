@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Delivers the events of a {@link Monitor} from a bounded queue on a dedicated thread, so the framework threads that
+ * report the events only enqueue them.
+ * <p>
+ * When the queue is full the {@link Monitor.OverflowPolicy} of the monitor decides what happens to a new event.
+ * <p>
+ * With a batch window the events reported within the window after a first event, up to the batch size, are delivered
+ * together in one batch. Within a batch only the last of the events with the same coalescing key is kept.
+ * <p>
+ * This class is thread-safe.
+ * 
+ * @param <E> the type of the event records
+ */
+final class NotificationDispatcher<E> {
+
+	private final Monitor<E> monitor;
+
+	private final int capacity;
+
+	private final Monitor.OverflowPolicy overflowPolicy;
+
+	private final long batchWindow;
+
+	private final int batchSize;
+
+	private final ArrayDeque<E> queue;
+
+	private final Object lock = new Object();
+
+	private ExecutorService executor;
+
+	private boolean running = false;
+
+	/**
+	 * 
+	 * @param monitor - the monitor to deliver the events of
+	 * @param capacity - the maximum number of queued events
+	 * @param overflowPolicy - what to do with an event when the queue is full
+	 * @param batchWindow - the milliseconds to collect events for a batch, 0 to deliver the events one by one
+	 * @param batchSize - the maximum number of events in a batch
+	 */
+	NotificationDispatcher(Monitor<E> monitor, int capacity, Monitor.OverflowPolicy overflowPolicy, long batchWindow, int batchSize) {
+		this.monitor = monitor;
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+		this.batchWindow = batchWindow;
+		this.batchSize = batchSize;
+		this.queue = new ArrayDeque<E>(capacity);
+	}
+
+	/**
+	 * Start delivering events on a new thread
+	 * 
+	 * @param name - the name of the thread
+	 */
+	void start(final String name) {
+		synchronized (lock) {
+			if (running) {
+				return;
+			}
+			running = true;
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, name);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.execute(new Runnable() {
+				public void run() {
+					deliver();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stop delivering events and discard the queued events
+	 */
+	void stop() {
+		ExecutorService stopped;
+		synchronized (lock) {
+			running = false;
+			queue.clear();
+			lock.notifyAll();
+			stopped = executor;
+			executor = null;
+		}
+		if (stopped != null) {
+			stopped.shutdownNow();
+		}
+	}
+
+	/**
+	 * Queue an event for delivery. If the dispatcher is not running the event is delivered on the calling thread.
+	 * 
+	 * @param event
+	 */
+	void enqueue(E event) {
+		synchronized (lock) {
+			if (running) {
+				if (queue.size() >= capacity && !makeRoom(event)) {
+					return;
+				}
+				if (running) {
+					queue.addLast(event);
+					lock.notifyAll();
+					return;
+				}
+			}
+		}
+		monitor.send(event);
+	}
+
+	/**
+	 * Make room for the event in the full queue according to the overflow policy
+	 * 
+	 * @return false if the event is to be dropped
+	 */
+	private boolean makeRoom(E event) {
+		switch (overflowPolicy) {
+			case BLOCK:
+				while (running && queue.size() >= capacity) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+				return true;
+			case COALESCE:
+				Object key = monitor.getCoalescingKey(event);
+				if (key != null) {
+					for (Iterator<E> iterator = queue.descendingIterator(); iterator.hasNext();) {
+						if (key.equals(monitor.getCoalescingKey(iterator.next()))) {
+							iterator.remove();
+							return true;
+						}
+					}
+				}
+				queue.pollFirst();
+				return true;
+			case DROP_OLDEST:
+			default:
+				queue.pollFirst();
+				return true;
+		}
+	}
+
+	private void deliver() {
+		if (batchWindow > 0) {
+			deliverBatches();
+			return;
+		}
+		while (true) {
+			E event;
+			synchronized (lock) {
+				while (running && queue.isEmpty()) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (!running) {
+					return;
+				}
+				event = queue.pollFirst();
+				lock.notifyAll();
+			}
+			try {
+				monitor.send(event);
+			} catch (RuntimeException e) {
+				// a failing event must not stop the delivery of the following ones
+			}
+		}
+	}
+
+	private void deliverBatches() {
+		while (true) {
+			List<E> batch;
+			synchronized (lock) {
+				while (running && queue.isEmpty()) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				long deadline = System.currentTimeMillis() + batchWindow;
+				long remaining = batchWindow;
+				while (running && queue.size() < batchSize && remaining > 0) {
+					try {
+						lock.wait(remaining);
+					} catch (InterruptedException e) {
+						return;
+					}
+					remaining = deadline - System.currentTimeMillis();
+				}
+				if (!running) {
+					return;
+				}
+				batch = new ArrayList<E>(Math.min(batchSize, queue.size()));
+				while (batch.size() < batchSize && !queue.isEmpty()) {
+					batch.add(queue.pollFirst());
+				}
+				lock.notifyAll();
+			}
+			try {
+				monitor.sendBatch(coalesce(batch));
+			} catch (RuntimeException e) {
+				// a failing batch must not stop the delivery of the following ones
+			}
+		}
+	}
+
+	/**
+	 * Remove every event of the batch that is followed by an event with the same coalescing key
+	 */
+	private List<E> coalesce(List<E> batch) {
+		Set<Object> keys = new HashSet<Object>();
+		for (ListIterator<E> iterator = batch.listIterator(batch.size()); iterator.hasPrevious();) {
+			Object key = monitor.getCoalescingKey(iterator.previous());
+			if (key != null && !keys.add(key)) {
+				iterator.remove();
+			}
+		}
+		return batch;
+	}
+
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded journal of the encoded notifications of a {@link Monitor}, indexed by their sequence number.
+ * <p>
+ * The entries are kept outside of the Java heap in a direct buffer used as a ring, the oldest entries are dropped to
+ * make room for new ones. Each entry is its length followed by its bytes. Sequence numbers are consecutive, so the
+ * offset of an entry is found in a ring of offsets at the distance of its sequence number from the oldest one.
+ * <p>
+ * This class is thread-safe.
+ */
+final class NotificationJournal {
+
+	private static final int LENGTH_SIZE = 4;
+
+	private final ByteBuffer buffer;
+
+	private final int[] offsets;
+
+	private long firstSequenceNumber = 0;
+
+	private int count = 0;
+
+	private int firstIndex = 0;
+
+	private int firstOffset = 0;
+
+	private int usedBytes = 0;
+
+	/**
+	 *
+	 * @param capacity - the number of bytes of the journal
+	 */
+	NotificationJournal(int capacity) {
+		this.buffer = ByteBuffer.allocateDirect(capacity);
+		this.offsets = new int[Math.max(1, capacity / (LENGTH_SIZE + 4))];
+	}
+
+	/**
+	 * Add the entry of the notification with the given sequence number, which must follow the last one added
+	 *
+	 * @param sequenceNumber
+	 * @param entry - the encoded notification
+	 */
+	synchronized void append(long sequenceNumber, byte[] entry) {
+		int size = LENGTH_SIZE + entry.length;
+		if (sequenceNumber != firstSequenceNumber + count || size > buffer.capacity()) {
+			clear(sequenceNumber);
+			if (size > buffer.capacity()) {
+				firstSequenceNumber = sequenceNumber + 1;
+				return;
+			}
+		}
+		while (count == offsets.length || usedBytes + size > buffer.capacity()) {
+			dropFirst();
+		}
+		int offset = (firstOffset + usedBytes) % buffer.capacity();
+		offsets[(firstIndex + count) % offsets.length] = offset;
+		write(offset, toBytes(entry.length));
+		write((offset + LENGTH_SIZE) % buffer.capacity(), entry);
+		usedBytes += size;
+		count++;
+	}
+
+	/**
+	 * Answer the entries of the notifications after the given sequence number
+	 *
+	 * @param sequenceNumber - the sequence number of the last notification seen
+	 * @return the entries in sequence number order, or null if some of them are no longer in the journal
+	 */
+	synchronized List<byte[]> since(long sequenceNumber) {
+		long next = Math.max(sequenceNumber + 1, 0);
+		if (next < firstSequenceNumber) {
+			return null;
+		}
+		List<byte[]> entries = new ArrayList<byte[]>();
+		for (long i = next - firstSequenceNumber; i < count; i++) {
+			int offset = offsets[(int) ((firstIndex + i) % offsets.length)];
+			byte[] length = new byte[LENGTH_SIZE];
+			read(offset, length);
+			byte[] entry = new byte[ByteBuffer.wrap(length).getInt()];
+			read((offset + LENGTH_SIZE) % buffer.capacity(), entry);
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * @return the sequence number of the last entry, or one less than the next expected entry if the journal is empty
+	 */
+	synchronized long getLastSequenceNumber() {
+		return firstSequenceNumber + count - 1;
+	}
+
+	private void dropFirst() {
+		int offset = offsets[firstIndex];
+		byte[] length = new byte[LENGTH_SIZE];
+		read(offset, length);
+		int size = LENGTH_SIZE + ByteBuffer.wrap(length).getInt();
+		firstOffset = (firstOffset + size) % buffer.capacity();
+		usedBytes -= size;
+		firstIndex = (firstIndex + 1) % offsets.length;
+		firstSequenceNumber++;
+		count--;
+	}
+
+	private void clear(long sequenceNumber) {
+		firstSequenceNumber = sequenceNumber;
+		firstIndex = 0;
+		firstOffset = 0;
+		usedBytes = 0;
+		count = 0;
+	}
+
+	private void write(int offset, byte[] bytes) {
+		int head = Math.min(bytes.length, buffer.capacity() - offset);
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.put(bytes, 0, head);
+		view.position(0);
+		view.put(bytes, head, bytes.length - head);
+	}
+
+	private void read(int offset, byte[] bytes) {
+		int head = Math.min(bytes.length, buffer.capacity() - offset);
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.get(bytes, 0, head);
+		view.position(0);
+		view.get(bytes, head, bytes.length - head);
+	}
+
+	private static byte[] toBytes(int value) {
+		return ByteBuffer.allocate(LENGTH_SIZE).putInt(value).array();
+	}
+
+}
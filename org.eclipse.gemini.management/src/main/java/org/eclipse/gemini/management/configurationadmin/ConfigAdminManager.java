@@ -16,16 +16,18 @@
 package org.eclipse.gemini.management.configurationadmin;
 
 import static org.eclipse.gemini.management.internal.OSGiProperties.propertiesFrom;
+import static org.eclipse.gemini.management.internal.OSGiProperties.propertiesFromTyped;
 import static org.eclipse.gemini.management.internal.OSGiProperties.tableFrom;
+import static org.eclipse.gemini.management.internal.OSGiProperties.typedFrom;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Dictionary;
 
+import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
 
 import org.osgi.framework.InvalidSyntaxException;
-import org.osgi.jmx.service.cm.ConfigurationAdminMBean;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.log.LogService;
@@ -33,7 +35,7 @@ import org.osgi.service.log.LogService;
 /** 
  * 
  */
-public final class ConfigAdminManager implements ConfigurationAdminMBean {
+public final class ConfigAdminManager implements CustomConfigurationAdminMBean {
 
 	private final ConfigurationAdmin admin;
 	
@@ -216,4 +218,44 @@ public final class ConfigAdminManager implements ConfigurationAdminMBean {
 		admin.getConfiguration(pid, location).update(propertiesFrom(table));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData getTypedProperties(String pid) throws IOException {
+		if (pid == null) {
+			throw new IOException("PID must not be null");
+		}
+		return typedFrom(admin.getConfiguration(pid, null).getProperties());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData getTypedPropertiesForLocation(String pid, String location) throws IOException {
+		if (pid == null) {
+			throw new IOException("PID must not be null");
+		}
+		return typedFrom(admin.getConfiguration(pid, location).getProperties());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void updateTyped(String pid, CompositeData properties) throws IOException {
+		if (pid == null) {
+			throw new IOException("PID must not be null");
+		}
+		admin.getConfiguration(pid, null).update(propertiesFromTyped(properties));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void updateTypedForLocation(String pid, String location, CompositeData properties) throws IOException {
+		if (pid == null) {
+			throw new IOException("PID must not be null");
+		}
+		admin.getConfiguration(pid, location).update(propertiesFromTyped(properties));
+	}
+
 }
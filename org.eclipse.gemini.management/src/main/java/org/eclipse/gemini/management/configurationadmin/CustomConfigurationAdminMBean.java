@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.configurationadmin;
+
+import java.io.IOException;
+
+import javax.management.openmbean.CompositeData;
+
+import org.eclipse.gemini.management.CustomJmxConstants;
+import org.osgi.jmx.service.cm.ConfigurationAdminMBean;
+
+/**
+ * Extends the Configuration Admin MBean with operations on typed properties, whose values are carried as open types
+ * rather than as strings to be formatted and parsed.
+ *
+ * @see CustomJmxConstants#TYPED_PROPERTIES for the details of the CompositeData
+ */
+public interface CustomConfigurationAdminMBean extends ConfigurationAdminMBean {
+
+	/**
+	 * Answer the typed properties of the configuration
+	 *
+	 * @param pid - the persistent identifier of the configuration
+	 * @return the typed properties, or null if the configuration has no properties
+	 * @throws IOException if the operation fails
+	 */
+	CompositeData getTypedProperties(String pid) throws IOException;
+
+	/**
+	 * Answer the typed properties of the configuration, using the given location
+	 *
+	 * @param pid - the persistent identifier of the configuration
+	 * @param location - the bundle location
+	 * @return the typed properties, or null if the configuration has no properties
+	 * @throws IOException if the operation fails
+	 */
+	CompositeData getTypedPropertiesForLocation(String pid, String location) throws IOException;
+
+	/**
+	 * Update the configuration with the supplied typed properties
+	 *
+	 * @param pid - the persistent identifier of the configuration
+	 * @param properties - the new typed properties
+	 * @throws IOException if the operation fails
+	 */
+	void updateTyped(String pid, CompositeData properties) throws IOException;
+
+	/**
+	 * Update the configuration with the supplied typed properties, using the given location
+	 *
+	 * @param pid - the persistent identifier of the configuration
+	 * @param location - the bundle location
+	 * @param properties - the new typed properties
+	 * @throws IOException if the operation fails
+	 */
+	void updateTypedForLocation(String pid, String location, CompositeData properties) throws IOException;
+
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+
+import org.eclipse.gemini.management.framework.internal.BundleJob;
+import org.eclipse.gemini.management.framework.internal.BundleJobs;
+
+/**
+ * MBean that reports on and cancels the jobs submitted through the Framework MBean
+ */
+public final class BundleJobState implements BundleJobStateMBean {
+
+	private final BundleJobs jobs;
+
+	/**
+	 * 
+	 * @param jobs
+	 */
+	public BundleJobState(BundleJobs jobs) {
+		this.jobs = jobs;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData getJob(long jobId) throws IOException {
+		return getBundleJob(jobId).asCompositeData();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public TabularData listJobs() throws IOException {
+		TabularDataSupport table = new TabularDataSupport(JOBS_TYPE);
+		for (BundleJob job : jobs.getJobs()) {
+			table.put(job.asCompositeData());
+		}
+		return table;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData getJobResult(long jobId) throws IOException {
+		return getBundleJob(jobId).getResult();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean cancelJob(long jobId) throws IOException {
+		getBundleJob(jobId);
+		return jobs.cancel(jobId);
+	}
+
+	private BundleJob getBundleJob(long jobId) throws IOException {
+		BundleJob job = jobs.getJob(jobId);
+		if (job == null) {
+			throw new IOException("Job with id: " + jobId + " does not exist");
+		}
+		return job;
+	}
+
+}
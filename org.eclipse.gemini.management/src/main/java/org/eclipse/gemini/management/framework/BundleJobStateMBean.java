@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularType;
+
+import org.osgi.jmx.Item;
+import org.osgi.jmx.JmxConstants;
+import org.osgi.jmx.framework.FrameworkMBean;
+
+/**
+ * The jobs submitted by the <code>submit</code> operations of the {@link CustomFrameworkMBean}. A job runs a batch
+ * operation in the background, one job at a time in the order they were submitted, and can be cancelled between the
+ * items of its batch. A job that has ended is dropped once the retention period of the framework property
+ * <code>org.eclipse.gemini.management.framework.job.retention</code> has passed, 10 minutes by default.
+ */
+public interface BundleJobStateMBean {
+
+	/**
+	 * The Object Name for a Bundle Job State MBean.
+	 */
+	String OBJECTNAME = JmxConstants.OSGI_CORE + ":type=bundleJobs,version=1.0";
+
+	/**
+	 * The state of a job or item that has not started yet
+	 */
+	String PENDING = "PENDING";
+
+	/**
+	 * The state of a job or item that is running
+	 */
+	String RUNNING = "RUNNING";
+
+	/**
+	 * The state of a job that ran to the end, its result tells whether its batch succeeded
+	 */
+	String FINISHED = "FINISHED";
+
+	/**
+	 * The state of a job that was cancelled before all of its items were started, or of an item that was not started
+	 * because its job was cancelled
+	 */
+	String CANCELLED = "CANCELLED";
+
+	/**
+	 * The state of an item that completed
+	 */
+	String COMPLETED = "COMPLETED";
+
+	/**
+	 * The state of an item that failed
+	 */
+	String FAILED = "FAILED";
+
+	/**
+	 * The key of {@link #JOB_ID_ITEM}.
+	 */
+	String JOB_ID = "JobId";
+
+	/**
+	 * The item containing the identifier of a job. The key is {@link #JOB_ID} and the type is a long.
+	 */
+	Item JOB_ID_ITEM = new Item(JOB_ID, "The identifier of the job", SimpleType.LONG);
+
+	/**
+	 * The key of {@link #OPERATION_ITEM}.
+	 */
+	String OPERATION = "Operation";
+
+	/**
+	 * The item containing the name of the Framework MBean operation run by a job. The key is {@link #OPERATION} and the
+	 * type is a String.
+	 */
+	Item OPERATION_ITEM = new Item(OPERATION, "The name of the operation run by the job", SimpleType.STRING);
+
+	/**
+	 * The key of {@link #JOB_STATE_ITEM}.
+	 */
+	String JOB_STATE = "State";
+
+	/**
+	 * The item containing the state of a job. The key is {@link #JOB_STATE} and the type is a String.
+	 */
+	Item JOB_STATE_ITEM = new Item(JOB_STATE, "The state of the job", SimpleType.STRING, PENDING, RUNNING, FINISHED, CANCELLED);
+
+	/**
+	 * The key of {@link #ITEMS_ITEM}.
+	 */
+	String ITEMS = "Items";
+
+	/**
+	 * The item containing the items of the batch of a job, bundle locations or identifiers. The key is {@link #ITEMS}
+	 * and the type is an array of String.
+	 */
+	Item ITEMS_ITEM = new Item(ITEMS, "The items of the batch, bundle locations or identifiers", JmxConstants.STRING_ARRAY_TYPE);
+
+	/**
+	 * The key of {@link #ITEM_STATES_ITEM}.
+	 */
+	String ITEM_STATES = "ItemStates";
+
+	/**
+	 * The item containing the state of each item of the batch of a job, one of {@link #PENDING}, {@link #RUNNING},
+	 * {@link #COMPLETED}, {@link #FAILED} or {@link #CANCELLED}. The key is {@link #ITEM_STATES} and the type is an
+	 * array of String.
+	 */
+	Item ITEM_STATES_ITEM = new Item(ITEM_STATES, "The state of each item of the batch", JmxConstants.STRING_ARRAY_TYPE);
+
+	/**
+	 * The key of {@link #FINISHED_ITEMS_ITEM}.
+	 */
+	String FINISHED_ITEMS = "FinishedItems";
+
+	/**
+	 * The item containing the number of items of the batch of a job that completed or failed. The key is
+	 * {@link #FINISHED_ITEMS} and the type is an int.
+	 */
+	Item FINISHED_ITEMS_ITEM = new Item(FINISHED_ITEMS, "The number of items that completed or failed", SimpleType.INTEGER);
+
+	/**
+	 * The key of {@link #ELAPSED_TIME_ITEM}.
+	 */
+	String ELAPSED_TIME = "ElapsedTime";
+
+	/**
+	 * The item containing the milliseconds a job has been running, or ran. The key is {@link #ELAPSED_TIME} and the
+	 * type is a long.
+	 */
+	Item ELAPSED_TIME_ITEM = new Item(ELAPSED_TIME, "The milliseconds the job has been running", SimpleType.LONG);
+
+	/**
+	 * The key of {@link FrameworkMBean#ERROR_ITEM}, the message of the error that kept a job from running its batch, or
+	 * null. The errors of the items are in the result of the batch.
+	 */
+	String ERROR = FrameworkMBean.ERROR;
+
+	/**
+	 * The Composite Type of a job. The composite consists of:
+	 * <ul>
+	 * <li>{@link #JOB_ID}</li>
+	 * <li>{@link #OPERATION}</li>
+	 * <li>{@link #JOB_STATE}</li>
+	 * <li>{@link #ITEMS}</li>
+	 * <li>{@link #ITEM_STATES}</li>
+	 * <li>{@link #FINISHED_ITEMS}</li>
+	 * <li>{@link #ELAPSED_TIME}</li>
+	 * <li>{@link #ERROR}</li>
+	 * </ul>
+	 */
+	CompositeType JOB_TYPE = Item.compositeType("JOB", "A batch operation run in the background", JOB_ID_ITEM, OPERATION_ITEM, JOB_STATE_ITEM, ITEMS_ITEM,
+			ITEM_STATES_ITEM, FINISHED_ITEMS_ITEM, ELAPSED_TIME_ITEM, FrameworkMBean.ERROR_ITEM);
+
+	/**
+	 * The Tabular Type of a list of jobs, a list of {@link #JOB_TYPE} indexed by {@link #JOB_ID}.
+	 */
+	TabularType JOBS_TYPE = Item.tabularType("JOBS", "The batch operations run in the background", JOB_TYPE, JOB_ID);
+
+	/**
+	 * Answer the job
+	 * 
+	 * @see #JOB_TYPE for the details of the CompositeData
+	 * 
+	 * @param jobId - the job identifier
+	 * @return the job
+	 * @throws IOException if the operation fails, or there is no such job
+	 */
+	CompositeData getJob(long jobId) throws IOException;
+
+	/**
+	 * Answer the jobs that are pending, running, or have ended within the retention period
+	 * 
+	 * @see #JOBS_TYPE for the details of the TabularData
+	 * 
+	 * @return the jobs
+	 * @throws IOException if the operation fails
+	 */
+	TabularData listJobs() throws IOException;
+
+	/**
+	 * Answer the result of the batch of a job, a {@link FrameworkMBean#BATCH_ACTION_RESULT_TYPE},
+	 * {@link FrameworkMBean#BATCH_INSTALL_RESULT_TYPE} or {@link FrameworkMBean#BATCH_RESOLVE_RESULT_TYPE} as answered
+	 * by the blocking Framework MBean operation. A batch of installs or updates cancelled part way answers a failed
+	 * result whose error is {@link #CANCELLED}, with no bundle in error, -1 or null for an install, and the items not
+	 * started as remaining.
+	 * 
+	 * @param jobId - the job identifier
+	 * @return the result, or null if the job has not ended or its batch could not be run
+	 * @throws IOException if the operation fails, or there is no such job
+	 */
+	CompositeData getJobResult(long jobId) throws IOException;
+
+	/**
+	 * Ask a job to stop, a pending job does not start and a running job does not start any more items
+	 * 
+	 * @param jobId - the job identifier
+	 * @return false if the job has already ended
+	 * @throws IOException if the operation fails, or there is no such job
+	 */
+	boolean cancelJob(long jobId) throws IOException;
+
+}
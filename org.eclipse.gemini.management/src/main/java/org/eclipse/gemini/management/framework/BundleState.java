@@ -15,14 +15,15 @@
 
 package org.eclipse.gemini.management.framework;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
-import javax.management.Notification;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
-import javax.management.openmbean.TabularDataSupport;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -37,23 +38,33 @@ import org.osgi.jmx.framework.BundleStateMBean;
 import org.eclipse.gemini.management.Monitor;
 import org.eclipse.gemini.management.framework.internal.OSGiBundle;
 import org.eclipse.gemini.management.framework.internal.OSGiBundleEvent;
+import org.eclipse.gemini.management.framework.internal.OSGiBundleModel;
+import org.eclipse.gemini.management.internal.ArrayTabularData;
 import org.eclipse.gemini.management.internal.BundleUtil;
+import org.eclipse.gemini.management.internal.PagedResults;
 
 /** 
  * 
  */
-public final class BundleState extends Monitor implements BundleStateMBean {
+public final class BundleState extends Monitor<OSGiBundleEvent> implements CustomBundleStateMBean {
 	
-	private BundleListener bundleListener;
+	private BundleListener eventListener;
 	
 	private BundleContext bundleContext;
 	
+	private final OSGiBundleModel bundleModel;
+	
+	private final PagedResults bundlePages = new PagedResults(BUNDLES_PAGE_TYPE);
+	
 	/**
 	 * 
 	 * @param bundleContext
+	 * @param bundleModel - the model of the bundles, opened while the MBean is registered
 	 */
-	public BundleState(BundleContext bundleContext) {
+	public BundleState(BundleContext bundleContext, OSGiBundleModel bundleModel) {
+		super(bundleContext);
 		this.bundleContext = bundleContext;
+		this.bundleModel = bundleModel;
 	}
 
 	
@@ -81,11 +92,7 @@ public final class BundleState extends Monitor implements BundleStateMBean {
 	 */
 	public TabularData listBundles() throws IOException {
 		try {
-			TabularDataSupport table = new TabularDataSupport(BundleStateMBean.BUNDLES_TYPE);
-			for (Bundle bundle : bundleContext.getBundles()) {
-				table.put(new OSGiBundle(bundle).asCompositeData());
-			}
-			return table;
+			return new ArrayTabularData(BundleStateMBean.BUNDLES_TYPE, bundleModel.getBundles());
 		} catch (Throwable e) {
 			throw new IOException(e);
 		}
@@ -96,6 +103,9 @@ public final class BundleState extends Monitor implements BundleStateMBean {
 	 */
 	public TabularData listBundles(String... bundleTypeItems) throws IOException {
 		try {
+			if (bundleModel.isOpen()) {
+				return OSGiBundle.tableFromEncoded(bundleModel.getBundles(), bundleTypeItems);
+			}
 			ArrayList<OSGiBundle> bundles = new ArrayList<OSGiBundle>();
 			for (Bundle bundle : bundleContext.getBundles()) {
 				bundles.add(new OSGiBundle(bundle));
@@ -106,6 +116,17 @@ public final class BundleState extends Monitor implements BundleStateMBean {
 		}
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData listBundlesPage(String cursor, int pageSize) throws IOException {
+		return bundlePages.page(cursor, pageSize, new PagedResults.Rows() {
+			public Collection<CompositeData> rows() throws IOException {
+				return bundleModel.getBundles();
+			}
+		});
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -301,27 +322,82 @@ public final class BundleState extends Monitor implements BundleStateMBean {
 	 * {@inheritDoc}
 	 */
 	protected void addListener() {
-		bundleListener = getBundleListener();
-		bundleContext.addBundleListener(bundleListener);
+		bundleModel.open();
 	}
 
-	private BundleListener getBundleListener() {
-		return new BundleListener() {
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void addEventListener() {
+		eventListener = new BundleListener() {
 			public void bundleChanged(BundleEvent bundleEvent) {
-				Notification notification = new Notification(BundleStateMBean.EVENT, objectName, sequenceNumber++);
-				notification.setUserData(new OSGiBundleEvent(bundleEvent).asCompositeData());
-				sendNotification(notification);
+				dispatch(new OSGiBundleEvent(bundleEvent));
 			}
 		};
+		bundleContext.addBundleListener(eventListener);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	protected void removeListener() {
-		if (bundleListener != null) {
-			bundleContext.removeBundleListener(bundleListener);
+	protected void removeEventListener() {
+		if (eventListener != null) {
+			try {
+				bundleContext.removeBundleListener(eventListener);
+			} catch (IllegalStateException e) {
+				// the bundle has stopped and its listeners are already gone
+			}
+			eventListener = null;
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	protected String getNotificationType() {
+		return BundleStateMBean.EVENT;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected CompositeData getUserData(OSGiBundleEvent event) {
+		return event.asCompositeData();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected String getBatchNotificationType() {
+		return EVENT_BATCH;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void writeEvent(OSGiBundleEvent event, DataOutput out) throws IOException {
+		event.writeTo(out);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected OSGiBundleEvent readEvent(DataInput in) throws IOException {
+		return OSGiBundleEvent.readFrom(in);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData getEventsSince(long sequenceNumber) throws IOException {
+		return getJournalledEvents(sequenceNumber, BUNDLE_EVENTS_TYPE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void removeListener() {
+		bundleModel.close();
+	}
+
 }
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+
+import org.eclipse.gemini.management.framework.internal.OSGiWiringGraph;
+import org.eclipse.gemini.management.framework.internal.OSGiWiringGraph.Graph;
+import org.osgi.framework.BundleContext;
+
+/**
+ * MBean that answers queries on the graph of the bundle wiring of the framework
+ */
+public final class BundleWiringGraph implements BundleWiringGraphMBean {
+
+	private final BundleContext bundleContext;
+
+	private final OSGiWiringGraph wiringGraph;
+
+	/**
+	 *
+	 * @param bundleContext
+	 */
+	public BundleWiringGraph(BundleContext bundleContext) {
+		this.bundleContext = bundleContext;
+		this.wiringGraph = new OSGiWiringGraph(bundleContext);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long[] getDependencies(long bundleId, String namespace) throws IOException {
+		return getGraph(namespace, bundleId).getDependencies(bundleId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long[] getDependents(long bundleId, String namespace) throws IOException {
+		return getGraph(namespace, bundleId).getDependents(bundleId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isReachable(long fromBundleId, long toBundleId, String namespace) throws IOException {
+		return getGraph(namespace, fromBundleId, toBundleId).isReachable(fromBundleId, toBundleId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long[][] getCycles(String namespace) throws IOException {
+		return getGraph(namespace).getCycles();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getInDegree(long bundleId, String namespace) throws IOException {
+		return getGraph(namespace, bundleId).getInDegree(bundleId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getOutDegree(long bundleId, String namespace) throws IOException {
+		return getGraph(namespace, bundleId).getOutDegree(bundleId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public TabularData getDegrees(String namespace) throws IOException {
+		Graph graph = getGraph(namespace);
+		TabularDataSupport table = new TabularDataSupport(DEGREES_TYPE);
+		for (long bundleId : graph.getBundleIds()) {
+			Map<String, Object> items = new HashMap<String, Object>();
+			items.put(BUNDLE_ID, bundleId);
+			items.put(IN_DEGREE, graph.getInDegree(bundleId));
+			items.put(OUT_DEGREE, graph.getOutDegree(bundleId));
+			try {
+				table.put(new CompositeDataSupport(DEGREE_TYPE, items));
+			} catch (OpenDataException e) {
+				throw new IllegalStateException("Cannot form wiring graph degree open data", e);
+			}
+		}
+		return table;
+	}
+
+	// End of MBean methods
+
+	/**
+	 * Answer the graph of the namespace, checking that the bundles exist
+	 */
+	private Graph getGraph(String namespace, long... bundleIds) throws IOException {
+		Graph graph = wiringGraph.getGraph(ALL_NAMESPACE.equals(namespace) ? null : namespace);
+		for (long bundleId : bundleIds) {
+			if (!graph.contains(bundleId) && bundleContext.getBundle(bundleId) == null) {
+				throw new IOException("Bundle with id: " + bundleId + " does not exist");
+			}
+		}
+		return graph;
+	}
+
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularType;
+
+import org.osgi.jmx.Item;
+import org.osgi.jmx.JmxConstants;
+
+/**
+ * The graph of the bundles of the framework, with an edge from each bundle to every other bundle it is wired to as a
+ * requirer. The graph of a namespace only has the wires of that namespace, the namespace {@link #ALL_NAMESPACE}, or
+ * null, has the wires of every namespace.
+ * <p>
+ * The graph is kept up to date as bundles are resolved, unresolved, updated and uninstalled. Wires added for dynamic
+ * imports are only seen once the importing bundle changes.
+ */
+public interface BundleWiringGraphMBean {
+
+	/**
+	 * The Object Name for a Bundle Wiring Graph MBean.
+	 */
+	String OBJECTNAME = JmxConstants.OSGI_CORE + ":type=wiringGraph,version=1.0";
+
+	/**
+	 * To be specified on any operation that takes a 'namespace' argument when the wires of all namespaces are wanted.
+	 */
+	String ALL_NAMESPACE = "osgi.wiring.all";
+
+	/**
+	 * The key of {@link #BUNDLE_ID_ITEM}.
+	 */
+	String BUNDLE_ID = "BundleId";
+
+	/**
+	 * The item containing the identifier of a bundle. The key is {@link #BUNDLE_ID} and the type is a long.
+	 */
+	Item BUNDLE_ID_ITEM = new Item(BUNDLE_ID, "The identifier of the bundle", SimpleType.LONG);
+
+	/**
+	 * The key of {@link #IN_DEGREE_ITEM}.
+	 */
+	String IN_DEGREE = "InDegree";
+
+	/**
+	 * The item containing the number of bundles wired to a bundle as a provider. The key is {@link #IN_DEGREE} and the
+	 * type is an int.
+	 */
+	Item IN_DEGREE_ITEM = new Item(IN_DEGREE, "The number of bundles wired to the bundle as a provider", SimpleType.INTEGER);
+
+	/**
+	 * The key of {@link #OUT_DEGREE_ITEM}.
+	 */
+	String OUT_DEGREE = "OutDegree";
+
+	/**
+	 * The item containing the number of bundles a bundle is wired to as a requirer. The key is {@link #OUT_DEGREE} and
+	 * the type is an int.
+	 */
+	Item OUT_DEGREE_ITEM = new Item(OUT_DEGREE, "The number of bundles the bundle is wired to as a requirer", SimpleType.INTEGER);
+
+	/**
+	 * The Composite Type of the degrees of a bundle in the graph. The composite consists of:
+	 * <ul>
+	 * <li>{@link #BUNDLE_ID}</li>
+	 * <li>{@link #IN_DEGREE}</li>
+	 * <li>{@link #OUT_DEGREE}</li>
+	 * </ul>
+	 */
+	CompositeType DEGREE_TYPE = Item.compositeType("DEGREE", "The degrees of a bundle in the wiring graph", BUNDLE_ID_ITEM, IN_DEGREE_ITEM, OUT_DEGREE_ITEM);
+
+	/**
+	 * The Tabular Type of the degrees of the bundles in the graph, a list of {@link #DEGREE_TYPE} indexed by
+	 * {@link #BUNDLE_ID}.
+	 */
+	TabularType DEGREES_TYPE = Item.tabularType("DEGREES", "The degrees of the bundles in the wiring graph", DEGREE_TYPE, BUNDLE_ID);
+
+	/**
+	 * Answer the bundles the bundle depends on, that is the bundles reachable from it by following the wires from
+	 * requirer to provider
+	 *
+	 * @param bundleId - the bundle identifier
+	 * @param namespace - the namespace of the wires
+	 * @return the identifiers of the other bundles the bundle depends on directly or transitively, in ascending order
+	 * @throws IOException if the operation fails, or the bundle does not exist
+	 */
+	long[] getDependencies(long bundleId, String namespace) throws IOException;
+
+	/**
+	 * Answer the bundles that depend on the bundle, that is the bundles reachable from it by following the wires from
+	 * provider to requirer
+	 *
+	 * @param bundleId - the bundle identifier
+	 * @param namespace - the namespace of the wires
+	 * @return the identifiers of the other bundles that depend on the bundle directly or transitively, in ascending order
+	 * @throws IOException if the operation fails, or the bundle does not exist
+	 */
+	long[] getDependents(long bundleId, String namespace) throws IOException;
+
+	/**
+	 * Answer whether a bundle depends on another, directly or transitively
+	 *
+	 * @param fromBundleId - the identifier of the requiring bundle
+	 * @param toBundleId - the identifier of the providing bundle
+	 * @param namespace - the namespace of the wires
+	 * @return true if there is a path of one or more wires from the first bundle to the second
+	 * @throws IOException if the operation fails, or a bundle does not exist
+	 */
+	boolean isReachable(long fromBundleId, long toBundleId, String namespace) throws IOException;
+
+	/**
+	 * Answer the cycles of the graph, that is the largest sets of bundles which all depend on each other
+	 *
+	 * @param namespace - the namespace of the wires
+	 * @return the identifiers of the bundles of each cycle in ascending order, the cycles ordered by their first bundle
+	 * @throws IOException if the operation fails
+	 */
+	long[][] getCycles(String namespace) throws IOException;
+
+	/**
+	 * Answer the number of bundles wired to the bundle as a provider
+	 *
+	 * @param bundleId - the bundle identifier
+	 * @param namespace - the namespace of the wires
+	 * @return the in-degree of the bundle
+	 * @throws IOException if the operation fails, or the bundle does not exist
+	 */
+	int getInDegree(long bundleId, String namespace) throws IOException;
+
+	/**
+	 * Answer the number of bundles the bundle is wired to as a requirer
+	 *
+	 * @param bundleId - the bundle identifier
+	 * @param namespace - the namespace of the wires
+	 * @return the out-degree of the bundle
+	 * @throws IOException if the operation fails, or the bundle does not exist
+	 */
+	int getOutDegree(long bundleId, String namespace) throws IOException;
+
+	/**
+	 * Answer the degrees of every bundle in the graph
+	 *
+	 * @see #DEGREES_TYPE for the details of the TabularData
+	 *
+	 * @param namespace - the namespace of the wires
+	 * @return the degrees of the bundles
+	 * @throws IOException if the operation fails
+	 */
+	TabularData getDegrees(String namespace) throws IOException;
+
+}
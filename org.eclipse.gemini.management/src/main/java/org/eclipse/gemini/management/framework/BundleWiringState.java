@@ -11,30 +11,31 @@
 package org.eclipse.gemini.management.framework;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
-import javax.management.openmbean.TabularDataSupport;
 
 import org.eclipse.gemini.management.framework.internal.OSGiBundleRevision;
-import org.eclipse.gemini.management.framework.internal.OSGiBundleRevisionIdTracker;
-import org.eclipse.gemini.management.framework.internal.OSGiBundleWiring;
+import org.eclipse.gemini.management.framework.internal.OSGiBundleRevisionIdRegistry;
+import org.eclipse.gemini.management.framework.internal.OSGiBundleWiringCache;
+import org.eclipse.gemini.management.internal.ArrayTabularData;
+import org.eclipse.gemini.management.internal.PagedResults;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.BundleRevisions;
-import org.osgi.framework.wiring.BundleWire;
 import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.jmx.framework.wiring.BundleWiringStateMBean;
 
 /**
  * MBean that represents the current wiring state of the 
  */
-public final class BundleWiringState implements BundleWiringStateMBean {
+public final class BundleWiringState implements CustomBundleWiringStateMBean {
 
     /**
      * To be specified on any operation that takes a 'namespace' argument when results from all namespaces are wanted.
@@ -42,6 +43,12 @@ public final class BundleWiringState implements BundleWiringStateMBean {
     private final String ALL_NAMESPACE = "osgi.wiring.all";
     
 	private final BundleContext bundleContext;
+	
+	private final PagedResults closurePages = new PagedResults(BUNDLES_WIRING_PAGE_TYPE);
+	
+	private final OSGiBundleRevisionIdRegistry revisionIds = new OSGiBundleRevisionIdRegistry();
+
+	private final OSGiBundleWiringCache wiringCache;
 
 	/**
 	 * 
@@ -49,6 +56,7 @@ public final class BundleWiringState implements BundleWiringStateMBean {
 	 */
 	public BundleWiringState(BundleContext bundleContext) {
 		this.bundleContext = bundleContext;
+		this.wiringCache = new OSGiBundleWiringCache(bundleContext, revisionIds);
 	}
 
 	/**
@@ -75,9 +83,8 @@ public final class BundleWiringState implements BundleWiringStateMBean {
 	public CompositeData getCurrentWiring(long bundleId, String namespace) throws IOException {
 		namespace = processNamespace(namespace);
 		BundleWiring wiring = getBundle(bundleId).adapt(BundleWiring.class);
-		OSGiBundleRevisionIdTracker revisionTracker = new OSGiBundleRevisionIdTracker();
 		if(wiring != null){
-			return new OSGiBundleWiring(wiring).asCompositeData(namespace, bundleId, revisionTracker);
+			return wiringCache.getWiring(wiring, namespace);
 		}else{
 			return null;
 		}
@@ -87,16 +94,34 @@ public final class BundleWiringState implements BundleWiringStateMBean {
 	 * {@inheritDoc}
 	 */
 	public TabularData getCurrentWiringClosure(long rootBundleId, String namespace) throws IOException {
+		return new ArrayTabularData(BundleWiringStateMBean.BUNDLES_WIRING_TYPE, getCurrentWiringClosureRows(rootBundleId, namespace));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData getCurrentWiringClosurePage(final long rootBundleId, final String namespace, String cursor, int pageSize) throws IOException {
+		return closurePages.page(cursor, pageSize, new PagedResults.Rows() {
+			public Collection<CompositeData> rows() throws IOException {
+				List<CompositeData> rows = getCurrentWiringClosureRows(rootBundleId, namespace);
+				Collections.sort(rows, new Comparator<CompositeData>() {
+					public int compare(CompositeData wiring1, CompositeData wiring2) {
+						int result = ((Long) wiring1.get(BUNDLE_ID)).compareTo((Long) wiring2.get(BUNDLE_ID));
+						if (result == 0) {
+							result = ((Integer) wiring1.get(BUNDLE_REVISION_ID)).compareTo((Integer) wiring2.get(BUNDLE_REVISION_ID));
+						}
+						return result;
+					}
+				});
+				return rows;
+			}
+		});
+	}
+
+	private List<CompositeData> getCurrentWiringClosureRows(long rootBundleId, String namespace) throws IOException {
 		namespace = processNamespace(namespace);
 		BundleWiring wiring = getBundle(rootBundleId).adapt(BundleWiring.class);
-		Map<BundleRevision, OSGiBundleWiring> mappings = new HashMap<BundleRevision, OSGiBundleWiring>();
-		processWiring(mappings, wiring, namespace);
-		TabularDataSupport table = new TabularDataSupport(BundleWiringStateMBean.BUNDLES_WIRING_TYPE);
-		OSGiBundleRevisionIdTracker revisionTracker = new OSGiBundleRevisionIdTracker();
-		for(Entry<BundleRevision, OSGiBundleWiring> osgiBundleWiring : mappings.entrySet()){
-			table.put(osgiBundleWiring.getValue().asCompositeData(namespace, osgiBundleWiring.getKey().getBundle().getBundleId(), revisionTracker));
-		}
-		return table;
+		return wiringCache.getClosure(Collections.singletonList(wiring), namespace);
 	}
 
 	/**
@@ -105,13 +130,11 @@ public final class BundleWiringState implements BundleWiringStateMBean {
 	public TabularData getRevisionsDeclaredRequirements(long bundleId, String namespace) throws IOException {
 		namespace = processNamespace(namespace);
 		List<BundleRevision> bundleRevisions = getBundle(bundleId).adapt(BundleRevisions.class).getRevisions();
-		TabularDataSupport table = new TabularDataSupport(BundleWiringStateMBean.REVISIONS_REQUIREMENTS_TYPE);
-		int revisionCounter = 0;
+		List<CompositeData> rows = new ArrayList<CompositeData>(bundleRevisions.size());
 		for (BundleRevision bundleRevision : bundleRevisions) {
-			table.put(new OSGiBundleRevision(bundleRevision).requirementsAsCompositeData(namespace, revisionCounter));
-			revisionCounter++;
+			rows.add(new OSGiBundleRevision(bundleRevision).requirementsAsCompositeData(namespace, revisionIds.getRevisionId(bundleRevision)));
 		}
-		return table;
+		return new ArrayTabularData(BundleWiringStateMBean.REVISIONS_REQUIREMENTS_TYPE, rows);
 	}
 
 	/**
@@ -120,13 +143,11 @@ public final class BundleWiringState implements BundleWiringStateMBean {
 	public TabularData getRevisionsDeclaredCapabilities(long bundleId, String namespace) throws IOException {
 		namespace = processNamespace(namespace);
 		List<BundleRevision> bundleRevisions = getBundle(bundleId).adapt(BundleRevisions.class).getRevisions();
-		TabularDataSupport table = new TabularDataSupport(BundleWiringStateMBean.REVISIONS_CAPABILITIES_TYPE);
-		int revisionCounter = 0;
+		List<CompositeData> rows = new ArrayList<CompositeData>(bundleRevisions.size());
 		for (BundleRevision bundleRevision : bundleRevisions) {
-			table.put(new OSGiBundleRevision(bundleRevision).capabilitiesAsCompositeData(namespace, revisionCounter));
-			revisionCounter++;
+			rows.add(new OSGiBundleRevision(bundleRevision).capabilitiesAsCompositeData(namespace, revisionIds.getRevisionId(bundleRevision)));
 		}
-		return table;
+		return new ArrayTabularData(BundleWiringStateMBean.REVISIONS_CAPABILITIES_TYPE, rows);
 	}
 	
 	/**
@@ -135,15 +156,14 @@ public final class BundleWiringState implements BundleWiringStateMBean {
 	public TabularData getRevisionsWiring(long bundleId, String namespace) throws IOException {
 		namespace = processNamespace(namespace);
 		List<BundleRevision> bundleRevisions = getBundle(bundleId).adapt(BundleRevisions.class).getRevisions();
-		TabularDataSupport table = new TabularDataSupport(BundleWiringStateMBean.BUNDLES_WIRING_TYPE);
-		OSGiBundleRevisionIdTracker revisionTracker = new OSGiBundleRevisionIdTracker();
+		List<CompositeData> rows = new ArrayList<CompositeData>(bundleRevisions.size());
 		for (BundleRevision bundleRevision : bundleRevisions) {
 			BundleWiring wiring = bundleRevision.getWiring();
 			if(wiring != null){
-				table.put(new OSGiBundleWiring(wiring).asCompositeData(namespace, bundleId, revisionTracker));
+				rows.add(wiringCache.getWiring(wiring, namespace));
 			}
 		}
-		return table;
+		return new ArrayTabularData(BundleWiringStateMBean.BUNDLES_WIRING_TYPE, rows);
 	}
 
 	/**
@@ -152,16 +172,11 @@ public final class BundleWiringState implements BundleWiringStateMBean {
 	public TabularData getRevisionsWiringClosure(long rootBundleId, String namespace) throws IOException {
 		namespace = processNamespace(namespace);
 		List<BundleRevision> bundleRevisions = getBundle(rootBundleId).adapt(BundleRevisions.class).getRevisions();
-		Map<BundleRevision, OSGiBundleWiring> mappings = new HashMap<BundleRevision, OSGiBundleWiring>();
+		List<BundleWiring> wirings = new ArrayList<BundleWiring>(bundleRevisions.size());
 		for (BundleRevision bundleRevision : bundleRevisions) {
-			processWiring(mappings, bundleRevision.getWiring(), namespace);
+			wirings.add(bundleRevision.getWiring());
 		}
-		TabularDataSupport table = new TabularDataSupport(BundleWiringStateMBean.BUNDLES_WIRING_TYPE);
-		OSGiBundleRevisionIdTracker revisionTracker = new OSGiBundleRevisionIdTracker();
-		for(Entry<BundleRevision, OSGiBundleWiring> osgiBundleWiring : mappings.entrySet()){
-			table.put(osgiBundleWiring.getValue().asCompositeData(namespace, osgiBundleWiring.getKey().getBundle().getBundleId(), revisionTracker));
-		}
-		return table;
+		return new ArrayTabularData(BundleWiringStateMBean.BUNDLES_WIRING_TYPE, wiringCache.getClosure(wirings, namespace));
 	}
 	
 	// End of MBean methods
@@ -180,40 +195,5 @@ public final class BundleWiringState implements BundleWiringStateMBean {
 		}
 		return namespace;
 	}
-	
-	/**
-	 * Add all related wirings to the provided map.
-	 * 
-	 * @param mappings of 
-	 * @param wiring
-	 * @param namespace
-	 */
-	private void processWiring(Map<BundleRevision, OSGiBundleWiring> mappings, BundleWiring wiring, String namespace){
-		if(wiring != null){
-			BundleRevision bundleRevision = wiring.getRevision();
-			if(!mappings.containsKey(bundleRevision)) {
-				mappings.put(bundleRevision, new OSGiBundleWiring(wiring));
-				processRequiredWirings(mappings, wiring, namespace);
-				processProvidedWirings(mappings, wiring, namespace);
-			}
-		}
-	}
-	
-	private void processRequiredWirings(Map<BundleRevision, OSGiBundleWiring> mappings, BundleWiring wiring, String namespace){
-		List<BundleWire> requiredWires = wiring.getRequiredWires(namespace);
-		if(requiredWires != null) {
-			for (BundleWire bundleWire : requiredWires) {
-				processWiring(mappings, bundleWire.getProviderWiring(), namespace);
-			}
-		}
-	}
-	
-	private void processProvidedWirings(Map<BundleRevision, OSGiBundleWiring> mappings, BundleWiring wiring, String namespace){
-		List<BundleWire> providedWires = wiring.getProvidedWires(namespace);
-		if(providedWires != null) {
-			for (BundleWire bundleWire : providedWires) {
-				processWiring(mappings, bundleWire.getRequirerWiring(), namespace);
-			}
-		}
-	}
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+
+import org.eclipse.gemini.management.CustomJmxConstants;
+import org.osgi.jmx.framework.BundleStateMBean;
+
+/**
+ * Local extensions to the {@link BundleStateMBean}
+ */
+public interface CustomBundleStateMBean extends BundleStateMBean {
+
+	/**
+	 * The type of the notification sent for a batch of bundle events when notification batching is enabled, see
+	 * {@link org.eclipse.gemini.management.Monitor#NOTIFICATION_BATCH_WINDOW}. The user data of the notification is an
+	 * array of {@link #BUNDLE_EVENT_TYPE} in the order the events were fired.
+	 */
+	String EVENT_BATCH = "BundleEventBatch";
+
+	/**
+	 * The Composite Type of a page of bundles, the page is a {@link #BUNDLES_TYPE}.
+	 */
+	CompositeType BUNDLES_PAGE_TYPE = CustomJmxConstants.pageType("BUNDLES_PAGE", "A page of bundles", BUNDLES_TYPE);
+
+	/**
+	 * The Composite Type of the journalled bundle events, the events are a {@link #BUNDLE_EVENT_TYPE}.
+	 */
+	CompositeType BUNDLE_EVENTS_TYPE = CustomJmxConstants.journalType("BUNDLE_EVENTS", "The journalled bundle events", BUNDLE_EVENT_TYPE);
+
+	/**
+	 * Answer a page of the bundles of {@link #listBundles()}. All the pages of a listing come from the snapshot taken
+	 * by its first page.
+	 * 
+	 * @see #BUNDLES_PAGE_TYPE for the details of the CompositeData
+	 * 
+	 * @param cursor - null for the first page, otherwise the cursor answered with the previous page
+	 * @param pageSize - the maximum number of bundles in the page
+	 * @return the page and the cursor of the next page
+	 * @throws IOException if the operation fails, or the cursor is invalid or has expired
+	 */
+	CompositeData listBundlesPage(String cursor, int pageSize) throws IOException;
+
+	/**
+	 * Answer the bundle events of the notifications sent after the given sequence number, so a client that missed
+	 * notifications can catch up. The events are only kept when the framework property
+	 * {@link org.eclipse.gemini.management.Monitor#NOTIFICATION_JOURNAL_CAPACITY} is set, and only the most recent ones.
+	 * If an event after the sequence number is no longer kept the answer is not complete and the client has to list the
+	 * bundles again.
+	 * 
+	 * @see #BUNDLE_EVENTS_TYPE for the details of the CompositeData
+	 * 
+	 * @param sequenceNumber - the sequence number of the last notification seen, -1 for none
+	 * @return the events, the sequence number to continue from and whether the events are complete
+	 * @throws IOException if the operation fails
+	 */
+	CompositeData getEventsSince(long sequenceNumber) throws IOException;
+
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+
+import javax.management.JMException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+
+import org.eclipse.gemini.management.CustomJmxConstants;
+import org.osgi.jmx.framework.wiring.BundleWiringStateMBean;
+
+/**
+ * Local extensions to the {@link BundleWiringStateMBean}
+ */
+public interface CustomBundleWiringStateMBean extends BundleWiringStateMBean {
+
+	/**
+	 * The Composite Type of a page of bundle wirings, the page is a {@link #BUNDLES_WIRING_TYPE}.
+	 */
+	CompositeType BUNDLES_WIRING_PAGE_TYPE = CustomJmxConstants.pageType("BUNDLES_WIRING_PAGE", "A page of bundle wirings", BUNDLES_WIRING_TYPE);
+
+	/**
+	 * Answer a page of the wirings of {@link #getCurrentWiringClosure(long, String)}. All the pages of a listing come
+	 * from the closure computed for its first page, so the bundle revision IDs are consistent across its pages. When a
+	 * cursor is given the root bundle and namespace of the first page are used.
+	 * 
+	 * @see #BUNDLES_WIRING_PAGE_TYPE for the details of the CompositeData
+	 * 
+	 * @param rootBundleId - the root bundle of the closure
+	 * @param namespace - the namespace of the requirements and capabilities for which to return information
+	 * @param cursor - null for the first page, otherwise the cursor answered with the previous page
+	 * @param pageSize - the maximum number of wirings in the page
+	 * @return the page and the cursor of the next page
+	 * @throws JMException if there is a JMX problem
+	 * @throws IOException if the operation fails, or the cursor is invalid or has expired
+	 */
+	CompositeData getCurrentWiringClosurePage(long rootBundleId, String namespace, String cursor, int pageSize) throws IOException, JMException;
+
+}
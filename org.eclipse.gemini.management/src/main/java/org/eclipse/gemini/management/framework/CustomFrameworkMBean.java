@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.SimpleType;
+
+import org.osgi.jmx.Item;
+import org.osgi.jmx.JmxConstants;
+import org.osgi.jmx.framework.BundleStateMBean;
+import org.osgi.jmx.framework.FrameworkMBean;
+
+/**
+ * Local extensions to the {@link FrameworkMBean}
+ */
+public interface CustomFrameworkMBean extends FrameworkMBean {
+
+	/**
+	 * The key of {@link #REGISTERED_SERVICE_COUNT_ITEM}.
+	 */
+	String REGISTERED_SERVICE_COUNT = "RegisteredServiceCount";
+
+	/**
+	 * The item containing the number of services registered by a bundle. The key is {@link #REGISTERED_SERVICE_COUNT}
+	 * and the type is an int.
+	 */
+	Item REGISTERED_SERVICE_COUNT_ITEM = new Item(REGISTERED_SERVICE_COUNT, "The number of services registered by the bundle", SimpleType.INTEGER);
+
+	/**
+	 * The key of {@link #SERVICES_IN_USE_COUNT_ITEM}.
+	 */
+	String SERVICES_IN_USE_COUNT = "ServicesInUseCount";
+
+	/**
+	 * The item containing the number of services a bundle is using. The key is {@link #SERVICES_IN_USE_COUNT} and the
+	 * type is an int.
+	 */
+	Item SERVICES_IN_USE_COUNT_ITEM = new Item(SERVICES_IN_USE_COUNT, "The number of services the bundle is using", SimpleType.INTEGER);
+
+	/**
+	 * The key of {@link #ACTIVATION_COUNT_ITEM}.
+	 */
+	String ACTIVATION_COUNT = "ActivationCount";
+
+	/**
+	 * The item containing the number of recorded activations of a bundle. The key is {@link #ACTIVATION_COUNT} and the
+	 * type is an int.
+	 */
+	Item ACTIVATION_COUNT_ITEM = new Item(ACTIVATION_COUNT, "The number of recorded activations of the bundle", SimpleType.INTEGER);
+
+	/**
+	 * The key of {@link #LAST_ACTIVATION_TIME_ITEM}.
+	 */
+	String LAST_ACTIVATION_TIME = "LastActivationTime";
+
+	/**
+	 * The item containing the duration in milliseconds of the last recorded activation of a bundle, or -1 if there is
+	 * none. The key is {@link #LAST_ACTIVATION_TIME} and the type is a long.
+	 */
+	Item LAST_ACTIVATION_TIME_ITEM = new Item(LAST_ACTIVATION_TIME, "The duration in milliseconds of the last recorded activation of the bundle", SimpleType.LONG);
+
+	/**
+	 * The key of {@link #AVERAGE_ACTIVATION_TIME_ITEM}.
+	 */
+	String AVERAGE_ACTIVATION_TIME = "AverageActivationTime";
+
+	/**
+	 * The item containing the mean duration in milliseconds of the recorded activations of a bundle, or -1 if there is
+	 * none. The key is {@link #AVERAGE_ACTIVATION_TIME} and the type is a long.
+	 */
+	Item AVERAGE_ACTIVATION_TIME_ITEM = new Item(AVERAGE_ACTIVATION_TIME, "The mean duration in milliseconds of the recorded activations of the bundle", SimpleType.LONG);
+
+	/**
+	 * The Composite Type of the impact of a refresh on a bundle. The composite consists of:
+	 * <ul>
+	 * <li>{@link BundleStateMBean#IDENTIFIER}</li>
+	 * <li>{@link BundleStateMBean#SYMBOLIC_NAME}</li>
+	 * <li>{@link BundleStateMBean#STATE}</li>
+	 * <li>{@link BundleStateMBean#START_LEVEL}</li>
+	 * <li>{@link #REGISTERED_SERVICE_COUNT}</li>
+	 * <li>{@link #SERVICES_IN_USE_COUNT}</li>
+	 * <li>{@link #ACTIVATION_COUNT}</li>
+	 * <li>{@link #LAST_ACTIVATION_TIME}</li>
+	 * <li>{@link #AVERAGE_ACTIVATION_TIME}</li>
+	 * </ul>
+	 * The activations are those recorded since the management bundle started.
+	 */
+	CompositeType REFRESH_IMPACT_TYPE = Item.compositeType("REFRESH_IMPACT", "The impact of a refresh on a bundle", BundleStateMBean.IDENTIFIER_ITEM,
+			BundleStateMBean.SYMBOLIC_NAME_ITEM, BundleStateMBean.STATE_ITEM, BundleStateMBean.START_LEVEL_ITEM, REGISTERED_SERVICE_COUNT_ITEM,
+			SERVICES_IN_USE_COUNT_ITEM, ACTIVATION_COUNT_ITEM, LAST_ACTIVATION_TIME_ITEM, AVERAGE_ACTIVATION_TIME_ITEM);
+
+	/**
+	 * The key of {@link #DURATION_ITEM}.
+	 */
+	String DURATION = "Duration";
+
+	/**
+	 * The item containing the milliseconds an action took. The key is {@link #DURATION} and the type is a long.
+	 */
+	Item DURATION_ITEM = new Item(DURATION, "The milliseconds the action took", SimpleType.LONG);
+
+	/**
+	 * The Composite Type of the outcome of the action of a batch on a bundle. The composite consists of:
+	 * <ul>
+	 * <li>{@link BundleStateMBean#IDENTIFIER}</li>
+	 * <li>{@link #SUCCESS}</li>
+	 * <li>{@link #ERROR}</li>
+	 * <li>{@link #DURATION}</li>
+	 * </ul>
+	 */
+	CompositeType BUNDLE_OUTCOME_TYPE = Item.compositeType("BUNDLE_OUTCOME", "The outcome of the action of a batch on a bundle", BundleStateMBean.IDENTIFIER_ITEM,
+			SUCCESS_ITEM, ERROR_ITEM, DURATION_ITEM);
+
+	/**
+	 * The key of {@link #OUTCOMES_ITEM}.
+	 */
+	String OUTCOMES = "Outcomes";
+
+	/**
+	 * The item containing the outcomes of the actions of a batch on its bundles, in the order they completed. The key
+	 * is {@link #OUTCOMES} and the type is an array of {@link #BUNDLE_OUTCOME_TYPE}.
+	 */
+	Item OUTCOMES_ITEM = new Item(OUTCOMES, "The outcomes of the actions on the bundles, in the order they completed", Item.arrayType(1, BUNDLE_OUTCOME_TYPE));
+
+	/**
+	 * The Composite Type of the result of a parallel batch action, a {@link #BATCH_ACTION_RESULT_TYPE} extended with:
+	 * <ul>
+	 * <li>{@link #OUTCOMES}</li>
+	 * <li>{@link #DURATION}, the milliseconds the whole batch took</li>
+	 * </ul>
+	 * The bundles of {@link #COMPLETED} are in the order they completed, {@link #BUNDLE_IN_ERROR} is the first bundle
+	 * that failed, or -1, and {@link #REMAINING} are the bundles that were not attempted.
+	 */
+	CompositeType PARALLEL_BATCH_ACTION_RESULT_TYPE = Item.extend(BATCH_ACTION_RESULT_TYPE, "PARALLEL_BATCH_ACTION_RESULT",
+			"The result of a parallel batch action on bundles", OUTCOMES_ITEM, DURATION_ITEM);
+
+	/**
+	 * The key of {@link #UPDATED_ITEM}.
+	 */
+	String UPDATED = "Updated";
+
+	/**
+	 * The item containing the identifiers of the bundles of a batch that were updated. The key is {@link #UPDATED} and
+	 * the type is an array of long.
+	 */
+	Item UPDATED_ITEM = new Item(UPDATED, "The bundle ids of the bundles that were updated", JmxConstants.LONG_ARRAY_TYPE);
+
+	/**
+	 * The key of {@link #SKIPPED_ITEM}.
+	 */
+	String SKIPPED = "Skipped";
+
+	/**
+	 * The item containing the identifiers of the bundles of a batch that were not updated because their content was
+	 * unchanged. The key is {@link #SKIPPED} and the type is an array of long.
+	 */
+	Item SKIPPED_ITEM = new Item(SKIPPED, "The bundle ids of the bundles whose content was unchanged", JmxConstants.LONG_ARRAY_TYPE);
+
+	/**
+	 * The Composite Type of the result of a batch update that skips unchanged bundles, a
+	 * {@link #BATCH_ACTION_RESULT_TYPE} extended with:
+	 * <ul>
+	 * <li>{@link #UPDATED}</li>
+	 * <li>{@link #SKIPPED}</li>
+	 * </ul>
+	 * The bundles of {@link #COMPLETED} are those either updated or skipped.
+	 */
+	CompositeType BATCH_UPDATE_RESULT_TYPE = Item.extend(BATCH_ACTION_RESULT_TYPE, "BATCH_UPDATE_RESULT", "The result of a batch update of bundles",
+			UPDATED_ITEM, SKIPPED_ITEM);
+
+	/**
+	 * Start the bundles concurrently, in dependency order. The bundles of a start level are started before those of
+	 * the next, and within a start level a bundle is started after the bundles of the batch it is wired to as a
+	 * requirer, bundles that do not depend on each other are started at the same time. The number of bundles started
+	 * at the same time is bounded by the framework property {@link Framework#BATCH_PARALLELISM}. As with
+	 * {@link #startBundles(long[])} no more bundles are started once one fails.
+	 *
+	 * @see #PARALLEL_BATCH_ACTION_RESULT_TYPE for the details of the CompositeData
+	 *
+	 * @param bundleIdentifiers - the identifiers of the bundles to start
+	 * @return the result of the batch, with the outcome and duration of the start of each bundle
+	 * @throws IOException if the operation fails, or a bundle does not exist
+	 */
+	CompositeData startBundlesInParallel(long[] bundleIdentifiers) throws IOException;
+
+	/**
+	 * Stop the bundles concurrently, in the reverse order of {@link #startBundlesInParallel(long[])}: the bundles of a
+	 * start level are stopped before those of the previous one, and a bundle is stopped after the bundles of the batch
+	 * wired to it as requirers.
+	 *
+	 * @see #PARALLEL_BATCH_ACTION_RESULT_TYPE for the details of the CompositeData
+	 *
+	 * @param bundleIdentifiers - the identifiers of the bundles to stop
+	 * @return the result of the batch, with the outcome and duration of the stop of each bundle
+	 * @throws IOException if the operation fails, or a bundle does not exist
+	 */
+	CompositeData stopBundlesInParallel(long[] bundleIdentifiers) throws IOException;
+
+	/**
+	 * Answer the bundles a refresh of the given bundles would affect, that is their dependency closure, with the
+	 * services they register and use and how long they took to activate. Nothing is refreshed.
+	 *
+	 * @see #REFRESH_IMPACT_TYPE for the details of the CompositeData
+	 *
+	 * @param bundleIdentifiers - the identifiers of the bundles to refresh, null for the bundles removal pending
+	 * @return the impact on each affected bundle, ordered by start level and then bundle identifier
+	 * @throws IOException if the operation fails, or a bundle does not exist
+	 */
+	CompositeData[] getRefreshImpact(long[] bundleIdentifiers) throws IOException;
+
+	/**
+	 * Install the bundle from the URL as {@link #installBundleFromURL(String, String)} does, checking that its content
+	 * has the expected SHA-256 digest. The content is taken from the local bundle cache when it already holds that
+	 * digest, whatever URL it was downloaded from.
+	 *
+	 * @param location - the location to assign to the bundle
+	 * @param url - the URL of the bundle
+	 * @param digest - the expected SHA-256 digest of the content, in hexadecimal
+	 * @return the bundle id of the installed bundle
+	 * @throws IOException if the operation does not succeed, or the content does not have the expected digest
+	 */
+	long installVerifiedBundleFromURL(String location, String url, String digest) throws IOException;
+
+	/**
+	 * Update the bundle from the URL as {@link #updateBundleFromURL(long, String)} does, checking that its content has
+	 * the expected SHA-256 digest. The content is taken from the local bundle cache when it already holds that digest,
+	 * whatever URL it was downloaded from.
+	 *
+	 * @param bundleIdentifier - the bundle identifier
+	 * @param url - the URL of the bundle
+	 * @param digest - the expected SHA-256 digest of the content, in hexadecimal
+	 * @throws IOException if the operation does not succeed, or the content does not have the expected digest
+	 */
+	void updateVerifiedBundleFromURL(long bundleIdentifier, String url, String digest) throws IOException;
+
+	/**
+	 * Update the bundle from the URL as {@link #updateBundleFromURL(long, String)} does, unless the content has the
+	 * same SHA-256 digest as the content the installed revision of the bundle came from, in which case the bundle is
+	 * left as it is and no new revision is created. The digest of a bundle is known once it has been installed or
+	 * updated from a URL through this MBean, and as long as it has not been updated by other means since.
+	 *
+	 * @param bundleIdentifier - the bundle identifier
+	 * @param url - the URL of the bundle
+	 * @return true if the bundle was updated, false if its content was unchanged
+	 * @throws IOException if the operation does not succeed
+	 */
+	boolean updateChangedBundleFromURL(long bundleIdentifier, String url) throws IOException;
+
+	/**
+	 * Update the bundles from the URLs as {@link #updateBundlesFromURL(long[], String[])} does, skipping those whose
+	 * content is unchanged as {@link #updateChangedBundleFromURL(long, String)} does.
+	 *
+	 * @see #BATCH_UPDATE_RESULT_TYPE for the details of the CompositeData
+	 *
+	 * @param bundleIdentifiers - the identifiers of the bundles to update
+	 * @param urls - the array of urls to update the bundles from
+	 * @return the result of the batch, with the bundles updated and skipped
+	 * @throws IOException if the operation fails
+	 */
+	CompositeData updateChangedBundlesFromURL(long[] bundleIdentifiers, String[] urls) throws IOException;
+
+	/**
+	 * Submit a job that installs the bundles from the URLs as {@link #installBundlesFromURL(String[], String[])} does.
+	 * The job is followed and cancelled through the {@link BundleJobStateMBean}, its items are the locations.
+	 *
+	 * @param locations - the array of locations of the bundles to install
+	 * @param urls - the array of urls to install the bundles from
+	 * @return the identifier of the job
+	 * @throws IOException if the job cannot be submitted
+	 */
+	long submitInstallBundlesFromURL(String[] locations, String[] urls) throws IOException;
+
+	/**
+	 * Submit a job that updates the bundles as {@link #updateBundles(long[])} does. The job is followed and cancelled
+	 * through the {@link BundleJobStateMBean}, its items are the bundle identifiers.
+	 *
+	 * @param bundleIdentifiers - the identifiers of the bundles to update
+	 * @return the identifier of the job
+	 * @throws IOException if the job cannot be submitted, or a bundle does not exist
+	 */
+	long submitUpdateBundles(long[] bundleIdentifiers) throws IOException;
+
+	/**
+	 * Submit a job that updates the bundles from the URLs as {@link #updateBundlesFromURL(long[], String[])} does. The
+	 * job is followed and cancelled through the {@link BundleJobStateMBean}, its items are the bundle identifiers.
+	 *
+	 * @param bundleIdentifiers - the identifiers of the bundles to update
+	 * @param urls - the array of urls to update the bundles from
+	 * @return the identifier of the job
+	 * @throws IOException if the job cannot be submitted, or a bundle does not exist
+	 */
+	long submitUpdateBundlesFromURL(long[] bundleIdentifiers, String[] urls) throws IOException;
+
+	/**
+	 * Submit a job that refreshes the bundles and waits for the refresh as {@link #refreshBundlesAndWait(long[])}
+	 * does. The job is followed through the {@link BundleJobStateMBean}, its items are the bundle identifiers. The
+	 * bundles are refreshed at once so the job can only be cancelled before it starts.
+	 *
+	 * @param bundleIdentifiers - the identifiers of the bundles to refresh, null for the bundles removal pending when
+	 *            the job is submitted
+	 * @return the identifier of the job
+	 * @throws IOException if the job cannot be submitted, or a bundle does not exist
+	 */
+	long submitRefreshBundles(long[] bundleIdentifiers) throws IOException;
+
+	/**
+	 * Submit a job that resolves the bundles as {@link #resolve(long[])} does. The job is followed through the
+	 * {@link BundleJobStateMBean}, its items are the bundle identifiers. The bundles are resolved at once so the job can
+	 * only be cancelled before it starts.
+	 *
+	 * @param bundleIdentifiers - the identifiers of the bundles to resolve, null for the bundles unresolved when the job
+	 *            is submitted
+	 * @return the identifier of the job
+	 * @throws IOException if the job cannot be submitted, or a bundle does not exist
+	 */
+	long submitResolveBundles(long[] bundleIdentifiers) throws IOException;
+
+}
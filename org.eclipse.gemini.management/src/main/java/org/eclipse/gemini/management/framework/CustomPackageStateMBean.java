@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+
+import org.eclipse.gemini.management.CustomJmxConstants;
+import org.osgi.jmx.framework.PackageStateMBean;
+
+/**
+ * Local extensions to the {@link PackageStateMBean}
+ */
+public interface CustomPackageStateMBean extends PackageStateMBean {
+
+	/**
+	 * The Composite Type of a page of packages, the page is a {@link #PACKAGES_TYPE}.
+	 */
+	CompositeType PACKAGES_PAGE_TYPE = CustomJmxConstants.pageType("PACKAGES_PAGE", "A page of packages", PACKAGES_TYPE);
+
+	/**
+	 * Answer a page of the packages of {@link #listPackages()}. All the pages of a listing come from the snapshot
+	 * taken by its first page.
+	 * 
+	 * @see #PACKAGES_PAGE_TYPE for the details of the CompositeData
+	 * 
+	 * @param cursor - null for the first page, otherwise the cursor answered with the previous page
+	 * @param pageSize - the maximum number of packages in the page
+	 * @return the page and the cursor of the next page
+	 * @throws IOException if the operation fails, or the cursor is invalid or has expired
+	 */
+	CompositeData listPackagesPage(String cursor, int pageSize) throws IOException;
+
+}
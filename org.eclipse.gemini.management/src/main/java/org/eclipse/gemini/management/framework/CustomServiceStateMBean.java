@@ -16,6 +16,9 @@ package org.eclipse.gemini.management.framework;
 
 import java.io.IOException;
 import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+
+import org.eclipse.gemini.management.CustomJmxConstants;
 import org.osgi.jmx.framework.ServiceStateMBean;
 
 /**
@@ -23,6 +26,24 @@ import org.osgi.jmx.framework.ServiceStateMBean;
  */
 public interface CustomServiceStateMBean extends ServiceStateMBean {
 	
+	/**
+	 * The type of the notification sent for a batch of service events when notification batching is enabled, see
+	 * {@link org.eclipse.gemini.management.Monitor#NOTIFICATION_BATCH_WINDOW}. The user data of the notification is an
+	 * array of {@link #SERVICE_EVENT_TYPE} in the order the events were fired, of the modifications of a service only
+	 * the last one in the batch is kept.
+	 */
+	String EVENT_BATCH = "ServiceEventBatch";
+	
+	/**
+	 * The Composite Type of a page of services, the page is a {@link #SERVICES_TYPE}.
+	 */
+	CompositeType SERVICES_PAGE_TYPE = CustomJmxConstants.pageType("SERVICES_PAGE", "A page of services", SERVICES_TYPE);
+
+	/**
+	 * The Composite Type of the journalled service events, the events are a {@link #SERVICE_EVENT_TYPE}.
+	 */
+	CompositeType SERVICE_EVENTS_TYPE = CustomJmxConstants.journalType("SERVICE_EVENTS", "The journalled service events", SERVICE_EVENT_TYPE);
+	
 	/**
 	 * Answer the list of services representing the services this bundle exports
 	 * 
@@ -47,4 +68,44 @@ public interface CustomServiceStateMBean extends ServiceStateMBean {
 	 */
 	CompositeData[] getServicesInUse(long bundleIdentifier) throws IOException;
 	
+	/**
+	 * Answer a page of the services of {@link #listServices()}, ordered by service id. All the pages of a listing come
+	 * from the snapshot taken by its first page.
+	 * 
+	 * @see #SERVICES_PAGE_TYPE for the details of the CompositeData
+	 * 
+	 * @param cursor - null for the first page, otherwise the cursor answered with the previous page
+	 * @param pageSize - the maximum number of services in the page
+	 * @return the page and the cursor of the next page
+	 * @throws IOException if the operation fails, or the cursor is invalid or has expired
+	 */
+	CompositeData listServicesPage(String cursor, int pageSize) throws IOException;
+
+	/**
+	 * Answer the service events of the notifications sent after the given sequence number, so a client that missed
+	 * notifications can catch up. The events are only kept when the framework property
+	 * {@link org.eclipse.gemini.management.Monitor#NOTIFICATION_JOURNAL_CAPACITY} is set, and only the most recent ones.
+	 * If an event after the sequence number is no longer kept the answer is not complete and the client has to list the
+	 * services again.
+	 * 
+	 * @see #SERVICE_EVENTS_TYPE for the details of the CompositeData
+	 * 
+	 * @param sequenceNumber - the sequence number of the last notification seen, -1 for none
+	 * @return the events, the sequence number to continue from and whether the events are complete
+	 * @throws IOException if the operation fails
+	 */
+	CompositeData getEventsSince(long sequenceNumber) throws IOException;
+
+	/**
+	 * Answer the properties of the service as typed properties, whose values need no parsing
+	 * 
+	 * @see CustomJmxConstants#TYPED_PROPERTIES for the details of the CompositeData
+	 * 
+	 * @param serviceId - the service identifier
+	 * @return the typed properties of the service
+	 * @throws IOException if the operation fails
+	 * @throws IllegalArgumentException if the service indicated does not exist
+	 */
+	CompositeData getTypedProperties(long serviceId) throws IOException;
+	
 }
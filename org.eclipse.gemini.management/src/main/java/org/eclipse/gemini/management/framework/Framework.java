@@ -18,40 +18,73 @@ package org.eclipse.gemini.management.framework;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 
 import javax.management.openmbean.CompositeData;
 
+import org.eclipse.gemini.management.framework.internal.BatchProgress;
+import org.eclipse.gemini.management.framework.internal.BundleActivationHistory;
 import org.eclipse.gemini.management.framework.internal.BundleBatchActionResult;
 import org.eclipse.gemini.management.framework.internal.BundleBatchInstallResult;
 import org.eclipse.gemini.management.framework.internal.BundleBatchResolveResult;
+import org.eclipse.gemini.management.framework.internal.BundleCache;
+import org.eclipse.gemini.management.framework.internal.BundleDigests;
+import org.eclipse.gemini.management.framework.internal.BundleJob;
+import org.eclipse.gemini.management.framework.internal.BundleJobs;
+import org.eclipse.gemini.management.framework.internal.BundlePrefetcher;
+import org.eclipse.gemini.management.framework.internal.OSGiRefreshImpact;
+import org.eclipse.gemini.management.framework.internal.ParallelBundleBatch;
+import org.eclipse.gemini.management.framework.internal.RefreshCoordinator;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
-import org.osgi.framework.FrameworkEvent;
-import org.osgi.framework.FrameworkListener;
 import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.startlevel.FrameworkStartLevel;
 import org.osgi.framework.wiring.FrameworkWiring;
-import org.osgi.jmx.framework.FrameworkMBean;
 
 /**
  * {@inheritDoc}
  */
-public final class Framework implements FrameworkMBean {
+public final class Framework implements CustomFrameworkMBean {
+
+	/**
+	 * The framework property holding the maximum number of bundles started or stopped at the same time by
+	 * {@link #startBundlesInParallel(long[])} and {@link #stopBundlesInParallel(long[])}, the number of processors by
+	 * default
+	 */
+	public static final String BATCH_PARALLELISM = "org.eclipse.gemini.management.framework.batch.parallelism";
+
+	/**
+	 * The framework property holding the maximum number of URLs downloaded at the same time by
+	 * {@link #installBundlesFromURL(String[], String[])} and {@link #updateBundlesFromURL(long[], String[])}, 4 by
+	 * default
+	 */
+	public static final String DOWNLOAD_PARALLELISM = "org.eclipse.gemini.management.framework.download.parallelism";
+
+	private static final int DEFAULT_DOWNLOAD_PARALLELISM = 4;
 
 	private BundleContext bundleContext;
 	private FrameworkStartLevel frameworkStartLevel;
 	private FrameworkWiring frameworkWiring;
+	private BundleActivationHistory activationHistory;
+	private BundleJobs bundleJobs;
+	private RefreshCoordinator refreshCoordinator;
+	private BundleCache bundleCache;
+	private BundleDigests bundleDigests;
 	
-	public Framework(BundleContext bc) {
+	public Framework(BundleContext bc, BundleJobs bundleJobs, BundleActivationHistory activationHistory, BundleDigests bundleDigests) {
 		this.bundleContext = bc;
+		this.bundleJobs = bundleJobs;
+		this.activationHistory = activationHistory;
+		this.bundleDigests = bundleDigests;
+		this.refreshCoordinator = new RefreshCoordinator(bc);
+		this.bundleCache = new BundleCache(bc);
 		this.frameworkStartLevel = bc.getBundle(0).adapt(FrameworkStartLevel.class);
 		this.frameworkWiring = bc.getBundle(0).adapt(FrameworkWiring.class);
 	}
@@ -85,10 +118,19 @@ public final class Framework implements FrameworkMBean {
 	 * {@inheritDoc}
 	 */
 	public long installBundleFromURL(String location, String url) throws IOException {
-		InputStream is = null;
+		return this.installVerifiedBundleFromURL(location, url, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long installVerifiedBundleFromURL(String location, String url, String digest) throws IOException {
+		BundleCache.Content is = null;
 		try {
-			is = new URL(url).openStream();
-			return bundleContext.installBundle(location, is).getBundleId();
+			is = digest == null ? this.bundleCache.stream(url) : this.bundleCache.open(url, digest);
+			Bundle bundle = bundleContext.installBundle(location, is);
+			this.bundleDigests.record(bundle, is.getDigest());
+			return bundle.getBundleId();
 		} catch (Throwable e) {
 			throw new IOException("Unable to install bundle: " + e);
 		} finally {
@@ -127,24 +169,58 @@ public final class Framework implements FrameworkMBean {
 	 * {@inheritDoc}
 	 */
 	public CompositeData installBundlesFromURL(String[] locations, String[] urls) throws IOException {
+		this.checkInstallBundlesFromURL(locations, urls);
+		return this.installBundlesFromURL(locations, urls, BatchProgress.NONE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long submitInstallBundlesFromURL(final String[] locations, final String[] urls) throws IOException {
+		this.checkInstallBundlesFromURL(locations, urls);
+		return this.bundleJobs.submit("installBundlesFromURL", locations, new BundleJob.Work() {
+			public CompositeData run(BatchProgress progress) throws Exception {
+				return installBundlesFromURL(locations, urls, progress);
+			}
+		});
+	}
+
+	private void checkInstallBundlesFromURL(String[] locations, String[] urls) throws IOException {
 		if (locations == null) {
 			throw new IOException("locations must not be null");
 		}
 		if (urls == null) {
 			throw new IOException("urls must not be null");
 		}
+	}
+
+	private CompositeData installBundlesFromURL(String[] locations, String[] urls, BatchProgress progress) throws IOException {
+		BundlePrefetcher prefetcher = this.prefetch(urls);
+		try {
+			return this.installBundlesFromURL(locations, prefetcher, progress);
+		} finally {
+			prefetcher.close();
+			this.bundleDigests.flush();
+		}
+	}
+
+	private CompositeData installBundlesFromURL(String[] locations, BundlePrefetcher prefetcher, BatchProgress progress) throws IOException {
 		Long ids[] = new Long[locations.length];
 		for (int i = 0; i < locations.length; i++) {
-			InputStream is = null;
+			if (progress.isCancelled()) {
+				return this.installCancelled(locations, ids, i);
+			}
+			progress.started(i);
+			BundleCache.Content is = null;
 			try {
-				is = new URL(urls[i]).openStream();
-				ids[i] = bundleContext.installBundle(locations[i], is).getBundleId();
+				is = prefetcher.open(i);
+				Bundle bundle = bundleContext.installBundle(locations[i], is);
+				this.bundleDigests.record(bundle, is.getDigest());
+				ids[i] = bundle.getBundleId();
+				progress.finished(i, true);
 			} catch (Throwable e) {
-				Long[] completed = new Long[i];
-				System.arraycopy(ids, 0, completed, 0, completed.length);
-				String[] remaining = new String[locations.length - i - 1];
-				System.arraycopy(locations, i + 1, remaining, 0, remaining.length);
-				return new BundleBatchInstallResult(e.toString(), completed, locations[i], remaining).asCompositeData();
+				progress.finished(i, false);
+				return this.installFailure(locations, ids, i, e.toString());
 			} finally {
 				if (is != null) {
 					try {
@@ -157,6 +233,25 @@ public final class Framework implements FrameworkMBean {
 		return new BundleBatchInstallResult(ids).asCompositeData();
 	}
 
+	private CompositeData installFailure(String[] locations, Long[] ids, int currentPosition, String errorMessage) throws IOException {
+		Long[] completed = new Long[currentPosition];
+		System.arraycopy(ids, 0, completed, 0, completed.length);
+		String[] remaining = new String[locations.length - currentPosition - 1];
+		System.arraycopy(locations, currentPosition + 1, remaining, 0, remaining.length);
+		return new BundleBatchInstallResult(errorMessage, completed, locations[currentPosition], remaining).asCompositeData();
+	}
+
+	/**
+	 * No bundle is in error, the location at the current position and the following ones remain
+	 */
+	private CompositeData installCancelled(String[] locations, Long[] ids, int currentPosition) throws IOException {
+		Long[] completed = new Long[currentPosition];
+		System.arraycopy(ids, 0, completed, 0, completed.length);
+		String[] remaining = new String[locations.length - currentPosition];
+		System.arraycopy(locations, currentPosition, remaining, 0, remaining.length);
+		return new BundleBatchInstallResult(BundleJobStateMBean.CANCELLED, completed, null, remaining).asCompositeData();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -249,7 +344,7 @@ public final class Framework implements FrameworkMBean {
 			try {
 				bundle(bundleIdentifiers[i]).adapt(BundleStartLevel.class).setStartLevel(newlevels[i]);
 			} catch (Throwable e) {
-				return this.handleUpdateException(bundleIdentifiers, i, e);
+				return this.handleUpdateException(bundleIdentifiers, i, e.toString());
 			}
 		}
 		return new BundleBatchActionResult().asCompositeData();
@@ -314,12 +409,23 @@ public final class Framework implements FrameworkMBean {
 			try {
 				bundle(bundleIdentifiers[i]).start();
 			} catch (Throwable e) {
-				return this.handleUpdateException(bundleIdentifiers, i, e);
+				return this.handleUpdateException(bundleIdentifiers, i, e.toString());
 			}
 		}
 		return new BundleBatchActionResult().asCompositeData();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData startBundlesInParallel(long[] bundleIdentifiers) throws IOException {
+		return this.runInParallel(bundleIdentifiers, new ParallelBundleBatch.Action() {
+			public void apply(Bundle bundle) throws Exception {
+				bundle.start();
+			}
+		}, false);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -342,12 +448,23 @@ public final class Framework implements FrameworkMBean {
 			try {
 				bundle(bundleIdentifiers[i]).stop();
 			} catch (Throwable e) {
-				return this.handleUpdateException(bundleIdentifiers, i, e);
+				return this.handleUpdateException(bundleIdentifiers, i, e.toString());
 			}
 		}
 		return new BundleBatchActionResult().asCompositeData();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData stopBundlesInParallel(long[] bundleIdentifiers) throws IOException {
+		return this.runInParallel(bundleIdentifiers, new ParallelBundleBatch.Action() {
+			public void apply(Bundle bundle) throws Exception {
+				bundle.stop();
+			}
+		}, true);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -370,7 +487,7 @@ public final class Framework implements FrameworkMBean {
 			try {
 				bundle(bundleIdentifiers[i]).uninstall();
 			} catch (Throwable e) {
-				return this.handleUpdateException(bundleIdentifiers, i, e);
+				return this.handleUpdateException(bundleIdentifiers, i, e.toString());
 			}
 		}
 		return new BundleBatchActionResult().asCompositeData();
@@ -391,10 +508,29 @@ public final class Framework implements FrameworkMBean {
 	 * {@inheritDoc}
 	 */
 	public void updateBundleFromURL(long bundleIdentifier, String url) throws IOException {
-		InputStream is = null;
+		this.updateVerifiedBundleFromURL(bundleIdentifier, url, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void updateVerifiedBundleFromURL(long bundleIdentifier, String url, String digest) throws IOException {
+		this.updateBundleFromURL(bundleIdentifier, url, digest, false);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean updateChangedBundleFromURL(long bundleIdentifier, String url) throws IOException {
+		return this.updateBundleFromURL(bundleIdentifier, url, null, true);
+	}
+
+	private boolean updateBundleFromURL(long bundleIdentifier, String url, String digest, boolean skipUnchanged) throws IOException {
+		BundleCache.Content is = null;
 		try {
-			is = new URL(url).openStream();
-			bundle(bundleIdentifier).update(is);
+			// skipping an unchanged bundle needs the digest before the update
+			is = digest == null && !skipUnchanged ? this.bundleCache.stream(url) : this.bundleCache.open(url, digest);
+			return this.update(bundle(bundleIdentifier), is, skipUnchanged);
 		} catch (Throwable e) {
 			throw new IOException("Unable to update bundle: " + e);
 		} finally {
@@ -407,6 +543,21 @@ public final class Framework implements FrameworkMBean {
 		}
 	}
 
+	/**
+	 * Update the bundle from the content and record its digest
+	 * 
+	 * @return false if the update was skipped because the content is the one the bundle was installed or last updated
+	 *         from
+	 */
+	private boolean update(Bundle bundle, BundleCache.Content content, boolean skipUnchanged) throws BundleException {
+		if (skipUnchanged && content.getDigest().equals(this.bundleDigests.getDigest(bundle))) {
+			return false;
+		}
+		bundle.update(content);
+		this.bundleDigests.record(bundle, content.getDigest());
+		return true;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -414,11 +565,33 @@ public final class Framework implements FrameworkMBean {
 		if (bundleIdentifiers == null) {
 			throw new IOException("Bundle identifiers must not be null");
 		}
+		return this.updateBundles(bundleIdentifiers, BatchProgress.NONE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long submitUpdateBundles(final long[] bundleIdentifiers) throws IOException {
+		this.checkBundles(bundleIdentifiers);
+		return this.bundleJobs.submit("updateBundles", this.toItems(bundleIdentifiers), new BundleJob.Work() {
+			public CompositeData run(BatchProgress progress) throws Exception {
+				return updateBundles(bundleIdentifiers, progress);
+			}
+		});
+	}
+
+	private CompositeData updateBundles(long[] bundleIdentifiers, BatchProgress progress) {
 		for (int i = 0; i < bundleIdentifiers.length; i++) {
+			if (progress.isCancelled()) {
+				return this.updateCancelled(bundleIdentifiers, i, null, null);
+			}
+			progress.started(i);
 			try {
 				bundle(bundleIdentifiers[i]).update();
+				progress.finished(i, true);
 			} catch (Throwable e) {
-				return this.handleUpdateException(bundleIdentifiers, i, e);
+				progress.finished(i, false);
+				return this.handleUpdateException(bundleIdentifiers, i, e.toString());
 			}
 		}
 		return new BundleBatchActionResult().asCompositeData();
@@ -431,13 +604,67 @@ public final class Framework implements FrameworkMBean {
 		if (bundleIdentifiers == null) {
 			throw new IOException("Bundle identifiers must not be null");
 		}
+		return this.updateBundlesFromURL(bundleIdentifiers, urls, false, BatchProgress.NONE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long submitUpdateBundlesFromURL(final long[] bundleIdentifiers, final String[] urls) throws IOException {
+		this.checkBundles(bundleIdentifiers);
+		if (urls == null) {
+			throw new IOException("urls must not be null");
+		}
+		return this.bundleJobs.submit("updateBundlesFromURL", this.toItems(bundleIdentifiers), new BundleJob.Work() {
+			public CompositeData run(BatchProgress progress) throws Exception {
+				return updateBundlesFromURL(bundleIdentifiers, urls, false, progress);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData updateChangedBundlesFromURL(long[] bundleIdentifiers, String[] urls) throws IOException {
+		if (bundleIdentifiers == null) {
+			throw new IOException("Bundle identifiers must not be null");
+		}
+		return this.updateBundlesFromURL(bundleIdentifiers, urls, true, BatchProgress.NONE);
+	}
+
+	private CompositeData updateBundlesFromURL(long[] bundleIdentifiers, String[] urls, boolean skipUnchanged, BatchProgress progress) {
+		BundlePrefetcher prefetcher = this.prefetch(urls);
+		try {
+			return this.updateBundlesFromURL(bundleIdentifiers, prefetcher, skipUnchanged, progress);
+		} finally {
+			prefetcher.close();
+			this.bundleDigests.flush();
+		}
+	}
+
+	/**
+	 * @param skipUnchanged - true to skip the bundles whose content is unchanged and report the bundles updated and
+	 *            skipped
+	 */
+	private CompositeData updateBundlesFromURL(long[] bundleIdentifiers, BundlePrefetcher prefetcher, boolean skipUnchanged, BatchProgress progress) {
+		List<Long> updated = skipUnchanged ? new ArrayList<Long>() : null;
+		List<Long> skipped = skipUnchanged ? new ArrayList<Long>() : null;
 		for (int i = 0; i < bundleIdentifiers.length; i++) {
-			InputStream is = null;
+			if (progress.isCancelled()) {
+				return this.updateCancelled(bundleIdentifiers, i, updated, skipped);
+			}
+			progress.started(i);
+			BundleCache.Content is = null;
 			try {
-				is = new URL(urls[i]).openStream();
-				bundle(bundleIdentifiers[i]).update(is);
+				is = prefetcher.open(i);
+				boolean changed = this.update(bundle(bundleIdentifiers[i]), is, skipUnchanged);
+				if (skipUnchanged) {
+					(changed ? updated : skipped).add(bundleIdentifiers[i]);
+				}
+				progress.finished(i, true);
 			} catch (Throwable e) {
-				return this.handleUpdateException(bundleIdentifiers, i, e);
+				progress.finished(i, false);
+				return this.handleUpdateException(bundleIdentifiers, i, e.toString(), updated, skipped);
 			} finally {
 				if (is != null) {
 					try {
@@ -447,16 +674,48 @@ public final class Framework implements FrameworkMBean {
 				}
 			}
 		}
+		if (skipUnchanged) {
+			return new BundleBatchActionResult(null, this.convertToNonPrimativeArray(bundleIdentifiers, bundleIdentifiers.length), -1, new Long[0],
+					updated.toArray(new Long[updated.size()]), skipped.toArray(new Long[skipped.size()])).asCompositeData();
+		}
 		return new BundleBatchActionResult().asCompositeData();
 	}
+
+	/**
+	 * No bundle is in error, the bundle at the current position and the following ones remain
+	 */
+	private CompositeData updateCancelled(long[] bundleIdentifiers, int currentPosition, List<Long> updated, List<Long> skipped) {
+		Long[] completed = this.convertToNonPrimativeArray(bundleIdentifiers, currentPosition);
+		Long[] remaining = new Long[bundleIdentifiers.length - currentPosition];
+		for (int j = 0; j < remaining.length; j++) {
+			remaining[j] = bundleIdentifiers[currentPosition + j];
+		}
+		if (updated == null) {
+			return new BundleBatchActionResult(BundleJobStateMBean.CANCELLED, completed, -1, remaining).asCompositeData();
+		}
+		return new BundleBatchActionResult(BundleJobStateMBean.CANCELLED, completed, -1, remaining, updated.toArray(new Long[updated.size()]),
+				skipped.toArray(new Long[skipped.size()])).asCompositeData();
+	}
+
+	private CompositeData handleUpdateException(long[] bundleIdentifiers, int currentPostion, String errorMessage, List<Long> updated, List<Long> skipped) {
+		if (updated == null) {
+			return this.handleUpdateException(bundleIdentifiers, currentPostion, errorMessage);
+		}
+		Long[] remaining = new Long[bundleIdentifiers.length - currentPostion - 1];
+		for (int j = 0; j < remaining.length; j++) {
+			remaining[j] = bundleIdentifiers[currentPostion + 1 + j];
+		}
+		return new BundleBatchActionResult(errorMessage, this.convertToNonPrimativeArray(bundleIdentifiers, currentPostion), bundleIdentifiers[currentPostion],
+				remaining, updated.toArray(new Long[updated.size()]), skipped.toArray(new Long[skipped.size()])).asCompositeData();
+	}
 	
-	private CompositeData handleUpdateException(long[] bundleIdentifiers, int currentPostion, Throwable e){
+	private CompositeData handleUpdateException(long[] bundleIdentifiers, int currentPostion, String errorMessage){
 		Long[] completed = this.convertToNonPrimativeArray(bundleIdentifiers, currentPostion);
 		Long[] remaining = new Long[bundleIdentifiers.length - currentPostion - 1];
 		for (int j = 0; j < remaining.length; j++) {
 			remaining[j] = bundleIdentifiers[currentPostion + 1 + j];	
 		}
-		return new BundleBatchActionResult(e.toString(), completed, bundleIdentifiers[currentPostion], remaining).asCompositeData();
+		return new BundleBatchActionResult(errorMessage, completed, bundleIdentifiers[currentPostion], remaining).asCompositeData();
 	}
 
 	/**
@@ -486,6 +745,38 @@ public final class Framework implements FrameworkMBean {
 		return result;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData[] getRefreshImpact(long[] bundleIdentifiers) throws IOException {
+		Collection<Bundle> roots;
+		if (bundleIdentifiers == null) {
+			roots = this.frameworkWiring.getRemovalPendingBundles();
+		} else {
+			roots = this.getBundles(bundleIdentifiers);
+		}
+		List<OSGiRefreshImpact> impacts = new ArrayList<OSGiRefreshImpact>();
+		for (Bundle bundle : this.frameworkWiring.getDependencyClosure(roots)) {
+			impacts.add(new OSGiRefreshImpact(bundle, this.activationHistory));
+		}
+		Collections.sort(impacts, new Comparator<OSGiRefreshImpact>() {
+			public int compare(OSGiRefreshImpact impact1, OSGiRefreshImpact impact2) {
+				int result = impact1.getStartLevel() - impact2.getStartLevel();
+				if (result == 0) {
+					long id1 = impact1.getBundle().getBundleId();
+					long id2 = impact2.getBundle().getBundleId();
+					result = id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+				}
+				return result;
+			}
+		});
+		CompositeData[] result = new CompositeData[impacts.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = impacts.get(i).asCompositeData();
+		}
+		return result;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -513,66 +804,112 @@ public final class Framework implements FrameworkMBean {
 		Collection<Bundle> bundles = new HashSet<Bundle>();
 		Bundle bundle = this.bundle(bundleIdentifier);
 		bundles.add(bundle);
-		StandardFrameworkListener standardFrameworkListener = new StandardFrameworkListener();
-		this.frameworkWiring.refreshBundles(bundles, standardFrameworkListener);
-		standardFrameworkListener.getResult();
-		return bundle.getState() >= Bundle.RESOLVED;
+		return this.refreshCoordinator.refreshAndWait(bundles).isResolved(bundle);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public CompositeData refreshBundlesAndWait(long[] bundleIdentifiers) throws IOException {
-		Collection<Bundle> bundles;
-		StandardFrameworkListener standardFrameworkListener = new StandardFrameworkListener();
 		if(bundleIdentifiers == null){
-			bundles = Arrays.asList(this.bundleContext.getBundles());
-			this.frameworkWiring.refreshBundles(null, standardFrameworkListener);
+			return this.refreshBundlesAndWait(null, Arrays.asList(this.bundleContext.getBundles()), BatchProgress.NONE);
+		}
+		List<Bundle> bundles = new ArrayList<Bundle>(this.getBundles(bundleIdentifiers));
+		return this.refreshBundlesAndWait(bundles, bundles, BatchProgress.NONE);
+	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public long submitRefreshBundles(long[] bundleIdentifiers) throws IOException {
+		final List<Bundle> bundles = new ArrayList<Bundle>();
+		if (bundleIdentifiers == null) {
+			bundles.addAll(this.frameworkWiring.getRemovalPendingBundles());
 		} else {
-			bundles = this.getBundles(bundleIdentifiers);
-			this.frameworkWiring.refreshBundles(bundles, standardFrameworkListener);
-		}		
-		boolean operationResult = standardFrameworkListener.getResult();
-		ArrayList<Long> completedBundles = new ArrayList<Long>();
-		boolean result = true;		
-		for (Bundle bundle : bundles) {
-			if(bundle.getState() >= Bundle.RESOLVED){
-				completedBundles.add(bundle.getBundleId());
-			}else{
-				result = false;
-			}		
+			for (long bundleIdentifier : bundleIdentifiers) {
+				bundles.add(this.bundle(bundleIdentifier));
+			}
 		}
-		if(!operationResult){
-			result = false;
+		return this.bundleJobs.submit("refreshBundles", this.toItems(bundles), new BundleJob.Work() {
+			public CompositeData run(BatchProgress progress) throws Exception {
+				return refreshBundlesAndWait(bundles, bundles, progress);
+			}
+		});
+	}
+
+	/**
+	 * Refresh the bundles, the framework refreshes them all at once along with those of the requests made at the same
+	 * time
+	 * 
+	 * @param bundles - the bundles to refresh, null for the bundles removal pending
+	 * @param reported - the bundles whose state is reported in the result
+	 */
+	private CompositeData refreshBundlesAndWait(Collection<Bundle> bundles, List<Bundle> reported, BatchProgress progress) throws IOException {
+		for (int i = 0; i < reported.size(); i++) {
+			progress.started(i);
 		}
-		return new BundleBatchResolveResult(completedBundles.toArray(new Long[completedBundles.size()]), result).asCompositeData();
+		RefreshCoordinator.Result refresh = this.refreshCoordinator.refreshAndWait(bundles);
+		return this.resolveResult(reported, refresh.isSuccess(), refresh, progress);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public CompositeData resolve(long[] bundleIdentifiers) throws IOException {
-		Collection<Bundle> bundles;
+		return this.resolve(this.getBundlesToResolve(bundleIdentifiers), BatchProgress.NONE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long submitResolveBundles(long[] bundleIdentifiers) throws IOException {
+		final List<Bundle> bundles = this.getBundlesToResolve(bundleIdentifiers);
+		return this.bundleJobs.submit("resolve", this.toItems(bundles), new BundleJob.Work() {
+			public CompositeData run(BatchProgress progress) throws Exception {
+				return resolve(bundles, progress);
+			}
+		});
+	}
+
+	/**
+	 * Resolve the bundles, the framework resolves them all at once
+	 */
+	private CompositeData resolve(List<Bundle> bundles, BatchProgress progress) {
+		for (int i = 0; i < bundles.size(); i++) {
+			progress.started(i);
+		}
+		boolean operationResult = this.frameworkWiring.resolveBundles(bundles);
+		return this.resolveResult(bundles, operationResult, null, progress);
+	}
+
+	private List<Bundle> getBundlesToResolve(long[] bundleIdentifiers) throws IOException {
 		if(bundleIdentifiers == null){
-			bundles = new HashSet<Bundle>();
+			List<Bundle> bundles = new ArrayList<Bundle>();
 			Bundle[] allBundles = this.bundleContext.getBundles();
 			for (Bundle bundle : allBundles) {
 				if(bundle.getState() < Bundle.RESOLVED){
 					bundles.add(bundle);
 				}
 			}
-		}else{
-			bundles = this.getBundles(bundleIdentifiers);
+			return bundles;
 		}
-		boolean operationResult = this.frameworkWiring.resolveBundles(bundles);
+		return new ArrayList<Bundle>(this.getBundles(bundleIdentifiers));
+	}
+
+	/**
+	 * @param refresh - the refresh whose bundle states are reported, null for the current states
+	 */
+	private CompositeData resolveResult(List<Bundle> bundles, boolean operationResult, RefreshCoordinator.Result refresh, BatchProgress progress) {
 		boolean result = true;
 		ArrayList<Long> completedBundles = new ArrayList<Long>();
-		for (Bundle bundle : bundles) {
-			if(bundle.getState() >= Bundle.RESOLVED){
+		for (int i = 0; i < bundles.size(); i++) {
+			Bundle bundle = bundles.get(i);
+			if(refresh == null ? bundle.getState() >= Bundle.RESOLVED : refresh.isResolved(bundle)){
 				completedBundles.add(bundle.getBundleId());
+				progress.finished(i, true);
 			}else{
 				result = false;
+				progress.finished(i, false);
 			}
 		}
 		if(!operationResult){
@@ -581,6 +918,69 @@ public final class Framework implements FrameworkMBean {
 		return new BundleBatchResolveResult(completedBundles.toArray(new Long[completedBundles.size()]), result).asCompositeData();
 	}
 
+	private CompositeData runInParallel(long[] bundleIdentifiers, ParallelBundleBatch.Action action, boolean reverse) throws IOException {
+		if (bundleIdentifiers == null) {
+			throw new IOException("Bundle identifiers must not be null");
+		}
+		List<Bundle> bundles = new ArrayList<Bundle>(bundleIdentifiers.length);
+		for (long bundleIdentifier : bundleIdentifiers) {
+			bundles.add(this.bundle(bundleIdentifier));
+		}
+		try {
+			return new ParallelBundleBatch(bundles, action, reverse, this.getParallelism(BATCH_PARALLELISM, Runtime.getRuntime().availableProcessors())).run().asCompositeData();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the bundle batch");
+		}
+	}
+
+	/**
+	 * Download the URLs of a batch ahead of the installs or updates
+	 */
+	private BundlePrefetcher prefetch(String[] urls) {
+		return new BundlePrefetcher(urls, this.bundleCache, this.getParallelism(DOWNLOAD_PARALLELISM, DEFAULT_DOWNLOAD_PARALLELISM));
+	}
+
+	private int getParallelism(String key, int defaultValue) {
+		String parallelism = this.bundleContext.getProperty(key);
+		if (parallelism != null) {
+			try {
+				int value = Integer.parseInt(parallelism.trim());
+				if (value > 0) {
+					return value;
+				}
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return defaultValue;
+	}
+
+	private void checkBundles(long[] bundleIdentifiers) throws IOException {
+		if (bundleIdentifiers == null) {
+			throw new IOException("Bundle identifiers must not be null");
+		}
+		for (long bundleIdentifier : bundleIdentifiers) {
+			this.bundle(bundleIdentifier);
+		}
+	}
+
+	private String[] toItems(long[] bundleIdentifiers) {
+		String[] items = new String[bundleIdentifiers.length];
+		for (int i = 0; i < bundleIdentifiers.length; i++) {
+			items[i] = String.valueOf(bundleIdentifiers[i]);
+		}
+		return items;
+	}
+
+	private String[] toItems(List<Bundle> bundles) {
+		String[] items = new String[bundles.size()];
+		for (int i = 0; i < items.length; i++) {
+			items[i] = String.valueOf(bundles.get(i).getBundleId());
+		}
+		return items;
+	}
+
 	private Collection<Bundle> getBundles(long[] bundleIdentifiers) throws IOException{
 		Collection<Bundle> bundles = new HashSet<Bundle>();
 		for (int i = 0; i < bundleIdentifiers.length; i++) {
@@ -612,46 +1012,5 @@ public final class Framework implements FrameworkMBean {
 		}
         return dest;
 	}
-	
-	/**
-	 * 
-	 * @author Christopher Frost
-	 *
-	 * This class is thread safe and will only block until a framework event is received. 
-	 *
-	 */
-	private static class StandardFrameworkListener implements FrameworkListener {
-				
-		private final Object monitor = new Object();
-						
-		private volatile boolean sucsess = false;
-
-		private volatile boolean completed = false;
-		
-		@Override
-		public void frameworkEvent(FrameworkEvent event) {
-			if(FrameworkEvent.PACKAGES_REFRESHED == event.getType()){
-				this.sucsess = true;
-			} else if(FrameworkEvent.ERROR == event.getType()){
-				this.sucsess = false;
-			}
-			this.completed = true;
-			this.monitor.notifyAll();
-		}
-		
-		public boolean getResult(){
-			synchronized (monitor) {
-				while(!this.completed){
-					try {
-						this.monitor.wait(5000); //Just to make sure as it is possible that we could get to wait after notify has been called
-					} catch (InterruptedException e) {
-						// no-op
-					}
-				}
-				return this.sucsess;
-			}
-		}
-		
-	}
-	
+
 }
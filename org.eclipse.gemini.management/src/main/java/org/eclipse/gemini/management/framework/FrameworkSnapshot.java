@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.management.openmbean.CompositeData;
+
+import org.eclipse.gemini.management.framework.internal.OSGiPackageIndex;
+import org.eclipse.gemini.management.framework.internal.OSGiPackageIndex.Export;
+import org.eclipse.gemini.management.framework.internal.OSGiService;
+import org.eclipse.gemini.management.internal.OSGiProperties;
+import org.eclipse.gemini.management.snapshot.SnapshotOutput;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.jmx.JmxConstants;
+
+/**
+ * MBean that answers the whole state of the framework in a single compressed snapshot
+ */
+public final class FrameworkSnapshot implements FrameworkSnapshotMBean {
+
+	private final BundleContext bundleContext;
+
+	private final OSGiPackageIndex packageIndex;
+
+	/**
+	 *
+	 * @param bundleContext
+	 * @param packageIndex - the index of the exported packages, closed by its owner when the MBean is unregistered
+	 */
+	public FrameworkSnapshot(BundleContext bundleContext, OSGiPackageIndex packageIndex) {
+		this.bundleContext = bundleContext;
+		this.packageIndex = packageIndex;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public byte[] takeSnapshot() throws IOException {
+		SnapshotOutput out = new SnapshotOutput();
+		try {
+			out.writeLong(System.currentTimeMillis());
+			Bundle[] bundles = bundleContext.getBundles();
+			Arrays.sort(bundles, new Comparator<Bundle>() {
+				public int compare(Bundle bundle1, Bundle bundle2) {
+					return Long.valueOf(bundle1.getBundleId()).compareTo(bundle2.getBundleId());
+				}
+			});
+			writeBundles(out, bundles);
+			writeServices(out);
+			writePackages(out);
+			writeWires(out, bundles);
+			return out.toByteArray();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeBundles(SnapshotOutput out, Bundle[] bundles) throws IOException {
+		out.writeLong(bundles.length);
+		for (Bundle bundle : bundles) {
+			out.writeLong(bundle.getBundleId());
+			out.writeString(bundle.getLocation());
+			out.writeString(bundle.getSymbolicName());
+			out.writeString(bundle.getVersion().toString());
+			out.writeLong(bundle.getState());
+			BundleStartLevel startLevel = bundle.adapt(BundleStartLevel.class);
+			int level = -1;
+			int flags = 0;
+			if (startLevel != null) {
+				try {
+					level = startLevel.getStartLevel();
+					flags |= startLevel.isPersistentlyStarted() ? 2 : 0;
+					flags |= startLevel.isActivationPolicyUsed() ? 4 : 0;
+				} catch (IllegalArgumentException e) {
+					// the bundle is uninstalled
+				}
+			}
+			BundleRevision revision = bundle.adapt(BundleRevision.class);
+			if (revision != null && (revision.getTypes() & BundleRevision.TYPE_FRAGMENT) != 0) {
+				flags |= 1;
+			}
+			out.writeSignedInt(level);
+			out.writeLong(bundle.getLastModified());
+			out.writeLong(flags);
+			Dictionary<String, String> headers = bundle.getHeaders();
+			out.writeLong(headers.size());
+			for (Enumeration<String> keys = headers.keys(); keys.hasMoreElements();) {
+				String key = keys.nextElement();
+				out.writeString(key);
+				out.writeString(headers.get(key));
+			}
+		}
+	}
+
+	private void writeServices(SnapshotOutput out) throws IOException {
+		ServiceReference<?>[] references;
+		try {
+			references = bundleContext.getAllServiceReferences(null, null);
+		} catch (InvalidSyntaxException e) {
+			throw new IOException(e);
+		}
+		List<ServiceReference<?>> registered = new ArrayList<ServiceReference<?>>();
+		if (references != null) {
+			for (ServiceReference<?> reference : references) {
+				if (reference.getBundle() != null) {
+					registered.add(reference);
+				}
+			}
+		}
+		ServiceReference<?>[] sorted = registered.toArray(new ServiceReference<?>[registered.size()]);
+		Arrays.sort(sorted, new Comparator<ServiceReference<?>>() {
+			public int compare(ServiceReference<?> reference1, ServiceReference<?> reference2) {
+				return ((Long) reference1.getProperty(Constants.SERVICE_ID)).compareTo((Long) reference2.getProperty(Constants.SERVICE_ID));
+			}
+		});
+		out.writeLong(sorted.length);
+		for (ServiceReference<?> reference : sorted) {
+			out.writeLong((Long) reference.getProperty(Constants.SERVICE_ID));
+			Bundle bundle = reference.getBundle();
+			out.writeLong(bundle == null ? 0 : bundle.getBundleId());
+			String[] objectClass = (String[]) reference.getProperty(Constants.OBJECTCLASS);
+			out.writeLong(objectClass.length);
+			for (String name : objectClass) {
+				out.writeString(name);
+			}
+			String[] keys = reference.getPropertyKeys();
+			out.writeLong(keys.length);
+			for (String key : keys) {
+				writeProperty(out, key, reference.getProperty(key));
+			}
+			writeIds(out, OSGiService.getBundlesUsing(reference));
+		}
+	}
+
+	/**
+	 * Write a service property, a value that has no JMX property type, such as an array of some other class, is written
+	 * as a String holding its toString()
+	 */
+	private static void writeProperty(SnapshotOutput out, String key, Object value) throws IOException {
+		out.writeString(key);
+		try {
+			CompositeData property = OSGiProperties.encode(key, value);
+			out.writeString((String) property.get(JmxConstants.TYPE));
+			out.writeString((String) property.get(JmxConstants.VALUE));
+		} catch (IllegalArgumentException e) {
+			out.writeString(JmxConstants.STRING);
+			out.writeString(String.valueOf(value));
+		}
+	}
+
+	private void writePackages(SnapshotOutput out) throws IOException {
+		List<Export> exports = packageIndex.getExports();
+		out.writeLong(exports.size());
+		for (Export export : exports) {
+			out.writeString(export.getName());
+			out.writeString(export.getVersion().toString());
+			out.writeLong(export.getExportingBundle());
+			out.writeLong(export.isRemovalPending() ? 1 : 0);
+			Long[] importingBundles = export.getImportingBundles();
+			long[] ids = new long[importingBundles.length];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = importingBundles[i];
+			}
+			writeIds(out, ids);
+		}
+	}
+
+	private void writeWires(SnapshotOutput out, Bundle[] bundles) throws IOException {
+		List<BundleWire> wires = new ArrayList<BundleWire>();
+		for (Bundle bundle : bundles) {
+			BundleWiring wiring = bundle.adapt(BundleWiring.class);
+			if (wiring != null) {
+				wires.addAll(wiring.getRequiredWires(null));
+			}
+		}
+		out.writeLong(wires.size());
+		for (BundleWire wire : wires) {
+			String namespace = wire.getCapability().getNamespace();
+			Object name = wire.getCapability().getAttributes().get(namespace);
+			out.writeString(namespace);
+			out.writeLong(wire.getRequirerWiring().getBundle().getBundleId());
+			out.writeLong(wire.getProviderWiring().getBundle().getBundleId());
+			out.writeString(name == null ? null : name.toString());
+		}
+	}
+
+	private static void writeIds(SnapshotOutput out, long[] ids) throws IOException {
+		out.writeLong(ids.length);
+		for (long id : ids) {
+			out.writeLong(id);
+		}
+	}
+
+}
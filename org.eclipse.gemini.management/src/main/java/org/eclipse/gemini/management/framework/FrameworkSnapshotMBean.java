@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework;
+
+import java.io.IOException;
+
+import org.eclipse.gemini.management.snapshot.Snapshot;
+import org.eclipse.gemini.management.snapshot.SnapshotDecoder;
+import org.osgi.jmx.JmxConstants;
+
+/**
+ * The whole state of the framework in a single call: its bundles with their headers, its services with their
+ * properties, its exported packages and the wires of its current bundle wirings, instead of the many calls to the
+ * bundle, service, package and wiring state MBeans it otherwise takes.
+ * <p>
+ * The snapshot is a compressed binary encoding, decoded by {@link SnapshotDecoder}. The encoding is versioned, a
+ * decoder reads the snapshots of its own {@link Snapshot#FORMAT_VERSION} and of the earlier ones.
+ */
+public interface FrameworkSnapshotMBean {
+
+	/**
+	 * The Object Name for a Framework Snapshot MBean.
+	 */
+	String OBJECTNAME = JmxConstants.OSGI_CORE + ":type=frameworkSnapshot,version=1.0";
+
+	/**
+	 * Answer the encoded snapshot of the framework. The snapshot is not atomic, bundles and services that change while
+	 * it is being taken may be seen in either state, or missing if they go away.
+	 *
+	 * @see SnapshotDecoder for the details of the encoding
+	 *
+	 * @return the snapshot, in the current format version
+	 * @throws IOException if the operation fails
+	 */
+	byte[] takeSnapshot() throws IOException;
+
+}
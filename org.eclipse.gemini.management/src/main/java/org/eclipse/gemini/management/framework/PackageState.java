@@ -17,35 +17,39 @@ package org.eclipse.gemini.management.framework;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
 
-import org.osgi.framework.Bundle;
-import org.osgi.framework.BundleContext;
 import org.osgi.framework.Version;
 
-import org.osgi.jmx.framework.PackageStateMBean;
-import org.osgi.service.packageadmin.ExportedPackage;
-import org.osgi.service.packageadmin.PackageAdmin;
-
 import org.eclipse.gemini.management.framework.internal.OSGiPackage;
+import org.eclipse.gemini.management.framework.internal.OSGiPackageIndex;
+import org.eclipse.gemini.management.framework.internal.OSGiPackageIndex.Export;
+import org.eclipse.gemini.management.internal.PagedResults;
 
 /** 
- * 
+ * The packages are answered from an {@link OSGiPackageIndex} of the bundle wirings, which is built on first use.
  */
 @Deprecated
-public final class PackageState implements PackageStateMBean {
+public final class PackageState implements CustomPackageStateMBean {
+	
+	private final OSGiPackageIndex packageIndex;
 	
-	private PackageAdmin admin;
+	private final PagedResults packagePages = new PagedResults(PACKAGES_PAGE_TYPE);
 	
 	/**
 	 * 
-	 * @param bundleContext
+	 * @param packageIndex - the index of the exported packages, closed by its owner when the MBean is unregistered
 	 */
-	public PackageState(BundleContext bundleContext) {
-		this.admin = (PackageAdmin) bundleContext.getService(bundleContext.getServiceReference(PackageAdmin.class));
+	public PackageState(OSGiPackageIndex packageIndex) {
+		this.packageIndex = packageIndex;
 	}
 
 	/**
@@ -64,29 +68,15 @@ public final class PackageState implements PackageStateMBean {
 			}
 		}
 
-		ArrayList<Bundle> bundles = this.getBundlesExportingPackage(packageName, v);
+		List<Export> exports = packageIndex.getExports(packageName, v);
 		
-		long[] bundleIds = new long[bundles.size()];
+		long[] bundleIds = new long[exports.size()];
 		int i = 0;
-		for (Bundle id : bundles) {
-			bundleIds[i++] = id.getBundleId();
+		for (Export export : exports) {
+			bundleIds[i++] = export.getExportingBundle();
 		}
 		return bundleIds;
 	}
-	
-	private ArrayList<Bundle> getBundlesExportingPackage(String packageName, Version version){
-		ArrayList<Bundle> bundles = new ArrayList<Bundle>();
-		ExportedPackage[] exportedPackages = admin.getExportedPackages(packageName);
-		if (exportedPackages == null) {
-			return bundles;
-		}
-		for (ExportedPackage pkg : exportedPackages) {
-			if (pkg.getVersion().equals(version)) {
-				bundles.add(pkg.getExportingBundle());
-			}
-		}
-		return bundles;
-	}
 
 	/**
 	 * {@inheritDoc}
@@ -103,33 +93,67 @@ public final class PackageState implements PackageStateMBean {
 				throw new IOException("Invalid package version: " + version);
 			}
 		}
-		ExportedPackage[] exportedPackages = admin.getExportedPackages(packageName);
-		if (exportedPackages == null) {
+		Export export = packageIndex.getExport(packageName, v, exportingBundle);
+		if (export == null) {
 			return new long[0];
 		}
-		for (ExportedPackage pkg : exportedPackages) {
-			if (pkg.getVersion().equals(v) && pkg.getExportingBundle().getBundleId() == exportingBundle) {
-				Bundle[] bundles = pkg.getImportingBundles();
-				long[] ids = new long[bundles.length];
-				for (int i = 0; i < bundles.length; i++) {
-					ids[i] = bundles[i].getBundleId();
-				}
-				return ids;
-			}
+		Long[] bundles = export.getImportingBundles();
+		long[] ids = new long[bundles.length];
+		for (int i = 0; i < bundles.length; i++) {
+			ids[i] = bundles[i];
 		}
-		return new long[0];
+		return ids;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public TabularData listPackages() {
+		return OSGiPackage.tableFrom(getPackages());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData listPackagesPage(String cursor, int pageSize) throws IOException {
+		return packagePages.page(cursor, pageSize, new PagedResults.Rows() {
+			public Collection<CompositeData> rows() {
+				List<CompositeData> packages = new ArrayList<CompositeData>();
+				for (OSGiPackage pkg : getPackages()) {
+					packages.add(pkg.asCompositeData());
+				}
+				Collections.sort(packages, new Comparator<CompositeData>() {
+					public int compare(CompositeData package1, CompositeData package2) {
+						int result = ((String) package1.get(NAME)).compareTo((String) package2.get(NAME));
+						if (result == 0) {
+							result = Version.parseVersion((String) package1.get(VERSION)).compareTo(Version.parseVersion((String) package2.get(VERSION)));
+						}
+						return result;
+					}
+				});
+				return packages;
+			}
+		});
+	}
+
+	/**
+	 * Answer a package for each export, its exporting bundles start with the bundle of the export followed by the other
+	 * bundles exporting the same package name and version
+	 */
+	private Set<OSGiPackage> getPackages() {
 		Set<OSGiPackage> packages = new HashSet<OSGiPackage>();
-		for(ExportedPackage pkg : admin.getExportedPackages((Bundle) null)){
-			ArrayList<Bundle> bundlesExportingPackage = this.getBundlesExportingPackage(pkg.getName(), pkg.getVersion());
-			packages.add(new OSGiPackage(pkg.getName(), pkg.getVersion().toString(), pkg.isRemovalPending(), bundlesExportingPackage.toArray(new Bundle[bundlesExportingPackage.size()]), pkg.getImportingBundles()));
+		for (Export export : packageIndex.getExports()) {
+			List<Long> exportingBundles = new ArrayList<Long>();
+			exportingBundles.add(export.getExportingBundle());
+			for (Export sameVersion : packageIndex.getExports(export.getName(), export.getVersion())) {
+				if (sameVersion.getExportingBundle() != export.getExportingBundle()) {
+					exportingBundles.add(sameVersion.getExportingBundle());
+				}
+			}
+			packages.add(new OSGiPackage(export.getName(), export.getVersion().toString(), export.isRemovalPending(),
+					exportingBundles.toArray(new Long[exportingBundles.size()]), export.getImportingBundles()));
 		}
-		return OSGiPackage.tableFrom(packages);
+		return packages;
 	}
 
 	/**
@@ -147,16 +171,8 @@ public final class PackageState implements PackageStateMBean {
 				throw new IOException("Invalid package version: " + version);
 			}
 		}
-		ExportedPackage[] exportedPackages = admin.getExportedPackages(packageName);
-		if (exportedPackages == null) {
-			return false;
-		}
-		for (ExportedPackage pkg : exportedPackages) {
-			if (pkg.getVersion().equals(v) && pkg.getExportingBundle().getBundleId() == exportingBundle) {
-				return pkg.isRemovalPending();
-			}
-		}
-		return false;
+		Export export = packageIndex.getExport(packageName, v, exportingBundle);
+		return export != null && export.isRemovalPending();
 	}
 
 }
@@ -18,10 +18,16 @@ package org.eclipse.gemini.management.framework;
 
 import static org.osgi.framework.Constants.OBJECTCLASS;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import javax.management.Notification;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
 
@@ -29,33 +35,44 @@ import org.eclipse.gemini.management.Monitor;
 import org.eclipse.gemini.management.framework.internal.OSGiService;
 import org.eclipse.gemini.management.framework.internal.OSGiServiceEvent;
 import org.eclipse.gemini.management.internal.OSGiProperties;
+import org.eclipse.gemini.management.internal.PagedResults;
 import org.osgi.framework.AllServiceListener;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
-import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 import org.osgi.jmx.framework.ServiceStateMBean;
-import org.osgi.util.tracker.ServiceTracker;
 
 /** 
  * 
  */
-public final class ServiceState extends Monitor implements CustomServiceStateMBean {
+public final class ServiceState extends Monitor<OSGiServiceEvent> implements CustomServiceStateMBean {
 
 	private ServiceListener serviceListener;
+
+	private ServiceListener eventListener;
 	
 	private BundleContext bundleContext;
 	
+	private final PagedResults servicePages = new PagedResults(SERVICES_PAGE_TYPE);
+	
+	/**
+	 * The registered services by service id, maintained by the service listener while it is registered
+	 */
+	private final ConcurrentMap<Long, ServiceReference<?>> serviceIndex = new ConcurrentHashMap<Long, ServiceReference<?>>();
+	
+	private volatile boolean indexed = false;
+	
 	/**
 	 * Constructor
 	 * 
 	 * @param bundleContext
 	 */
 	public ServiceState(BundleContext bundleContext) {
+		super(bundleContext);
 		this.bundleContext = bundleContext;
 	}
 
@@ -73,6 +90,13 @@ public final class ServiceState extends Monitor implements CustomServiceStateMBe
 		return OSGiProperties.tableFrom(getServiceReference(serviceId));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData getTypedProperties(long serviceId) throws IOException {
+		return OSGiProperties.typedFrom(getServiceReference(serviceId));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -108,34 +132,22 @@ public final class ServiceState extends Monitor implements CustomServiceStateMBe
 	 * {@inheritDoc}
 	 */
 	public CompositeData getService(long serviceId) throws IOException {
-		for (Bundle bundle : bundleContext.getBundles()) {
-			ServiceReference<?>[] refs = bundle.getRegisteredServices();
-			if (refs != null) {
-				for (ServiceReference<?> ref : refs) {
-					if(serviceId == (Long) ref.getProperty(Constants.SERVICE_ID)){
-						return new OSGiService(ref).asCompositeData();
-					}
-				}
-			}
+		ServiceReference<?> ref = findServiceReference(serviceId);
+		if (ref == null) {
+			return null;
 		}
-		return null;
+		return new OSGiService(ref).asCompositeData();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public CompositeData getProperty(long serviceId, String key) throws IOException {
-		for (Bundle bundle : bundleContext.getBundles()) {
-			ServiceReference<?>[] refs = bundle.getRegisteredServices();
-			if (refs != null) {
-				for (ServiceReference<?> ref : refs) {
-					if(serviceId == (Long) ref.getProperty(Constants.SERVICE_ID)){
-						return OSGiProperties.encode(key, ref.getProperty(key));
-					}
-				}
-			}
+		ServiceReference<?> ref = findServiceReference(serviceId);
+		if (ref == null) {
+			return null;
 		}
-		return null;
+		return OSGiProperties.encode(key, ref.getProperty(key));
 	}
 
 	/**
@@ -208,6 +220,28 @@ public final class ServiceState extends Monitor implements CustomServiceStateMBe
 		return this.getServicesAsCompositeDatas(servicesInUse);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData listServicesPage(String cursor, int pageSize) throws IOException {
+		return servicePages.page(cursor, pageSize, new PagedResults.Rows() {
+			public Collection<CompositeData> rows() {
+				SortedMap<Long, CompositeData> services = new TreeMap<Long, CompositeData>();
+				for (Bundle bundle : bundleContext.getBundles()) {
+					ServiceReference<?>[] refs = bundle.getRegisteredServices();
+					if (refs != null) {
+						for (ServiceReference<?> ref : refs) {
+							if (ref.getBundle() != null) {
+								services.put((Long) ref.getProperty(Constants.SERVICE_ID), new OSGiService(ref).asCompositeData());
+							}
+						}
+					}
+				}
+				return services.values();
+			}
+		});
+	}
+	
 	private Bundle getBundle(long bundleId){
 		Bundle bundle = bundleContext.getBundle(bundleId);
 		if(bundle == null) {
@@ -230,22 +264,39 @@ public final class ServiceState extends Monitor implements CustomServiceStateMBe
 	}
 	
 	private ServiceReference<?> getServiceReference(long serviceId) throws IOException {
-		Filter filter;
-		try {
-			filter = bundleContext.createFilter("(" + Constants.SERVICE_ID + "=" + serviceId + ")");
-		} catch (InvalidSyntaxException e) {
-			throw new IOException("Invalid filter syntax: " + e);
-		}
-		ServiceTracker<?, ?> tracker = new ServiceTracker<Object, Object>(bundleContext, filter, null);
-		tracker.open();
-		ServiceReference<?> serviceReference = tracker.getServiceReference();
+		ServiceReference<?> serviceReference = findServiceReference(serviceId);
 		if (serviceReference == null) {
 			throw new IOException("Service <" + serviceId + "> does not exist");
 		}
-		tracker.close();
 		return serviceReference;
 	}
 	
+	/**
+	 * Answer the reference of a registered service from the index, or from the framework while the index is not
+	 * maintained.
+	 * 
+	 * @param serviceId
+	 * @return the service reference or null if there is no such service
+	 * @throws IOException
+	 */
+	private ServiceReference<?> findServiceReference(long serviceId) throws IOException {
+		if (indexed) {
+			ServiceReference<?> serviceReference = serviceIndex.get(serviceId);
+			if (serviceReference != null && serviceReference.getBundle() == null) {
+				// unregistered while the index was being filled
+				serviceIndex.remove(serviceId, serviceReference);
+				return null;
+			}
+			return serviceReference;
+		}
+		try {
+			ServiceReference<?>[] serviceReferences = bundleContext.getAllServiceReferences(null, "(" + Constants.SERVICE_ID + "=" + serviceId + ")");
+			return serviceReferences == null ? null : serviceReferences[0];
+		} catch (InvalidSyntaxException e) {
+			throw new IOException("Invalid filter syntax: " + e);
+		}
+	}
+	
 	//End methods for the MBean
 	
 	/**
@@ -254,25 +305,124 @@ public final class ServiceState extends Monitor implements CustomServiceStateMBe
 	protected void addListener() {
 		serviceListener = this.getServiceListener();
 		bundleContext.addServiceListener(serviceListener);
+		try {
+			ServiceReference<?>[] serviceReferences = bundleContext.getAllServiceReferences(null, null);
+			if (serviceReferences != null) {
+				for (ServiceReference<?> serviceReference : serviceReferences) {
+					serviceIndex.putIfAbsent((Long) serviceReference.getProperty(Constants.SERVICE_ID), serviceReference);
+				}
+			}
+			indexed = true;
+		} catch (InvalidSyntaxException e) {
+			serviceIndex.clear();
+		}
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	protected void removeListener() {
+		indexed = false;
 		if (serviceListener != null) {
-			bundleContext.removeServiceListener(serviceListener);
+			try {
+				bundleContext.removeServiceListener(serviceListener);
+			} catch (IllegalStateException e) {
+				// the bundle has stopped and its listeners are already gone
+			}
 		}
+		serviceIndex.clear();
 	}
 
 	private ServiceListener getServiceListener() {
 		return new AllServiceListener() {
 			public void serviceChanged(ServiceEvent serviceEvent) {
-				Notification notification = new Notification(ServiceStateMBean.EVENT, objectName, sequenceNumber++);
-				notification.setUserData(new OSGiServiceEvent(serviceEvent).asCompositeData());
-				sendNotification(notification);
+				ServiceReference<?> serviceReference = serviceEvent.getServiceReference();
+				Long serviceId = (Long) serviceReference.getProperty(Constants.SERVICE_ID);
+				if (serviceEvent.getType() == ServiceEvent.UNREGISTERING) {
+					serviceIndex.remove(serviceId);
+				} else {
+					serviceIndex.put(serviceId, serviceReference);
+				}
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void addEventListener() {
+		eventListener = new AllServiceListener() {
+			public void serviceChanged(ServiceEvent serviceEvent) {
+				dispatch(new OSGiServiceEvent(serviceEvent));
 			}
 		};
+		bundleContext.addServiceListener(eventListener);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void removeEventListener() {
+		if (eventListener != null) {
+			try {
+				bundleContext.removeServiceListener(eventListener);
+			} catch (IllegalStateException e) {
+				// the bundle has stopped and its listeners are already gone
+			}
+			eventListener = null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected String getNotificationType() {
+		return ServiceStateMBean.EVENT;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected CompositeData getUserData(OSGiServiceEvent event) {
+		return event.asCompositeData();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected String getBatchNotificationType() {
+		return EVENT_BATCH;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected void writeEvent(OSGiServiceEvent event, DataOutput out) throws IOException {
+		event.writeTo(out);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	protected OSGiServiceEvent readEvent(DataInput in) throws IOException {
+		return OSGiServiceEvent.readFrom(in);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData getEventsSince(long sequenceNumber) throws IOException {
+		return getJournalledEvents(sequenceNumber, SERVICE_EVENTS_TYPE);
+	}
+
+	/**
+	 * Modifications of the same service replace each other
+	 */
+	protected Object getCoalescingKey(OSGiServiceEvent event) {
+		if (event.getEventType() == ServiceEvent.MODIFIED) {
+			return event.getServiceId();
+		}
+		return null;
 	}
 
 }
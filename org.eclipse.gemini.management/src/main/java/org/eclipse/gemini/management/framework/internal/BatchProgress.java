@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+/**
+ * Follows the progress of a batch operation through its items, and lets it be cancelled between items.
+ */
+public interface BatchProgress {
+
+	/**
+	 * The progress of a batch nobody follows, it is never cancelled
+	 */
+	BatchProgress NONE = new BatchProgress() {
+
+		public boolean isCancelled() {
+			return false;
+		}
+
+		public void started(int item) {
+		}
+
+		public void finished(int item, boolean success) {
+		}
+
+	};
+
+	/**
+	 * @return true if the batch must not start any more items
+	 */
+	boolean isCancelled();
+
+	/**
+	 * @param item - the index of the item that started
+	 */
+	void started(int item);
+
+	/**
+	 * @param item - the index of the item that finished
+	 * @param success - whether the operation on the item succeeded
+	 */
+	void finished(int item, boolean success);
+
+}
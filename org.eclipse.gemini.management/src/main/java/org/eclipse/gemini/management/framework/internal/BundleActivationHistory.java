@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+
+/**
+ * Records how long the bundles of the framework take to activate, from their STARTING event to their STARTED event.
+ * Only the activations that happen while the history is open are recorded, the history of an uninstalled bundle is
+ * dropped.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class BundleActivationHistory {
+
+	private final BundleContext bundleContext;
+
+	private final ConcurrentMap<Long, Long> starting = new ConcurrentHashMap<Long, Long>();
+
+	private final ConcurrentMap<Long, Activations> activations = new ConcurrentHashMap<Long, Activations>();
+
+	private final SynchronousBundleListener listener = new SynchronousBundleListener() {
+		public void bundleChanged(BundleEvent event) {
+			long bundleId = event.getBundle().getBundleId();
+			switch (event.getType()) {
+				case BundleEvent.STARTING:
+					starting.put(bundleId, System.nanoTime());
+					break;
+				case BundleEvent.STARTED:
+					Long start = starting.remove(bundleId);
+					if (start != null) {
+						record(bundleId, (System.nanoTime() - start) / 1000000L);
+					}
+					break;
+				case BundleEvent.STOPPED:
+					starting.remove(bundleId);
+					break;
+				case BundleEvent.UNINSTALLED:
+					starting.remove(bundleId);
+					activations.remove(bundleId);
+					break;
+				default:
+					break;
+			}
+		}
+	};
+
+	/**
+	 *
+	 * @param bundleContext
+	 */
+	public BundleActivationHistory(BundleContext bundleContext) {
+		this.bundleContext = bundleContext;
+	}
+
+	/**
+	 * Start recording activations
+	 */
+	public void open() {
+		bundleContext.addBundleListener(listener);
+	}
+
+	/**
+	 * Stop recording activations
+	 */
+	public void close() {
+		try {
+			bundleContext.removeBundleListener(listener);
+		} catch (IllegalStateException e) {
+			// the bundle has stopped and its listeners are already gone
+		}
+	}
+
+	/**
+	 * @param bundleId
+	 * @return the number of recorded activations of the bundle
+	 */
+	public int getActivationCount(long bundleId) {
+		Activations recorded = activations.get(bundleId);
+		return recorded == null ? 0 : recorded.count;
+	}
+
+	/**
+	 * @param bundleId
+	 * @return the duration in milliseconds of the last recorded activation of the bundle, or -1 if there is none
+	 */
+	public long getLastActivationTime(long bundleId) {
+		Activations recorded = activations.get(bundleId);
+		return recorded == null ? -1 : recorded.last;
+	}
+
+	/**
+	 * @param bundleId
+	 * @return the mean duration in milliseconds of the recorded activations of the bundle, or -1 if there is none
+	 */
+	public long getAverageActivationTime(long bundleId) {
+		Activations recorded = activations.get(bundleId);
+		return recorded == null ? -1 : recorded.total / recorded.count;
+	}
+
+	private void record(long bundleId, long millis) {
+		Activations previous;
+		Activations updated;
+		do {
+			previous = activations.get(bundleId);
+			updated = previous == null ? new Activations(1, millis, millis) : new Activations(previous.count + 1, previous.total + millis, millis);
+		} while (previous == null ? activations.putIfAbsent(bundleId, updated) != null : !activations.replace(bundleId, previous, updated));
+	}
+
+	/**
+	 * The recorded activations of a bundle
+	 */
+	private static final class Activations {
+
+		private final int count;
+
+		private final long total;
+
+		private final long last;
+
+		private Activations(int count, long total, long last) {
+			this.count = count;
+			this.total = total;
+			this.last = last;
+		}
+
+	}
+
+}
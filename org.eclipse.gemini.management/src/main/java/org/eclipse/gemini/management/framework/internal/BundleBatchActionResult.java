@@ -16,12 +16,15 @@
 package org.eclipse.gemini.management.framework.internal;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.OpenDataException;
 
+import org.eclipse.gemini.management.framework.CustomFrameworkMBean;
+import org.osgi.jmx.framework.BundleStateMBean;
 import org.osgi.jmx.framework.FrameworkMBean;
 
 /**
@@ -53,6 +56,11 @@ import org.osgi.jmx.framework.FrameworkMBean;
  * <td>Array of long</td>
  * </tr>
  * </table>
+ * <p>
+ * The result of a parallel batch is a <link>CustomFrameworkMBean#PARALLEL_BATCH_ACTION_RESULT_TYPE</link>, which
+ * adds the outcome of the action on each bundle and the duration of the batch. The result of a batch update skipping
+ * the unchanged bundles is a <link>CustomFrameworkMBean#BATCH_UPDATE_RESULT_TYPE</link>, which adds the bundles
+ * updated and skipped.
  */
 public final class BundleBatchActionResult {
 
@@ -80,6 +88,26 @@ public final class BundleBatchActionResult {
 	 * The ids of the bundles remaining to be processed
 	 */
 	private Long[] remaining;
+
+	/**
+	 * The outcomes of the actions on the bundles of a parallel batch, or null
+	 */
+	private List<Outcome> outcomes;
+
+	/**
+	 * The milliseconds a parallel batch took
+	 */
+	private long duration;
+
+	/**
+	 * The bundles of an update batch that were updated
+	 */
+	private Long[] updated;
+
+	/**
+	 * The bundles of an update batch that were skipped because their content was unchanged
+	 */
+	private Long[] skipped;
 	
 	/**
 	 * Construct a result signifying the successful completion of the batch
@@ -110,6 +138,58 @@ public final class BundleBatchActionResult {
 		this.remaining = remaining;
 	}
 
+	/**
+	 * Construct the result of a parallel batch operation.
+	 * 
+	 * @param errorMessage
+	 *            - the message of the first error, or null if the batch succeeded
+	 * @param completed
+	 *            - the identifiers of the bundles that completed the operation, in the order they completed
+	 * @param bundleInError
+	 *            - the identifier of the first bundle which produced an error, or -1
+	 * @param remaining
+	 *            - the identifiers of the bundles which were not processed
+	 * @param outcomes
+	 *            - the outcomes of the operation on the processed bundles, in the order they completed
+	 * @param duration
+	 *            - the milliseconds the batch took
+	 */
+	public BundleBatchActionResult(String errorMessage, Long[] completed, long bundleInError, Long[] remaining, List<Outcome> outcomes, long duration) {
+		this.success = errorMessage == null;
+		this.errorMessage = errorMessage;
+		this.completed = completed;
+		this.bundleInError = bundleInError;
+		this.remaining = remaining;
+		this.outcomes = outcomes;
+		this.duration = duration;
+	}
+
+	/**
+	 * Construct the result of a batch update skipping the unchanged bundles.
+	 * 
+	 * @param errorMessage
+	 *            - the message of the error, or null if the batch succeeded
+	 * @param completed
+	 *            - the identifiers of the bundles that were updated or skipped
+	 * @param bundleInError
+	 *            - the identifier of the bundle which produced an error, or -1
+	 * @param remaining
+	 *            - the identifiers of the bundles which were not processed
+	 * @param updated
+	 *            - the identifiers of the bundles that were updated
+	 * @param skipped
+	 *            - the identifiers of the bundles whose content was unchanged
+	 */
+	public BundleBatchActionResult(String errorMessage, Long[] completed, long bundleInError, Long[] remaining, Long[] updated, Long[] skipped) {
+		this.success = errorMessage == null;
+		this.errorMessage = errorMessage;
+		this.completed = completed;
+		this.bundleInError = bundleInError;
+		this.remaining = remaining;
+		this.updated = updated;
+		this.skipped = skipped;
+	}
+
 	/**
 	 * Answer the receiver encoded as CompositeData
 	 * 
@@ -124,10 +204,71 @@ public final class BundleBatchActionResult {
 		items.put(FrameworkMBean.REMAINING, remaining);
 
 		try {
-			return new CompositeDataSupport( FrameworkMBean.BATCH_ACTION_RESULT_TYPE, items);
+			if (updated != null) {
+				items.put(CustomFrameworkMBean.UPDATED, updated);
+				items.put(CustomFrameworkMBean.SKIPPED, skipped);
+				return new CompositeDataSupport(CustomFrameworkMBean.BATCH_UPDATE_RESULT_TYPE, items);
+			}
+			if (outcomes == null) {
+				return new CompositeDataSupport( FrameworkMBean.BATCH_ACTION_RESULT_TYPE, items);
+			}
+			CompositeData[] outcomesData = new CompositeData[outcomes.size()];
+			for (int i = 0; i < outcomesData.length; i++) {
+				outcomesData[i] = outcomes.get(i).asCompositeData();
+			}
+			items.put(CustomFrameworkMBean.OUTCOMES, outcomesData);
+			items.put(CustomFrameworkMBean.DURATION, duration);
+			return new CompositeDataSupport(CustomFrameworkMBean.PARALLEL_BATCH_ACTION_RESULT_TYPE, items);
 		} catch (OpenDataException e) {
 			throw new IllegalStateException("Cannot form batch result open data", e);
 		}
 	}
 
+	/**
+	 * The outcome of the action of a batch on a bundle
+	 */
+	public static final class Outcome {
+
+		private final long bundleId;
+
+		private final String errorMessage;
+
+		private final long duration;
+
+		/**
+		 * @param bundleId - the identifier of the bundle
+		 * @param errorMessage - the message of the error, or null if the action succeeded
+		 * @param duration - the milliseconds the action took
+		 */
+		public Outcome(long bundleId, String errorMessage, long duration) {
+			this.bundleId = bundleId;
+			this.errorMessage = errorMessage;
+			this.duration = duration;
+		}
+
+		/**
+		 * @return the identifier of the bundle
+		 */
+		public long getBundleId() {
+			return bundleId;
+		}
+
+		/**
+		 * @return the message of the error, or null if the action succeeded
+		 */
+		public String getErrorMessage() {
+			return errorMessage;
+		}
+
+		private CompositeData asCompositeData() throws OpenDataException {
+			Map<String, Object> items = new HashMap<String, Object>();
+			items.put(BundleStateMBean.IDENTIFIER, bundleId);
+			items.put(FrameworkMBean.SUCCESS, errorMessage == null);
+			items.put(FrameworkMBean.ERROR, errorMessage);
+			items.put(CustomFrameworkMBean.DURATION, duration);
+			return new CompositeDataSupport(CustomFrameworkMBean.BUNDLE_OUTCOME_TYPE, items);
+		}
+
+	}
+
 }
@@ -0,0 +1,387 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.osgi.framework.BundleContext;
+
+/**
+ * A local cache of the bundles downloaded from URLs, stored under the SHA-256 digest of their content.
+ * <p>
+ * A URL is answered from the cache only when the caller expects a digest that is already in the cache, whatever URL
+ * it came from, as the content at a URL may be republished at any time. Otherwise the URL is downloaded into the
+ * cache, its digest computed as it streams and checked against the expected digest, if any. The least recently used
+ * contents are evicted to keep the cache within its size, the contents left by a previous run are kept. A content
+ * whose file cannot be deleted, as it is still being read on some platforms, is kept until a later eviction.
+ * <p>
+ * A caller that neither expects a digest nor needs one before reading the content can {@link #stream(String)} the URL
+ * instead, without going through a local file.
+ * <p>
+ * A cache of size 0 is disabled, each content is then downloaded into a spool file deleted once it has been read.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class BundleCache {
+
+	/**
+	 * The framework property holding the maximum number of bytes of the cache, 256 MB by default and 0 to disable it
+	 */
+	public static final String CACHE_SIZE = "org.eclipse.gemini.management.framework.cache.size";
+
+	private static final long DEFAULT_SIZE = 256 * 1024 * 1024L;
+
+	private static final String ALGORITHM = "SHA-256";
+
+	private static final Pattern DIGEST = Pattern.compile("[0-9a-f]{64}");
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final File directory;
+
+	private final long size;
+
+	private final Object monitor = new Object();
+
+	private final LinkedHashMap<String, Long> contents = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	private long used = 0;
+
+	/**
+	 *
+	 * @param bundleContext - the context to read the configuration from and hold the cache in its data area
+	 */
+	public BundleCache(BundleContext bundleContext) {
+		File dataFile = bundleContext.getDataFile("cache");
+		this.size = dataFile == null ? 0 : getLong(bundleContext, CACHE_SIZE, DEFAULT_SIZE);
+		this.directory = dataFile;
+		if (this.directory != null) {
+			this.directory.mkdirs();
+		}
+		if (this.size > 0) {
+			load();
+		}
+	}
+
+	/**
+	 * Answer the content of a URL, from the cache if its expected digest is there
+	 *
+	 * @param url - the URL of the bundle
+	 * @param expectedDigest - the hexadecimal SHA-256 digest the content must have, or null
+	 * @return the content, which the caller must close
+	 * @throws IOException if the URL cannot be read, or its content does not have the expected digest
+	 */
+	public Content open(String url, String expectedDigest) throws IOException {
+		String expected = normalize(expectedDigest);
+		if (size > 0 && expected != null) {
+			Content cached = lookup(expected);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		File temp = File.createTempFile("download", ".tmp", directory);
+		boolean spooled = false;
+		try {
+			String digest = download(url, temp);
+			if (expected != null && !expected.equals(digest)) {
+				throw new IOException("The content of " + url + " has digest " + digest + " instead of " + expected);
+			}
+			if (size > 0) {
+				return store(url, digest, temp);
+			}
+			spooled = true;
+			return new Content(new FileInputStream(temp), digest, temp);
+		} finally {
+			if (!spooled) {
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Answer the content of a URL read straight from it, its digest is known once it has been read to its end
+	 *
+	 * @param url - the URL of the bundle
+	 * @return the content, which the caller must close
+	 * @throws IOException if the URL cannot be read
+	 */
+	public Content stream(String url) throws IOException {
+		MessageDigest messageDigest = newDigest();
+		return new Content(new DigestInputStream(new URL(url).openStream(), messageDigest), messageDigest);
+	}
+
+	/**
+	 * @return the cached content with the expected digest, or null if it must be downloaded
+	 */
+	private Content lookup(String expected) throws IOException {
+		synchronized (monitor) {
+			if (contents.containsKey(expected)) {
+				return read(expected);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Download the URL into the file
+	 *
+	 * @return the digest of the content
+	 */
+	private static String download(String url, File file) throws IOException {
+		MessageDigest messageDigest = newDigest();
+		InputStream in = null;
+		OutputStream out = null;
+		try {
+			in = new DigestInputStream(new URL(url).openStream(), messageDigest);
+			out = new FileOutputStream(file);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				if (Thread.currentThread().isInterrupted()) {
+					throw new IOException("Download of " + url + " cancelled");
+				}
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			closeQuietly(in);
+			if (out != null) {
+				out.close();
+			}
+		}
+		return toHex(messageDigest.digest());
+	}
+
+	private Content store(String url, String digest, File temp) throws IOException {
+		synchronized (monitor) {
+			File file = new File(directory, digest);
+			if (!contents.containsKey(digest)) {
+				if (!temp.renameTo(file)) {
+					throw new IOException("Unable to store " + url + " in the bundle cache");
+				}
+				contents.put(digest, file.length());
+				used += file.length();
+			}
+			evict(digest);
+			return read(digest);
+		}
+	}
+
+	/**
+	 * Evict the least recently used contents until the cache is within its size, the content just stored is kept
+	 */
+	private void evict(String keep) {
+		for (Iterator<Map.Entry<String, Long>> iterator = contents.entrySet().iterator(); used > size && iterator.hasNext();) {
+			Map.Entry<String, Long> entry = iterator.next();
+			File file = new File(directory, entry.getKey());
+			if (!entry.getKey().equals(keep) && (file.delete() || !file.exists())) {
+				iterator.remove();
+				used -= entry.getValue();
+			}
+		}
+	}
+
+	/**
+	 * Read a cached content under the monitor, so it is not evicted before it is opened, and make it the most recently
+	 * used
+	 */
+	private Content read(String digest) throws IOException {
+		contents.get(digest);
+		File file = new File(directory, digest);
+		file.setLastModified(System.currentTimeMillis());
+		return new Content(new FileInputStream(file), digest, null);
+	}
+
+	/**
+	 * Pick up the contents left by a previous run, least recently used first
+	 */
+	private void load() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		List<File> cached = new ArrayList<File>();
+		for (File file : files) {
+			if (DIGEST.matcher(file.getName()).matches()) {
+				cached.add(file);
+			} else {
+				file.delete();
+			}
+		}
+		File[] ordered = cached.toArray(new File[cached.size()]);
+		Arrays.sort(ordered, new Comparator<File>() {
+			public int compare(File file1, File file2) {
+				long modified1 = file1.lastModified();
+				long modified2 = file2.lastModified();
+				return modified1 < modified2 ? -1 : (modified1 == modified2 ? 0 : 1);
+			}
+		});
+		synchronized (monitor) {
+			for (File file : ordered) {
+				contents.put(file.getName(), file.length());
+				used += file.length();
+			}
+			evict(null);
+		}
+	}
+
+	private static String normalize(String digest) throws IOException {
+		if (digest == null) {
+			return null;
+		}
+		String normalized = digest.trim().toLowerCase(Locale.ENGLISH);
+		if (!DIGEST.matcher(normalized).matches()) {
+			throw new IOException("Invalid SHA-256 digest: " + digest);
+		}
+		return normalized;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(ALGORITHM + " is not available", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return builder.toString();
+	}
+
+	private static void closeQuietly(InputStream in) {
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static long getLong(BundleContext bundleContext, String key, long defaultValue) {
+		String value = bundleContext.getProperty(key);
+		if (value != null) {
+			try {
+				long parsed = Long.parseLong(value.trim());
+				if (parsed >= 0) {
+					return parsed;
+				}
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * The content of a URL and its digest, a spooled content is deleted when closed
+	 */
+	public static final class Content extends FilterInputStream {
+
+		private final File spool;
+
+		private final MessageDigest messageDigest;
+
+		private String digest;
+
+		private boolean ended = false;
+
+		private Content(InputStream in, String digest, File spool) {
+			super(in);
+			this.digest = digest;
+			this.spool = spool;
+			this.messageDigest = null;
+		}
+
+		private Content(DigestInputStream in, MessageDigest messageDigest) {
+			super(in);
+			this.spool = null;
+			this.messageDigest = messageDigest;
+		}
+
+		/**
+		 * @return the hexadecimal SHA-256 digest of the content, or null if it is streamed and has not been read to its
+		 *         end
+		 */
+		public String getDigest() {
+			if (digest == null && ended) {
+				digest = toHex(messageDigest.digest());
+			}
+			return digest;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = super.read();
+			ended |= read == -1;
+			return read;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			int read = super.read(bytes, offset, length);
+			ended |= read == -1;
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (messageDigest == null || n <= 0) {
+				return super.skip(n);
+			}
+			// read the skipped bytes into the digest
+			byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+			long skipped = 0;
+			while (skipped < n) {
+				int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+				if (read == -1) {
+					break;
+				}
+				skipped += read;
+			}
+			return skipped;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (spool != null) {
+					spool.delete();
+				}
+			}
+		}
+
+	}
+
+}
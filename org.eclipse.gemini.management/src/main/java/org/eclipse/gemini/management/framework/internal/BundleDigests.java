@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+/**
+ * The SHA-256 digests of the contents the bundles were last installed or updated from through the Framework MBean. A
+ * digest is only answered while the bundle has not been updated by other means since, which is told by its last
+ * modification time. The digests are kept in the data area of the management bundle so they survive restarts.
+ * <p>
+ * A digest is recorded in memory, the digests are written to the data area by {@link #flush()}, once for a whole batch,
+ * and by {@link #close()}. The digests recorded since the last flush are lost if the framework dies, the bundles are
+ * then updated again until their digests are recorded again.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class BundleDigests {
+
+	private static final String FILE_NAME = "digests.properties";
+
+	private static final char SEPARATOR = ':';
+
+	private final BundleContext bundleContext;
+
+	private final File file;
+
+	private final Properties digests = new Properties();
+
+	private boolean dirty = false;
+
+	/**
+	 *
+	 * @param bundleContext - the context to find the bundles and keep the digests in its data area
+	 */
+	public BundleDigests(BundleContext bundleContext) {
+		this.bundleContext = bundleContext;
+		this.file = bundleContext.getDataFile(FILE_NAME);
+		load();
+	}
+
+	/**
+	 * Record the digest of the content a bundle was just installed or updated from
+	 *
+	 * @param bundle
+	 * @param digest - the hexadecimal SHA-256 digest, or null if it is not known, the bundle has then no digest
+	 */
+	public synchronized void record(Bundle bundle, String digest) {
+		if (digest == null) {
+			digests.remove(String.valueOf(bundle.getBundleId()));
+		} else {
+			digests.setProperty(String.valueOf(bundle.getBundleId()), String.valueOf(bundle.getLastModified()) + SEPARATOR + digest);
+		}
+		dirty = true;
+	}
+
+	/**
+	 * Write the digests recorded since the last flush to the data area, forgetting those of the bundles uninstalled
+	 * since
+	 */
+	public synchronized void flush() {
+		if (!dirty) {
+			return;
+		}
+		for (String key : digests.stringPropertyNames()) {
+			try {
+				if (bundleContext.getBundle(Long.parseLong(key)) == null) {
+					digests.remove(key);
+				}
+			} catch (NumberFormatException e) {
+				digests.remove(key);
+			}
+		}
+		save();
+		dirty = false;
+	}
+
+	/**
+	 * Flush the digests, the management bundle is stopping
+	 */
+	public void close() {
+		flush();
+	}
+
+	/**
+	 * @param bundle
+	 * @return the digest of the content of the installed revision of the bundle, or null if it is not known
+	 */
+	public synchronized String getDigest(Bundle bundle) {
+		String value = digests.getProperty(String.valueOf(bundle.getBundleId()));
+		if (value == null) {
+			return null;
+		}
+		int separator = value.indexOf(SEPARATOR);
+		if (separator < 0 || !value.substring(0, separator).equals(String.valueOf(bundle.getLastModified()))) {
+			return null;
+		}
+		return value.substring(separator + 1);
+	}
+
+	private void load() {
+		if (file == null || !file.exists()) {
+			return;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			digests.load(in);
+		} catch (IOException e) {
+			// start afresh, the bundles are updated until their digests are recorded again
+			digests.clear();
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private void save() {
+		if (file == null) {
+			return;
+		}
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(file);
+			digests.store(out, null);
+		} catch (IOException e) {
+			// the digests are still known until the next restart
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+}
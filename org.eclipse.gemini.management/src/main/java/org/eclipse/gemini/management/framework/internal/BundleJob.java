@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.OpenDataException;
+
+import org.eclipse.gemini.management.framework.BundleJobStateMBean;
+
+/**
+ * A batch operation run in the background by {@link BundleJobs}, see {@link BundleJobStateMBean#JOB_TYPE}.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class BundleJob implements BatchProgress {
+
+	/**
+	 * The work of a job
+	 */
+	public interface Work {
+
+		/**
+		 * Run the batch, reporting its progress
+		 * 
+		 * @param progress
+		 * @return the result of the batch
+		 * @throws Exception if the batch cannot be run
+		 */
+		CompositeData run(BatchProgress progress) throws Exception;
+
+	}
+
+	private final long id;
+
+	private final String operation;
+
+	private final String[] items;
+
+	private final String[] itemStates;
+
+	private final Work work;
+
+	private String state = BundleJobStateMBean.PENDING;
+
+	private int finishedItems = 0;
+
+	private long startTime = -1;
+
+	private long endTime = -1;
+
+	private CompositeData result;
+
+	private String errorMessage;
+
+	private volatile boolean cancelled = false;
+
+	/**
+	 * 
+	 * @param id - the identifier of the job
+	 * @param operation - the name of the operation
+	 * @param items - the items of the batch, bundle locations or identifiers
+	 * @param work - the work of the job
+	 */
+	public BundleJob(long id, String operation, String[] items, Work work) {
+		this.id = id;
+		this.operation = operation;
+		this.items = items.clone();
+		this.itemStates = new String[items.length];
+		for (int i = 0; i < itemStates.length; i++) {
+			itemStates[i] = BundleJobStateMBean.PENDING;
+		}
+		this.work = work;
+	}
+
+	/**
+	 * @return the identifier of the job
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Run the job, unless it was cancelled before it started
+	 */
+	void run() {
+		synchronized (this) {
+			if (cancelled) {
+				finish();
+				return;
+			}
+			state = BundleJobStateMBean.RUNNING;
+			startTime = System.currentTimeMillis();
+		}
+		CompositeData batchResult = null;
+		String error = null;
+		try {
+			batchResult = work.run(this);
+		} catch (Throwable e) {
+			error = e.toString();
+		}
+		synchronized (this) {
+			result = batchResult;
+			errorMessage = error;
+			finish();
+		}
+	}
+
+	/**
+	 * Ask the job to stop before its next item
+	 * 
+	 * @return false if the job has already ended
+	 */
+	synchronized boolean cancel() {
+		if (endTime != -1) {
+			return false;
+		}
+		cancelled = true;
+		return true;
+	}
+
+	/**
+	 * @return the time the job ended, or -1 if it has not
+	 */
+	synchronized long getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * @return the result of the batch, or null if it has not ended or could not be run
+	 */
+	public synchronized CompositeData getResult() {
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void started(int item) {
+		itemStates[item] = BundleJobStateMBean.RUNNING;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void finished(int item, boolean success) {
+		itemStates[item] = success ? BundleJobStateMBean.COMPLETED : BundleJobStateMBean.FAILED;
+		finishedItems++;
+	}
+
+	/**
+	 * @return {@link CompositeData} representation of the job
+	 */
+	public synchronized CompositeData asCompositeData() {
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put(BundleJobStateMBean.JOB_ID, id);
+		values.put(BundleJobStateMBean.OPERATION, operation);
+		values.put(BundleJobStateMBean.JOB_STATE, state);
+		values.put(BundleJobStateMBean.ITEMS, items.clone());
+		values.put(BundleJobStateMBean.ITEM_STATES, itemStates.clone());
+		values.put(BundleJobStateMBean.FINISHED_ITEMS, finishedItems);
+		values.put(BundleJobStateMBean.ELAPSED_TIME, startTime == -1 ? 0 : (endTime == -1 ? System.currentTimeMillis() : endTime) - startTime);
+		values.put(BundleJobStateMBean.ERROR, errorMessage);
+		try {
+			return new CompositeDataSupport(BundleJobStateMBean.JOB_TYPE, values);
+		} catch (OpenDataException e) {
+			throw new IllegalStateException("Cannot form bundle job open data", e);
+		}
+	}
+
+	/**
+	 * End the job, it is cancelled if it was asked to and some of its items were not started
+	 */
+	private void finish() {
+		state = BundleJobStateMBean.FINISHED;
+		endTime = System.currentTimeMillis();
+		if (startTime == -1) {
+			startTime = endTime;
+		}
+		if (cancelled) {
+			for (int i = 0; i < itemStates.length; i++) {
+				if (BundleJobStateMBean.PENDING.equals(itemStates[i])) {
+					itemStates[i] = BundleJobStateMBean.CANCELLED;
+					state = BundleJobStateMBean.CANCELLED;
+				}
+			}
+		}
+	}
+
+}
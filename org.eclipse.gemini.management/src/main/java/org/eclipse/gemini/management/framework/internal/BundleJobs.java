@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.BundleContext;
+
+/**
+ * The {@link BundleJob}s submitted through the Framework MBean. The jobs are run one after the other, in the order they
+ * were submitted, on a thread that ends when there are no jobs left. A job that has ended is dropped once the retention
+ * period has passed.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class BundleJobs {
+
+	/**
+	 * The framework property holding the milliseconds an ended job is kept, 10 minutes by default
+	 */
+	public static final String JOB_RETENTION = "org.eclipse.gemini.management.framework.job.retention";
+
+	private static final long DEFAULT_RETENTION = 10 * 60 * 1000L;
+
+	private final long retention;
+
+	private final AtomicLong nextId = new AtomicLong(1);
+
+	private final ConcurrentSkipListMap<Long, BundleJob> jobs = new ConcurrentSkipListMap<Long, BundleJob>();
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * 
+	 * @param bundleContext - the context to read the retention period from
+	 */
+	public BundleJobs(BundleContext bundleContext) {
+		this.retention = getRetention(bundleContext);
+		this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "JMX Core Bundle Jobs");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Queue a job
+	 * 
+	 * @param operation - the name of the operation
+	 * @param items - the items of the batch, bundle locations or identifiers
+	 * @param work - the work of the job
+	 * @return the identifier of the job
+	 */
+	public long submit(String operation, String[] items, BundleJob.Work work) {
+		evict();
+		final BundleJob job = new BundleJob(nextId.getAndIncrement(), operation, items, work);
+		jobs.put(job.getId(), job);
+		executor.execute(new Runnable() {
+			public void run() {
+				job.run();
+			}
+		});
+		return job.getId();
+	}
+
+	/**
+	 * @param id
+	 * @return the job, or null if there is no such job or it has been dropped
+	 */
+	public BundleJob getJob(long id) {
+		evict();
+		return jobs.get(id);
+	}
+
+	/**
+	 * @return the jobs, in the order they were submitted
+	 */
+	public List<BundleJob> getJobs() {
+		evict();
+		return new ArrayList<BundleJob>(jobs.values());
+	}
+
+	/**
+	 * Ask a job to stop before its next item
+	 * 
+	 * @param id
+	 * @return false if there is no such job or it has already ended
+	 */
+	public boolean cancel(long id) {
+		BundleJob job = getJob(id);
+		return job != null && job.cancel();
+	}
+
+	/**
+	 * Cancel the jobs that have not ended and stop the thread running them
+	 */
+	public void close() {
+		for (BundleJob job : jobs.values()) {
+			job.cancel();
+		}
+		executor.shutdown();
+	}
+
+	private void evict() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Map.Entry<Long, BundleJob>> iterator = jobs.entrySet().iterator(); iterator.hasNext();) {
+			long endTime = iterator.next().getValue().getEndTime();
+			if (endTime != -1 && now - endTime > retention) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static long getRetention(BundleContext bundleContext) {
+		String retention = bundleContext.getProperty(JOB_RETENTION);
+		if (retention != null) {
+			try {
+				long value = Long.parseLong(retention.trim());
+				if (value >= 0) {
+					return value;
+				}
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return DEFAULT_RETENTION;
+	}
+
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.gemini.management.framework.internal.BundleCache.Content;
+
+/**
+ * Downloads the contents of a batch of URLs ahead of the bundle operations that read them, so the downloads overlap
+ * each other and the installs or updates. The contents are fetched through the {@link BundleCache}, which holds them in
+ * local files, no more than a window of twice the parallelism ahead of the item being read, and are read back in the
+ * order of the batch.
+ * <p>
+ * {@link #close()} interrupts the downloads, waits for them to end and releases the contents not read. This class is not thread-safe, it is meant
+ * to be used by the thread running the batch.
+ */
+public final class BundlePrefetcher {
+
+	private final String[] urls;
+
+	private final BundleCache cache;
+
+	private final int window;
+
+	private final ExecutorService executor;
+
+	private final Future<?>[] downloads;
+
+	private int submitted = 0;
+
+	/**
+	 *
+	 * @param urls - the URLs of the batch, in order
+	 * @param cache - the cache to download the URLs through
+	 * @param parallelism - the maximum number of URLs downloaded at the same time
+	 */
+	public BundlePrefetcher(String[] urls, BundleCache cache, int parallelism) {
+		this.urls = urls;
+		this.cache = cache;
+		int threads = Math.max(1, parallelism);
+		this.window = 2 * threads;
+		this.downloads = new Future<?>[urls == null ? 0 : urls.length];
+		this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, downloads.length)), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "JMX Core Bundle Download");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		submitUpTo(window);
+	}
+
+	/**
+	 * Answer the content of a URL of the batch, waiting for its download
+	 *
+	 * @param index - the index of the URL in the batch
+	 * @return the downloaded content, which the caller must close
+	 * @throws IOException if the URL could not be downloaded
+	 */
+	public Content open(int index) throws IOException {
+		String url = urls[index];
+		submitUpTo(index + 1 + window);
+		try {
+			Content content = (Content) downloads[index].get();
+			downloads[index] = null;
+			return content;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while downloading " + url);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			IOException iox = new IOException("Unable to download " + url);
+			iox.initCause(e.getCause());
+			throw iox;
+		}
+	}
+
+	/**
+	 * Stop the downloads and release the contents that were not read
+	 */
+	public void close() {
+		// not cancelled, a cancelled download would drop the content it has just spooled
+		executor.shutdownNow();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				// an interrupted download ends at its next read
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (int i = 0; i < submitted; i++) {
+			Future<?> download = downloads[i];
+			if (download != null && download.isDone()) {
+				try {
+					((Content) download.get()).close();
+				} catch (Exception e) {
+					// nothing was downloaded
+				}
+			}
+		}
+	}
+
+	private void submitUpTo(int end) {
+		for (; submitted < Math.min(end, downloads.length); submitted++) {
+			final String url = urls[submitted];
+			downloads[submitted] = executor.submit(new Callable<Content>() {
+				public Content call() throws IOException {
+					Content content = cache.open(url, null);
+					if (Thread.interrupted()) {
+						// interrupted by close() after the copy, no one will read the content
+						content.close();
+						throw new IOException("Download of " + url + " cancelled");
+					}
+					return content;
+				}
+			});
+		}
+	}
+
+}
@@ -17,23 +17,23 @@ package org.eclipse.gemini.management.framework.internal;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
-import javax.management.openmbean.TabularDataSupport;
 
+import org.eclipse.gemini.management.internal.ArrayTabularData;
 import org.eclipse.gemini.management.internal.BundleUtil;
+import org.eclipse.gemini.management.internal.CompositeDataFactory;
+import org.eclipse.gemini.management.internal.ItemProjection;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.wiring.BundleRevision;
 import org.osgi.framework.wiring.BundleWire;
 import org.osgi.framework.wiring.BundleWiring;
@@ -48,10 +48,34 @@ import org.osgi.jmx.framework.BundleStateMBean;
  * It serves as both the documentation of the type structure and as the
  * codification of the mechanism to convert to/from the CompositeData.
  * <p>
+ * The bundle's {@link BundleWiring} and {@link BundleStartLevel} are adapted at most once per instance, and the wires
+ * of the wiring are fetched at most once and shared by every attribute derived from them. An instance is therefore a
+ * view of the bundle at the time it is first encoded and should not be kept for later use.
  */
 public final class OSGiBundle {
 	
-	private Bundle bundle;
+	private static final String[] ITEMS = {BundleStateMBean.IDENTIFIER, BundleStateMBean.LOCATION, BundleStateMBean.SYMBOLIC_NAME,
+			BundleStateMBean.VERSION, BundleStateMBean.START_LEVEL, BundleStateMBean.STATE, BundleStateMBean.LAST_MODIFIED,
+			BundleStateMBean.PERSISTENTLY_STARTED, BundleStateMBean.ACTIVATION_POLICY_USED, BundleStateMBean.REMOVAL_PENDING,
+			BundleStateMBean.REQUIRED, BundleStateMBean.FRAGMENT, BundleStateMBean.REGISTERED_SERVICES, BundleStateMBean.SERVICES_IN_USE,
+			BundleStateMBean.HEADERS, BundleStateMBean.EXPORTED_PACKAGES, BundleStateMBean.IMPORTED_PACKAGES, BundleStateMBean.FRAGMENTS,
+			BundleStateMBean.HOSTS, BundleStateMBean.REQUIRING_BUNDLES, BundleStateMBean.REQUIRED_BUNDLES};
+
+	private static final CompositeDataFactory BUNDLE = new CompositeDataFactory(BundleStateMBean.BUNDLE_TYPE, ITEMS);
+
+	private static final CompositeDataFactory HEADER = new CompositeDataFactory(BundleStateMBean.HEADER_TYPE, BundleStateMBean.KEY, BundleStateMBean.VALUE);
+
+	private final Bundle bundle;
+
+	private BundleWiring wiring;
+
+	private boolean wiringAdapted = false;
+
+	private BundleStartLevel startLevel;
+
+	private List<BundleWire> requiredWires;
+
+	private List<BundleWire> providedWires;
 
 	/**
 	 * Construct an OSGiBundle representation
@@ -63,42 +87,53 @@ public final class OSGiBundle {
 	}
 
 	public static TabularData tableFrom(List<OSGiBundle> bundles, String... bundleTypeItems) throws IOException {
-		List<String> bundleTypes = Arrays.asList(bundleTypeItems);
-		TabularDataSupport table = new TabularDataSupport(BundleStateMBean.BUNDLES_TYPE);
+		ItemProjection projection = new ItemProjection(BundleStateMBean.BUNDLE_TYPE, BundleStateMBean.IDENTIFIER, bundleTypeItems);
+		List<CompositeData> rows = new ArrayList<CompositeData>(bundles.size());
 		for (OSGiBundle bundle : bundles) {
-			table.put(bundle.asCompositeData(bundleTypes));
+			rows.add(bundle.asCompositeData(projection));
 		}
-		return table;
+		return new ArrayTabularData(BundleStateMBean.BUNDLES_TYPE, rows);
 	}
-	
-	private CompositeData asCompositeData(List<String> bundleTypes) throws IOException {
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(BundleStateMBean.IDENTIFIER, getIdentifier());
-		items.put(BundleStateMBean.LOCATION, 				bundleTypes.contains(BundleStateMBean.LOCATION) ? 				getLocation() : null);
-		items.put(BundleStateMBean.SYMBOLIC_NAME, 			bundleTypes.contains(BundleStateMBean.SYMBOLIC_NAME) ? 			getSymbolicName() : null);
-		items.put(BundleStateMBean.VERSION, 				bundleTypes.contains(BundleStateMBean.VERSION) ? 				getVersion() : null);
-		items.put(BundleStateMBean.START_LEVEL, 			bundleTypes.contains(BundleStateMBean.START_LEVEL) ? 			getStartLevel() : null);
-		items.put(BundleStateMBean.STATE, 					bundleTypes.contains(BundleStateMBean.STATE) ? 					getState() : null);
-		items.put(BundleStateMBean.LAST_MODIFIED, 			bundleTypes.contains(BundleStateMBean.LAST_MODIFIED) ? 			getLastModified() : null);
-		items.put(BundleStateMBean.PERSISTENTLY_STARTED, 	bundleTypes.contains(BundleStateMBean.PERSISTENTLY_STARTED) ? 	isPersistentlyStarted() : null);
-		items.put(BundleStateMBean.ACTIVATION_POLICY_USED, 	bundleTypes.contains(BundleStateMBean.ACTIVATION_POLICY_USED) ? isActivationPolicyUsed() : null);
-		items.put(BundleStateMBean.REMOVAL_PENDING, 		bundleTypes.contains(BundleStateMBean.REMOVAL_PENDING) ? 		isRemovalPending() : null);
-		items.put(BundleStateMBean.REQUIRED, 				bundleTypes.contains(BundleStateMBean.REQUIRED) ? 				isRequired() : null);
-		items.put(BundleStateMBean.FRAGMENT, 				bundleTypes.contains(BundleStateMBean.FRAGMENT) ? 				isFragment() : null);
-		items.put(BundleStateMBean.REGISTERED_SERVICES, 	bundleTypes.contains(BundleStateMBean.REGISTERED_SERVICES) ? 	getRegisteredServices() : null);
-		items.put(BundleStateMBean.SERVICES_IN_USE, 		bundleTypes.contains(BundleStateMBean.SERVICES_IN_USE) ? 		getServicesInUse() : null);
-		items.put(BundleStateMBean.HEADERS, 				bundleTypes.contains(BundleStateMBean.HEADERS) ? 				getHeaders() : null);
-		items.put(BundleStateMBean.EXPORTED_PACKAGES, 		bundleTypes.contains(BundleStateMBean.EXPORTED_PACKAGES) ? 		getExportedPackages() : null);
-		items.put(BundleStateMBean.IMPORTED_PACKAGES, 		bundleTypes.contains(BundleStateMBean.IMPORTED_PACKAGES) ? 		getImportedPackages() : null);
-		items.put(BundleStateMBean.FRAGMENTS, 				bundleTypes.contains(BundleStateMBean.FRAGMENTS) ? 				getFragments() : null);
-		items.put(BundleStateMBean.HOSTS, 					bundleTypes.contains(BundleStateMBean.HOSTS) ? 					getHosts() : null);
-		items.put(BundleStateMBean.REQUIRING_BUNDLES, 		bundleTypes.contains(BundleStateMBean.REQUIRING_BUNDLES) ? 		getRequiringBundles() : null);
-		items.put(BundleStateMBean.REQUIRED_BUNDLES, 		bundleTypes.contains(BundleStateMBean.REQUIRED_BUNDLES) ? 		getRequiredBundles() : null);
-		try {
-			return new CompositeDataSupport(BundleStateMBean.BUNDLE_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form bundle open data", e);
+
+	/**
+	 * Answer the TabularData of already encoded bundles, keeping only the requested items
+	 *
+	 * @param bundles - the CompositeData of the bundles
+	 * @param bundleTypeItems - the items to keep, the identifier is always kept
+	 * @return the TabularData of the projected bundles
+	 */
+	public static TabularData tableFromEncoded(Collection<CompositeData> bundles, String... bundleTypeItems) {
+		ItemProjection projection = new ItemProjection(BundleStateMBean.BUNDLE_TYPE, BundleStateMBean.IDENTIFIER, bundleTypeItems);
+		List<CompositeData> rows = new ArrayList<CompositeData>(bundles.size());
+		for (CompositeData bundle : bundles) {
+			rows.add(projection.project(bundle));
 		}
+		return new ArrayTabularData(BundleStateMBean.BUNDLES_TYPE, rows);
+	}
+
+	private CompositeData asCompositeData(ItemProjection projection) throws IOException {
+		return BUNDLE.create(
+				getIdentifier(),
+				projection.contains(BundleStateMBean.LOCATION) ? getLocation() : null,
+				projection.contains(BundleStateMBean.SYMBOLIC_NAME) ? getSymbolicName() : null,
+				projection.contains(BundleStateMBean.VERSION) ? getVersion() : null,
+				projection.contains(BundleStateMBean.START_LEVEL) ? getStartLevel() : null,
+				projection.contains(BundleStateMBean.STATE) ? getState() : null,
+				projection.contains(BundleStateMBean.LAST_MODIFIED) ? getLastModified() : null,
+				projection.contains(BundleStateMBean.PERSISTENTLY_STARTED) ? isPersistentlyStarted() : null,
+				projection.contains(BundleStateMBean.ACTIVATION_POLICY_USED) ? isActivationPolicyUsed() : null,
+				projection.contains(BundleStateMBean.REMOVAL_PENDING) ? isRemovalPending() : null,
+				projection.contains(BundleStateMBean.REQUIRED) ? isRequired() : null,
+				projection.contains(BundleStateMBean.FRAGMENT) ? isFragment() : null,
+				projection.contains(BundleStateMBean.REGISTERED_SERVICES) ? getRegisteredServices() : null,
+				projection.contains(BundleStateMBean.SERVICES_IN_USE) ? getServicesInUse() : null,
+				projection.contains(BundleStateMBean.HEADERS) ? headerTable(getHeaders()) : null,
+				projection.contains(BundleStateMBean.EXPORTED_PACKAGES) ? getExportedPackages() : null,
+				projection.contains(BundleStateMBean.IMPORTED_PACKAGES) ? getImportedPackages() : null,
+				projection.contains(BundleStateMBean.FRAGMENTS) ? getFragments() : null,
+				projection.contains(BundleStateMBean.HOSTS) ? getHosts() : null,
+				projection.contains(BundleStateMBean.REQUIRING_BUNDLES) ? getRequiringBundles() : null,
+				projection.contains(BundleStateMBean.REQUIRED_BUNDLES) ? getRequiredBundles() : null);
 	}
 
 	/**
@@ -109,35 +144,62 @@ public final class OSGiBundle {
 	 * @throws IOException 
 	 */
 	public CompositeData asCompositeData() throws IOException {
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(BundleStateMBean.IDENTIFIER, getIdentifier());
-		items.put(BundleStateMBean.LOCATION, getLocation());
-		items.put(BundleStateMBean.SYMBOLIC_NAME, getSymbolicName());
-		items.put(BundleStateMBean.VERSION, getVersion());
-		items.put(BundleStateMBean.START_LEVEL, getStartLevel());
-		items.put(BundleStateMBean.STATE, getState());
-		items.put(BundleStateMBean.LAST_MODIFIED, getLastModified());
-		items.put(BundleStateMBean.PERSISTENTLY_STARTED, isPersistentlyStarted());
-		items.put(BundleStateMBean.ACTIVATION_POLICY_USED, isActivationPolicyUsed());
-		items.put(BundleStateMBean.REMOVAL_PENDING, isRemovalPending());
-		items.put(BundleStateMBean.REQUIRED, isRequired());
-		items.put(BundleStateMBean.FRAGMENT, isFragment());
-		items.put(BundleStateMBean.REGISTERED_SERVICES, getRegisteredServices());
-		items.put(BundleStateMBean.SERVICES_IN_USE, getServicesInUse());
-		items.put(BundleStateMBean.HEADERS, headerTable(getHeaders()));
-		items.put(BundleStateMBean.EXPORTED_PACKAGES, getExportedPackages());
-		items.put(BundleStateMBean.IMPORTED_PACKAGES, getImportedPackages());
-		items.put(BundleStateMBean.FRAGMENTS, getFragments());
-		items.put(BundleStateMBean.HOSTS, getHosts());
-		items.put(BundleStateMBean.REQUIRING_BUNDLES, getRequiringBundles());
-		items.put(BundleStateMBean.REQUIRED_BUNDLES, getRequiredBundles());
+		return BUNDLE.create(
+				getIdentifier(),
+				getLocation(),
+				getSymbolicName(),
+				getVersion(),
+				getStartLevel(),
+				getState(),
+				getLastModified(),
+				isPersistentlyStarted(),
+				isActivationPolicyUsed(),
+				isRemovalPending(),
+				isRequired(),
+				isFragment(),
+				getRegisteredServices(),
+				getServicesInUse(),
+				headerTable(getHeaders()),
+				getExportedPackages(),
+				getImportedPackages(),
+				getFragments(),
+				getHosts(),
+				getRequiringBundles(),
+				getRequiredBundles());
+	}
+	
+	/**
+	 * Answer the encoded bundle with the items that change without a bundle event read again from the bundle: its
+	 * state, start level, last modified time, persistently started and activation policy flags, registered services
+	 * and services in use.
+	 *
+	 * @param encoded - the encoding of the bundle
+	 * @param bundle - the bundle
+	 * @return the current encoding of the bundle, or null if it has been uninstalled
+	 */
+	public static CompositeData withCurrentState(CompositeData encoded, Bundle bundle) {
+		OSGiBundle current = new OSGiBundle(bundle);
+		Object[] values = encoded.getAll(ITEMS);
 		try {
-			return new CompositeDataSupport(BundleStateMBean.BUNDLE_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form bundle open data", e);
+			values[4] = current.getStartLevel();
+			values[5] = current.getState();
+			values[6] = current.getLastModified();
+			values[7] = current.isPersistentlyStarted();
+			values[8] = current.isActivationPolicyUsed();
+			values[12] = current.getRegisteredServices();
+			values[13] = current.getServicesInUse();
+		} catch (IllegalArgumentException e) {
+			// uninstalled since it was encoded
+			return null;
+		} catch (IllegalStateException e) {
+			return null;
 		}
+		if (bundle.getState() == Bundle.UNINSTALLED) {
+			return null;
+		}
+		return BUNDLE.create(values);
 	}
-	
+
 	/**
 	 * Answer the TabularData representing the supplied map of bundle headers
 	 * 
@@ -145,23 +207,16 @@ public final class OSGiBundle {
 	 * @return the bundle headers
 	 */
 	public static TabularData headerTable(Dictionary<String, String> headersDictionary) {
-		TabularDataSupport table = new TabularDataSupport(BundleStateMBean.HEADERS_TYPE);
+		List<CompositeData> rows = new ArrayList<CompositeData>(headersDictionary.size());
 		for(Enumeration<String> headers = headersDictionary.keys(); headers.hasMoreElements();) {
 			String key = (String) headers.nextElement();
-			table.put(getHeaderCompositeData(key, (String) headersDictionary.get(key)));
+			rows.add(getHeaderCompositeData(key, (String) headersDictionary.get(key)));
 		}
-		return table;
+		return new ArrayTabularData(BundleStateMBean.HEADERS_TYPE, rows);
 	}
 
 	private static CompositeData getHeaderCompositeData(String key, String value) {
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(BundleStateMBean.KEY, key);
-		items.put(BundleStateMBean.VALUE, value);		
-		try {
-			return new CompositeDataSupport(BundleStateMBean.HEADER_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form bundle header open data", e);
-		}
+		return HEADER.create(key, value);
 	}
 
 	/**
@@ -170,7 +225,7 @@ public final class OSGiBundle {
 	 * 
 	 */
 	private String[] getExportedPackages() {
-		return BundleUtil.getBundleExportedPackages(bundle);
+		return BundleUtil.getPackageNames(wiresOf(getProvidedWires(), BundleRevision.PACKAGE_NAMESPACE));
 	}
 
 	/**
@@ -185,18 +240,14 @@ public final class OSGiBundle {
 	 *         bundle as a host
 	 */
 	private Long[] getFragments() {
-		BundleWiring wiring = bundle.adapt(BundleWiring.class);
-		List<BundleWire> requiredWires = wiring.getRequiredWires(BundleRevision.HOST_NAMESPACE);
-        return OSGiBundle.bundleWiresToProviderIds(requiredWires);
+        return OSGiBundle.bundleWiresToProviderIds(wiresOf(getRequiredWires(), BundleRevision.HOST_NAMESPACE));
 	}
 
 	/**
 	 * @return list of identifiers of the bundles which host this fragment
 	 */
 	private Long[] getHosts() {
-		BundleWiring wiring = bundle.adapt(BundleWiring.class);
-		List<BundleWire> providedWires = wiring.getProvidedWires(BundleRevision.HOST_NAMESPACE);
-        return OSGiBundle.bundleWiresToRequirerIds(providedWires);
+        return OSGiBundle.bundleWiresToRequirerIds(wiresOf(getProvidedWires(), BundleRevision.HOST_NAMESPACE));
 	}
 
 	/**
@@ -211,7 +262,7 @@ public final class OSGiBundle {
 	 *         <packageName>;<version>
 	 */
 	private String[] getImportedPackages() {
-		return BundleUtil.getBundleImportedPackages(bundle);
+		return BundleUtil.getPackageNames(wiresOf(getRequiredWires(), BundleRevision.PACKAGE_NAMESPACE));
 	}
 
 	/**
@@ -240,7 +291,7 @@ public final class OSGiBundle {
 	 * @throws IOException 
 	 */
 	private Long[] getRequiredBundles() throws IOException {
-        return BundleUtil.getRequiredBundles(bundle);
+        return OSGiBundle.bundleWiresToProviderIds(getRequiredWires());
 	}
 
 	/**
@@ -248,7 +299,7 @@ public final class OSGiBundle {
 	 * @throws IOException 
 	 */
 	private Long[] getRequiringBundles() throws IOException {
-        return BundleUtil.getRequiringBundles(bundle);
+        return OSGiBundle.bundleWiresToRequirerIds(getProvidedWires());
 	}
 
 	/**
@@ -262,7 +313,7 @@ public final class OSGiBundle {
 	 * @return the start level of this bundle
 	 */
 	private int getStartLevel() {
-		return BundleUtil.getBundleStartLevel(bundle);
+		return getBundleStartLevel().getStartLevel();
 	}
 
 	/**
@@ -290,6 +341,10 @@ public final class OSGiBundle {
 	 * @return true if this bundle represents a fragment
 	 */
 	private boolean isFragment() {
+		BundleWiring wiring = getWiring();
+		if (wiring != null) {
+			return 0 != (wiring.getRevision().getTypes() & BundleRevision.TYPE_FRAGMENT);
+		}
 		return BundleUtil.isBundleFragment(bundle);
 	}
 
@@ -297,28 +352,84 @@ public final class OSGiBundle {
 	 * @return true if this bundle is persistently started
 	 */
 	private boolean isPersistentlyStarted() {
-		return BundleUtil.isBundlePersistentlyStarted(bundle);
+		return getBundleStartLevel().isPersistentlyStarted();
 	}
 
 	/**
 	 * @return true if this bundle is persistently started
 	 */
 	private boolean isActivationPolicyUsed() {
-		return BundleUtil.isBundleActivationPolicyUsed(bundle);
+		return getBundleStartLevel().isActivationPolicyUsed();
 	}
 
 	/**
 	 * @return true if this bundle is pending removal
 	 */
 	private boolean isRemovalPending() {
-		return BundleUtil.isRemovalPending(bundle);
+		BundleWiring wiring = getWiring();
+		return wiring != null && !wiring.isCurrent() && wiring.isInUse();
 	}
 
 	/**
 	 * @return true if this bundle is required
 	 */
 	private boolean isRequired() {
-		return BundleUtil.isRequired(bundle);
+		return getProvidedWires().size() > 0;
+	}
+
+	/**
+	 * @return the wiring of this bundle, adapted once, or null if the bundle has no wiring
+	 */
+	private BundleWiring getWiring() {
+		if (!wiringAdapted) {
+			wiring = bundle.adapt(BundleWiring.class);
+			wiringAdapted = true;
+		}
+		return wiring;
+	}
+
+	/**
+	 * @return the start level of this bundle, adapted once
+	 */
+	private BundleStartLevel getBundleStartLevel() {
+		if (startLevel == null) {
+			startLevel = bundle.adapt(BundleStartLevel.class);
+		}
+		return startLevel;
+	}
+
+	/**
+	 * @return the wires required by this bundle in all namespaces, fetched once
+	 */
+	private List<BundleWire> getRequiredWires() {
+		if (requiredWires == null) {
+			BundleWiring wiring = getWiring();
+			List<BundleWire> wires = wiring == null ? null : wiring.getRequiredWires(null);
+			requiredWires = wires == null ? Collections.<BundleWire>emptyList() : wires;
+		}
+		return requiredWires;
+	}
+
+	/**
+	 * @return the wires provided by this bundle in all namespaces, fetched once
+	 */
+	private List<BundleWire> getProvidedWires() {
+		if (providedWires == null) {
+			BundleWiring wiring = getWiring();
+			List<BundleWire> wires = wiring == null ? null : wiring.getProvidedWires(null);
+			providedWires = wires == null ? Collections.<BundleWire>emptyList() : wires;
+		}
+		return providedWires;
+	}
+
+	private static List<BundleWire> wiresOf(List<BundleWire> wires, String namespace) {
+		List<BundleWire> namespaceWires = new ArrayList<BundleWire>(wires.size());
+		for (BundleWire wire : wires) {
+			if (namespace.equals(wire.getCapability().getNamespace())) {
+				namespaceWires.add(wire);
+			}
+		}
+		return namespaceWires;
 	}
 
 	public static Long[] bundleWiresToRequirerIds(List<BundleWire> wires){
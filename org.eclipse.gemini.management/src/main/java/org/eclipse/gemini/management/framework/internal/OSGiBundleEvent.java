@@ -15,13 +15,13 @@
 
 package org.eclipse.gemini.management.framework.internal;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.OpenDataException;
 
+import org.eclipse.gemini.management.internal.CompositeDataFactory;
 import org.osgi.framework.BundleEvent;
 import org.osgi.jmx.framework.BundleStateMBean;
 
@@ -55,6 +55,9 @@ import org.osgi.jmx.framework.BundleStateMBean;
  */
 public final class OSGiBundleEvent {
 
+	private static final CompositeDataFactory BUNDLE_EVENT = new CompositeDataFactory(BundleStateMBean.BUNDLE_EVENT_TYPE, BundleStateMBean.IDENTIFIER,
+			BundleStateMBean.LOCATION, BundleStateMBean.SYMBOLIC_NAME, BundleStateMBean.EVENT);
+
 	private long bundleId;
 
 	private int eventType;
@@ -76,22 +79,56 @@ public final class OSGiBundleEvent {
 		this.eventType =  event.getType();
 	}
 
+	private OSGiBundleEvent() {
+	}
+
+	/**
+	 * Write the receiver to the output
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeLong(bundleId);
+		out.writeInt(eventType);
+		writeString(out, location);
+		writeString(out, symbolicName);
+	}
+
+	/**
+	 * Read an OSGiBundleEvent written by {@link #writeTo(DataOutput)}
+	 * 
+	 * @param in
+	 * @return the event
+	 * @throws IOException
+	 */
+	public static OSGiBundleEvent readFrom(DataInput in) throws IOException {
+		OSGiBundleEvent event = new OSGiBundleEvent();
+		event.bundleId = in.readLong();
+		event.eventType = in.readInt();
+		event.location = readString(in);
+		event.symbolicName = readString(in);
+		return event;
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
 	/**
 	 * Answer the receiver encoded as CompositeData
 	 * 
 	 * @return the CompositeData encoding of the receiver.
 	 */
 	public CompositeData asCompositeData() {
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(BundleStateMBean.IDENTIFIER, bundleId);
-		items.put(BundleStateMBean.LOCATION, location);
-		items.put(BundleStateMBean.SYMBOLIC_NAME, symbolicName);
-		items.put(BundleStateMBean.EVENT, eventType);
-		try {
-			return new CompositeDataSupport(BundleStateMBean.BUNDLE_EVENT_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form bundle event open data", e);
-		}
+		return BUNDLE_EVENT.create(bundleId, location, symbolicName, eventType);
 	}
 
 }
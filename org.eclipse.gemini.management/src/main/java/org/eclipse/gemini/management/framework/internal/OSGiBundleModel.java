@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.management.openmbean.CompositeData;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.jmx.framework.BundleStateMBean;
+
+/**
+ * A copy-on-write model of the encoded {@link OSGiBundle} data of every bundle in the framework.
+ * <p>
+ * The model caches the items of a bundle that only change with a bundle event: its location, name, version, headers
+ * and the items derived from its wiring. While open it listens to the bundle events that change them and marks the
+ * bundles they affect as stale, which is all the work done on the thread delivering the event. The stale bundles are
+ * re-encoded, together with the bundles they were or now are wired to, by the next read, which publishes them all in a
+ * single copy of the model.
+ * <p>
+ * The items that change without an event, or with an event the model does not follow, are read from the bundle by
+ * every read: its state, start level, last modified time, persistently started and activation policy flags and its
+ * registered services and services in use. A read therefore answers the same data as encoding every bundle afresh.
+ * <p>
+ * This class is thread-safe, reads do not take a lock unless a stale bundle has to be re-encoded.
+ */
+public final class OSGiBundleModel {
+
+	private static final SortedMap<Long, CompositeData> EMPTY = Collections.unmodifiableSortedMap(new TreeMap<Long, CompositeData>());
+
+	private final BundleContext bundleContext;
+
+	private final Tracker tracker = new Tracker();
+
+	private final Object writeLock = new Object();
+
+	private volatile SortedMap<Long, CompositeData> snapshot = EMPTY;
+
+	private volatile boolean open = false;
+
+	private final Object staleLock = new Object();
+
+	private volatile boolean stale = false;
+
+	// bundle id to whether its wiring may have changed, guarded by staleLock
+	private Map<Long, Boolean> staleBundles = new HashMap<Long, Boolean>();
+
+	// guarded by staleLock
+	private boolean allStale = false;
+
+	/**
+	 *
+	 * @param bundleContext
+	 */
+	public OSGiBundleModel(BundleContext bundleContext) {
+		this.bundleContext = bundleContext;
+	}
+
+	/**
+	 * Start listening to the framework, the model is built from the current bundles by the next read.
+	 */
+	public void open() {
+		synchronized (writeLock) {
+			if (open) {
+				return;
+			}
+			bundleContext.addBundleListener(tracker);
+			this.open = true;
+			markAllStale();
+		}
+	}
+
+	/**
+	 * Stop listening to the framework and discard the model.
+	 */
+	public void close() {
+		synchronized (writeLock) {
+			if (!open) {
+				return;
+			}
+			this.open = false;
+			try {
+				bundleContext.removeBundleListener(tracker);
+			} catch (IllegalStateException e) {
+				// the bundle has stopped and its listeners are already gone
+			}
+			this.snapshot = EMPTY;
+			synchronized (staleLock) {
+				this.staleBundles = new HashMap<Long, Boolean>();
+				this.allStale = false;
+				this.stale = false;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the model is being maintained
+	 */
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Answer the encoded data of every bundle in the framework. The bundles marked as stale since the last read are
+	 * re-encoded before answering, and the items that are not cached are read from each bundle. When the model is not
+	 * open every bundle is encoded from the framework.
+	 *
+	 * @return the CompositeData of all bundles, ordered by bundle id
+	 * @throws IOException
+	 */
+	public Collection<CompositeData> getBundles() throws IOException {
+		if (!open) {
+			Bundle[] bundles = bundleContext.getBundles();
+			List<CompositeData> encoded = new ArrayList<CompositeData>(bundles.length);
+			for (Bundle bundle : bundles) {
+				encoded.add(new OSGiBundle(bundle).asCompositeData());
+			}
+			return encoded;
+		}
+		if (stale) {
+			synchronized (writeLock) {
+				if (open) {
+					refresh();
+				}
+			}
+		}
+		SortedMap<Long, CompositeData> cached = snapshot;
+		List<CompositeData> bundles = new ArrayList<CompositeData>(cached.size());
+		for (CompositeData data : cached.values()) {
+			Bundle bundle = bundleContext.getBundle((Long) data.get(BundleStateMBean.IDENTIFIER));
+			if (bundle != null) {
+				CompositeData current = OSGiBundle.withCurrentState(data, bundle);
+				if (current != null) {
+					bundles.add(current);
+				}
+			}
+		}
+		return bundles;
+	}
+
+	/**
+	 * Re-encode the stale bundles and publish them in a single copy of the model. If a bundle cannot be encoded every
+	 * bundle is re-encoded by the next read.
+	 */
+	private void refresh() throws IOException {
+		Map<Long, Boolean> bundles;
+		boolean all;
+		synchronized (staleLock) {
+			bundles = staleBundles;
+			all = allStale;
+			staleBundles = new HashMap<Long, Boolean>();
+			allStale = false;
+			stale = false;
+		}
+		try {
+			if (all) {
+				SortedMap<Long, CompositeData> encoded = new TreeMap<Long, CompositeData>();
+				for (Bundle bundle : bundleContext.getBundles()) {
+					encoded.put(bundle.getBundleId(), new OSGiBundle(bundle).asCompositeData());
+				}
+				this.snapshot = Collections.unmodifiableSortedMap(encoded);
+				return;
+			}
+			SortedMap<Long, CompositeData> current = snapshot;
+			Map<Long, CompositeData> updates = new HashMap<Long, CompositeData>();
+			for (Entry<Long, Boolean> bundle : bundles.entrySet()) {
+				reencode(updates, bundle.getKey(), current.get(bundle.getKey()), bundle.getValue());
+			}
+			publish(updates);
+		} catch (IOException e) {
+			markAllStale();
+			throw e;
+		} catch (RuntimeException e) {
+			markAllStale();
+			throw e;
+		}
+	}
+	private void publish(Map<Long, CompositeData> updates) {
+		if (updates.isEmpty()) {
+			return;
+		}
+		SortedMap<Long, CompositeData> bundles = new TreeMap<Long, CompositeData>(snapshot);
+		for (Entry<Long, CompositeData> update : updates.entrySet()) {
+			if (update.getValue() == null) {
+				bundles.remove(update.getKey());
+			} else {
+				bundles.put(update.getKey(), update.getValue());
+			}
+		}
+		this.snapshot = Collections.unmodifiableSortedMap(bundles);
+	}
+
+	/**
+	 * Encode the bundle into the updates and, if its wiring may have changed, every bundle it was or now is wired to.
+	 */
+	private void reencode(Map<Long, CompositeData> updates, long bundleId, CompositeData previous, boolean wiringChanged) throws IOException {
+		CompositeData data = updates.containsKey(bundleId) ? updates.get(bundleId) : encode(bundleId);
+		updates.put(bundleId, data);
+		if (wiringChanged) {
+			Set<Long> wiredBundles = new HashSet<Long>();
+			addWiredBundles(wiredBundles, previous);
+			addWiredBundles(wiredBundles, data);
+			for (Long wiredBundle : wiredBundles) {
+				if (!updates.containsKey(wiredBundle)) {
+					updates.put(wiredBundle, encode(wiredBundle));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the encoded bundle or null if it has been uninstalled
+	 */
+	private CompositeData encode(long bundleId) throws IOException {
+		Bundle bundle = bundleContext.getBundle(bundleId);
+		if (bundle == null || bundle.getState() == Bundle.UNINSTALLED) {
+			return null;
+		}
+		return new OSGiBundle(bundle).asCompositeData();
+	}
+
+	private void markStale(long bundleId, boolean wiringChanged) {
+		synchronized (staleLock) {
+			if (wiringChanged || !staleBundles.containsKey(bundleId)) {
+				staleBundles.put(bundleId, wiringChanged);
+			}
+			stale = true;
+		}
+	}
+
+	private void markAllStale() {
+		synchronized (staleLock) {
+			allStale = true;
+			stale = true;
+		}
+	}
+
+	private static boolean changesWiring(int eventType) {
+		switch (eventType) {
+			case BundleEvent.RESOLVED:
+			case BundleEvent.UNRESOLVED:
+			case BundleEvent.UPDATED:
+			case BundleEvent.UNINSTALLED:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static void addWiredBundles(Set<Long> bundleIds, CompositeData data) {
+		if (data == null) {
+			return;
+		}
+		Collections.addAll(bundleIds, (Long[]) data.get(BundleStateMBean.REQUIRED_BUNDLES));
+		Collections.addAll(bundleIds, (Long[]) data.get(BundleStateMBean.REQUIRING_BUNDLES));
+	}
+
+	/**
+	 * Marks the bundles affected by the bundle events as stale. Bundle events are received synchronously so a bundle
+	 * installed, updated or uninstalled is seen by the next read.
+	 */
+	private final class Tracker implements SynchronousBundleListener {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void bundleChanged(BundleEvent event) {
+			if (event.getType() == BundleEvent.INSTALLED || changesWiring(event.getType())) {
+				markStale(event.getBundle().getBundleId(), changesWiring(event.getType()));
+			}
+		}
+
+	}
+
+}
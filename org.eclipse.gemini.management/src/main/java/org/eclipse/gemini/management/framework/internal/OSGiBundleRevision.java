@@ -10,14 +10,11 @@
  *******************************************************************************/
 package org.eclipse.gemini.management.framework.internal;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.OpenDataException;
 
+import org.eclipse.gemini.management.internal.CompositeDataFactory;
 import org.osgi.framework.wiring.BundleCapability;
 import org.osgi.framework.wiring.BundleRequirement;
 import org.osgi.framework.wiring.BundleRevision;
@@ -29,6 +26,12 @@ import org.osgi.jmx.framework.wiring.BundleWiringStateMBean;
  */
 public final class OSGiBundleRevision {
 
+	private static final CompositeDataFactory REVISION_CAPABILITIES = new CompositeDataFactory(BundleWiringStateMBean.REVISION_CAPABILITIES_TYPE,
+			BundleWiringStateMBean.BUNDLE_REVISION_ID, BundleWiringStateMBean.CAPABILITIES);
+
+	private static final CompositeDataFactory REVISION_REQUIREMENTS = new CompositeDataFactory(BundleWiringStateMBean.REVISION_REQUIREMENTS_TYPE,
+			BundleWiringStateMBean.BUNDLE_REVISION_ID, BundleWiringStateMBean.REQUIREMENTS);
+
 	private final BundleRevision bundleRevision;
 
 	/**
@@ -56,34 +59,20 @@ public final class OSGiBundleRevision {
 
 	/**
 	 * @param namespace - namespace to retrieve capabilities from
-	 * @param revisionCounter - an id number for this revision
+	 * @param revisionCounter - the id of this revision
 	 * @return {@link CompositeData} representation of the capabilities
 	 */
 	public CompositeData capabilitiesAsCompositeData(String namespace, int revisionCounter){
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(BundleWiringStateMBean.CAPABILITIES, this.getBundleCapabilityItems(namespace));
-		items.put(BundleWiringStateMBean.BUNDLE_REVISION_ID, revisionCounter);
-		try {
-			return new CompositeDataSupport(BundleWiringStateMBean.REVISION_CAPABILITIES_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form bundle revision capabilities open data", e);
-		}
+		return REVISION_CAPABILITIES.create(revisionCounter, this.getBundleCapabilityItems(namespace));
 	}
 	
 	/**
 	 * @param namespace - namespace to retrieve requirements from
-	 * @param revisionCounter - an id number for this revision
+	 * @param revisionCounter - the id of this revision
 	 * @return {@link CompositeData} representation of the requirements
 	 */
 	public CompositeData requirementsAsCompositeData(String namespace, int revisionCounter){
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(BundleWiringStateMBean.REQUIREMENTS, this.getBundleRequirementItems(namespace));
-		items.put(BundleWiringStateMBean.BUNDLE_REVISION_ID, revisionCounter);
-		try {
-			return new CompositeDataSupport(BundleWiringStateMBean.REVISION_REQUIREMENTS_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form bundle revision requirements open data", e);
-		}
+		return REVISION_REQUIREMENTS.create(revisionCounter, this.getBundleRequirementItems(namespace));
 	}
 	
 	private CompositeData[] getBundleCapabilityItems(String namespace){
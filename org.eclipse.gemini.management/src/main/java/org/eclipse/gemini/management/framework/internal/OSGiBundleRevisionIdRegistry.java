@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.osgi.framework.wiring.BundleRevision;
+
+/**
+ * Hands out the ids of bundle revisions, an id is never reused and stays the same for as long as its revision is
+ * reachable, so ids from different calls can be compared.
+ * <p>
+ * Revisions are keyed by identity and held weakly, the entry of a revision is dropped after it has been garbage
+ * collected. Looking up an id is a hash lookup.
+ * <p>
+ * This class is thread-safe
+ */
+public final class OSGiBundleRevisionIdRegistry {
+
+	private final ConcurrentMap<Object, Integer> ids = new ConcurrentHashMap<Object, Integer>();
+
+	private final ReferenceQueue<BundleRevision> collected = new ReferenceQueue<BundleRevision>();
+
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	/**
+	 * Returns the unique id for the given bundleRevision, assigning a new id 
+	 * if the bundleRevision has not been seen before
+	 * 
+	 * @param revision
+	 * @return the id of the revision
+	 */
+	public int getRevisionId(BundleRevision revision) {
+		Integer id = ids.get(new Lookup(revision));
+		if (id != null) {
+			return id;
+		}
+		expungeCollected();
+		id = nextId.getAndIncrement();
+		Integer existing = ids.putIfAbsent(new WeakKey(revision, collected), id);
+		return existing == null ? id : existing;
+	}
+
+	private void expungeCollected() {
+		Reference<? extends BundleRevision> reference;
+		while ((reference = collected.poll()) != null) {
+			ids.remove(reference);
+		}
+	}
+
+	private static Object referentOf(Object key) {
+		if (key instanceof WeakKey) {
+			return ((WeakKey) key).get();
+		}
+		if (key instanceof Lookup) {
+			return ((Lookup) key).revision;
+		}
+		return null;
+	}
+
+	/**
+	 * The key of a revision in the registry
+	 */
+	private static final class WeakKey extends WeakReference<BundleRevision> {
+
+		private final int hash;
+
+		private WeakKey(BundleRevision revision, ReferenceQueue<BundleRevision> queue) {
+			super(revision, queue);
+			this.hash = System.identityHashCode(revision);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			Object revision = get();
+			return revision != null && revision == referentOf(other);
+		}
+
+	}
+
+	/**
+	 * A short-lived key to look up a revision without creating a reference
+	 */
+	private static final class Lookup {
+
+		private final BundleRevision revision;
+
+		private Lookup(BundleRevision revision) {
+			this.revision = revision;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(revision);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return revision == referentOf(other);
+		}
+
+	}
+
+}
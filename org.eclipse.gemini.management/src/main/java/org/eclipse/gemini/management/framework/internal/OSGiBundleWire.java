@@ -10,13 +10,9 @@
  *******************************************************************************/
 package org.eclipse.gemini.management.framework.internal;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.OpenDataException;
 
+import org.eclipse.gemini.management.internal.CompositeDataFactory;
 import org.osgi.framework.wiring.BundleWire;
 import org.osgi.framework.wiring.BundleWiring;
 import org.osgi.jmx.framework.wiring.BundleWiringStateMBean;
@@ -27,6 +23,10 @@ import org.osgi.jmx.framework.wiring.BundleWiringStateMBean;
  */
 public final class OSGiBundleWire {
 
+	private static final CompositeDataFactory WIRE = new CompositeDataFactory(BundleWiringStateMBean.BUNDLE_WIRE_TYPE,
+			BundleWiringStateMBean.BUNDLE_REQUIREMENT, BundleWiringStateMBean.BUNDLE_CAPABILITY, BundleWiringStateMBean.PROVIDER_BUNDLE_ID,
+			BundleWiringStateMBean.PROVIDER_BUNDLE_REVISION_ID, BundleWiringStateMBean.REQUIRER_BUNDLE_ID, BundleWiringStateMBean.REQUIRER_BUNDLE_REVISION_ID);
+
 	private final BundleWire wire;
 
 	/**
@@ -37,25 +37,20 @@ public final class OSGiBundleWire {
 		this.wire = wire;
 	}
 	
-	public CompositeData asCompositeData(OSGiBundleRevisionIdTracker revisionTracker) {
-		Map<String, Object> items = new HashMap<String, Object>();
-
+	public CompositeData asCompositeData(OSGiBundleRevisionIdRegistry revisionIds) {
 		BundleWiring providerWiring = wire.getProviderWiring();
 		BundleWiring requirerWiring = wire.getRequirerWiring();
 		
-		if(providerWiring != null && requirerWiring != null){
-			items.put(BundleWiringStateMBean.BUNDLE_REQUIREMENT, new OSGiBundleRequirement(wire.getRequirement()).asCompositeData());
-			items.put(BundleWiringStateMBean.BUNDLE_CAPABILITY, new OSGiBundleCapability(wire.getCapability()).asCompositeData());
-			items.put(BundleWiringStateMBean.PROVIDER_BUNDLE_ID, providerWiring.getBundle().getBundleId());
-			items.put(BundleWiringStateMBean.PROVIDER_BUNDLE_REVISION_ID, revisionTracker.getRevisionId(providerWiring.getRevision()));
-			items.put(BundleWiringStateMBean.REQUIRER_BUNDLE_ID, requirerWiring.getBundle().getBundleId());
-			items.put(BundleWiringStateMBean.REQUIRER_BUNDLE_REVISION_ID, revisionTracker.getRevisionId(requirerWiring.getRevision()));
-		}
-		try {
-			return new CompositeDataSupport(BundleWiringStateMBean.BUNDLE_WIRE_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form wire open data", e);
+		if (providerWiring == null || requirerWiring == null) {
+			return WIRE.create(new Object[6]);
 		}
+		return WIRE.create(
+				new OSGiBundleRequirement(wire.getRequirement()).asCompositeData(),
+				new OSGiBundleCapability(wire.getCapability()).asCompositeData(),
+				providerWiring.getBundle().getBundleId(),
+				revisionIds.getRevisionId(providerWiring.getRevision()),
+				requirerWiring.getBundle().getBundleId(),
+				revisionIds.getRevisionId(requirerWiring.getRevision()));
 	}
 	
 }
@@ -10,14 +10,11 @@
  *******************************************************************************/
 package org.eclipse.gemini.management.framework.internal;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.OpenDataException;
 
+import org.eclipse.gemini.management.internal.CompositeDataFactory;
 import org.osgi.framework.wiring.BundleCapability;
 import org.osgi.framework.wiring.BundleRequirement;
 import org.osgi.framework.wiring.BundleWire;
@@ -30,6 +27,10 @@ import org.osgi.jmx.framework.wiring.BundleWiringStateMBean;
  */
 public final class OSGiBundleWiring {
 
+	private static final CompositeDataFactory WIRING = new CompositeDataFactory(BundleWiringStateMBean.BUNDLE_WIRING_TYPE,
+			BundleWiringStateMBean.BUNDLE_ID, BundleWiringStateMBean.BUNDLE_REVISION_ID, BundleWiringStateMBean.REQUIREMENTS,
+			BundleWiringStateMBean.CAPABILITIES, BundleWiringStateMBean.REQUIRED_WIRES, BundleWiringStateMBean.PROVIDED_WIRES);
+
 	private final BundleWiring wiring;
 
 	/**
@@ -47,50 +48,49 @@ public final class OSGiBundleWiring {
 	 * @param revisionCounter
 	 * @return
 	 */
-	public CompositeData asCompositeData(String namespace, long bundleId, OSGiBundleRevisionIdTracker revisionTracker) {
-		Map<String, Object> items = new HashMap<String, Object>();
-		int myRevisionId = revisionTracker.getRevisionId(wiring.getRevision());
-		this.addCapabilityAndRequirementItems(items, namespace);
-		this.addRevisionedProvidedAndRequiredWireItems(items, namespace, revisionTracker);
-		items.put(BundleWiringStateMBean.BUNDLE_ID, bundleId);
-		items.put(BundleWiringStateMBean.BUNDLE_REVISION_ID, myRevisionId);
-		try {
-			return new CompositeDataSupport(BundleWiringStateMBean.BUNDLE_WIRING_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form bundle revisions wiring closures open data (" + e.getMessage() + ")", e);
-		}
+	public CompositeData asCompositeData(String namespace, long bundleId, OSGiBundleRevisionIdRegistry revisionIds) {
+		return asCompositeData(namespace, bundleId, revisionIds, wiring.getRequiredWires(namespace), wiring.getProvidedWires(namespace));
 	}
 
-	private void addCapabilityAndRequirementItems(Map<String, Object> items, String namespace) {
+	/**
+	 * 
+	 * @param namespace
+	 * @param bundleId
+	 * @param revisionIds
+	 * @param requiredWires - the required wires of the wiring in the namespace
+	 * @param providedWires - the provided wires of the wiring in the namespace
+	 * @return
+	 */
+	public CompositeData asCompositeData(String namespace, long bundleId, OSGiBundleRevisionIdRegistry revisionIds, List<BundleWire> requiredWires, List<BundleWire> providedWires) {
+		int myRevisionId = revisionIds.getRevisionId(wiring.getRevision());
+		return WIRING.create(bundleId, myRevisionId, getRequirementItems(namespace), getCapabilityItems(namespace),
+				getWireItems(revisionIds, requiredWires), getWireItems(revisionIds, providedWires));
+	}
+
+	private CompositeData[] getRequirementItems(String namespace) {
 		List<BundleRequirement> requirements = wiring.getRequirements(namespace);
 		CompositeData[] requirementsCompositeDate = new CompositeData[requirements.size()];
 		for (int i = 0; i < requirements.size(); i++) {
 			requirementsCompositeDate[i] = new OSGiBundleRequirement(requirements.get(i)).asCompositeData();
 		}
-		items.put(BundleWiringStateMBean.REQUIREMENTS, requirementsCompositeDate);
-		
+		return requirementsCompositeDate;
+	}
+
+	private CompositeData[] getCapabilityItems(String namespace) {
 		List<BundleCapability> capabilities = wiring.getCapabilities(namespace);
 		CompositeData[] capabilitiesCompositeDate = new CompositeData[capabilities.size()];
 		for (int i = 0; i < capabilities.size(); i++) {
 			capabilitiesCompositeDate[i] = new OSGiBundleCapability(capabilities.get(i)).asCompositeData();
 		}
-		items.put(BundleWiringStateMBean.CAPABILITIES, capabilitiesCompositeDate);
+		return capabilitiesCompositeDate;
 	}
 	
-	private void addRevisionedProvidedAndRequiredWireItems(Map<String, Object> items, String namespace, OSGiBundleRevisionIdTracker revisionTracker) {
-		List<BundleWire> requiredWires = wiring.getRequiredWires(namespace);
-		CompositeData[] requiredWiresCompositeDate = new CompositeData[requiredWires.size()];
-		for (int i = 0; i < requiredWires.size(); i++) {
-			requiredWiresCompositeDate[i] = new OSGiBundleWire(requiredWires.get(i)).asCompositeData(revisionTracker);
-		}
-		items.put(BundleWiringStateMBean.REQUIRED_WIRES, requiredWiresCompositeDate);
-		
-		List<BundleWire> providedWires = wiring.getProvidedWires(namespace);
-		CompositeData[] providedWiresCompositeDate = new CompositeData[providedWires.size()];
-		for (int i = 0; i < providedWires.size(); i++) {
-			providedWiresCompositeDate[i] = new OSGiBundleWire(providedWires.get(i)).asCompositeData(revisionTracker);
+	private static CompositeData[] getWireItems(OSGiBundleRevisionIdRegistry revisionIds, List<BundleWire> wires) {
+		CompositeData[] wiresCompositeDate = new CompositeData[wires.size()];
+		for (int i = 0; i < wires.size(); i++) {
+			wiresCompositeDate[i] = new OSGiBundleWire(wires.get(i)).asCompositeData(revisionIds);
 		}
-		items.put(BundleWiringStateMBean.PROVIDED_WIRES, providedWiresCompositeDate);
+		return wiresCompositeDate;
 	}
 	
 }
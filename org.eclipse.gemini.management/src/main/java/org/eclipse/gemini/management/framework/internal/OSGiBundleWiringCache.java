@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.openmbean.CompositeData;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleRevisions;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+/**
+ * Encodes {@link OSGiBundleWiring}s and their closures, keeping the encoded CompositeData of each bundle revision per
+ * namespace.
+ * <p>
+ * The closure of a wiring is walked breadth first from a queue, so its depth is not bounded by the stack. An encoded
+ * wiring is reused until a bundle event invalidates it: a resolve, unresolve, update or uninstall of a bundle drops the
+ * entries of its revisions and of the revisions they are, or now are, wired to. The wires of a cached wiring are
+ * counted on each use as well, which catches the wires added by dynamic imports without a bundle event.
+ * <p>
+ * The revision ids of the encoded wirings come from the given {@link OSGiBundleRevisionIdRegistry}, so they are stable
+ * across calls.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class OSGiBundleWiringCache {
+
+	private static final String ALL_NAMESPACES = "";
+
+	private final BundleContext bundleContext;
+
+	private final OSGiBundleRevisionIdRegistry revisionIds;
+
+	private final ConcurrentMap<BundleRevision, ConcurrentMap<String, Encoded>> cache = new ConcurrentHashMap<BundleRevision, ConcurrentMap<String, Encoded>>();
+
+	private final AtomicLong generation = new AtomicLong();
+
+	private final Object openLock = new Object();
+
+	private volatile boolean open = false;
+
+	private final SynchronousBundleListener listener = new SynchronousBundleListener() {
+		public void bundleChanged(BundleEvent event) {
+			switch (event.getType()) {
+				case BundleEvent.RESOLVED:
+				case BundleEvent.UNRESOLVED:
+				case BundleEvent.UPDATED:
+				case BundleEvent.UNINSTALLED:
+					invalidate(event.getBundle());
+					break;
+				default:
+					break;
+			}
+		}
+	};
+
+	/**
+	 *
+	 * @param bundleContext
+	 * @param revisionIds - the ids of the revisions in the encoded wirings
+	 */
+	public OSGiBundleWiringCache(BundleContext bundleContext, OSGiBundleRevisionIdRegistry revisionIds) {
+		this.bundleContext = bundleContext;
+		this.revisionIds = revisionIds;
+	}
+
+	/**
+	 * Start listening for bundle events, the cache is not used before it is open
+	 */
+	public void open() {
+		if (open) {
+			return;
+		}
+		synchronized (openLock) {
+			if (!open) {
+				bundleContext.addBundleListener(listener);
+				open = true;
+			}
+		}
+	}
+
+	/**
+	 * Stop listening for bundle events and discard the cache
+	 */
+	public void close() {
+		synchronized (openLock) {
+			open = false;
+			try {
+				bundleContext.removeBundleListener(listener);
+			} catch (IllegalStateException e) {
+				// the bundle has stopped and its listeners are already gone
+			}
+			generation.incrementAndGet();
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Answer the encoded wiring
+	 *
+	 * @param wiring
+	 * @param namespace - the namespace of the wires, capabilities and requirements, or null for all
+	 * @return the encoded wiring
+	 */
+	public CompositeData getWiring(BundleWiring wiring, String namespace) {
+		open();
+		long readGeneration = generation.get();
+		return encode(wiring, namespace, wiresOf(wiring.getRequiredWires(namespace)), wiresOf(wiring.getProvidedWires(namespace)), readGeneration);
+	}
+
+	/**
+	 * Answer the encoded wirings of the closure of the given wirings, that is every wiring reachable from them by
+	 * following their required and provided wires in the namespace
+	 *
+	 * @param roots - the wirings to start from, null elements are ignored
+	 * @param namespace - the namespace of the wires, capabilities and requirements, or null for all
+	 * @return the encoded wirings, each revision once
+	 */
+	public List<CompositeData> getClosure(Collection<BundleWiring> roots, String namespace) {
+		open();
+		long readGeneration = generation.get();
+		Set<BundleRevision> visited = new HashSet<BundleRevision>();
+		ArrayDeque<BundleWiring> pending = new ArrayDeque<BundleWiring>();
+		for (BundleWiring root : roots) {
+			if (root != null && visited.add(root.getRevision())) {
+				pending.add(root);
+			}
+		}
+		List<CompositeData> closure = new ArrayList<CompositeData>();
+		while (!pending.isEmpty()) {
+			BundleWiring wiring = pending.poll();
+			List<BundleWire> requiredWires = wiresOf(wiring.getRequiredWires(namespace));
+			List<BundleWire> providedWires = wiresOf(wiring.getProvidedWires(namespace));
+			closure.add(encode(wiring, namespace, requiredWires, providedWires, readGeneration));
+			for (BundleWire wire : requiredWires) {
+				BundleWiring provider = wire.getProviderWiring();
+				if (provider != null && visited.add(provider.getRevision())) {
+					pending.add(provider);
+				}
+			}
+			for (BundleWire wire : providedWires) {
+				BundleWiring requirer = wire.getRequirerWiring();
+				if (requirer != null && visited.add(requirer.getRevision())) {
+					pending.add(requirer);
+				}
+			}
+		}
+		return closure;
+	}
+
+	/**
+	 * Answer the cached encoding of the wiring, or encode it and cache it unless the cache has been invalidated since
+	 * the given generation was read
+	 */
+	private CompositeData encode(BundleWiring wiring, String namespace, List<BundleWire> requiredWires, List<BundleWire> providedWires, long readGeneration) {
+		BundleRevision revision = wiring.getRevision();
+		String key = namespace == null ? ALL_NAMESPACES : namespace;
+		ConcurrentMap<String, Encoded> encodings = cache.get(revision);
+		if (encodings != null) {
+			Encoded encoded = encodings.get(key);
+			if (encoded != null && encoded.wiring == wiring && encoded.requiredWireCount == requiredWires.size()
+					&& encoded.providedWireCount == providedWires.size()) {
+				return encoded.data;
+			}
+		}
+		CompositeData data = new OSGiBundleWiring(wiring).asCompositeData(namespace, revision.getBundle().getBundleId(), revisionIds, requiredWires, providedWires);
+		if (open) {
+			if (encodings == null) {
+				encodings = new ConcurrentHashMap<String, Encoded>();
+				ConcurrentMap<String, Encoded> existing = cache.putIfAbsent(revision, encodings);
+				if (existing != null) {
+					encodings = existing;
+				}
+			}
+			Encoded encoded = new Encoded(wiring, requiredWires, providedWires, data);
+			encodings.put(key, encoded);
+			if (generation.get() != readGeneration) {
+				encodings.remove(key, encoded);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Drop the encodings of the revisions of the bundle and of every revision they are wired to, and of the revisions
+	 * that are no longer in use
+	 */
+	private void invalidate(Bundle bundle) {
+		generation.incrementAndGet();
+		Set<BundleRevision> stale = new HashSet<BundleRevision>();
+		for (Iterator<Map.Entry<BundleRevision, ConcurrentMap<String, Encoded>>> iterator = cache.entrySet().iterator(); iterator.hasNext();) {
+			Map.Entry<BundleRevision, ConcurrentMap<String, Encoded>> entry = iterator.next();
+			BundleRevision revision = entry.getKey();
+			if (revision.getBundle() == bundle) {
+				for (Encoded encoded : entry.getValue().values()) {
+					stale.addAll(encoded.neighbours);
+				}
+				iterator.remove();
+			} else {
+				BundleWiring wiring = revision.getWiring();
+				if (wiring == null || !wiring.isInUse()) {
+					iterator.remove();
+				}
+			}
+		}
+		BundleRevisions revisions = bundle.adapt(BundleRevisions.class);
+		if (revisions != null) {
+			for (BundleRevision revision : revisions.getRevisions()) {
+				BundleWiring wiring = revision.getWiring();
+				if (wiring != null && wiring.isInUse()) {
+					stale.addAll(neighboursOf(wiresOf(wiring.getRequiredWires(null)), wiresOf(wiring.getProvidedWires(null))));
+				}
+			}
+		}
+		for (BundleRevision revision : stale) {
+			cache.remove(revision);
+		}
+	}
+
+	private static List<BundleWire> wiresOf(List<BundleWire> wires) {
+		if (wires == null) {
+			return Collections.emptyList();
+		}
+		return wires;
+	}
+
+	private static Set<BundleRevision> neighboursOf(List<BundleWire> requiredWires, List<BundleWire> providedWires) {
+		Set<BundleRevision> neighbours = new HashSet<BundleRevision>();
+		for (BundleWire wire : requiredWires) {
+			neighbours.add(wire.getProviderWiring().getRevision());
+		}
+		for (BundleWire wire : providedWires) {
+			neighbours.add(wire.getRequirerWiring().getRevision());
+		}
+		return neighbours;
+	}
+
+	/**
+	 * The encoding of a wiring in a namespace
+	 */
+	private static final class Encoded {
+
+		private final BundleWiring wiring;
+
+		private final int requiredWireCount;
+
+		private final int providedWireCount;
+
+		private final Set<BundleRevision> neighbours;
+
+		private final CompositeData data;
+
+		private Encoded(BundleWiring wiring, List<BundleWire> requiredWires, List<BundleWire> providedWires, CompositeData data) {
+			this.wiring = wiring;
+			this.requiredWireCount = requiredWires.size();
+			this.providedWireCount = providedWires.size();
+			this.neighbours = neighboursOf(requiredWires, providedWires);
+			this.data = data;
+		}
+
+	}
+
+}
@@ -15,16 +15,15 @@
 
 package org.eclipse.gemini.management.framework.internal;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
-import javax.management.openmbean.TabularDataSupport;
 
+import org.eclipse.gemini.management.internal.ArrayTabularData;
+import org.eclipse.gemini.management.internal.CompositeDataFactory;
 import org.osgi.framework.Bundle;
 import org.osgi.jmx.framework.PackageStateMBean;
 
@@ -62,6 +61,10 @@ import org.osgi.jmx.framework.PackageStateMBean;
  */
 public final class OSGiPackage {
 
+	private static final CompositeDataFactory PACKAGE = new CompositeDataFactory(PackageStateMBean.PACKAGE_TYPE,
+			PackageStateMBean.NAME, PackageStateMBean.VERSION, PackageStateMBean.REMOVAL_PENDING,
+			PackageStateMBean.EXPORTING_BUNDLES, PackageStateMBean.IMPORTING_BUNDLES);
+
 	private Long[] exportingBundles;
 	private Long[] importingBundles;
 	private String name;
@@ -85,6 +88,23 @@ public final class OSGiPackage {
 		this.importingBundles = OSGiPackage.bundleIds(importingBundles);
 	}
 
+	/**
+	 * Construct and OSGiPackage from the supplied data
+	 * 
+	 * @param name
+	 * @param version
+	 * @param removalPending
+	 * @param exportingBundles - the identifiers of the exporting bundles
+	 * @param importingBundles - the identifiers of the importing bundles
+	 */
+	public OSGiPackage(String name, String version, boolean removalPending, Long[] exportingBundles, Long[] importingBundles) {
+		this.name = name;
+		this.version = version;
+		this.removalPending = removalPending;
+		this.exportingBundles = exportingBundles;
+		this.importingBundles = importingBundles;
+	}
+
 	/**
 	 * Answer the bundle ids of the bundles
 	 * 
@@ -109,11 +129,11 @@ public final class OSGiPackage {
 	 * @return the tabular data representation of the OSGPacakges
 	 */
 	public static TabularData tableFrom(Set<OSGiPackage> packages) {
-		TabularDataSupport table = new TabularDataSupport(PackageStateMBean.PACKAGES_TYPE);
+		List<CompositeData> rows = new ArrayList<CompositeData>(packages.size());
 		for (OSGiPackage pkg : packages) {
-			table.put(pkg.asCompositeData());
+			rows.add(pkg.asCompositeData());
 		}
-		return table;
+		return new ArrayTabularData(PackageStateMBean.PACKAGES_TYPE, rows);
 	}
 
 	/**
@@ -121,19 +141,13 @@ public final class OSGiPackage {
 	 * 
 	 * @return the CompositeData encoding of the receiver.
 	 */
-	private CompositeData asCompositeData() {
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(PackageStateMBean.NAME, name);
-		items.put(PackageStateMBean.VERSION, version);
-		items.put(PackageStateMBean.REMOVAL_PENDING, removalPending);
-		items.put(PackageStateMBean.EXPORTING_BUNDLES, exportingBundles);
-		items.put(PackageStateMBean.IMPORTING_BUNDLES, importingBundles);
-
-		try {
-			return new CompositeDataSupport(PackageStateMBean.PACKAGE_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form package open data", e);
-		}
+	public CompositeData asCompositeData() {
+		return PACKAGE.create(
+				name,
+				version,
+				removalPending,
+				exportingBundles,
+				importingBundles);
 	}
 	
 }
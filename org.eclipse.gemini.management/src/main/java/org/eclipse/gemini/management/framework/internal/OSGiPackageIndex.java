@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.Version;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleRevisions;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+/**
+ * An index of the packages exported by the wirings in use in the framework, built from their
+ * {@link BundleRevision#PACKAGE_NAMESPACE} capabilities and wires.
+ * <p>
+ * The index is built when it is first opened and then kept up to date by a synchronous bundle listener, so it is
+ * current as soon as a resolve or refresh returns. An event only reads the wires of its own bundle: the exports of the
+ * bundle are rebuilt from its provided wires, and the bundle is removed from the importers of the exports it was wired
+ * to and added to those of the exports it now is wired to. Exports are looked up by package name, so the lookups cost
+ * in the number of exports of the package.
+ * <p>
+ * Wires added for dynamic imports do not fire a bundle event, the importers of a package only see them once one of the
+ * bundles involved changes.
+ * <p>
+ * This class is thread-safe, lookups do not take a lock.
+ */
+public final class OSGiPackageIndex {
+
+	private final BundleContext bundleContext;
+
+	private final Object writeLock = new Object();
+
+	private final Map<Long, Indexed> bundles = new HashMap<Long, Indexed>();
+
+	private final Map<BundleCapability, Export> exportsByCapability = new HashMap<BundleCapability, Export>();
+
+	private final ConcurrentHashMap<String, List<Export>> exportsByName = new ConcurrentHashMap<String, List<Export>>();
+
+	private volatile boolean open = false;
+
+	private final SynchronousBundleListener listener = new SynchronousBundleListener() {
+		public void bundleChanged(BundleEvent event) {
+			switch (event.getType()) {
+				case BundleEvent.RESOLVED:
+				case BundleEvent.UNRESOLVED:
+				case BundleEvent.UPDATED:
+				case BundleEvent.UNINSTALLED:
+					update(event.getBundle());
+					break;
+				default:
+					break;
+			}
+		}
+	};
+
+	/**
+	 *
+	 * @param bundleContext
+	 */
+	public OSGiPackageIndex(BundleContext bundleContext) {
+		this.bundleContext = bundleContext;
+	}
+
+	/**
+	 * Build the index and start listening for bundle events, unless it is already open
+	 */
+	public void open() {
+		if (open) {
+			return;
+		}
+		synchronized (writeLock) {
+			if (open) {
+				return;
+			}
+			bundleContext.addBundleListener(listener);
+			for (Bundle bundle : bundleContext.getBundles()) {
+				index(bundle, false);
+			}
+			open = true;
+		}
+	}
+
+	/**
+	 * Stop listening for bundle events and discard the index, it is built again by the next lookup
+	 */
+	public void close() {
+		synchronized (writeLock) {
+			open = false;
+			try {
+				bundleContext.removeBundleListener(listener);
+			} catch (IllegalStateException e) {
+				// the bundle has stopped and its listeners are already gone
+			}
+			bundles.clear();
+			exportsByCapability.clear();
+			exportsByName.clear();
+		}
+	}
+
+	/**
+	 * @return every export in the index
+	 */
+	public List<Export> getExports() {
+		open();
+		List<Export> exports = new ArrayList<Export>();
+		for (List<Export> named : exportsByName.values()) {
+			exports.addAll(named);
+		}
+		return exports;
+	}
+
+	/**
+	 * @param name - the name of the package
+	 * @param version - the version of the package
+	 * @return the exports of the package with the given name and version
+	 */
+	public List<Export> getExports(String name, Version version) {
+		open();
+		List<Export> named = exportsByName.get(name);
+		if (named == null) {
+			return Collections.emptyList();
+		}
+		List<Export> exports = new ArrayList<Export>(named.size());
+		for (Export export : named) {
+			if (export.version.equals(version)) {
+				exports.add(export);
+			}
+		}
+		return exports;
+	}
+
+	/**
+	 * @param name - the name of the package
+	 * @param version - the version of the package
+	 * @param exportingBundle - the identifier of the exporting bundle
+	 * @return the export of the package by the bundle, or null if there is none
+	 */
+	public Export getExport(String name, Version version, long exportingBundle) {
+		for (Export export : getExports(name, version)) {
+			if (export.exportingBundle == exportingBundle) {
+				return export;
+			}
+		}
+		return null;
+	}
+
+	private void update(Bundle bundle) {
+		synchronized (writeLock) {
+			if (open) {
+				index(bundle, true);
+			}
+		}
+	}
+
+	/**
+	 * Replace the exports of the bundle in the index with those of its wirings in use and, when patching, move the
+	 * bundle from the importers of the exports it was wired to to those of the exports it now is wired to
+	 */
+	private void index(Bundle bundle, boolean patch) {
+		long bundleId = bundle.getBundleId();
+		Indexed previous = bundles.remove(bundleId);
+		if (previous != null) {
+			for (Export export : previous.exports) {
+				removeExport(exportsByCapability.remove(export.capability));
+			}
+			if (patch) {
+				for (BundleCapability capability : previous.imports) {
+					patchImporter(capability, bundleId, false);
+				}
+			}
+		}
+		Indexed indexed = new Indexed(bundle);
+		if (indexed.exports.isEmpty() && indexed.imports.isEmpty()) {
+			return;
+		}
+		bundles.put(bundleId, indexed);
+		for (Export export : indexed.exports) {
+			exportsByCapability.put(export.capability, export);
+			addExport(export);
+		}
+		if (patch) {
+			for (BundleCapability capability : indexed.imports) {
+				patchImporter(capability, bundleId, true);
+			}
+		}
+	}
+
+	/**
+	 * Add the bundle to, or remove it from, the importers of the export of the capability, if it is indexed
+	 */
+	private void patchImporter(BundleCapability capability, long bundleId, boolean importing) {
+		Export export = exportsByCapability.get(capability);
+		if (export == null) {
+			return;
+		}
+		Set<Long> importers = new TreeSet<Long>(Arrays.asList(export.importingBundles));
+		if (importing ? !importers.add(bundleId) : !importers.remove(bundleId)) {
+			return;
+		}
+		Export patched = new Export(export, importers);
+		exportsByCapability.put(capability, patched);
+		List<Export> exports = new ArrayList<Export>(exportsByName.get(export.name));
+		exports.set(exports.indexOf(export), patched);
+		exportsByName.put(export.name, Collections.unmodifiableList(exports));
+	}
+
+	private void addExport(Export export) {
+		List<Export> named = exportsByName.get(export.name);
+		List<Export> exports = named == null ? new ArrayList<Export>(1) : new ArrayList<Export>(named);
+		exports.add(export);
+		exportsByName.put(export.name, Collections.unmodifiableList(exports));
+	}
+
+	private void removeExport(Export export) {
+		if (export == null) {
+			return;
+		}
+		List<Export> named = exportsByName.get(export.name);
+		if (named == null) {
+			return;
+		}
+		List<Export> exports = new ArrayList<Export>(named);
+		exports.remove(export);
+		if (exports.isEmpty()) {
+			exportsByName.remove(export.name);
+		} else {
+			exportsByName.put(export.name, Collections.unmodifiableList(exports));
+		}
+	}
+
+	/**
+	 * The exports of a bundle, as built from its provided wires, and the package capabilities it is wired to, by
+	 * importing them or requiring their exporter
+	 */
+	private static final class Indexed {
+
+		private final List<Export> exports = new ArrayList<Export>();
+
+		private final Set<BundleCapability> imports = new HashSet<BundleCapability>();
+
+		private Indexed(Bundle bundle) {
+			BundleRevisions revisions = bundle.adapt(BundleRevisions.class);
+			if (revisions == null) {
+				return;
+			}
+			for (BundleRevision revision : revisions.getRevisions()) {
+				BundleWiring wiring = revision.getWiring();
+				if (wiring == null || !wiring.isInUse() || (revision.getTypes() & BundleRevision.TYPE_FRAGMENT) != 0) {
+					continue;
+				}
+				Set<Long> requirers = new TreeSet<Long>();
+				Map<BundleCapability, Set<Long>> importers = new HashMap<BundleCapability, Set<Long>>();
+				for (BundleWire wire : wiring.getProvidedWires(null)) {
+					long requirer = wire.getRequirerWiring().getBundle().getBundleId();
+					if (BundleRevision.BUNDLE_NAMESPACE.equals(wire.getCapability().getNamespace())) {
+						requirers.add(requirer);
+					} else if (BundleRevision.PACKAGE_NAMESPACE.equals(wire.getCapability().getNamespace())) {
+						Set<Long> packageImporters = importers.get(wire.getCapability());
+						if (packageImporters == null) {
+							packageImporters = new TreeSet<Long>();
+							importers.put(wire.getCapability(), packageImporters);
+						}
+						packageImporters.add(requirer);
+					}
+				}
+				for (BundleCapability capability : wiring.getCapabilities(BundleRevision.PACKAGE_NAMESPACE)) {
+					Set<Long> packageImporters = new TreeSet<Long>(requirers);
+					if (importers.containsKey(capability)) {
+						packageImporters.addAll(importers.get(capability));
+					}
+					exports.add(new Export(capability, bundle.getBundleId(), !wiring.isCurrent(), packageImporters));
+				}
+				for (BundleWire wire : wiring.getRequiredWires(null)) {
+					if (BundleRevision.BUNDLE_NAMESPACE.equals(wire.getCapability().getNamespace())) {
+						imports.addAll(wire.getProviderWiring().getCapabilities(BundleRevision.PACKAGE_NAMESPACE));
+					} else if (BundleRevision.PACKAGE_NAMESPACE.equals(wire.getCapability().getNamespace())) {
+						imports.add(wire.getCapability());
+					}
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * A package exported by a bundle wiring
+	 */
+	public static final class Export {
+
+		private final String name;
+
+		private final Version version;
+
+		private final long exportingBundle;
+
+		private final boolean removalPending;
+
+		private final Long[] importingBundles;
+
+		private final BundleCapability capability;
+
+		private Export(BundleCapability capability, long exportingBundle, boolean removalPending, Set<Long> importingBundles) {
+			this.capability = capability;
+			Map<String, Object> attributes = capability.getAttributes();
+			this.name = (String) attributes.get(BundleRevision.PACKAGE_NAMESPACE);
+			Object version = attributes.get(Constants.VERSION_ATTRIBUTE);
+			this.version = version instanceof Version ? (Version) version : Version.emptyVersion;
+			this.exportingBundle = exportingBundle;
+			this.removalPending = removalPending;
+			this.importingBundles = importingBundles.toArray(new Long[importingBundles.size()]);
+		}
+
+		private Export(Export export, Set<Long> importingBundles) {
+			this.capability = export.capability;
+			this.name = export.name;
+			this.version = export.version;
+			this.exportingBundle = export.exportingBundle;
+			this.removalPending = export.removalPending;
+			this.importingBundles = importingBundles.toArray(new Long[importingBundles.size()]);
+		}
+
+		/**
+		 * @return the name of the package
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the version of the package
+		 */
+		public Version getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return the identifier of the exporting bundle
+		 */
+		public long getExportingBundle() {
+			return exportingBundle;
+		}
+
+		/**
+		 * @return true if the exporting wiring is no longer current but still in use
+		 */
+		public boolean isRemovalPending() {
+			return removalPending;
+		}
+
+		/**
+		 * @return the identifiers of the bundles wired to the package, by importing it or requiring its exporter
+		 */
+		public Long[] getImportingBundles() {
+			return importingBundles.clone();
+		}
+
+	}
+
+}
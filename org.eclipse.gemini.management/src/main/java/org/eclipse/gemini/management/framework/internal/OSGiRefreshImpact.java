@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.OpenDataException;
+
+import org.eclipse.gemini.management.framework.CustomFrameworkMBean;
+import org.eclipse.gemini.management.internal.BundleUtil;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.jmx.framework.BundleStateMBean;
+
+/**
+ * The impact of a refresh on a bundle, see {@link CustomFrameworkMBean#REFRESH_IMPACT_TYPE}
+ */
+public final class OSGiRefreshImpact {
+
+	private final Bundle bundle;
+
+	private final BundleActivationHistory activationHistory;
+
+	private final int startLevel;
+
+	/**
+	 *
+	 * @param bundle
+	 * @param activationHistory
+	 */
+	public OSGiRefreshImpact(Bundle bundle, BundleActivationHistory activationHistory) {
+		this.bundle = bundle;
+		this.activationHistory = activationHistory;
+		this.startLevel = startLevelOf(bundle);
+	}
+
+	/**
+	 * @return the start level of the bundle, or -1 if it is uninstalled
+	 */
+	public int getStartLevel() {
+		return startLevel;
+	}
+
+	/**
+	 * @return the bundle
+	 */
+	public Bundle getBundle() {
+		return bundle;
+	}
+
+	/**
+	 * @return {@link CompositeData} representation of the impact
+	 */
+	public CompositeData asCompositeData() {
+		long bundleId = bundle.getBundleId();
+		Map<String, Object> items = new HashMap<String, Object>();
+		items.put(BundleStateMBean.IDENTIFIER, bundleId);
+		items.put(BundleStateMBean.SYMBOLIC_NAME, bundle.getSymbolicName());
+		items.put(BundleStateMBean.STATE, BundleUtil.getBundleState(bundle));
+		items.put(BundleStateMBean.START_LEVEL, startLevel);
+		items.put(CustomFrameworkMBean.REGISTERED_SERVICE_COUNT, count(bundle, true));
+		items.put(CustomFrameworkMBean.SERVICES_IN_USE_COUNT, count(bundle, false));
+		items.put(CustomFrameworkMBean.ACTIVATION_COUNT, activationHistory.getActivationCount(bundleId));
+		items.put(CustomFrameworkMBean.LAST_ACTIVATION_TIME, activationHistory.getLastActivationTime(bundleId));
+		items.put(CustomFrameworkMBean.AVERAGE_ACTIVATION_TIME, activationHistory.getAverageActivationTime(bundleId));
+		try {
+			return new CompositeDataSupport(CustomFrameworkMBean.REFRESH_IMPACT_TYPE, items);
+		} catch (OpenDataException e) {
+			throw new IllegalStateException("Cannot form refresh impact open data", e);
+		}
+	}
+
+	private static int startLevelOf(Bundle bundle) {
+		BundleStartLevel bundleStartLevel = bundle.adapt(BundleStartLevel.class);
+		if (bundleStartLevel == null) {
+			return -1;
+		}
+		try {
+			return bundleStartLevel.getStartLevel();
+		} catch (IllegalArgumentException e) {
+			// the bundle is uninstalled
+			return -1;
+		}
+	}
+
+	private static int count(Bundle bundle, boolean registered) {
+		try {
+			ServiceReference<?>[] references = registered ? bundle.getRegisteredServices() : bundle.getServicesInUse();
+			return references == null ? 0 : references.length;
+		} catch (IllegalStateException e) {
+			// the bundle is uninstalled
+			return 0;
+		}
+	}
+
+}
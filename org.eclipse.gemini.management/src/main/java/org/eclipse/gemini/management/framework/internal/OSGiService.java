@@ -19,17 +19,15 @@ import static org.osgi.framework.Constants.OBJECTCLASS;
 import static org.osgi.framework.Constants.SERVICE_ID;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularData;
-import javax.management.openmbean.TabularDataSupport;
 
+import org.eclipse.gemini.management.internal.ArrayTabularData;
+import org.eclipse.gemini.management.internal.CompositeDataFactory;
+import org.eclipse.gemini.management.internal.ItemProjection;
 import org.eclipse.gemini.management.internal.OSGiProperties;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServiceReference;
@@ -66,30 +64,23 @@ import org.osgi.jmx.framework.ServiceStateMBean;
  */
 public final class OSGiService {
 
-	private long bundle;
-	
-	private long identifier;
-	
-	private String[] interfaces;
-	
-	private Long[] usingBundles;
-	
-	private TabularData properties;
+	private static final CompositeDataFactory SERVICE = new CompositeDataFactory(ServiceStateMBean.SERVICE_TYPE,
+			ServiceStateMBean.BUNDLE_IDENTIFIER, ServiceStateMBean.IDENTIFIER, ServiceStateMBean.OBJECT_CLASS,
+			ServiceStateMBean.PROPERTIES, ServiceStateMBean.USING_BUNDLES);
+
+	private final ServiceReference<?> reference;
 
 	/**
 	 * Construct an OSGiService from the underlying
-	 * <link>ServiceReference</link>
+	 * <link>ServiceReference</link>. The items of the service are only
+	 * read from the reference when they are encoded.
 	 * 
 	 * @param reference
 	 *            - the reference of the service
 	 * @throws  
 	 */
 	public OSGiService(ServiceReference<?> reference) {
-		this.bundle = reference.getBundle().getBundleId();
-		this.identifier = (Long) reference.getProperty(SERVICE_ID);
-		this.interfaces = (String[]) reference.getProperty(OBJECTCLASS);
-		this.properties = OSGiProperties.tableFrom(reference);
-		this.usingBundles = longArrayFrom(OSGiService.getBundlesUsing(reference));
+		this.reference = reference;
 	}
 	
 	private Long[] longArrayFrom(long[] array) {
@@ -129,11 +120,11 @@ public final class OSGiService {
 	 * @return the TabularData representing the list of OSGiServices
 	 */
 	public static TabularData tableFrom(List<OSGiService> services) {
-		TabularDataSupport table = new TabularDataSupport(ServiceStateMBean.SERVICES_TYPE);
+		List<CompositeData> rows = new ArrayList<CompositeData>(services.size());
 		for (OSGiService service : services) {
-			table.put(service.asCompositeData());
+			rows.add(service.asCompositeData());
 		}
-		return table;
+		return new ArrayTabularData(ServiceStateMBean.SERVICES_TYPE, rows);
 	}
 	
 	/**
@@ -147,12 +138,12 @@ public final class OSGiService {
 	 * @throws IOException 
 	 */
 	public static TabularData tableFrom(List<OSGiService> services, String... serviceTypeItems) throws IOException {
-		List<String> serviceTypes = Arrays.asList(serviceTypeItems);
-		TabularDataSupport table = new TabularDataSupport(ServiceStateMBean.SERVICES_TYPE);
+		ItemProjection projection = new ItemProjection(ServiceStateMBean.SERVICE_TYPE, ServiceStateMBean.IDENTIFIER, serviceTypeItems);
+		List<CompositeData> rows = new ArrayList<CompositeData>(services.size());
 		for (OSGiService service : services) {
-			table.put(service.asCompositeData(serviceTypes));
+			rows.add(service.asCompositeData(projection));
 		}
-		return table;
+		return new ArrayTabularData(ServiceStateMBean.SERVICES_TYPE, rows);
 	}
 
 	/**
@@ -161,18 +152,12 @@ public final class OSGiService {
 	 * @return the CompositeData encoding of the receiver.
 	 */
 	public CompositeData asCompositeData() {
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(ServiceStateMBean.BUNDLE_IDENTIFIER, bundle);
-		items.put(ServiceStateMBean.IDENTIFIER, identifier);
-		items.put(ServiceStateMBean.OBJECT_CLASS, interfaces);
-		items.put(ServiceStateMBean.PROPERTIES, properties);
-		items.put(ServiceStateMBean.USING_BUNDLES, usingBundles);
-
-		try {
-			return new CompositeDataSupport(ServiceStateMBean.SERVICE_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form service open data", e);
-		}
+		return SERVICE.create(
+				getBundle(),
+				getIdentifier(),
+				getInterfaces(),
+				getProperties(),
+				getUsingBundles());
 	}
 
 	/**
@@ -181,19 +166,48 @@ public final class OSGiService {
 	 * 
 	 * @return the CompositeData encoding of the receiver.
 	 */
-	private CompositeData asCompositeData(List<String> serviceTypes) {
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(ServiceStateMBean.IDENTIFIER, identifier);
-		
-		items.put(ServiceStateMBean.BUNDLE_IDENTIFIER, 	serviceTypes.contains(ServiceStateMBean.BUNDLE_IDENTIFIER) ? bundle : null);
-		items.put(ServiceStateMBean.OBJECT_CLASS, 		serviceTypes.contains(ServiceStateMBean.OBJECT_CLASS) ? 		interfaces : null);
-		items.put(ServiceStateMBean.USING_BUNDLES, 		serviceTypes.contains(ServiceStateMBean.USING_BUNDLES) ? 	usingBundles : null);
-		items.put(ServiceStateMBean.PROPERTIES, 		serviceTypes.contains(ServiceStateMBean.PROPERTIES) ? 		properties : null);
-		try {
-			return new CompositeDataSupport(ServiceStateMBean.SERVICE_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form service open data", e);
-		}
+	private CompositeData asCompositeData(ItemProjection projection) {
+		return SERVICE.create(
+				projection.contains(ServiceStateMBean.BUNDLE_IDENTIFIER) ? getBundle() : null,
+				getIdentifier(),
+				projection.contains(ServiceStateMBean.OBJECT_CLASS) ? getInterfaces() : null,
+				projection.contains(ServiceStateMBean.PROPERTIES) ? getProperties() : null,
+				projection.contains(ServiceStateMBean.USING_BUNDLES) ? getUsingBundles() : null);
+	}
+
+	/**
+	 * @return the identifier of the bundle which registered this service
+	 */
+	private long getBundle() {
+		return reference.getBundle().getBundleId();
+	}
+
+	/**
+	 * @return the identifier of this service
+	 */
+	private long getIdentifier() {
+		return (Long) reference.getProperty(SERVICE_ID);
+	}
+
+	/**
+	 * @return the interfaces this service is registered under
+	 */
+	private String[] getInterfaces() {
+		return (String[]) reference.getProperty(OBJECTCLASS);
+	}
+
+	/**
+	 * @return the properties of this service
+	 */
+	private TabularData getProperties() {
+		return OSGiProperties.tableFrom(reference);
+	}
+
+	/**
+	 * @return the identifiers of the bundles using this service
+	 */
+	private Long[] getUsingBundles() {
+		return longArrayFrom(OSGiService.getBundlesUsing(reference));
 	}
 
 }
@@ -15,13 +15,13 @@
 
 package org.eclipse.gemini.management.framework.internal;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.OpenDataException;
 
+import org.eclipse.gemini.management.internal.CompositeDataFactory;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.jmx.framework.ServiceStateMBean;
@@ -60,6 +60,10 @@ import org.osgi.jmx.framework.ServiceStateMBean;
  */
 public final class OSGiServiceEvent {
 
+	private static final CompositeDataFactory SERVICE_EVENT = new CompositeDataFactory(ServiceStateMBean.SERVICE_EVENT_TYPE,
+			ServiceStateMBean.IDENTIFIER, ServiceStateMBean.BUNDLE_IDENTIFIER, ServiceStateMBean.BUNDLE_LOCATION,
+			ServiceStateMBean.BUNDLE_SYMBOLIC_NAME, ServiceStateMBean.OBJECT_CLASS, ServiceStateMBean.EVENT);
+
 	private long bundleId;
 	
 	private int eventType;
@@ -88,26 +92,91 @@ public final class OSGiServiceEvent {
 		this.eventType = event.getType();
 	}
 
+	private OSGiServiceEvent() {
+	}
+
+	/**
+	 * Write the receiver to the output
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeLong(serviceId);
+		out.writeLong(bundleId);
+		out.writeInt(eventType);
+		writeString(out, location);
+		writeString(out, symbolicName);
+		out.writeInt(interfaces == null ? -1 : interfaces.length);
+		if (interfaces != null) {
+			for (String anInterface : interfaces) {
+				writeString(out, anInterface);
+			}
+		}
+	}
+
+	/**
+	 * Read an OSGiServiceEvent written by {@link #writeTo(DataOutput)}
+	 * 
+	 * @param in
+	 * @return the event
+	 * @throws IOException
+	 */
+	public static OSGiServiceEvent readFrom(DataInput in) throws IOException {
+		OSGiServiceEvent event = new OSGiServiceEvent();
+		event.serviceId = in.readLong();
+		event.bundleId = in.readLong();
+		event.eventType = in.readInt();
+		event.location = readString(in);
+		event.symbolicName = readString(in);
+		int interfaceCount = in.readInt();
+		if (interfaceCount >= 0) {
+			event.interfaces = new String[interfaceCount];
+			for (int i = 0; i < interfaceCount; i++) {
+				event.interfaces[i] = readString(in);
+			}
+		}
+		return event;
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * @return the identifier of the service
+	 */
+	public long getServiceId() {
+		return serviceId;
+	}
+
+	/**
+	 * @return the type of the event
+	 */
+	public int getEventType() {
+		return eventType;
+	}
+
 	/**
 	 * Answer the receiver encoded as CompositeData
 	 * 
 	 * @return the CompositeData encoding of the receiver.
 	 */
 	public CompositeData asCompositeData() {
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(ServiceStateMBean.IDENTIFIER, serviceId);
-		items.put(ServiceStateMBean.BUNDLE_IDENTIFIER, bundleId);
-		items.put(ServiceStateMBean.BUNDLE_LOCATION, location);
-		items.put(ServiceStateMBean.BUNDLE_SYMBOLIC_NAME, symbolicName);
-		items.put(ServiceStateMBean.IDENTIFIER, serviceId);
-		items.put(ServiceStateMBean.OBJECT_CLASS, interfaces);
-		items.put(ServiceStateMBean.EVENT, eventType);
-
-		try {
-			return new CompositeDataSupport(ServiceStateMBean.SERVICE_EVENT_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form service event open data", e);
-		}
+		return SERVICE_EVENT.create(
+				serviceId,
+				bundleId,
+				location,
+				symbolicName,
+				interfaces,
+				eventType);
 	}
 
 }
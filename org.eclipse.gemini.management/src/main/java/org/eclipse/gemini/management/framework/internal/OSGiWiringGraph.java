@@ -0,0 +1,574 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleRevisions;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+/**
+ * The graph of the bundles of the framework, with an edge from each bundle to every bundle it is wired to by the
+ * required wires of its wirings in use, per namespace.
+ * <p>
+ * The providers each bundle is wired to are kept per namespace, they are indexed when the graph is first opened and
+ * then kept up to date by a synchronous bundle listener, an event re-indexes its bundle only. The {@link Graph} of a
+ * namespace is built from them in compressed sparse row form on its first query and shared by the queries that follow.
+ * A change of the wires of a bundle patches the row of the bundle in the graphs already built, while a bundle being
+ * installed or uninstalled drops them to be built again by their next query.
+ * <p>
+ * Wires added for dynamic imports do not fire a bundle event, the graph only sees them once the importing bundle
+ * changes.
+ * <p>
+ * This class is thread-safe, queries of an up to date graph do not take a lock.
+ */
+public final class OSGiWiringGraph {
+
+	private static final String ALL_NAMESPACES = "";
+
+	private static final long[] NO_BUNDLES = new long[0];
+
+	private final BundleContext bundleContext;
+
+	private final Object writeLock = new Object();
+
+	private final Map<Long, Map<String, long[]>> providers = new HashMap<Long, Map<String, long[]>>();
+
+	private final ConcurrentHashMap<String, Graph> graphs = new ConcurrentHashMap<String, Graph>();
+
+	private volatile boolean open = false;
+
+	private final SynchronousBundleListener listener = new SynchronousBundleListener() {
+		public void bundleChanged(BundleEvent event) {
+			switch (event.getType()) {
+				case BundleEvent.INSTALLED:
+				case BundleEvent.UNINSTALLED:
+					update(event.getBundle(), false);
+					break;
+				case BundleEvent.RESOLVED:
+				case BundleEvent.UNRESOLVED:
+				case BundleEvent.UPDATED:
+					update(event.getBundle(), true);
+					break;
+				default:
+					break;
+			}
+		}
+	};
+
+	/**
+	 *
+	 * @param bundleContext
+	 */
+	public OSGiWiringGraph(BundleContext bundleContext) {
+		this.bundleContext = bundleContext;
+	}
+
+	/**
+	 * Index the bundles and start listening for bundle events, unless the graph is already open
+	 */
+	public void open() {
+		if (open) {
+			return;
+		}
+		synchronized (writeLock) {
+			if (open) {
+				return;
+			}
+			bundleContext.addBundleListener(listener);
+			for (Bundle bundle : bundleContext.getBundles()) {
+				index(bundle);
+			}
+			open = true;
+		}
+	}
+
+	/**
+	 * Stop listening for bundle events and discard the graph
+	 */
+	public void close() {
+		synchronized (writeLock) {
+			open = false;
+			try {
+				bundleContext.removeBundleListener(listener);
+			} catch (IllegalStateException e) {
+				// the bundle has stopped and its listeners are already gone
+			}
+			providers.clear();
+			graphs.clear();
+		}
+	}
+
+	/**
+	 * Answer the graph of the wires in the namespace
+	 *
+	 * @param namespace - the namespace of the wires, or null for all
+	 * @return the graph
+	 */
+	public Graph getGraph(String namespace) {
+		open();
+		String key = namespace == null ? ALL_NAMESPACES : namespace;
+		Graph graph = graphs.get(key);
+		if (graph != null) {
+			return graph;
+		}
+		synchronized (writeLock) {
+			graph = graphs.get(key);
+			if (graph == null) {
+				graph = build(namespace);
+				if (open) {
+					graphs.put(key, graph);
+				}
+			}
+			return graph;
+		}
+	}
+
+	/**
+	 * Re-index the bundle and patch its row in the graphs built, or drop them if the bundles of the graph have changed
+	 */
+	private void update(Bundle bundle, boolean patch) {
+		synchronized (writeLock) {
+			if (!open) {
+				return;
+			}
+			index(bundle);
+			Map<String, long[]> indexed = providers.get(bundle.getBundleId());
+			if (!patch || indexed == null) {
+				graphs.clear();
+				return;
+			}
+			for (Map.Entry<String, Graph> entry : graphs.entrySet()) {
+				String namespace = ALL_NAMESPACES.equals(entry.getKey()) ? null : entry.getKey();
+				Graph patched = entry.getValue().withEdges(bundle.getBundleId(), targets(indexed, namespace));
+				if (patched == null) {
+					graphs.remove(entry.getKey());
+				} else {
+					graphs.put(entry.getKey(), patched);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replace the providers of the bundle with those of its wirings in use, an uninstalled bundle with no wiring in use
+	 * is dropped
+	 */
+	private void index(Bundle bundle) {
+		Map<String, Set<Long>> wired = new HashMap<String, Set<Long>>();
+		boolean inUse = false;
+		BundleRevisions revisions = bundle.adapt(BundleRevisions.class);
+		if (revisions != null) {
+			for (BundleRevision revision : revisions.getRevisions()) {
+				BundleWiring wiring = revision.getWiring();
+				if (wiring == null || !wiring.isInUse()) {
+					continue;
+				}
+				inUse = true;
+				for (BundleWire wire : wiring.getRequiredWires(null)) {
+					long provider = wire.getProviderWiring().getBundle().getBundleId();
+					if (provider == bundle.getBundleId()) {
+						continue;
+					}
+					String namespace = wire.getCapability().getNamespace();
+					Set<Long> namespaceProviders = wired.get(namespace);
+					if (namespaceProviders == null) {
+						namespaceProviders = new TreeSet<Long>();
+						wired.put(namespace, namespaceProviders);
+					}
+					namespaceProviders.add(provider);
+				}
+			}
+		}
+		if (!inUse && bundle.getState() == Bundle.UNINSTALLED) {
+			providers.remove(bundle.getBundleId());
+			return;
+		}
+		Map<String, long[]> indexed = new HashMap<String, long[]>();
+		for (Map.Entry<String, Set<Long>> entry : wired.entrySet()) {
+			indexed.put(entry.getKey(), toArray(entry.getValue()));
+		}
+		providers.put(bundle.getBundleId(), indexed);
+	}
+
+	private Graph build(String namespace) {
+		Map<Long, long[]> edges = new HashMap<Long, long[]>();
+		int edgeCount = 0;
+		for (Map.Entry<Long, Map<String, long[]>> entry : providers.entrySet()) {
+			long[] targets = targets(entry.getValue(), namespace);
+			if (targets.length > 0) {
+				edges.put(entry.getKey(), targets);
+				edgeCount += targets.length;
+			}
+		}
+		long[] nodes = new long[providers.size() + edgeCount];
+		int count = 0;
+		for (Long bundleId : providers.keySet()) {
+			nodes[count++] = bundleId;
+		}
+		for (long[] targets : edges.values()) {
+			System.arraycopy(targets, 0, nodes, count, targets.length);
+			count += targets.length;
+		}
+		return new Graph(distinct(nodes, count), edges);
+	}
+
+	/**
+	 * @return the providers in the namespace, or in all namespaces if it is null, in ascending order
+	 */
+	private static long[] targets(Map<String, long[]> namespaces, String namespace) {
+		if (namespace != null) {
+			long[] targets = namespaces.get(namespace);
+			return targets == null ? NO_BUNDLES : targets;
+		}
+		if (namespaces.size() == 1) {
+			return namespaces.values().iterator().next();
+		}
+		int count = 0;
+		for (long[] targets : namespaces.values()) {
+			count += targets.length;
+		}
+		long[] all = new long[count];
+		count = 0;
+		for (long[] targets : namespaces.values()) {
+			System.arraycopy(targets, 0, all, count, targets.length);
+			count += targets.length;
+		}
+		return distinct(all, count);
+	}
+
+	/**
+	 * @return the distinct values of the first count values of the array, in ascending order
+	 */
+	private static long[] distinct(long[] values, int count) {
+		Arrays.sort(values, 0, count);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (distinct == 0 || values[distinct - 1] != values[i]) {
+				values[distinct++] = values[i];
+			}
+		}
+		return distinct == values.length ? values : Arrays.copyOf(values, distinct);
+	}
+
+	private static long[] toArray(Set<Long> values) {
+		long[] array = new long[values.size()];
+		int i = 0;
+		for (Long value : values) {
+			array[i++] = value;
+		}
+		return array;
+	}
+
+	/**
+	 * An immutable graph of bundles in compressed sparse row form. The bundles are numbered by the position of their
+	 * identifier in a sorted array, the edges leaving a bundle are a range of an array of bundle numbers given by an
+	 * array of offsets, and so are the edges entering it.
+	 */
+	public static final class Graph {
+
+		private final long[] bundleIds;
+
+		private final int[] outOffsets;
+
+		private final int[] outTargets;
+
+		private final int[] inOffsets;
+
+		private final int[] inSources;
+
+		private Graph(long[] bundleIds, Map<Long, long[]> edges) {
+			this(bundleIds, outOffsets(bundleIds, edges), outTargets(bundleIds, edges));
+		}
+
+		private Graph(long[] bundleIds, int[] outOffsets, int[] outTargets) {
+			int nodes = bundleIds.length;
+			this.bundleIds = bundleIds;
+			this.outOffsets = outOffsets;
+			this.outTargets = outTargets;
+			this.inOffsets = new int[nodes + 1];
+			for (int target : outTargets) {
+				inOffsets[target + 1]++;
+			}
+			for (int i = 0; i < nodes; i++) {
+				inOffsets[i + 1] += inOffsets[i];
+			}
+			this.inSources = new int[outTargets.length];
+			int[] next = Arrays.copyOf(inOffsets, nodes);
+			for (int i = 0; i < nodes; i++) {
+				for (int j = outOffsets[i]; j < outOffsets[i + 1]; j++) {
+					inSources[next[outTargets[j]]++] = i;
+				}
+			}
+		}
+
+		private static int[] outOffsets(long[] bundleIds, Map<Long, long[]> edges) {
+			int[] offsets = new int[bundleIds.length + 1];
+			for (int i = 0; i < bundleIds.length; i++) {
+				long[] targets = edges.get(bundleIds[i]);
+				offsets[i + 1] = offsets[i] + (targets == null ? 0 : targets.length);
+			}
+			return offsets;
+		}
+
+		private static int[] outTargets(long[] bundleIds, Map<Long, long[]> edges) {
+			int edgeCount = 0;
+			for (long[] targets : edges.values()) {
+				edgeCount += targets.length;
+			}
+			int[] outTargets = new int[edgeCount];
+			int next = 0;
+			for (long bundleId : bundleIds) {
+				long[] targets = edges.get(bundleId);
+				if (targets != null) {
+					for (long target : targets) {
+						outTargets[next++] = Arrays.binarySearch(bundleIds, target);
+					}
+				}
+			}
+			return outTargets;
+		}
+
+		/**
+		 * Answer a copy of the graph with the edges leaving the bundle replaced, the rows of the other bundles are copied
+		 * as they are and the edges entering each bundle are derived again
+		 *
+		 * @return the patched graph, or null if the bundle or one of the targets is not in the graph
+		 */
+		private Graph withEdges(long bundleId, long[] targets) {
+			int node = Arrays.binarySearch(bundleIds, bundleId);
+			if (node < 0) {
+				return null;
+			}
+			int[] row = new int[targets.length];
+			for (int i = 0; i < targets.length; i++) {
+				row[i] = Arrays.binarySearch(bundleIds, targets[i]);
+				if (row[i] < 0) {
+					return null;
+				}
+			}
+			int start = outOffsets[node];
+			int end = outOffsets[node + 1];
+			int shift = row.length - (end - start);
+			int[] offsets = outOffsets.clone();
+			for (int i = node + 1; i < offsets.length; i++) {
+				offsets[i] += shift;
+			}
+			int[] patched = new int[outTargets.length + shift];
+			System.arraycopy(outTargets, 0, patched, 0, start);
+			System.arraycopy(row, 0, patched, start, row.length);
+			System.arraycopy(outTargets, end, patched, start + row.length, outTargets.length - end);
+			return new Graph(bundleIds, offsets, patched);
+		}
+
+		/**
+		 * @param bundleId
+		 * @return true if the bundle is in the graph
+		 */
+		public boolean contains(long bundleId) {
+			return Arrays.binarySearch(bundleIds, bundleId) >= 0;
+		}
+
+		/**
+		 * @return the identifiers of the bundles in the graph, in ascending order
+		 */
+		public long[] getBundleIds() {
+			return bundleIds.clone();
+		}
+
+		/**
+		 * @param bundleId
+		 * @return the number of bundles the bundle is wired to as a requirer
+		 */
+		public int getOutDegree(long bundleId) {
+			int node = Arrays.binarySearch(bundleIds, bundleId);
+			return node < 0 ? 0 : outOffsets[node + 1] - outOffsets[node];
+		}
+
+		/**
+		 * @param bundleId
+		 * @return the number of bundles wired to the bundle as a provider
+		 */
+		public int getInDegree(long bundleId) {
+			int node = Arrays.binarySearch(bundleIds, bundleId);
+			return node < 0 ? 0 : inOffsets[node + 1] - inOffsets[node];
+		}
+
+		/**
+		 * @param bundleId
+		 * @return the identifiers of the other bundles the bundle depends on, directly or transitively, in ascending order
+		 */
+		public long[] getDependencies(long bundleId) {
+			return reachable(bundleId, outOffsets, outTargets);
+		}
+
+		/**
+		 * @param bundleId
+		 * @return the identifiers of the other bundles that depend on the bundle, directly or transitively, in ascending
+		 *         order
+		 */
+		public long[] getDependents(long bundleId) {
+			return reachable(bundleId, inOffsets, inSources);
+		}
+
+		/**
+		 * @param fromBundleId
+		 * @param toBundleId
+		 * @return true if there is a path of one or more wires from the first bundle to the second
+		 */
+		public boolean isReachable(long fromBundleId, long toBundleId) {
+			int from = Arrays.binarySearch(bundleIds, fromBundleId);
+			int to = Arrays.binarySearch(bundleIds, toBundleId);
+			if (from < 0 || to < 0) {
+				return false;
+			}
+			boolean[] visited = new boolean[bundleIds.length];
+			int[] queue = new int[bundleIds.length];
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = from;
+			while (head < tail) {
+				int node = queue[head++];
+				for (int i = outOffsets[node]; i < outOffsets[node + 1]; i++) {
+					int target = outTargets[i];
+					if (target == to) {
+						return true;
+					}
+					if (!visited[target]) {
+						visited[target] = true;
+						queue[tail++] = target;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Answer the cycles of the graph, that is its strongly connected components of more than one bundle
+		 *
+		 * @return the identifiers of the bundles of each cycle in ascending order, the cycles ordered by their first
+		 *         bundle
+		 */
+		public long[][] getCycles() {
+			int nodes = bundleIds.length;
+			int[] index = new int[nodes];
+			int[] low = new int[nodes];
+			boolean[] onStack = new boolean[nodes];
+			int[] stack = new int[nodes];
+			int stackSize = 0;
+			int[] callStack = new int[nodes];
+			int[] edge = new int[nodes];
+			int depth = 0;
+			int counter = 1;
+			List<long[]> cycles = new ArrayList<long[]>();
+			for (int root = 0; root < nodes; root++) {
+				if (index[root] != 0) {
+					continue;
+				}
+				index[root] = low[root] = counter++;
+				stack[stackSize++] = root;
+				onStack[root] = true;
+				callStack[depth] = root;
+				edge[depth++] = outOffsets[root];
+				while (depth > 0) {
+					int node = callStack[depth - 1];
+					if (edge[depth - 1] < outOffsets[node + 1]) {
+						int target = outTargets[edge[depth - 1]++];
+						if (index[target] == 0) {
+							index[target] = low[target] = counter++;
+							stack[stackSize++] = target;
+							onStack[target] = true;
+							callStack[depth] = target;
+							edge[depth++] = outOffsets[target];
+						} else if (onStack[target]) {
+							low[node] = Math.min(low[node], index[target]);
+						}
+						continue;
+					}
+					depth--;
+					if (depth > 0) {
+						int caller = callStack[depth - 1];
+						low[caller] = Math.min(low[caller], low[node]);
+					}
+					if (low[node] == index[node]) {
+						int start = stackSize;
+						do {
+							onStack[stack[--start]] = false;
+						} while (stack[start] != node);
+						if (stackSize - start > 1) {
+							long[] cycle = new long[stackSize - start];
+							for (int i = start; i < stackSize; i++) {
+								cycle[i - start] = bundleIds[stack[i]];
+							}
+							Arrays.sort(cycle);
+							cycles.add(cycle);
+						}
+						stackSize = start;
+					}
+				}
+			}
+			Collections.sort(cycles, new Comparator<long[]>() {
+				public int compare(long[] cycle1, long[] cycle2) {
+					return cycle1[0] < cycle2[0] ? -1 : (cycle1[0] == cycle2[0] ? 0 : 1);
+				}
+			});
+			return cycles.toArray(new long[cycles.size()][]);
+		}
+
+		private long[] reachable(long bundleId, int[] offsets, int[] targets) {
+			int start = Arrays.binarySearch(bundleIds, bundleId);
+			if (start < 0) {
+				return NO_BUNDLES;
+			}
+			boolean[] visited = new boolean[bundleIds.length];
+			int[] queue = new int[bundleIds.length];
+			int head = 0;
+			int tail = 0;
+			visited[start] = true;
+			queue[tail++] = start;
+			while (head < tail) {
+				int node = queue[head++];
+				for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+					int target = targets[i];
+					if (!visited[target]) {
+						visited[target] = true;
+						queue[tail++] = target;
+					}
+				}
+			}
+			long[] result = new long[tail - 1];
+			int count = 0;
+			for (int i = 0; i < visited.length; i++) {
+				if (visited[i] && i != start) {
+					result[count++] = bundleIds[i];
+				}
+			}
+			return result;
+		}
+
+	}
+
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.gemini.management.framework.internal.BundleBatchActionResult.Outcome;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+/**
+ * Applies an action to a batch of bundles on a bounded pool of threads, in dependency order.
+ * <p>
+ * The bundles are grouped by start level and the groups are processed one after the other, in ascending order of
+ * start level, or descending order when the batch is reversed. Within a group a bundle depends on the bundles of the
+ * group its current wiring is wired to as a requirer, or as a provider when the batch is reversed, and is only
+ * processed once they all have been. Bundles whose dependencies are done are processed at the same time. A cycle of
+ * dependencies is broken by processing the bundle with the lowest identifier that is left when nothing else can be.
+ * <p>
+ * No more bundles are processed once an action fails, the bundles that were not processed are reported as remaining.
+ */
+public final class ParallelBundleBatch {
+
+	/**
+	 * The action applied to each bundle
+	 */
+	public interface Action {
+
+		/**
+		 * @param bundle
+		 * @throws Exception if the action fails
+		 */
+		void apply(Bundle bundle) throws Exception;
+
+	}
+
+	private final Map<Long, Bundle> bundles = new LinkedHashMap<Long, Bundle>();
+
+	private final Action action;
+
+	private final boolean reverse;
+
+	private final int parallelism;
+
+	/**
+	 *
+	 * @param bundles - the bundles of the batch
+	 * @param action - the action to apply to each bundle
+	 * @param reverse - true to process the bundles in the reverse of the dependency order
+	 * @param parallelism - the maximum number of bundles processed at the same time
+	 */
+	public ParallelBundleBatch(List<Bundle> bundles, Action action, boolean reverse, int parallelism) {
+		for (Bundle bundle : bundles) {
+			this.bundles.put(bundle.getBundleId(), bundle);
+		}
+		this.action = action;
+		this.reverse = reverse;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Apply the action to the bundles
+	 *
+	 * @return the result of the batch
+	 * @throws InterruptedException if the thread is interrupted while waiting for the actions, no more bundles are
+	 *             processed but the actions under way are left to finish
+	 */
+	public BundleBatchActionResult run() throws InterruptedException {
+		long start = System.currentTimeMillis();
+		List<Outcome> outcomes = new ArrayList<Outcome>();
+		if (!bundles.isEmpty()) {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, bundles.size()), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "JMX Core Bundle Batch");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			try {
+				CompletionService<Outcome> completion = new ExecutorCompletionService<Outcome>(executor);
+				for (Set<Long> group : groups()) {
+					if (!process(group, completion, outcomes)) {
+						break;
+					}
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+		List<Long> completed = new ArrayList<Long>();
+		Set<Long> processed = new HashSet<Long>();
+		Outcome failure = null;
+		for (Outcome outcome : outcomes) {
+			processed.add(outcome.getBundleId());
+			if (outcome.getErrorMessage() == null) {
+				completed.add(outcome.getBundleId());
+			} else if (failure == null) {
+				failure = outcome;
+			}
+		}
+		List<Long> remaining = new ArrayList<Long>();
+		for (Long bundleId : bundles.keySet()) {
+			if (!processed.contains(bundleId)) {
+				remaining.add(bundleId);
+			}
+		}
+		return new BundleBatchActionResult(failure == null ? null : failure.getErrorMessage(), completed.toArray(new Long[completed.size()]),
+				failure == null ? -1 : failure.getBundleId(), remaining.toArray(new Long[remaining.size()]), outcomes, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Process a group of bundles of the same start level
+	 *
+	 * @return false if an action failed
+	 */
+	private boolean process(Set<Long> group, CompletionService<Outcome> completion, List<Outcome> outcomes) throws InterruptedException {
+		Map<Long, Set<Long>> dependencies = new HashMap<Long, Set<Long>>();
+		Map<Long, Set<Long>> dependents = new HashMap<Long, Set<Long>>();
+		for (Long bundleId : group) {
+			dependencies.put(bundleId, new HashSet<Long>());
+			dependents.put(bundleId, new HashSet<Long>());
+		}
+		for (Long bundleId : group) {
+			for (Long provider : providersOf(bundles.get(bundleId))) {
+				if (group.contains(provider) && !provider.equals(bundleId)) {
+					Long dependent = reverse ? provider : bundleId;
+					Long dependency = reverse ? bundleId : provider;
+					dependencies.get(dependent).add(dependency);
+					dependents.get(dependency).add(dependent);
+				}
+			}
+		}
+		TreeSet<Long> waiting = new TreeSet<Long>(group);
+		int running = 0;
+		boolean failed = false;
+		while (!waiting.isEmpty() || running > 0) {
+			if (!failed) {
+				List<Long> ready = new ArrayList<Long>();
+				for (Long bundleId : waiting) {
+					if (dependencies.get(bundleId).isEmpty()) {
+						ready.add(bundleId);
+					}
+				}
+				if (ready.isEmpty() && running == 0) {
+					ready.add(waiting.first());
+				}
+				for (Long bundleId : ready) {
+					waiting.remove(bundleId);
+					completion.submit(task(bundles.get(bundleId)));
+					running++;
+				}
+			}
+			if (running == 0) {
+				break;
+			}
+			Outcome outcome;
+			try {
+				outcome = completion.take().get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Bundle batch task failed", e.getCause());
+			}
+			running--;
+			outcomes.add(outcome);
+			if (outcome.getErrorMessage() != null) {
+				failed = true;
+			}
+			for (Long dependent : dependents.get(outcome.getBundleId())) {
+				dependencies.get(dependent).remove(outcome.getBundleId());
+			}
+		}
+		return !failed;
+	}
+
+	private Callable<Outcome> task(final Bundle bundle) {
+		return new Callable<Outcome>() {
+			public Outcome call() {
+				long start = System.currentTimeMillis();
+				String errorMessage = null;
+				try {
+					action.apply(bundle);
+				} catch (Throwable e) {
+					errorMessage = e.toString();
+				}
+				return new Outcome(bundle.getBundleId(), errorMessage, System.currentTimeMillis() - start);
+			}
+		};
+	}
+
+	/**
+	 * @return the identifiers of the bundles grouped by start level, in processing order
+	 */
+	private List<Set<Long>> groups() {
+		TreeMap<Integer, Set<Long>> levels = new TreeMap<Integer, Set<Long>>();
+		for (Bundle bundle : bundles.values()) {
+			int level = startLevelOf(bundle);
+			Set<Long> group = levels.get(level);
+			if (group == null) {
+				group = new TreeSet<Long>();
+				levels.put(level, group);
+			}
+			group.add(bundle.getBundleId());
+		}
+		return new ArrayList<Set<Long>>(reverse ? levels.descendingMap().values() : levels.values());
+	}
+
+	private static int startLevelOf(Bundle bundle) {
+		BundleStartLevel startLevel = bundle.adapt(BundleStartLevel.class);
+		if (startLevel == null) {
+			return 0;
+		}
+		try {
+			return startLevel.getStartLevel();
+		} catch (IllegalArgumentException e) {
+			// the bundle is uninstalled
+			return 0;
+		}
+	}
+
+	private static Set<Long> providersOf(Bundle bundle) {
+		Set<Long> providers = new HashSet<Long>();
+		BundleWiring wiring = bundle.adapt(BundleWiring.class);
+		if (wiring != null) {
+			for (BundleWire wire : wiring.getRequiredWires(null)) {
+				providers.add(wire.getProviderWiring().getBundle().getBundleId());
+			}
+		}
+		return providers;
+	}
+
+}
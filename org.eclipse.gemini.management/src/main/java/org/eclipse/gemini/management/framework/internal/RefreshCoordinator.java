@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.framework.internal;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+/**
+ * Runs the bundle refreshes asked for by the Framework MBean one at a time. The refreshes asked for while another is
+ * under way are merged into a single framework refresh of all their bundles, which is started once the one under way
+ * completes. Every request merged into a refresh shares its outcome, which holds the state of the bundles when it
+ * completed, before the next refresh starts, so each caller reads the state of its own bundles from it.
+ * <p>
+ * A caller that times out only stops waiting itself, the refresh carries on for the other callers merged into it and
+ * the next refresh starts once the framework reports it complete.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class RefreshCoordinator {
+
+	/**
+	 * The framework property holding the milliseconds a caller waits for its refresh, including the time spent behind a
+	 * refresh under way, 5 minutes by default and 0 to wait for ever
+	 */
+	public static final String REFRESH_TIMEOUT = "org.eclipse.gemini.management.framework.refresh.timeout";
+
+	private static final long DEFAULT_TIMEOUT = 5 * 60 * 1000L;
+
+	private final BundleContext bundleContext;
+
+	private final FrameworkWiring frameworkWiring;
+
+	private final long timeout;
+
+	private final Object monitor = new Object();
+
+	private Refresh running;
+
+	private Refresh pending;
+
+	/**
+	 *
+	 * @param bundleContext - the context to find the framework and read the timeout from
+	 */
+	public RefreshCoordinator(BundleContext bundleContext) {
+		this.bundleContext = bundleContext;
+		this.frameworkWiring = bundleContext.getBundle(0).adapt(FrameworkWiring.class);
+		this.timeout = getTimeout(bundleContext);
+	}
+
+	/**
+	 * Ask for the bundles to be refreshed, the refresh starts at once unless another is under way
+	 *
+	 * @param bundles - the bundles to refresh, null for the bundles removal pending
+	 * @return the completion of the refresh
+	 */
+	public Future<Result> refresh(Collection<Bundle> bundles) {
+		Refresh refresh;
+		boolean start;
+		synchronized (monitor) {
+			if (pending == null) {
+				pending = new Refresh();
+			}
+			pending.add(bundles);
+			refresh = pending;
+			start = running == null;
+			if (start) {
+				running = pending;
+				pending = null;
+			}
+		}
+		if (start) {
+			start(refresh);
+		}
+		return refresh;
+	}
+
+	/**
+	 * Refresh the bundles and wait for the refresh to complete, for no longer than the timeout
+	 *
+	 * @param bundles - the bundles to refresh, null for the bundles removal pending
+	 * @return the outcome of the refresh
+	 * @throws IOException if the refresh could not be started, or did not complete in time
+	 */
+	public Result refreshAndWait(Collection<Bundle> bundles) throws IOException {
+		Future<Result> refresh = refresh(bundles);
+		try {
+			return timeout == 0 ? refresh.get() : refresh.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new IOException("Bundle refresh did not complete within " + timeout + " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the bundle refresh");
+		} catch (ExecutionException e) {
+			IOException iox = new IOException("Unable to refresh packages");
+			iox.initCause(e.getCause());
+			throw iox;
+		}
+	}
+
+	private void start(Refresh refresh) {
+		try {
+			frameworkWiring.refreshBundles(refresh.getBundles(), refresh);
+		} catch (RuntimeException e) {
+			refresh.fail(e);
+			completed(refresh);
+		}
+	}
+
+	/**
+	 * Start the pending refresh, if any, once the running one has completed
+	 */
+	private void completed(Refresh refresh) {
+		Refresh next;
+		synchronized (monitor) {
+			if (running != refresh) {
+				return;
+			}
+			running = pending;
+			pending = null;
+			next = running;
+		}
+		if (next != null) {
+			start(next);
+		}
+	}
+
+	private static long getTimeout(BundleContext bundleContext) {
+		String timeout = bundleContext.getProperty(REFRESH_TIMEOUT);
+		if (timeout != null) {
+			try {
+				long value = Long.parseLong(timeout.trim());
+				if (value >= 0) {
+					return value;
+				}
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return DEFAULT_TIMEOUT;
+	}
+
+	/**
+	 * The outcome of a refresh
+	 */
+	public static final class Result {
+
+		private final boolean success;
+
+		private final Map<Long, Integer> states;
+
+		private Result(boolean success, Map<Long, Integer> states) {
+			this.success = success;
+			this.states = states;
+		}
+
+		/**
+		 * @return true if the framework reported no error while refreshing
+		 */
+		public boolean isSuccess() {
+			return success;
+		}
+
+		/**
+		 * @param bundle
+		 * @return true if the bundle was resolved when the refresh completed, its current state is used for a bundle
+		 *         installed since
+		 */
+		public boolean isResolved(Bundle bundle) {
+			Integer state = states.get(bundle.getBundleId());
+			return (state == null ? bundle.getState() : state) >= Bundle.RESOLVED;
+		}
+
+	}
+
+	/**
+	 * A framework refresh and its completion, the union of the requests merged into it
+	 */
+	private final class Refresh extends FutureTask<Result> implements FrameworkListener {
+
+		private final Set<Bundle> bundles = new HashSet<Bundle>();
+
+		private boolean removalPending = false;
+
+		private volatile boolean error = false;
+
+		private Refresh() {
+			super(new Callable<Result>() {
+				public Result call() {
+					throw new IllegalStateException("A refresh is completed by the framework");
+				}
+			});
+		}
+
+		private void add(Collection<Bundle> requested) {
+			if (requested == null) {
+				removalPending = true;
+			} else {
+				bundles.addAll(requested);
+			}
+		}
+
+		/**
+		 * @return the bundles to refresh, null for the bundles removal pending
+		 */
+		private Collection<Bundle> getBundles() {
+			synchronized (monitor) {
+				if (!removalPending) {
+					return new HashSet<Bundle>(bundles);
+				}
+				if (bundles.isEmpty()) {
+					return null;
+				}
+				Set<Bundle> merged = new HashSet<Bundle>(bundles);
+				merged.addAll(frameworkWiring.getRemovalPendingBundles());
+				return merged;
+			}
+		}
+
+		private void fail(Throwable cause) {
+			setException(cause);
+		}
+
+		public void frameworkEvent(FrameworkEvent event) {
+			if (FrameworkEvent.ERROR == event.getType()) {
+				error = true;
+			} else if (FrameworkEvent.PACKAGES_REFRESHED == event.getType()) {
+				Map<Long, Integer> states = new HashMap<Long, Integer>();
+				for (Bundle bundle : bundleContext.getBundles()) {
+					states.put(bundle.getBundleId(), bundle.getState());
+				}
+				set(new Result(!error, states));
+				completed(this);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.internal;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.InvalidKeyException;
+import javax.management.openmbean.InvalidOpenTypeException;
+import javax.management.openmbean.KeyAlreadyExistsException;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+/**
+ * An immutable tabular data backed by an array of rows.
+ * <p>
+ * Unlike {@link TabularDataSupport} the rows are not put in a map keyed by their index when the table is created, the
+ * index is only built the first time a row is looked up by key. The rows must have distinct keys, this is checked
+ * when the index is built, at the latest when the table is serialized, and when the table is created if assertions
+ * are enabled. The table is replaced by the equal {@link TabularDataSupport} when it is serialized, so remote clients
+ * only ever see the standard class: the saving applies to in-process callers only, a remote caller gets the standard
+ * class built when the table is sent.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class ArrayTabularData implements TabularData, Serializable {
+
+	private static final long serialVersionUID = -2183390725312806614L;
+
+	private final transient TabularType type;
+
+	private final transient String[] indexNames;
+
+	private final transient CompositeData[] rows;
+
+	private transient volatile Map<List<?>, CompositeData> index;
+
+	/**
+	 *
+	 * @param type - the tabular type
+	 * @param rows - the rows of the table, with distinct keys
+	 * @throws KeyAlreadyExistsException if assertions are enabled and two rows have the same key
+	 */
+	public ArrayTabularData(TabularType type, Collection<? extends CompositeData> rows) {
+		this.type = type;
+		this.indexNames = type.getIndexNames().toArray(new String[type.getIndexNames().size()]);
+		this.rows = rows.toArray(new CompositeData[rows.size()]);
+		assert isValid() : "Invalid rows for " + type.getTypeName();
+	}
+
+	private boolean isValid() {
+		for (CompositeData row : rows) {
+			if (row == null || !type.getRowType().isValue(row)) {
+				return false;
+			}
+		}
+		index();
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public TabularType getTabularType() {
+		return type;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object[] calculateIndex(CompositeData value) {
+		if (!type.getRowType().isValue(value)) {
+			throw new InvalidOpenTypeException("Value's composite type is different from the row type of " + type.getTypeName());
+		}
+		return value.getAll(indexNames);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int size() {
+		return rows.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isEmpty() {
+		return rows.length == 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean containsKey(Object[] key) {
+		return key != null && isKey(key) && index().containsKey(Arrays.asList(key));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean containsValue(CompositeData value) {
+		if (value == null || !type.getRowType().isValue(value)) {
+			return false;
+		}
+		return value.equals(index().get(Arrays.asList(value.getAll(indexNames))));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public CompositeData get(Object[] key) {
+		if (key == null || key.length == 0) {
+			throw new NullPointerException("Argument key cannot be null or empty");
+		}
+		if (!isKey(key)) {
+			throw new InvalidKeyException("Argument key=" + Arrays.asList(key) + " is not a valid key for " + type.getTypeName());
+		}
+		return index().get(Arrays.asList(key));
+	}
+
+	/**
+	 * @throws UnsupportedOperationException as the table is immutable
+	 */
+	public void put(CompositeData value) {
+		throw new UnsupportedOperationException("The table is immutable");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException as the table is immutable
+	 */
+	public CompositeData remove(Object[] key) {
+		throw new UnsupportedOperationException("The table is immutable");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException as the table is immutable
+	 */
+	public void putAll(CompositeData[] values) {
+		throw new UnsupportedOperationException("The table is immutable");
+	}
+
+	/**
+	 * @throws UnsupportedOperationException as the table is immutable
+	 */
+	public void clear() {
+		throw new UnsupportedOperationException("The table is immutable");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Collection<?> values() {
+		return Collections.unmodifiableList(Arrays.asList(rows));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Set<?> keySet() {
+		return Collections.unmodifiableSet(index().keySet());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof TabularData)) {
+			return false;
+		}
+		TabularData other = (TabularData) obj;
+		if (!type.equals(other.getTabularType()) || rows.length != other.size()) {
+			return false;
+		}
+		for (CompositeData row : rows) {
+			if (!other.containsValue(row)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		int hashCode = type.hashCode();
+		for (CompositeData row : rows) {
+			hashCode += row.hashCode();
+		}
+		return hashCode;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(getClass().getName());
+		builder.append("(tabularType=").append(type).append(",contents={");
+		for (int i = 0; i < rows.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(Arrays.asList(rows[i].getAll(indexNames))).append('=').append(rows[i]);
+		}
+		return builder.append("})").toString();
+	}
+
+	/**
+	 * @throws KeyAlreadyExistsException if two rows have the same key
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		index();
+		TabularDataSupport standard = new TabularDataSupport(type, Math.max(rows.length * 4 / 3 + 1, 16), 0.75f);
+		try {
+			// put one by one, putAll checks the keys for duplicates in quadratic time
+			for (CompositeData row : rows) {
+				standard.put(row);
+			}
+		} catch (RuntimeException e) {
+			InvalidObjectException exception = new InvalidObjectException("Cannot form " + type.getTypeName() + " open data");
+			exception.initCause(e);
+			throw exception;
+		}
+		return standard;
+	}
+
+	private boolean isKey(Object[] key) {
+		if (key.length != indexNames.length) {
+			return false;
+		}
+		for (int i = 0; i < key.length; i++) {
+			if (key[i] != null && !type.getRowType().getType(indexNames[i]).isValue(key[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Map<List<?>, CompositeData> index() {
+		Map<List<?>, CompositeData> index = this.index;
+		if (index == null) {
+			synchronized (this) {
+				index = this.index;
+				if (index == null) {
+					index = new HashMap<List<?>, CompositeData>(Math.max(rows.length * 4 / 3 + 1, 16));
+					for (CompositeData row : rows) {
+						List<?> key = Collections.unmodifiableList(Arrays.asList(row.getAll(indexNames)));
+						if (index.put(key, row) != null) {
+							throw new KeyAlreadyExistsException("Duplicate key " + key + " in " + type.getTypeName());
+						}
+					}
+					this.index = index;
+				}
+			}
+		}
+		return index;
+	}
+
+}
@@ -16,8 +16,10 @@
 package org.eclipse.gemini.management.internal;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.gemini.management.framework.internal.OSGiBundle;
 import org.osgi.framework.Bundle;
@@ -46,15 +48,7 @@ public final class BundleUtil {
 		if (wiring == null) {
 			return new String[0];
 		}
-		List<BundleWire> providedWires = wiring.getProvidedWires(BundleRevision.PACKAGE_NAMESPACE);
-		List<String> packages = new ArrayList<String>();
-        for(BundleWire wire: providedWires){
-        	String packageName = String.format("%s;%s", wire.getCapability().getAttributes().get(BundleRevision.PACKAGE_NAMESPACE), wire.getCapability().getAttributes().get(Constants.VERSION_ATTRIBUTE));
-        	if(!packages.contains(packageName)){
-        		packages.add(packageName);
-        	}
-        }
-        return packages.toArray(new String[packages.size()]);
+		return getPackageNames(wiring.getProvidedWires(BundleRevision.PACKAGE_NAMESPACE));
 	}
 
 	/**
@@ -70,15 +64,25 @@ public final class BundleUtil {
 		if (wiring == null) {
 			return new String[0];
 		}
-		List<BundleWire> requiredWires = wiring.getRequiredWires(BundleRevision.PACKAGE_NAMESPACE);
-        List<String> packages = new ArrayList<String>();
-        for(BundleWire requiredWire: requiredWires){
-            String packageName = String.format("%s;%s", requiredWire.getCapability().getAttributes().get(BundleRevision.PACKAGE_NAMESPACE), requiredWire.getCapability().getAttributes().get(Constants.VERSION_ATTRIBUTE));
-            if(!packages.contains(packageName)){
-                packages.add(packageName);
-            }
-        }
-        return packages.toArray(new String[packages.size()]);
+		return getPackageNames(wiring.getRequiredWires(BundleRevision.PACKAGE_NAMESPACE));
+	}
+
+	/**
+	 * Answer the distinct string representations of the packages of the supplied package wires, in wire order
+	 * 
+	 * @param wires - wires in the package namespace, may be null
+	 * @return the string representation of the packages, in the form of &lt;packageName&gt;;&lt;version&gt;
+	 */
+	public static String[] getPackageNames(List<BundleWire> wires) {
+		if (wires == null) {
+			return new String[0];
+		}
+		Set<String> packages = new LinkedHashSet<String>();
+		for (BundleWire wire : wires) {
+			Map<String, Object> attributes = wire.getCapability().getAttributes();
+			packages.add(attributes.get(BundleRevision.PACKAGE_NAMESPACE) + ";" + attributes.get(Constants.VERSION_ATTRIBUTE));
+		}
+		return packages.toArray(new String[packages.size()]);
 	}
 
 	/**
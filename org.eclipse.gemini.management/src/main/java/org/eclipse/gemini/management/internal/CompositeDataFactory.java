@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.internal;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.InvalidKeyException;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+
+/**
+ * Creates the composite data of a composite type straight from arrays of values.
+ * <p>
+ * The order of the items is given once, when the factory is created, and checked against the composite type then,
+ * together with the Java class of each item. Unlike {@link CompositeDataSupport} a row does not copy its values into a
+ * sorted map, and each value is only checked to be an instance of the class of its item rather than validated against
+ * its open type, which is done when assertions are enabled. A row is replaced by the equal
+ * {@link CompositeDataSupport} when it is serialized, so remote clients only ever see the standard class: the saving
+ * applies to in-process callers only, a remote caller gets the standard class built when the row is sent.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class CompositeDataFactory {
+
+	private final CompositeType type;
+
+	private final String[] names;
+
+	private final String[] sortedNames;
+
+	private final int[] sortedIndexes;
+
+	private final Class<?>[] classes;
+
+	/**
+	 * Create a factory whose values are given in the order of the item names of the composite type
+	 *
+	 * @param type - the composite type
+	 */
+	public CompositeDataFactory(CompositeType type) {
+		this(type, type.keySet().toArray(new String[type.keySet().size()]));
+	}
+
+	/**
+	 *
+	 * @param type - the composite type
+	 * @param names - the names of all the items of the type, in the order of the values
+	 * @throws IllegalArgumentException if the names are not the item names of the type
+	 */
+	public CompositeDataFactory(CompositeType type, String... names) {
+		if (names.length != type.keySet().size() || !type.keySet().equals(new HashSet<String>(Arrays.asList(names)))) {
+			throw new IllegalArgumentException("Items " + Arrays.asList(names) + " do not match " + type.getTypeName() + " " + type.keySet());
+		}
+		this.type = type;
+		this.names = names.clone();
+		this.sortedNames = type.keySet().toArray(new String[names.length]);
+		this.sortedIndexes = new int[names.length];
+		List<String> order = Arrays.asList(this.names);
+		for (int i = 0; i < sortedNames.length; i++) {
+			sortedIndexes[i] = order.indexOf(sortedNames[i]);
+		}
+		this.classes = new Class<?>[names.length];
+		for (int i = 0; i < names.length; i++) {
+			classes[i] = classOf(type.getType(names[i]));
+		}
+	}
+
+	/**
+	 * @return the composite type of the data created
+	 */
+	public CompositeType getType() {
+		return type;
+	}
+
+	/**
+	 * Answer the composite data of the values, the array is kept by the composite data and must not be changed
+	 * afterwards
+	 *
+	 * @param values - the values of the items, in the order of the names of the factory
+	 * @return the composite data
+	 * @throws IllegalArgumentException if there are not as many values as items
+	 * @throws IllegalStateException if a value is not an instance of the class of its item
+	 */
+	public CompositeData create(Object... values) {
+		if (values.length != names.length) {
+			throw new IllegalArgumentException("Expecting " + names.length + " values for " + type.getTypeName() + ", got " + values.length);
+		}
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null && !classes[i].isInstance(values[i])) {
+				throw new IllegalStateException("Cannot form " + type.getTypeName() + " open data, item " + names[i] + " is a "
+						+ values[i].getClass().getName() + " instead of a " + classes[i].getName());
+			}
+		}
+		assert isValid(values) : "Invalid values for " + type.getTypeName() + ": " + Arrays.deepToString(values);
+		return new Row(this, values);
+	}
+
+	private boolean isValid(Object[] values) {
+		for (int i = 0; i < names.length; i++) {
+			if (values[i] != null && !type.getType(names[i]).isValue(values[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Class<?> classOf(OpenType<?> type) {
+		try {
+			return Class.forName(type.getClassName(), false, CompositeDataFactory.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Cannot load " + type.getClassName() + " of " + type.getTypeName(), e);
+		}
+	}
+
+	/**
+	 * @return the position of the item among the sorted names, or a negative value if there is no such item
+	 */
+	private int indexOf(String key) {
+		if (key == null || key.trim().length() == 0) {
+			throw new IllegalArgumentException("Argument key cannot be a null or empty String");
+		}
+		return Arrays.binarySearch(sortedNames, key.trim());
+	}
+
+	/**
+	 * A composite data backed by an array of values in the order of the factory
+	 */
+	private static final class Row implements CompositeData, Serializable {
+
+		private static final long serialVersionUID = 6484286102669563138L;
+
+		private final transient CompositeDataFactory factory;
+
+		private final transient Object[] values;
+
+		private Row(CompositeDataFactory factory, Object[] values) {
+			this.factory = factory;
+			this.values = values;
+		}
+
+		public CompositeType getCompositeType() {
+			return factory.type;
+		}
+
+		public Object get(String key) {
+			int index = factory.indexOf(key);
+			if (index < 0) {
+				throw new InvalidKeyException("Argument key=\"" + key.trim() + "\" is not an existing item name for this CompositeData instance");
+			}
+			return values[factory.sortedIndexes[index]];
+		}
+
+		public Object[] getAll(String[] keys) {
+			if (keys == null) {
+				return new Object[0];
+			}
+			Object[] all = new Object[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				all[i] = get(keys[i]);
+			}
+			return all;
+		}
+
+		public boolean containsKey(String key) {
+			return key != null && key.trim().length() > 0 && factory.indexOf(key) >= 0;
+		}
+
+		public boolean containsValue(Object value) {
+			for (Object item : values) {
+				if (equal(item, value)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public Collection<?> values() {
+			List<Object> sorted = new ArrayList<Object>(values.length);
+			for (int index : factory.sortedIndexes) {
+				sorted.add(values[index]);
+			}
+			return Collections.unmodifiableList(sorted);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CompositeData)) {
+				return false;
+			}
+			CompositeData other = (CompositeData) obj;
+			if (!factory.type.equals(other.getCompositeType())) {
+				return false;
+			}
+			for (int i = 0; i < values.length; i++) {
+				if (!equal(values[i], other.get(factory.names[i]))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			int hashCode = factory.type.hashCode();
+			for (Object value : values) {
+				hashCode += hashCode(value);
+			}
+			return hashCode;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder(getClass().getName());
+			builder.append("(compositeType=").append(factory.type).append(",contents={");
+			for (int i = 0; i < factory.sortedNames.length; i++) {
+				if (i > 0) {
+					builder.append(", ");
+				}
+				Object value = values[factory.sortedIndexes[i]];
+				builder.append(factory.sortedNames[i]).append('=').append(value instanceof Object[] ? Arrays.deepToString((Object[]) value) : value);
+			}
+			return builder.append("})").toString();
+		}
+
+		private Object writeReplace() throws ObjectStreamException {
+			Object[] sorted = new Object[values.length];
+			for (int i = 0; i < sorted.length; i++) {
+				sorted[i] = values[factory.sortedIndexes[i]];
+			}
+			try {
+				return new CompositeDataSupport(factory.type, factory.sortedNames, sorted);
+			} catch (OpenDataException e) {
+				InvalidObjectException exception = new InvalidObjectException("Cannot form " + factory.type.getTypeName() + " open data");
+				exception.initCause(e);
+				throw exception;
+			}
+		}
+
+		private static boolean equal(Object value, Object other) {
+			if (value == other) {
+				return true;
+			}
+			if (value == null || other == null) {
+				return false;
+			}
+			if (value.getClass().isArray() && other.getClass().isArray()) {
+				return Arrays.deepEquals(new Object[]{value}, new Object[]{other});
+			}
+			return value.equals(other);
+		}
+
+		private static int hashCode(Object value) {
+			if (value == null) {
+				return 0;
+			}
+			if (value.getClass().isArray()) {
+				return Arrays.deepHashCode(new Object[]{value}) - 31;
+			}
+			return value.hashCode();
+		}
+
+	}
+
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeType;
+
+/**
+ * The items of a composite type that a list operation has been asked for. The items that are not projected are
+ * answered as null, the key item is always projected.
+ * <p>
+ * Codecs use {@link #contains(String)} to compute only the projected items, and {@link #project(CompositeData)} to
+ * narrow data that has already been encoded.
+ */
+public final class ItemProjection {
+
+	private final CompositeType type;
+
+	private final CompositeDataFactory factory;
+
+	private final Set<String> items;
+
+	/**
+	 * 
+	 * @param type - the composite type
+	 * @param key - the key item, which is always projected
+	 * @param items - the other items to project
+	 */
+	public ItemProjection(CompositeType type, String key, String... items) {
+		this.type = type;
+		this.factory = new CompositeDataFactory(type);
+		this.items = new HashSet<String>(Arrays.asList(items));
+		this.items.add(key);
+	}
+
+	/**
+	 * @param item
+	 * @return true if the item is projected
+	 */
+	public boolean contains(String item) {
+		return items.contains(item);
+	}
+
+	/**
+	 * Answer the composite data of the projected items, every other item of the type is null
+	 * 
+	 * @param values - the values of the items, only the projected values are used
+	 * @return the composite data
+	 */
+	public CompositeData encode(Map<String, ?> values) {
+		Object[] projected = new Object[type.keySet().size()];
+		int i = 0;
+		for (String item : type.keySet()) {
+			projected[i++] = items.contains(item) ? values.get(item) : null;
+		}
+		return factory.create(projected);
+	}
+
+	/**
+	 * Answer the encoded data narrowed to the projected items
+	 * 
+	 * @param data - composite data of the type
+	 * @return the composite data
+	 */
+	public CompositeData project(CompositeData data) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (String item : items) {
+			if (type.containsKey(item)) {
+				values.put(item, data.get(item));
+			}
+		}
+		return encode(values);
+	}
+
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.internal;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardEmitterMBean;
+
+import org.eclipse.gemini.management.Monitor;
+
+/**
+ * A {@link StandardEmitterMBean} for a {@link Monitor} implementation.
+ * <p>
+ * A plain {@link javax.management.StandardMBean} neither forwards the {@link javax.management.MBeanRegistration}
+ * callbacks to its implementation nor exposes its notifications, so a wrapped <code>Monitor</code> would never add its
+ * listener. This class forwards both to the monitor.
+ */
+public final class MonitoredStandardMBean extends StandardEmitterMBean {
+
+	private final Monitor<?> monitor;
+
+	/**
+	 * 
+	 * @param monitor - the implementation, which must implement the MBean interface
+	 * @param mbeanInterface - the management interface
+	 */
+	@SuppressWarnings("unchecked")
+	public MonitoredStandardMBean(Monitor<?> monitor, Class<?> mbeanInterface) {
+		super(monitor, (Class<Object>) mbeanInterface, monitor);
+		this.monitor = monitor;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+		return monitor.preRegister(server, super.preRegister(server, name));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void postRegister(Boolean registrationDone) {
+		super.postRegister(registrationDone);
+		if (registrationDone != null && registrationDone.booleanValue()) {
+			monitor.postRegister(registrationDone);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void preDeregister() throws Exception {
+		super.preDeregister();
+		monitor.preDeregister();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void postDeregister() {
+		super.postDeregister();
+		monitor.postDeregister();
+	}
+
+}
@@ -16,29 +16,34 @@
 
 package org.eclipse.gemini.management.internal;
 
+import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 import java.util.Vector;
 
+import javax.management.openmbean.ArrayType;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
 import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
 import javax.management.openmbean.TabularData;
-import javax.management.openmbean.TabularDataSupport;
 
+import org.eclipse.gemini.management.CustomJmxConstants;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.Version;
+import org.osgi.jmx.Item;
 import org.osgi.jmx.JmxConstants;
 import org.osgi.jmx.framework.wiring.BundleWiringStateMBean;
 
@@ -83,40 +88,238 @@ import org.osgi.jmx.framework.wiring.BundleWiringStateMBean;
  * </tr>
  * </table>
  * <p>
- * The
+ * The properties can also be encoded as a single composite data whose values are open types, see
+ * {@link CustomJmxConstants#TYPED_PROPERTIES}, so that neither end has to format or parse them.
  */
 public final class OSGiProperties {
-	
-	private static final String VERSION = "Version";
-	
+
+	private static final CompositeDataFactory PROPERTY = new CompositeDataFactory(JmxConstants.PROPERTY_TYPE, JmxConstants.KEY, JmxConstants.VALUE, JmxConstants.TYPE);
+
+	private static final CompositeDataFactory DIRECTIVE = new CompositeDataFactory(BundleWiringStateMBean.DIRECTIVE_TYPE, BundleWiringStateMBean.KEY,
+			BundleWiringStateMBean.VALUE);
+
 	/**
-	 * The scalar type
+	 * The codecs of the scalar and primitive types, by the class of the values they encode
 	 */
-	private static final List<String> SCALAR_TYPES = Collections.unmodifiableList(Arrays.asList(
-		JmxConstants.STRING,
-		VERSION,
-		JmxConstants.INTEGER,
-		JmxConstants.LONG,
-		JmxConstants.FLOAT,
-		JmxConstants.DOUBLE,
-		JmxConstants.BYTE,
-		JmxConstants.SHORT,
-		JmxConstants.CHARACTER,
-		JmxConstants.BOOLEAN,
-		JmxConstants.BIGDECIMAL,
-		JmxConstants.BIGINTEGER));
-	
+	private static final Map<Class<?>, Codec> ENCODERS = new HashMap<Class<?>, Codec>();
+
+	/**
+	 * The decoders of the scalar, primitive, array and vector types, by type name
+	 */
+	private static final Map<String, Decoder> DECODERS = new HashMap<String, Decoder>();
+
 	/**
-	 * The primitive types
+	 * The decoders of the typed properties whose type is not given, by open type
 	 */
-	private static final List<String> PRIMITIVE_TYPES = Collections.unmodifiableList(Arrays.asList(
-		JmxConstants.P_BYTE,
-		JmxConstants.P_CHAR,
-		JmxConstants.P_SHORT,
-		JmxConstants.P_INT,
-		JmxConstants.P_LONG,
-		JmxConstants.P_DOUBLE,
-		JmxConstants.P_FLOAT));
+	private static final Map<OpenType<?>, Decoder> OPEN_DECODERS = new HashMap<OpenType<?>, Decoder>();
+
+	static {
+		register(new ScalarCodec(JmxConstants.STRING, String.class, SimpleType.STRING) {
+			Object parse(String value) {
+				return value;
+			}
+		});
+		register(new ScalarCodec(JmxConstants.VERSION, Version.class, String.class, SimpleType.STRING) {
+			Object parse(String value) {
+				return Version.parseVersion(value);
+			}
+			Object toOpen(Object value) {
+				return value.toString();
+			}
+			Object fromOpen(Object value) {
+				return Version.parseVersion((String) value);
+			}
+		});
+		register(new ScalarCodec(JmxConstants.INTEGER, Integer.class, SimpleType.INTEGER) {
+			Object parse(String value) {
+				return Integer.valueOf(value);
+			}
+		});
+		register(new ScalarCodec(JmxConstants.LONG, Long.class, SimpleType.LONG) {
+			Object parse(String value) {
+				return Long.valueOf(value);
+			}
+		});
+		register(new ScalarCodec(JmxConstants.FLOAT, Float.class, SimpleType.FLOAT) {
+			Object parse(String value) {
+				return Float.valueOf(value);
+			}
+		});
+		register(new ScalarCodec(JmxConstants.DOUBLE, Double.class, SimpleType.DOUBLE) {
+			Object parse(String value) {
+				return Double.valueOf(value);
+			}
+		});
+		register(new ScalarCodec(JmxConstants.BYTE, Byte.class, SimpleType.BYTE) {
+			Object parse(String value) {
+				return Byte.valueOf(value);
+			}
+		});
+		register(new ScalarCodec(JmxConstants.SHORT, Short.class, SimpleType.SHORT) {
+			Object parse(String value) {
+				return Short.valueOf(value);
+			}
+		});
+		register(new ScalarCodec(JmxConstants.CHARACTER, Character.class, SimpleType.CHARACTER) {
+			Object parse(String value) {
+				return Character.valueOf(value.charAt(0));
+			}
+		});
+		register(new ScalarCodec(JmxConstants.BOOLEAN, Boolean.class, SimpleType.BOOLEAN) {
+			Object parse(String value) {
+				return Boolean.valueOf(value);
+			}
+		});
+		register(new ScalarCodec(JmxConstants.BIGDECIMAL, BigDecimal.class, SimpleType.BIGDECIMAL) {
+			Object parse(String value) {
+				return new BigDecimal(value);
+			}
+		});
+		register(new ScalarCodec(JmxConstants.BIGINTEGER, BigInteger.class, SimpleType.BIGINTEGER) {
+			Object parse(String value) {
+				return new BigInteger(value);
+			}
+		});
+		register(new Codec(JmxConstants.P_INT, Integer.TYPE, Integer.class, SimpleType.INTEGER, ArrayType.getPrimitiveArrayType(int[].class)) {
+			Object parse(String value) {
+				return Integer.valueOf(value);
+			}
+			Object newArray(int length) {
+				return new int[length];
+			}
+			int length(Object array) {
+				return ((int[]) array).length;
+			}
+			void set(Object array, int index, String value, int start, int end) {
+				((int[]) array)[index] = Integer.parseInt(value.substring(start, end));
+			}
+			void append(StringBuilder builder, Object array, int index) {
+				builder.append(((int[]) array)[index]);
+			}
+		});
+		register(new Codec(JmxConstants.P_LONG, Long.TYPE, Long.class, SimpleType.LONG, ArrayType.getPrimitiveArrayType(long[].class)) {
+			Object parse(String value) {
+				return Long.valueOf(value);
+			}
+			Object newArray(int length) {
+				return new long[length];
+			}
+			int length(Object array) {
+				return ((long[]) array).length;
+			}
+			void set(Object array, int index, String value, int start, int end) {
+				((long[]) array)[index] = Long.parseLong(value.substring(start, end));
+			}
+			void append(StringBuilder builder, Object array, int index) {
+				builder.append(((long[]) array)[index]);
+			}
+		});
+		register(new Codec(JmxConstants.P_FLOAT, Float.TYPE, Float.class, SimpleType.FLOAT, ArrayType.getPrimitiveArrayType(float[].class)) {
+			Object parse(String value) {
+				return Float.valueOf(value);
+			}
+			Object newArray(int length) {
+				return new float[length];
+			}
+			int length(Object array) {
+				return ((float[]) array).length;
+			}
+			void set(Object array, int index, String value, int start, int end) {
+				((float[]) array)[index] = Float.parseFloat(value.substring(start, end));
+			}
+			void append(StringBuilder builder, Object array, int index) {
+				builder.append(((float[]) array)[index]);
+			}
+		});
+		register(new Codec(JmxConstants.P_DOUBLE, Double.TYPE, Double.class, SimpleType.DOUBLE, ArrayType.getPrimitiveArrayType(double[].class)) {
+			Object parse(String value) {
+				return Double.valueOf(value);
+			}
+			Object newArray(int length) {
+				return new double[length];
+			}
+			int length(Object array) {
+				return ((double[]) array).length;
+			}
+			void set(Object array, int index, String value, int start, int end) {
+				((double[]) array)[index] = Double.parseDouble(value.substring(start, end));
+			}
+			void append(StringBuilder builder, Object array, int index) {
+				builder.append(((double[]) array)[index]);
+			}
+		});
+		register(new Codec(JmxConstants.P_BYTE, Byte.TYPE, Byte.class, SimpleType.BYTE, ArrayType.getPrimitiveArrayType(byte[].class)) {
+			Object parse(String value) {
+				return Byte.valueOf(value);
+			}
+			Object newArray(int length) {
+				return new byte[length];
+			}
+			int length(Object array) {
+				return ((byte[]) array).length;
+			}
+			void set(Object array, int index, String value, int start, int end) {
+				((byte[]) array)[index] = Byte.parseByte(value.substring(start, end));
+			}
+			void append(StringBuilder builder, Object array, int index) {
+				builder.append(((byte[]) array)[index]);
+			}
+		});
+		register(new Codec(JmxConstants.P_SHORT, Short.TYPE, Short.class, SimpleType.SHORT, ArrayType.getPrimitiveArrayType(short[].class)) {
+			Object parse(String value) {
+				return Short.valueOf(value);
+			}
+			Object newArray(int length) {
+				return new short[length];
+			}
+			int length(Object array) {
+				return ((short[]) array).length;
+			}
+			void set(Object array, int index, String value, int start, int end) {
+				((short[]) array)[index] = Short.parseShort(value.substring(start, end));
+			}
+			void append(StringBuilder builder, Object array, int index) {
+				builder.append(((short[]) array)[index]);
+			}
+		});
+		register(new Codec(JmxConstants.P_CHAR, Character.TYPE, Character.class, SimpleType.CHARACTER, ArrayType.getPrimitiveArrayType(char[].class)) {
+			Object parse(String value) {
+				return Character.valueOf(value.charAt(0));
+			}
+			Object newArray(int length) {
+				return new char[length];
+			}
+			int length(Object array) {
+				return ((char[]) array).length;
+			}
+			void set(Object array, int index, String value, int start, int end) {
+				if (start == end) {
+					throw new StringIndexOutOfBoundsException(0);
+				}
+				((char[]) array)[index] = value.charAt(start);
+			}
+			void append(StringBuilder builder, Object array, int index) {
+				builder.append(((char[]) array)[index]);
+			}
+		});
+		register(new Codec(JmxConstants.P_BOOLEAN, Boolean.TYPE, Boolean.class, SimpleType.BOOLEAN, ArrayType.getPrimitiveArrayType(boolean[].class)) {
+			Object parse(String value) {
+				return Boolean.valueOf(value);
+			}
+			Object newArray(int length) {
+				return new boolean[length];
+			}
+			int length(Object array) {
+				return ((boolean[]) array).length;
+			}
+			void set(Object array, int index, String value, int start, int end) {
+				((boolean[]) array)[index] = end - start == 4 && value.regionMatches(true, start, "true", 0, 4);
+			}
+			void append(StringBuilder builder, Object array, int index) {
+				builder.append(((boolean[]) array)[index]);
+			}
+		});
+	}
 	
 	/**
 	 * Answer the tabular data representation of the properties dictionary
@@ -125,14 +328,14 @@ public final class OSGiProperties {
 	 * @return the tabular data representation of the properties
 	 */
 	public static TabularData tableFrom(Dictionary<String, Object> properties) {
-		TabularDataSupport table = new TabularDataSupport(JmxConstants.PROPERTIES_TYPE);
+		List<CompositeData> rows = new ArrayList<CompositeData>(properties == null ? 0 : properties.size());
 		if (properties != null) {
 			for (Enumeration<?> keys = properties.keys(); keys.hasMoreElements();) {
 				String key = (String) keys.nextElement();
-				table.put(encode(key, properties.get(key)));
+				rows.add(encode(key, properties.get(key)));
 			}
 		}
-		return table;
+		return new ArrayTabularData(JmxConstants.PROPERTIES_TYPE, rows);
 	}
 
 	/**
@@ -160,13 +363,81 @@ public final class OSGiProperties {
 	public static CompositeData encode(String key, Object value) {
 		Class<?> clazz = value.getClass();
 		if (clazz.isArray()) {
-			return encodeArray(key, value, clazz.getComponentType());
-		} else if(value instanceof Vector){
-			return encodeVector(key, (Vector<?>) value);
+			Codec codec = codecOf(clazz.getComponentType());
+			return propertyData(key, codec.encodeArray(value), codec.arrayType);
+		} else if (value instanceof Vector) {
+			Vector<?> vector = (Vector<?>) value;
+			Codec codec = codecOf(vector.isEmpty() ? String.class : vector.get(0).getClass());
+			return propertyData(key, join(vector), codec.vectorType);
 		} else if (value instanceof Collection) {
-			return encodeCollection(key, (Collection<?>) value);
+			Collection<?> collection = (Collection<?>) value;
+			Codec codec = codecOf(collection.isEmpty() ? String.class : collection.iterator().next().getClass());
+			return propertyData(key, join(collection), codec.arrayType);
 		}
-		return propertyData(key, value.toString(), typeOf(clazz));
+		return propertyData(key, value.toString(), codecOf(clazz).type);
+	}
+
+	/**
+	 * Answer the typed composite data representation of the properties dictionary
+	 * 
+	 * @see CustomJmxConstants#TYPED_PROPERTIES
+	 * @param properties
+	 * @return the typed representation of the properties, or null if there are none
+	 */
+	public static CompositeData typedFrom(Dictionary<String, Object> properties) {
+		if (properties == null || properties.isEmpty()) {
+			return null;
+		}
+		int size = properties.size();
+		String[] keys = new String[size];
+		String[] types = new String[size];
+		OpenType<?>[] openTypes = new OpenType<?>[size];
+		Object[] values = new Object[size];
+		int i = 0;
+		for (Enumeration<String> e = properties.keys(); e.hasMoreElements(); i++) {
+			keys[i] = e.nextElement();
+			Object value = properties.get(keys[i]);
+			Class<?> clazz = value.getClass();
+			Codec codec;
+			if (clazz.isArray()) {
+				codec = codecOf(clazz.getComponentType());
+				types[i] = codec.arrayType;
+				values[i] = codec.toOpenArray(value);
+			} else if (value instanceof Collection) {
+				Collection<?> collection = (Collection<?>) value;
+				codec = codecOf(collection.isEmpty() ? String.class : collection.iterator().next().getClass());
+				types[i] = value instanceof Vector ? codec.vectorType : codec.arrayType;
+				values[i] = codec.toOpenArray(collection);
+			} else {
+				codec = codecOf(clazz);
+				types[i] = codec.type;
+				openTypes[i] = codec.openType;
+				values[i] = codec.toOpen(value);
+				continue;
+			}
+			openTypes[i] = codec.arrayOpenType;
+		}
+		try {
+			CompositeType type = new CompositeType(CustomJmxConstants.TYPED_PROPERTIES, "The typed properties", keys, types, openTypes);
+			return new CompositeDataSupport(type, keys, values);
+		} catch (OpenDataException e) {
+			throw new IllegalStateException("Cannot form typed properties open data", e);
+		}
+	}
+
+	/**
+	 * Answer the typed composite data representation of the service references properties
+	 * 
+	 * @see CustomJmxConstants#TYPED_PROPERTIES
+	 * @param ref
+	 * @return the typed representation of the service reference properties
+	 */
+	public static CompositeData typedFrom(ServiceReference<?> ref) {
+		Dictionary<String, Object> props = new Hashtable<String, Object>();
+		for (String key : ref.getPropertyKeys()) {
+			props.put(key, ref.getProperty(key));
+		}
+		return typedFrom(props);
 	}
 
 	/**
@@ -186,207 +457,81 @@ public final class OSGiProperties {
 		}
 		return props;
 	}
-	
-	/**
-	 * Convert a key-value directive in to the required format for representation over JMX
-	 * 
-	 * @param key
-	 * @param value
-	 * @return a map of key to the key and value to the value
-	 */
-	public static Map<String, ?> getDirectiveKeyValueItem(String key, Object value){
-		Map<String, Object> items = new HashMap<String, Object>();
-		items.put(BundleWiringStateMBean.KEY, key);
-		items.put(BundleWiringStateMBean.VALUE, value);
-		return items;
-	}
-	
+
 	/**
-	 * Encode the array as composite data
+	 * Answer the hashtable converted from the supplied typed composite data. The type of a property is the description
+	 * of its item, or when the description is not a type the natural one of its open type.
 	 * 
-	 * @param key
-	 * @param value
-	 * @param componentClazz
-	 * @return the composite data representation
+	 * @see CustomJmxConstants#TYPED_PROPERTIES
+	 * @param data
+	 * @return the hashtable represented by the typed composite data
 	 */
-	private static <T> CompositeData encodeArray(String key, Object value, Class<T> componentClazz) {
-		StringBuilder builder = new StringBuilder();
-		if (Integer.TYPE.equals(componentClazz)) {
-			int[] array = (int[]) value;			
-			for (int i = 0; i < array.length; i++) {
-				builder.append(array[i]);
-				builder.append(',');
-			}
-		} else if (Long.TYPE.equals(componentClazz)) {
-			long[] array = (long[]) value;
-			for (int i = 0; i < array.length; i++) {
-				builder.append(array[i]);
-				builder.append(',');
-			}
-		} else if (Double.TYPE.equals(componentClazz)) {
-			double[] array = (double[]) value;
-			for (int i = 0; i < array.length; i++) {
-				builder.append(array[i]);
-				builder.append(',');
-			}
-		} else if (Float.TYPE.equals(componentClazz)) {
-			float[] array = (float[]) value;
-			for (int i = 0; i < array.length; i++) {
-				builder.append(array[i]);
-				builder.append(',');
-			}
-		} else if (Byte.TYPE.equals(componentClazz)) {
-			byte[] array = (byte[]) value;
-			for (int i = 0; i < array.length; i++) {
-				builder.append(array[i]);
-				builder.append(',');
-			}
-		} else if (Short.TYPE.equals(componentClazz)) {
-			short[] array = (short[]) value;
-			for (int i = 0; i < array.length; i++) {
-				builder.append(array[i]);
-				builder.append(',');
-			}
-		} else if (Character.TYPE.equals(componentClazz)) {
-			char[] array = (char[]) value;
-			for (int i = 0; i < array.length; i++) {
-				builder.append(array[i]);
-				builder.append(',');
+	public static Dictionary<String, Object> propertiesFromTyped(CompositeData data) {
+		Hashtable<String, Object> props = new Hashtable<String, Object>();
+		if (data == null) {
+			return props;
+		}
+		CompositeType compositeType = data.getCompositeType();
+		for (String key : compositeType.keySet()) {
+			Object value = data.get(key);
+			if (value == null) {
+				continue;
 			}
-		} else if (Boolean.TYPE.equals(componentClazz)) {
-			boolean[] array = (boolean[]) value;
-			for (int i = 0; i < array.length; i++) {
-				builder.append(array[i]);
-				builder.append(',');
+			OpenType<?> openType = compositeType.getType(key);
+			Decoder decoder = DECODERS.get(compositeType.getDescription(key));
+			if (decoder == null || !decoder.getOpenType().equals(openType)) {
+				decoder = OPEN_DECODERS.get(openType);
+				if (decoder == null) {
+					throw new IllegalArgumentException("Illegal open type of property " + key + ": " + openType);
+				}
 			}
-		} else {
-			Object[] array = (Object[]) value;
-			for (int i = 0; i < array.length; i++) {
-				builder.append(array[i]);
-				builder.append(',');
-			}
-		}
-		if(builder.length() > 0){
-			builder.deleteCharAt(builder.length()-1);
+			props.put(key, decoder.decode(value));
 		}
-		return propertyData(key, builder.toString(), JmxConstants.ARRAY_OF + typeOf(componentClazz));
+		return props;
 	}
-
+	
 	/**
-	 * Encode the vector as composite data
-	 *
+	 * Encode the key-value directive as composite data
+	 * 
 	 * @param key
 	 * @param value
-	 * @return the composite data representation
+	 * @return the encoded composite data of the directive
 	 */
-	private static <T> CompositeData encodeVector(String key, Vector<T> value) {
-		String type = "String";
-		if (value.size() > 0) {
-			type = typeOf(value.get(0).getClass());
-		}
-		StringBuilder builder = new StringBuilder();
-		for (T item: value){
-
-			builder.append(item);
-			builder.append(',');
-		}
-		if(builder.length() > 0){
-			builder.deleteCharAt(builder.length()-1);
-		}
-		return propertyData(key, builder.toString(), JmxConstants.VECTOR_OF + type);
+	public static CompositeData encodeDirective(String key, String value) {
+		return DIRECTIVE.create(key, value);
 	}
-	
+
 	/**
-	 * Encode the list as composite data
+	 * Answer the codec of the class
 	 * 
-	 * @param key
-	 * @param value
-	 * @return the composite data representation
+	 * @param clazz
+	 * @return the codec of the class
 	 */
-	private static <T> CompositeData encodeCollection(String key, Collection<T> value) {
-		String type = JmxConstants.STRING;
-		if (value.size() > 0) {
-			type = typeOf(value.iterator().next().getClass());
-		}
-		StringBuilder builder = new StringBuilder();
-		for(T item: value){
-			builder.append(item);
-			builder.append(',');
+	private static Codec codecOf(Class<?> clazz) {
+		Codec codec = ENCODERS.get(clazz);
+		if (codec == null) {
+			throw new IllegalArgumentException("Illegal type: " + clazz);
 		}
-		if(builder.length() > 0){
-			builder.deleteCharAt(builder.length()-1);
-		}
-		return propertyData(key, builder.toString(), JmxConstants.ARRAY_OF + type);
+		return codec;
 	}
-	
+
 	/**
-	 * Answer the string type of the class
+	 * Join the values of the collection, separated by ","
 	 * 
-	 * @param clazz
-	 * @return the string type of the class
+	 * @param values
+	 * @return the joined values
 	 */
-	private static String typeOf(Class<?> clazz) {
-		if (clazz.equals(String.class)) {
-			return JmxConstants.STRING;
-		}
-		if (clazz.equals(Version.class)) {
-			return VERSION;
-		}
-		if (clazz.equals(Integer.class)) {
-			return JmxConstants.INTEGER;
-		}
-		if (clazz.equals(Long.class)) {
-			return JmxConstants.LONG;
-		}
-		if (clazz.equals(Double.class)) {
-			return JmxConstants.DOUBLE;
-		}
-		if (clazz.equals(Double.class)) {
-			return JmxConstants.FLOAT;
-		}
-		if (clazz.equals(Byte.class)) {
-			return JmxConstants.BYTE;
-		}
-		if (clazz.equals(Short.class)) {
-			return JmxConstants.SHORT;
-		}
-		if (clazz.equals(Character.class)) {
-			return JmxConstants.CHARACTER;
-		}
-		if (clazz.equals(Boolean.class)) {
-			return JmxConstants.BOOLEAN;
-		}
-		if (clazz.equals(BigDecimal.class)) {
-			return JmxConstants.BIGDECIMAL;
-		}
-		if (clazz.equals(BigInteger.class)) {
-			return JmxConstants.BIGINTEGER;
-		}
-		if (clazz.equals(Integer.TYPE)) {
-			return JmxConstants.P_INT;
-		}
-		if (clazz.equals(Long.TYPE)) {
-			return JmxConstants.P_LONG;
-		}
-		if (clazz.equals(Double.TYPE)) {
-			return JmxConstants.P_DOUBLE;
-		}
-		if (clazz.equals(Double.TYPE)) {
-			return JmxConstants.P_FLOAT;
-		}
-		if (clazz.equals(Byte.TYPE)) {
-			return JmxConstants.P_BYTE;
-		}
-		if (clazz.equals(Short.TYPE)) {
-			return JmxConstants.P_SHORT;
-		}
-		if (clazz.equals(Character.TYPE)) {
-			return JmxConstants.P_CHAR;
-		}
-		if (clazz.equals(Boolean.TYPE)) {
-			return JmxConstants.P_BOOLEAN;
+	private static String join(Collection<?> values) {
+		StringBuilder builder = new StringBuilder(values.size() * 8);
+		Iterator<?> iterator = values.iterator();
+		if (iterator.hasNext()) {
+			builder.append(iterator.next());
+			while (iterator.hasNext()) {
+				builder.append(',');
+				builder.append(iterator.next());
+			}
 		}
-		throw new IllegalArgumentException("Illegal type: " + clazz);
+		return builder.toString();
 	}
 
 	/**
@@ -398,15 +543,7 @@ public final class OSGiProperties {
 	 * @return the composite data representation of the key/value pair
 	 */
 	private static CompositeData propertyData(String key, String value, String type) {
-		Map<String, Object> items = new HashMap<String, Object>(); 
-		items.put(JmxConstants.KEY, key);
-		items.put(JmxConstants.VALUE, value);
-		items.put(JmxConstants.TYPE, type);
-		try {
-			return new CompositeDataSupport(JmxConstants.PROPERTY_TYPE, items);
-		} catch (OpenDataException e) {
-			throw new IllegalStateException("Cannot form property open data", e);
-		}
+		return PROPERTY.create(key, value, type);
 	}
 
 	/**
@@ -417,302 +554,342 @@ public final class OSGiProperties {
 	 * @return the object represented by the String
 	 */
 	private static Object parse(String value, String type) {
-		StringTokenizer tokens = new StringTokenizer(type);
-		if (!tokens.hasMoreElements()) {
-			throw new IllegalArgumentException("Type is empty");
-		}
-		String token = tokens.nextToken();
-		if ("Array".equals(token)) {
-			return parseArray(value, tokens);
-		}
-		if ("Vector".equals(token)) {
-			return parseCollection(value, tokens);
-		}
-		if (SCALAR_TYPES.contains(token) || PRIMITIVE_TYPES.contains(token)) {
-			return parseValue(value, token);
+		Decoder decoder = DECODERS.get(type);
+		if (decoder == null) {
+			// the type may have been written with other white space than the canonical single spaces
+			String normalized = normalize(type);
+			if (normalized.length() == 0) {
+				throw new IllegalArgumentException("Type is empty");
+			}
+			decoder = DECODERS.get(normalized);
+			if (decoder == null) {
+				throw new IllegalArgumentException("Unknown type: " + type);
+			}
 		}
-		throw new IllegalArgumentException("Unknown type: " + type);
+		return decoder.decode(value);
 	}
 
 	/**
-	 * Parse the array represented by the string value
+	 * Answer the type with its words separated by single spaces
 	 * 
-	 * @param value
-	 * @param tokens
-	 * @return the array represented by the string value
+	 * @param type
+	 * @return the normalized type
 	 */
-	private static Object parseArray(String value, StringTokenizer tokens) {
-		if (!tokens.hasMoreTokens()) {
-			throw new IllegalArgumentException("Expecting <of> token in Array type");
-		}
-		if (!"of".equals(tokens.nextToken())) {
-			throw new IllegalArgumentException("Expecting <of> token in Array type");
-		}
-		if (!tokens.hasMoreTokens()) {
-			throw new IllegalArgumentException("Expecting <primitive>|<scalar> token in Array type");
-		}
-		String type = tokens.nextToken();
-		if (SCALAR_TYPES.contains(type)) {
-			return parseScalarArray(value, type);
-		} else if (PRIMITIVE_TYPES.contains(type)) {
-			return parsePrimitiveArray(value, type);
-		} else {
-			throw new IllegalArgumentException("Expecting <scalar>|<primitive> type token in Array type: " + type);
+	private static String normalize(String type) {
+		StringBuilder builder = new StringBuilder(type.length());
+		boolean space = false;
+		for (int i = 0; i < type.length(); i++) {
+			char c = type.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = builder.length() > 0;
+			} else {
+				if (space) {
+					builder.append(' ');
+					space = false;
+				}
+				builder.append(c);
+			}
 		}
+		return builder.toString();
 	}
 
 	/**
-	 * Parse the vector represented by the supplied string value
+	 * Scan the values separated by "," in a single pass. Empty values are skipped and the white space around the others
+	 * is left out.
 	 * 
 	 * @param value
-	 * @param tokens
-	 * @return the vector represented by the supplied string value
+	 * @return the number of values, followed by the start and end index of each of them
 	 */
-	private static Object parseCollection(String value, StringTokenizer tokens) {
-		if (!tokens.hasMoreTokens()) {
-			throw new IllegalArgumentException("Expecting <of> token in Collection type");
-		}
-		if (!tokens.nextElement().equals("of")) {
-			throw new IllegalArgumentException("Expecting <of> token in Collection type");
-		}
-		if (!tokens.hasMoreTokens()) {
-			throw new IllegalArgumentException("Expecting <scalar> token in Collection type");
-		}
-		String type = tokens.nextToken();
-		StringTokenizer values = new StringTokenizer(value, ",");
-		Collection<Object> collection = new Vector<Object>();
-		if (!SCALAR_TYPES.contains(type)) {
-			throw new IllegalArgumentException("Expecting <scalar> type token in Collection type: " + type);
-		}
-		while (values.hasMoreTokens()) {
-			collection.add(parseScalar(values.nextToken().trim(), type));
+	private static int[] scan(String value) {
+		int[] tokens = new int[17];
+		int count = 0;
+		int length = value.length();
+		int start = 0;
+		while (start < length) {
+			int end = value.indexOf(',', start);
+			if (end < 0) {
+				end = length;
+			}
+			if (end > start) {
+				if (2 * count + 3 > tokens.length) {
+					tokens = Arrays.copyOf(tokens, 2 * tokens.length + 1);
+				}
+				int from = start;
+				int to = end;
+				while (from < to && value.charAt(from) <= ' ') {
+					from++;
+				}
+				while (to > from && value.charAt(to - 1) <= ' ') {
+					to--;
+				}
+				tokens[2 * count + 1] = from;
+				tokens[2 * count + 2] = to;
+				count++;
+			}
+			start = end + 1;
 		}
-		return collection;
+		tokens[0] = count;
+		return tokens;
 	}
 
 	/**
-	 * Parse the array represented by the string value
+	 * Register the codec, and the decoders of its scalar, array and vector types
 	 * 
-	 * @param value
-	 * @param type
-	 * @return the array represented by the string value
+	 * @param codec
 	 */
-	private static Object[] parseScalarArray(String value, String type) {
-		ArrayList<Object> array = new ArrayList<Object>();
-		StringTokenizer values = new StringTokenizer(value, ",");
-		while (values.hasMoreTokens()) {
-			array.add(parseScalar(values.nextToken().trim(), type));
+	private static void register(final Codec codec) {
+		ENCODERS.put(codec.clazz, codec);
+		register(codec.type, new Decoder() {
+			public Object decode(String value) {
+				return codec.parse(value);
+			}
+			public Object decode(Object value) {
+				return codec.fromOpen(value);
+			}
+			public OpenType<?> getOpenType() {
+				return codec.openType;
+			}
+		});
+		register(codec.arrayType, new Decoder() {
+			public Object decode(String value) {
+				return codec.parseArray(value);
+			}
+			public Object decode(Object value) {
+				return codec.fromOpenArray(value);
+			}
+			public OpenType<?> getOpenType() {
+				return codec.arrayOpenType;
+			}
+		});
+		if (!codec.clazz.isPrimitive()) {
+			register(codec.vectorType, new Decoder() {
+				public Object decode(String value) {
+					return codec.parseVector(value);
+				}
+				public Object decode(Object value) {
+					return codec.fromOpenVector(value);
+				}
+				public OpenType<?> getOpenType() {
+					return codec.arrayOpenType;
+				}
+			});
 		}
-		return array.toArray(createScalarArray(type, array.size()));
 	}
 
 	/**
-	 * Parse the array from the supplied values
+	 * Register the decoder of the type, the first decoder of an open type is its natural one
 	 * 
-	 * @param value
 	 * @param type
-	 * @return the array from the supplied values
+	 * @param decoder
 	 */
-	private static Object parsePrimitiveArray(String value, String type) {
-		StringTokenizer values = new StringTokenizer(value, ",");
-		if (JmxConstants.P_INT.equals(type)) {
-			int[] array = new int[values.countTokens()];
-			int i = 0;
-			while (values.hasMoreTokens()) {
-				array[i++] = Integer.parseInt(values.nextToken().trim());
-			}
-			return array;
+	private static void register(String type, Decoder decoder) {
+		DECODERS.put(type, decoder);
+		if (!OPEN_DECODERS.containsKey(decoder.getOpenType())) {
+			OPEN_DECODERS.put(decoder.getOpenType(), decoder);
 		}
-		if (JmxConstants.P_LONG.equals(type)) {
-			long[] array = new long[values.countTokens()];
-			int i = 0;
-			while (values.hasMoreTokens()) {
-				array[i++] = Long.parseLong(values.nextToken().trim());
-			}
-			return array;
+	}
+
+	/**
+	 * The decoder of a type name
+	 */
+	private interface Decoder {
+
+		/**
+		 * @param value
+		 * @return the object represented by the string value
+		 */
+		Object decode(String value);
+
+		/**
+		 * @param value - a value of the open type
+		 * @return the object represented by the open value
+		 */
+		Object decode(Object value);
+
+		/**
+		 * @return the open type of the typed values
+		 */
+		OpenType<?> getOpenType();
+
+	}
+
+	/**
+	 * The conversion of the values of a scalar or primitive type to and from strings and open types. The arrays of a
+	 * primitive type are read and written element by element, without boxing, and are their own open values.
+	 */
+	private static abstract class Codec {
+
+		private final String type;
+
+		private final String arrayType;
+
+		private final String vectorType;
+
+		private final Class<?> clazz;
+
+		private final Class<?> openClass;
+
+		private final OpenType<?> openType;
+
+		private final ArrayType<?> arrayOpenType;
+
+		Codec(String type, Class<?> clazz, Class<?> openClass, OpenType<?> openType, ArrayType<?> arrayOpenType) {
+			this.type = type;
+			this.arrayType = JmxConstants.ARRAY_OF + type;
+			this.vectorType = JmxConstants.VECTOR_OF + type;
+			this.clazz = clazz;
+			this.openClass = openClass;
+			this.openType = openType;
+			this.arrayOpenType = arrayOpenType;
 		}
-		if (JmxConstants.P_DOUBLE.equals(type)) {
-			double[] array = new double[values.countTokens()];
-			int i = 0;
-			while (values.hasMoreTokens()) {
-				array[i++] = Double.parseDouble(values.nextToken().trim());
+
+		/**
+		 * @param value
+		 * @return the value represented by the string
+		 */
+		abstract Object parse(String value);
+
+		/**
+		 * @param length
+		 * @return a new array of the type
+		 */
+		abstract Object newArray(int length);
+
+		/**
+		 * @param array
+		 * @return the length of the array
+		 */
+		abstract int length(Object array);
+
+		/**
+		 * Set the element of the array to the value represented by the characters between start and end
+		 */
+		abstract void set(Object array, int index, String value, int start, int end);
+
+		/**
+		 * Append the element of the array to the builder
+		 */
+		abstract void append(StringBuilder builder, Object array, int index);
+
+		String encodeArray(Object array) {
+			int length = length(array);
+			StringBuilder builder = new StringBuilder(length * 8);
+			for (int i = 0; i < length; i++) {
+				if (i > 0) {
+					builder.append(',');
+				}
+				append(builder, array, i);
 			}
-			return array;
+			return builder.toString();
 		}
-		if (JmxConstants.P_FLOAT.equals(type)) {
-			float[] array = new float[values.countTokens()];
-			int i = 0;
-			while (values.hasMoreTokens()) {
-				array[i++] = Float.parseFloat(values.nextToken().trim());
+
+		Object parseArray(String value) {
+			int[] tokens = scan(value);
+			Object array = newArray(tokens[0]);
+			for (int i = 0; i < tokens[0]; i++) {
+				set(array, i, value, tokens[2 * i + 1], tokens[2 * i + 2]);
 			}
 			return array;
 		}
-		if (JmxConstants.P_BYTE.equals(type)) {
-			byte[] array = new byte[values.countTokens()];
-			int i = 0;
-			while (values.hasMoreTokens()) {
-				array[i++] = Byte.parseByte(values.nextToken().trim());
+
+		Vector<Object> parseVector(String value) {
+			int[] tokens = scan(value);
+			Vector<Object> vector = new Vector<Object>(tokens[0]);
+			for (int i = 0; i < tokens[0]; i++) {
+				vector.add(parse(value.substring(tokens[2 * i + 1], tokens[2 * i + 2])));
 			}
-			return array;
+			return vector;
 		}
-		if (JmxConstants.P_SHORT.equals(type)) {
-			short[] array = new short[values.countTokens()];
-			int i = 0;
-			while (values.hasMoreTokens()) {
-				array[i++] = Short.parseShort(values.nextToken().trim());
-			}
+
+		/**
+		 * @param value
+		 * @return the open value of the value
+		 */
+		Object toOpen(Object value) {
+			return value;
+		}
+
+		/**
+		 * @param value
+		 * @return the value of the open value
+		 */
+		Object fromOpen(Object value) {
+			return value;
+		}
+
+		Object toOpenArray(Object array) {
 			return array;
 		}
-		if (JmxConstants.P_CHAR.equals(type)) {
-			char[] array = new char[values.countTokens()];
-			int i = 0;
-			while (values.hasMoreTokens()) {
-				array[i++] = values.nextToken().trim().charAt(0);
-			}
+
+		Object fromOpenArray(Object array) {
 			return array;
 		}
-		if (JmxConstants.P_BOOLEAN.equals(type)) {
-			boolean[] array = new boolean[values.countTokens()];
+
+		Object[] toOpenArray(Collection<?> values) {
+			Object[] array = (Object[]) Array.newInstance(openClass, values.size());
 			int i = 0;
-			while (values.hasMoreTokens()) {
-				array[i++] = Boolean.parseBoolean(values.nextToken().trim());
+			for (Object value : values) {
+				array[i++] = toOpen(value);
 			}
 			return array;
 		}
-		throw new IllegalArgumentException("Unknown primitive type: " + type);
-	}
-	
-	/**
-	 * Create the scalar array from the supplied type
-	 * 
-	 * @param type
-	 * @param size
-	 * @return the scalar array from the supplied type
-	 */
-	private static Object[] createScalarArray(String type, int size) {
-		if (JmxConstants.STRING.equals(type)) {
-			return new String[size];
-		}
-		if (VERSION.equals(type)) {
-			return new Version[size];
-		}
-		if (JmxConstants.INTEGER.equals(type)) {
-			return new Integer[size];
-		}
-		if (JmxConstants.LONG.equals(type)) {
-			return new Long[size];
-		}
-		if (JmxConstants.DOUBLE.equals(type)) {
-			return new Double[size];
-		}
-		if (JmxConstants.FLOAT.equals(type)) {
-			return new Float[size];
-		}
-		if (JmxConstants.BYTE.equals(type)) {
-			return new Byte[size];
-		}
-		if (JmxConstants.SHORT.equals(type)) {
-			return new Short[size];
-		}
-		if (JmxConstants.CHARACTER.equals(type)) {
-			return new Character[size];
-		}
-		if (JmxConstants.BOOLEAN.equals(type)) {
-			return new Boolean[size];
-		}
-		if (JmxConstants.BIGDECIMAL.equals(type)) {
-			return new BigDecimal[size];
-		}
-		if (JmxConstants.BIGINTEGER.equals(type)) {
-			return new BigInteger[size];
+
+		Vector<Object> fromOpenVector(Object array) {
+			Object[] values = (Object[]) array;
+			Vector<Object> vector = new Vector<Object>(values.length);
+			for (Object value : values) {
+				vector.add(fromOpen(value));
+			}
+			return vector;
 		}
-		throw new IllegalArgumentException("Unknown scalar type: " + type);
+
 	}
 
 	/**
-	 * Construct the scalar value represented by the string
-	 * 
-	 * @param value
-	 * @param type
-	 * @return the scalar value represented by the string
+	 * The codec of a scalar type, whose arrays are arrays of objects
 	 */
-	private static Object parseScalar(String value, String type) {
-		if (JmxConstants.STRING.equals(type)) {
-			return value;
-		}
-		if (VERSION.equals(type)) {
-			return Version.parseVersion(value);
-		}
-		if (JmxConstants.INTEGER.equals(type)) {
-			return Integer.parseInt(value);
-		}
-		if (JmxConstants.LONG.equals(type)) {
-			return Long.parseLong(value);
-		}
-		if (JmxConstants.DOUBLE.equals(type)) {
-			return Double.parseDouble(value);
+	private static abstract class ScalarCodec extends Codec {
+
+		ScalarCodec(String type, Class<?> clazz, SimpleType<?> openType) {
+			this(type, clazz, clazz, openType);
 		}
-		if (JmxConstants.FLOAT.equals(type)) {
-			return Float.parseFloat(value);
+
+		ScalarCodec(String type, Class<?> clazz, Class<?> openClass, SimpleType<?> openType) {
+			super(type, clazz, openClass, openType, Item.arrayType(1, openType));
 		}
-		if (JmxConstants.BYTE.equals(type)) {
-			return Byte.parseByte(value);
+
+		Object toOpenArray(Object array) {
+			return super.clazz == super.openClass ? array : convert((Object[]) array, super.openClass, true);
 		}
-		if (JmxConstants.SHORT.equals(type)) {
-			return Short.parseShort(value);
+
+		Object fromOpenArray(Object array) {
+			return super.clazz == super.openClass ? array : convert((Object[]) array, super.clazz, false);
 		}
-		if (JmxConstants.CHARACTER.equals(type)) {
-			return value.charAt(0);
+
+		private Object[] convert(Object[] values, Class<?> componentClazz, boolean toOpen) {
+			Object[] array = (Object[]) Array.newInstance(componentClazz, values.length);
+			for (int i = 0; i < values.length; i++) {
+				array[i] = toOpen ? toOpen(values[i]) : fromOpen(values[i]);
+			}
+			return array;
 		}
-		if (JmxConstants.BOOLEAN.equals(type)) {
-			return Boolean.parseBoolean(value);
+
+		Object newArray(int length) {
+			return Array.newInstance(super.clazz, length);
 		}
-		if (JmxConstants.BIGDECIMAL.equals(type)) {
-			return new BigDecimal(value);
+
+		int length(Object array) {
+			return ((Object[]) array).length;
 		}
-		if (JmxConstants.BIGINTEGER.equals(type)) {
-			return new BigInteger(value);
+
+		void set(Object array, int index, String value, int start, int end) {
+			((Object[]) array)[index] = parse(value.substring(start, end));
 		}
-		throw new IllegalArgumentException("Unknown scalar type: " + type);
-	}
 
-	/**
-	 * Construct the scalar value represented by the string
-	 * 
-	 * @param value
-	 * @param type
-	 * @return the scalar value represented by the string
-	 */
-	private static Object parseValue(String value, String type) {
-		try{
-			return parseScalar(value, type);
-		}catch (IllegalArgumentException e) {
-			if (JmxConstants.P_INT.equals(type)) {
-				return Integer.parseInt(value);
-			}
-			if (JmxConstants.P_LONG.equals(type)) {
-				return Long.parseLong(value);
-			}
-			if (JmxConstants.P_DOUBLE.equals(type)) {
-				return Double.parseDouble(value);
-			}
-			if (JmxConstants.P_FLOAT.equals(type)) {
-				return Float.parseFloat(value);
-			}
-			if (JmxConstants.P_BYTE.equals(type)) {
-				return Byte.parseByte(value);
-			}
-			if (JmxConstants.P_SHORT.equals(type)) {
-				return Short.parseShort(value);
-			}
-			if (JmxConstants.P_CHAR.equals(type)) {
-				return value.charAt(0);
-			}
-			if (JmxConstants.P_BOOLEAN.equals(type)) {
-				return Boolean.parseBoolean(value);
-			}
-			throw new IllegalArgumentException("Unknown scalar type: " + type);
+		void append(StringBuilder builder, Object array, int index) {
+			builder.append(((Object[]) array)[index]);
 		}
+
 	}
-	
+
 }
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.internal;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularType;
+
+import org.eclipse.gemini.management.CustomJmxConstants;
+
+/**
+ * Serves the rows of a list operation in pages.
+ * <p>
+ * The first call, without a cursor, takes a snapshot of the rows and answers the first page. The cursor it answers
+ * names the snapshot and the offset of the next page, so every page of one listing comes from the same snapshot and
+ * nothing is skipped or repeated while the framework changes. Fetching the same cursor again answers the same page,
+ * until the last page has been answered: the last page drops its snapshot.
+ * <p>
+ * The snapshots kept hold at most {@link #MAX_ROWS} rows in all, the least recently used are dropped first though the
+ * snapshot just taken is always kept, and a snapshot that has not been read for {@link #IDLE_TIMEOUT} milliseconds is
+ * dropped. A cursor whose snapshot has been dropped is answered with a "Cursor has expired" error.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class PagedResults {
+
+	/**
+	 * The rows of a listing, taken when a listing starts.
+	 */
+	public interface Rows {
+
+		/**
+		 * @return the rows, in the order they are to be paged
+		 * @throws IOException
+		 */
+		Collection<CompositeData> rows() throws IOException;
+
+	}
+
+	/**
+	 * The maximum number of rows of all the snapshots kept at any time
+	 */
+	public static final int MAX_ROWS = 100000;
+
+	/**
+	 * The time, in milliseconds, a snapshot is kept without being read
+	 */
+	public static final long IDLE_TIMEOUT = 5 * 60 * 1000L;
+
+	private static final char SEPARATOR = ':';
+
+	private final CompositeType pageType;
+
+	private final TabularType rowsType;
+
+	private final LinkedHashMap<String, Snapshot> snapshots = new LinkedHashMap<String, Snapshot>(16, 0.75f, true);
+
+	private int keptRows = 0;
+
+	/**
+	 * 
+	 * @param pageType - the type of a page, as created by {@link CustomJmxConstants#pageType}
+	 */
+	public PagedResults(CompositeType pageType) {
+		this.pageType = pageType;
+		this.rowsType = (TabularType) pageType.getType(CustomJmxConstants.PAGE);
+	}
+
+	/**
+	 * Answer a page of rows
+	 * 
+	 * @param cursor - null to start a new listing, or the cursor of the previous page
+	 * @param pageSize - the maximum number of rows in the page
+	 * @param rows - the rows of a new listing, only used when the cursor is null
+	 * @return the page
+	 * @throws IOException if the page size is not positive, or the cursor is invalid or has expired
+	 */
+	public CompositeData page(String cursor, int pageSize, Rows rows) throws IOException {
+		if (pageSize < 1) {
+			throw new IOException("Page size must be positive: " + pageSize);
+		}
+		String snapshotId;
+		int offset;
+		CompositeData[] snapshot;
+		if (cursor == null) {
+			snapshotId = UUID.randomUUID().toString();
+			offset = 0;
+			Collection<CompositeData> allRows = rows.rows();
+			snapshot = allRows.toArray(new CompositeData[allRows.size()]);
+			if (snapshot.length > pageSize) {
+				putSnapshot(snapshotId, snapshot);
+			}
+		} else {
+			int separator = cursor.lastIndexOf(SEPARATOR);
+			if (separator < 0) {
+				throw new IOException("Invalid cursor: " + cursor);
+			}
+			snapshotId = cursor.substring(0, separator);
+			try {
+				offset = Integer.parseInt(cursor.substring(separator + 1));
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid cursor: " + cursor);
+			}
+			snapshot = getSnapshot(snapshotId, cursor);
+			if (offset < 0 || offset > snapshot.length) {
+				throw new IOException("Invalid cursor: " + cursor);
+			}
+		}
+		int end = (int) Math.min((long) offset + pageSize, snapshot.length);
+		ArrayTabularData table = new ArrayTabularData(rowsType, Arrays.asList(snapshot).subList(offset, end));
+		String nextCursor = null;
+		if (end < snapshot.length) {
+			nextCursor = snapshotId + SEPARATOR + end;
+		} else if (cursor != null) {
+			removeSnapshot(snapshotId);
+		}
+		Map<String, Object> items = new HashMap<String, Object>();
+		items.put(CustomJmxConstants.CURSOR, nextCursor);
+		items.put(CustomJmxConstants.PAGE, table);
+		try {
+			return new CompositeDataSupport(pageType, items);
+		} catch (OpenDataException e) {
+			throw new IllegalStateException("Cannot form page open data", e);
+		}
+	}
+
+	/**
+	 * Keep a snapshot, dropping the least recently used others until the rows kept are within {@link #MAX_ROWS}
+	 */
+	private void putSnapshot(String snapshotId, CompositeData[] rows) {
+		synchronized (snapshots) {
+			snapshots.put(snapshotId, new Snapshot(rows));
+			keptRows += rows.length;
+			for (Iterator<Map.Entry<String, Snapshot>> iterator = snapshots.entrySet().iterator(); keptRows > MAX_ROWS && iterator.hasNext();) {
+				Map.Entry<String, Snapshot> entry = iterator.next();
+				if (!entry.getKey().equals(snapshotId)) {
+					keptRows -= entry.getValue().rows.length;
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	private void removeSnapshot(String snapshotId) {
+		synchronized (snapshots) {
+			Snapshot snapshot = snapshots.remove(snapshotId);
+			if (snapshot != null) {
+				keptRows -= snapshot.rows.length;
+			}
+		}
+	}
+
+	private CompositeData[] getSnapshot(String snapshotId, String cursor) throws IOException {
+		synchronized (snapshots) {
+			long now = System.currentTimeMillis();
+			for (Iterator<Snapshot> iterator = snapshots.values().iterator(); iterator.hasNext();) {
+				Snapshot idle = iterator.next();
+				if (now - idle.lastRead > IDLE_TIMEOUT) {
+					keptRows -= idle.rows.length;
+					iterator.remove();
+				}
+			}
+			Snapshot snapshot = snapshots.get(snapshotId);
+			if (snapshot == null) {
+				throw new IOException("Cursor has expired: " + cursor);
+			}
+			snapshot.lastRead = now;
+			return snapshot.rows;
+		}
+	}
+
+	private static final class Snapshot {
+
+		private final CompositeData[] rows;
+
+		private long lastRead = System.currentTimeMillis();
+
+		private Snapshot(CompositeData[] rows) {
+			this.rows = rows;
+		}
+	}
+
+}
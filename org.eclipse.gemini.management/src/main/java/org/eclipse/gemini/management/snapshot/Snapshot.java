@@ -0,0 +1,406 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.snapshot;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of a framework at one point in time, as decoded by {@link SnapshotDecoder}: its bundles with their
+ * headers, its services with their properties, its exported packages and the wires of its current bundle wirings.
+ * <p>
+ * The identifiers of bundles and services are those of the framework, they refer from one part of the snapshot to
+ * another. This class and its nested classes are immutable and do not depend on the OSGi API, so they can be used by
+ * any JMX client.
+ */
+public final class Snapshot {
+
+	/**
+	 * The version of the encoding written by this version of the management bundle. A decoder reads the versions up to
+	 * its own and rejects the later ones.
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	static final byte[] MAGIC = {'G', 'M', 'S', 'N'};
+
+	private final int formatVersion;
+
+	private final long timestamp;
+
+	private final List<Bundle> bundles;
+
+	private final List<Service> services;
+
+	private final List<Package> packages;
+
+	private final List<Wire> wires;
+
+	Snapshot(int formatVersion, long timestamp, List<Bundle> bundles, List<Service> services, List<Package> packages, List<Wire> wires) {
+		this.formatVersion = formatVersion;
+		this.timestamp = timestamp;
+		this.bundles = Collections.unmodifiableList(bundles);
+		this.services = Collections.unmodifiableList(services);
+		this.packages = Collections.unmodifiableList(packages);
+		this.wires = Collections.unmodifiableList(wires);
+	}
+
+	/**
+	 * @return the version of the encoding the snapshot was decoded from
+	 */
+	public int getFormatVersion() {
+		return formatVersion;
+	}
+
+	/**
+	 * @return the time the snapshot was taken, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the bundles, in ascending order of identifier
+	 */
+	public List<Bundle> getBundles() {
+		return bundles;
+	}
+
+	/**
+	 * @return the services, in ascending order of identifier
+	 */
+	public List<Service> getServices() {
+		return services;
+	}
+
+	/**
+	 * @return the exported packages, one for each bundle wiring in use exporting a package
+	 */
+	public List<Package> getPackages() {
+		return packages;
+	}
+
+	/**
+	 * @return the required wires of the current wiring of every bundle
+	 */
+	public List<Wire> getWires() {
+		return wires;
+	}
+
+	/**
+	 * A bundle of the framework
+	 */
+	public static final class Bundle {
+
+		private final long identifier;
+
+		private final String location;
+
+		private final String symbolicName;
+
+		private final String version;
+
+		private final int state;
+
+		private final int startLevel;
+
+		private final long lastModified;
+
+		private final boolean fragment;
+
+		private final boolean persistentlyStarted;
+
+		private final boolean activationPolicyUsed;
+
+		private final Map<String, String> headers;
+
+		Bundle(long identifier, String location, String symbolicName, String version, int state, int startLevel, long lastModified,
+				boolean fragment, boolean persistentlyStarted, boolean activationPolicyUsed, Map<String, String> headers) {
+			this.identifier = identifier;
+			this.location = location;
+			this.symbolicName = symbolicName;
+			this.version = version;
+			this.state = state;
+			this.startLevel = startLevel;
+			this.lastModified = lastModified;
+			this.fragment = fragment;
+			this.persistentlyStarted = persistentlyStarted;
+			this.activationPolicyUsed = activationPolicyUsed;
+			this.headers = Collections.unmodifiableMap(headers);
+		}
+
+		public long getIdentifier() {
+			return identifier;
+		}
+
+		public String getLocation() {
+			return location;
+		}
+
+		/**
+		 * @return the symbolic name, or null if the bundle has none
+		 */
+		public String getSymbolicName() {
+			return symbolicName;
+		}
+
+		public String getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return the state, one of the state constants of <code>org.osgi.framework.Bundle</code>
+		 */
+		public int getState() {
+			return state;
+		}
+
+		/**
+		 * @return the start level, or -1 if it is not known
+		 */
+		public int getStartLevel() {
+			return startLevel;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public boolean isFragment() {
+			return fragment;
+		}
+
+		public boolean isPersistentlyStarted() {
+			return persistentlyStarted;
+		}
+
+		public boolean isActivationPolicyUsed() {
+			return activationPolicyUsed;
+		}
+
+		/**
+		 * @return the manifest headers, in the order of the manifest
+		 */
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		@Override
+		public String toString() {
+			return symbolicName + " " + version + " [" + identifier + "]";
+		}
+
+	}
+
+	/**
+	 * A service registered in the framework
+	 */
+	public static final class Service {
+
+		private final long identifier;
+
+		private final long bundleIdentifier;
+
+		private final List<String> objectClass;
+
+		private final List<Property> properties;
+
+		private final long[] usingBundles;
+
+		Service(long identifier, long bundleIdentifier, List<String> objectClass, List<Property> properties, long[] usingBundles) {
+			this.identifier = identifier;
+			this.bundleIdentifier = bundleIdentifier;
+			this.objectClass = Collections.unmodifiableList(objectClass);
+			this.properties = Collections.unmodifiableList(properties);
+			this.usingBundles = usingBundles;
+		}
+
+		public long getIdentifier() {
+			return identifier;
+		}
+
+		/**
+		 * @return the identifier of the bundle that registered the service
+		 */
+		public long getBundleIdentifier() {
+			return bundleIdentifier;
+		}
+
+		public List<String> getObjectClass() {
+			return objectClass;
+		}
+
+		public List<Property> getProperties() {
+			return properties;
+		}
+
+		/**
+		 * @return the identifiers of the bundles using the service
+		 */
+		public long[] getUsingBundles() {
+			return usingBundles.clone();
+		}
+
+		@Override
+		public String toString() {
+			return objectClass + " [" + identifier + "]";
+		}
+
+	}
+
+	/**
+	 * A service property, its value is encoded as a string the way <code>org.osgi.jmx.JmxConstants.PROPERTY_TYPE</code>
+	 * encodes it. A value that type cannot hold, such as an array of some other class, is a <code>String</code> holding
+	 * the toString() of the value.
+	 */
+	public static final class Property {
+
+		private final String key;
+
+		private final String type;
+
+		private final String value;
+
+		Property(String key, String type, String value) {
+			this.key = key;
+			this.type = type;
+			this.value = value;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the type of the value, for example <code>Long</code> or <code>Array of String</code>
+		 */
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * @return the value, the elements of arrays and collections separated by commas
+		 */
+		public String getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value + " (" + type + ")";
+		}
+
+	}
+
+	/**
+	 * A package exported by a bundle wiring in use
+	 */
+	public static final class Package {
+
+		private final String name;
+
+		private final String version;
+
+		private final long exportingBundle;
+
+		private final boolean removalPending;
+
+		private final long[] importingBundles;
+
+		Package(String name, String version, long exportingBundle, boolean removalPending, long[] importingBundles) {
+			this.name = name;
+			this.version = version;
+			this.exportingBundle = exportingBundle;
+			this.removalPending = removalPending;
+			this.importingBundles = importingBundles;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getVersion() {
+			return version;
+		}
+
+		public long getExportingBundle() {
+			return exportingBundle;
+		}
+
+		/**
+		 * @return true if the package is exported by a wiring that is no longer current
+		 */
+		public boolean isRemovalPending() {
+			return removalPending;
+		}
+
+		/**
+		 * @return the identifiers of the bundles wired to the package, in ascending order
+		 */
+		public long[] getImportingBundles() {
+			return importingBundles.clone();
+		}
+
+		@Override
+		public String toString() {
+			return name + ";version=" + version + " [" + exportingBundle + "]";
+		}
+
+	}
+
+	/**
+	 * A wire from a requiring bundle to the capability of a providing bundle
+	 */
+	public static final class Wire {
+
+		private final String namespace;
+
+		private final long requirer;
+
+		private final long provider;
+
+		private final String name;
+
+		Wire(String namespace, long requirer, long provider, String name) {
+			this.namespace = namespace;
+			this.requirer = requirer;
+			this.provider = provider;
+			this.name = name;
+		}
+
+		public String getNamespace() {
+			return namespace;
+		}
+
+		public long getRequirer() {
+			return requirer;
+		}
+
+		public long getProvider() {
+			return provider;
+		}
+
+		/**
+		 * @return the attribute of the capability named after its namespace, such as the package name of a package
+		 *         wire, or null if the capability has no such attribute
+		 */
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return requirer + " -> " + provider + " " + namespace + "=" + name;
+		}
+
+	}
+
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.snapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the snapshot answered by the <code>takeSnapshot</code> operation of the framework snapshot MBean.
+ * <p>
+ * The package only depends on the Java class library, a JMX client can use it without the OSGi API, for example
+ * <code>SnapshotDecoder.decode((byte[]) connection.invoke(name, "takeSnapshot", null, null))</code>.
+ * <p>
+ * After the header described in {@link SnapshotOutput} the body of format version 1 holds, in order:
+ * <ul>
+ * <li>the time the snapshot was taken</li>
+ * <li>the count of bundles, then for each bundle its identifier, location, symbolic name, version, state, start level
+ * (signed), last modified time, flags (1 fragment, 2 persistently started, 4 activation policy used), the count of
+ * headers and the key and value of each header</li>
+ * <li>the count of services, then for each service its identifier, the identifier of its bundle, the count of its
+ * object classes and each object class, the count of its properties and the key, type and value of each property, the
+ * count of its using bundles and each of their identifiers</li>
+ * <li>the count of packages, then for each package its name, version, exporting bundle, flags (1 removal pending), the
+ * count of its importing bundles and each of their identifiers</li>
+ * <li>the count of wires, then for each wire its namespace, requiring bundle, providing bundle and name</li>
+ * </ul>
+ */
+public final class SnapshotDecoder {
+
+	private SnapshotDecoder() {
+	}
+
+	/**
+	 * Decode a snapshot
+	 *
+	 * @param snapshot - the encoded snapshot
+	 * @return the snapshot
+	 * @throws IOException if the snapshot is not in a format version known to the decoder, or is corrupt
+	 */
+	public static Snapshot decode(byte[] snapshot) throws IOException {
+		SnapshotInput in = new SnapshotInput(snapshot);
+		try {
+			long timestamp = in.readLong();
+			List<Snapshot.Bundle> bundles = readBundles(in);
+			List<Snapshot.Service> services = readServices(in);
+			List<Snapshot.Package> packages = readPackages(in);
+			List<Snapshot.Wire> wires = readWires(in);
+			return new Snapshot(in.getFormatVersion(), timestamp, bundles, services, packages, wires);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static List<Snapshot.Bundle> readBundles(SnapshotInput in) throws IOException {
+		int count = in.readCount();
+		List<Snapshot.Bundle> bundles = new ArrayList<Snapshot.Bundle>(count);
+		for (int i = 0; i < count; i++) {
+			long identifier = in.readLong();
+			String location = in.readString();
+			String symbolicName = in.readString();
+			String version = in.readString();
+			int state = (int) in.readLong();
+			int startLevel = in.readSignedInt();
+			long lastModified = in.readLong();
+			long flags = in.readLong();
+			int headerCount = in.readCount();
+			Map<String, String> headers = new LinkedHashMap<String, String>(headerCount * 4 / 3 + 1);
+			for (int j = 0; j < headerCount; j++) {
+				headers.put(in.readString(), in.readString());
+			}
+			bundles.add(new Snapshot.Bundle(identifier, location, symbolicName, version, state, startLevel, lastModified, (flags & 1) != 0,
+					(flags & 2) != 0, (flags & 4) != 0, headers));
+		}
+		return bundles;
+	}
+
+	private static List<Snapshot.Service> readServices(SnapshotInput in) throws IOException {
+		int count = in.readCount();
+		List<Snapshot.Service> services = new ArrayList<Snapshot.Service>(count);
+		for (int i = 0; i < count; i++) {
+			long identifier = in.readLong();
+			long bundleIdentifier = in.readLong();
+			int objectClassCount = in.readCount();
+			List<String> objectClass = new ArrayList<String>(objectClassCount);
+			for (int j = 0; j < objectClassCount; j++) {
+				objectClass.add(in.readString());
+			}
+			int propertyCount = in.readCount();
+			List<Snapshot.Property> properties = new ArrayList<Snapshot.Property>(propertyCount);
+			for (int j = 0; j < propertyCount; j++) {
+				properties.add(new Snapshot.Property(in.readString(), in.readString(), in.readString()));
+			}
+			services.add(new Snapshot.Service(identifier, bundleIdentifier, objectClass, properties, readIds(in)));
+		}
+		return services;
+	}
+
+	private static List<Snapshot.Package> readPackages(SnapshotInput in) throws IOException {
+		int count = in.readCount();
+		List<Snapshot.Package> packages = new ArrayList<Snapshot.Package>(count);
+		for (int i = 0; i < count; i++) {
+			String name = in.readString();
+			String version = in.readString();
+			long exportingBundle = in.readLong();
+			long flags = in.readLong();
+			packages.add(new Snapshot.Package(name, version, exportingBundle, (flags & 1) != 0, readIds(in)));
+		}
+		return packages;
+	}
+
+	private static List<Snapshot.Wire> readWires(SnapshotInput in) throws IOException {
+		int count = in.readCount();
+		List<Snapshot.Wire> wires = new ArrayList<Snapshot.Wire>(count);
+		for (int i = 0; i < count; i++) {
+			wires.add(new Snapshot.Wire(in.readString(), in.readLong(), in.readLong(), in.readString()));
+		}
+		return wires;
+	}
+
+	private static long[] readIds(SnapshotInput in) throws IOException {
+		long[] ids = new long[in.readCount()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = in.readLong();
+		}
+		return ids;
+	}
+
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the encoding written by {@link SnapshotOutput}
+ */
+final class SnapshotInput {
+
+	private final int formatVersion;
+
+	private final Inflater inflater = new Inflater();
+
+	private final InputStream in;
+
+	private final List<String> dictionary = new ArrayList<String>();
+
+	SnapshotInput(byte[] snapshot) throws IOException {
+		InputStream header = new ByteArrayInputStream(snapshot);
+		for (byte magic : Snapshot.MAGIC) {
+			if (header.read() != magic) {
+				throw new IOException("Not a framework snapshot");
+			}
+		}
+		long version = readVarint(header);
+		if (version < 1 || version > Snapshot.FORMAT_VERSION) {
+			throw new IOException("Unsupported snapshot format version " + version + ", expecting at most " + Snapshot.FORMAT_VERSION);
+		}
+		this.formatVersion = (int) version;
+		this.in = new InflaterInputStream(header, inflater, 8192);
+	}
+
+	int getFormatVersion() {
+		return formatVersion;
+	}
+
+	long readLong() throws IOException {
+		return readVarint(in);
+	}
+
+	int readCount() throws IOException {
+		long count = readVarint(in);
+		if (count > Integer.MAX_VALUE) {
+			throw new IOException("Corrupt snapshot, count " + count);
+		}
+		return (int) count;
+	}
+
+	int readSignedInt() throws IOException {
+		int value = (int) readVarint(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	String readString() throws IOException {
+		long reference = readVarint(in);
+		if (reference == 0) {
+			return null;
+		}
+		if (reference > 1) {
+			if (reference - 2 >= dictionary.size()) {
+				throw new IOException("Corrupt snapshot, unknown string " + (reference - 2));
+			}
+			return dictionary.get((int) (reference - 2));
+		}
+		byte[] utf8 = new byte[readCount()];
+		for (int read = 0; read < utf8.length;) {
+			int n = in.read(utf8, read, utf8.length - read);
+			if (n < 0) {
+				throw new EOFException("Truncated snapshot");
+			}
+			read += n;
+		}
+		String value = new String(utf8, "UTF-8");
+		dictionary.add(value);
+		return value;
+	}
+
+	void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Truncated snapshot");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Corrupt snapshot, varint too long");
+	}
+
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2011 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+package org.eclipse.gemini.management.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes the encoding of a snapshot, read back by {@link SnapshotDecoder}.
+ * <p>
+ * The encoding starts with the magic bytes <code>GMSN</code> and the format version as a varint, followed by the
+ * deflated (zlib) body. In the body numbers are varints: unsigned LEB128 for identifiers, counts and times, zig-zag
+ * LEB128 for the signed values. A string is written once, the first time it is seen, and referred to by its position
+ * in the dictionary after that: a reference of 0 is null, 1 is a new string followed by its UTF-8 length and bytes,
+ * and n &gt; 1 is the string at position n - 2 of the dictionary.
+ * <p>
+ * {@link #close()} must be called once the snapshot has been encoded, or failed to be. This class is not thread-safe.
+ */
+public final class SnapshotOutput {
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+	private final OutputStream out;
+
+	private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+	/**
+	 * Start the encoding of a snapshot in the current format version
+	 *
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public SnapshotOutput() throws IOException {
+		bytes.write(Snapshot.MAGIC);
+		writeVarint(bytes, Snapshot.FORMAT_VERSION);
+		out = new DeflaterOutputStream(bytes, deflater, 8192);
+	}
+
+	/**
+	 * Write an unsigned number
+	 *
+	 * @param value - the value, not negative
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void writeLong(long value) throws IOException {
+		writeVarint(out, value);
+	}
+
+	/**
+	 * Write a signed number
+	 *
+	 * @param value - the value
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void writeSignedInt(int value) throws IOException {
+		writeVarint(out, (value << 1) ^ (value >> 31));
+	}
+
+	/**
+	 * Write a string, or a reference to it if it has already been written
+	 *
+	 * @param value - the value, may be null
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void writeString(String value) throws IOException {
+		if (value == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		Integer position = dictionary.get(value);
+		if (position != null) {
+			writeVarint(out, position + 2L);
+			return;
+		}
+		dictionary.put(value, dictionary.size());
+		byte[] utf8 = value.getBytes("UTF-8");
+		writeVarint(out, 1);
+		writeVarint(out, utf8.length);
+		out.write(utf8);
+	}
+
+	/**
+	 * End the encoding
+	 *
+	 * @return the encoded snapshot
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public byte[] toByteArray() throws IOException {
+		try {
+			out.close();
+		} finally {
+			deflater.end();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Release the compressor of an encoding that was not ended, nothing is done if it was
+	 */
+	public void close() {
+		deflater.end();
+	}
+
+	private static void writeVarint(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+}